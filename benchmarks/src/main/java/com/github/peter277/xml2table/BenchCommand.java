@@ -0,0 +1,852 @@
+package com.github.peter277.xml2table;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+import picocli.CommandLine.Help.Visibility;
+
+/**
+ * Benchmarks whole conversion runs on a generated corpus.
+ * <p>
+ * A corpus of synthetic XML files is generated for every combination of
+ * number of files and items per file. Each configuration of the matrix
+ * (corpus, parallelism and option variant) is converted repeatedly, each time
+ * by {@link Main} in a fresh JVM, so that the runs do not share heap, JIT
+ * state or peak memory. The child JVM measures the conversion itself and
+ * reports conversion time, GC activity, peak resident set size and CPU time
+ * of each thread back to the benchmark.
+ * <p>
+ * Results (the run with median time of each configuration) are written as a
+ * JSON report, which can be used as a baseline of a later benchmark run.
+ * Configurations whose throughput dropped (or peak memory grew) by more than
+ * the tolerance compared to the baseline are reported as regressions and make
+ * the command exit with code 1. Peak memory is only compared if both reports
+ * include it.
+ */
+@Command(name = "bench", version = "0.1.0",
+         mixinStandardHelpOptions = true,
+         sortOptions = false,
+         description = "%nBenchmark conversion of a generated corpus of XML files with a matrix of configurations, write a JSON report and compare it with a baseline report.%n")
+public class BenchCommand implements Callable<Integer> {
+
+    /**
+     * Option variants of the conversion.
+     */
+    enum Variant {
+        PLAIN, JOIN, TRIM, FILTER, REMAP, MINIMAL_QUOTE, PIPELINE, FAST_SCAN, SPLIT, GZIP
+    }
+
+    @Option(names = {"--files"}, split = ",", paramLabel = "<count>", description = "Numbers of input files of the corpus.", defaultValue = "1,4", showDefaultValue = Visibility.ALWAYS)
+    int[] fileCounts;
+
+    @Option(names = {"--items"}, split = ",", paramLabel = "<count>", description = "Numbers of row items in each input file.", defaultValue = "20000", showDefaultValue = Visibility.ALWAYS)
+    int[] itemCounts;
+
+    @Option(names = {"--threads"}, split = ",", paramLabel = "<threads>", description = "Values of --parallel option to benchmark. By default single thread and all available processors are used.")
+    int[] threadCounts = null;
+
+    @Option(names = {"--variants"}, split = ",", paramLabel = "<variant>", description = "Option variants to benchmark: ${COMPLETION-CANDIDATES}.", defaultValue = "PLAIN,JOIN,TRIM,FILTER,REMAP", showDefaultValue = Visibility.ALWAYS)
+    Variant[] variants;
+
+    @Option(names = {"--repeat"}, paramLabel = "<runs>", description = "Number of runs of each configuration. The run with median time is reported.", defaultValue = "3", showDefaultValue = Visibility.ALWAYS)
+    int repeat = 3;
+
+    @Option(names = {"--depth"}, paramLabel = "<levels>", description = "Number of element levels below row items of generated files.", defaultValue = "2", showDefaultValue = Visibility.ALWAYS)
+    int depth = 2;
+
+    @Option(names = {"--width"}, paramLabel = "<elements>", description = "Number of child elements of each element above values in generated files.", defaultValue = "4", showDefaultValue = Visibility.ALWAYS)
+    int width = 4;
+
+    @Option(names = {"--value-length"}, paramLabel = "<chars>", description = "Length of values in generated files.", defaultValue = "16", showDefaultValue = Visibility.ALWAYS)
+    int valueLength = 16;
+
+    @Option(names = {"--attribute-density"}, paramLabel = "<ratio>", description = "Probability of an element of generated files having an attribute (0-1).", defaultValue = "0.25", showDefaultValue = Visibility.ALWAYS)
+    double attributeDensity = 0.25;
+
+    @Option(names = {"--seed"}, paramLabel = "<seed>", description = "Seed of generated files.", defaultValue = "42", showDefaultValue = Visibility.ALWAYS)
+    long seed = 42;
+
+    @Option(names = {"--jvm-option"}, paramLabel = "<option>", description = "Option of the JVM running conversions, e.g. -Xmx2g. Can be specified multiple times.")
+    List<String> jvmOptions = new ArrayList<>();
+
+    @Option(names = {"--work-dir"}, paramLabel = "<dir>", description = "Directory for the corpus and conversion output. By default a temporary directory is used and deleted afterwards.")
+    Path workDir = null;
+
+    @Option(names = {"--report"}, paramLabel = "<file>", description = "Path to the JSON report file.", defaultValue = "bench-report.json", showDefaultValue = Visibility.ALWAYS)
+    Path reportFile;
+
+    @Option(names = {"--baseline"}, paramLabel = "<file>", description = "Path to a JSON report of an earlier benchmark run to compare the results with.")
+    Path baselineFile = null;
+
+    @Option(names = {"--tolerance"}, paramLabel = "<percent>", description = "Allowed drop of throughput and growth of peak memory compared to the baseline, in percent.", defaultValue = "10", showDefaultValue = Visibility.ALWAYS)
+    double tolerance = 10;
+
+    /**
+     * Metrics file of a single measured conversion run in a child JVM.
+     */
+    @Option(names = {"--measure"}, hidden = true)
+    Path measureFile = null;
+
+    /**
+     * Arguments of the measured conversion run.
+     */
+    @Parameters(hidden = true)
+    List<String> conversionArgs = new ArrayList<>();
+
+    /**
+     * Main method.
+     *
+     * @param args command line arguments
+     */
+    public static void main(final String[] args) {
+        System.exit(new CommandLine(new BenchCommand()).setCaseInsensitiveEnumValuesAllowed(true).execute(args));
+    }
+
+    @Override
+    public Integer call() throws IOException, InterruptedException {
+        if (measureFile != null) {
+            measure();
+
+            return 0;
+        }
+
+        if (repeat < 1 || Arrays.stream(fileCounts).anyMatch(count -> count < 1)
+                || Arrays.stream(itemCounts).anyMatch(count -> count < 0)
+                || threadCounts != null && Arrays.stream(threadCounts).anyMatch(threads -> threads < 1)) {
+            System.err.println("Error: Numbers of files, items, threads and runs must be positive.");
+
+            return 2;
+        }
+
+        final Map<String, Object> baseline;
+        try {
+            baseline = baselineFile == null ? null : readReport(baselineFile);
+        } catch (final IOException | RuntimeException ex) {
+            System.err.println("Error reading baseline report: " + ex.getMessage());
+
+            return 2;
+        }
+
+        final boolean temporary = workDir == null;
+        final Path dir = temporary ? Files.createTempDirectory("xml2table-bench") : Files.createDirectories(workDir);
+
+        try {
+            final List<Map<String, Object>> results = runMatrix(dir);
+            final Map<String, Object> report = newReport(results);
+            int regressions = 0;
+
+            if (baseline != null) {
+                final Map<String, Object> comparison = compare(results, baseline);
+                regressions = ((Number) comparison.get("regressions")).intValue();
+                report.put("baseline", comparison);
+            }
+
+            Files.writeString(reportFile, Json.write(report), StandardCharsets.UTF_8);
+            System.err.println("Info: Report written to " + reportFile);
+
+            return regressions > 0 ? 1 : 0;
+        } finally {
+            if (temporary) {
+                deleteRecursively(dir);
+            }
+        }
+    }
+
+    /**
+     * Generates corpora and runs all configurations of the matrix.
+     *
+     * @param dir work directory
+     *
+     * @return results of all configurations
+     *
+     * @throws IOException          Thrown if a corpus could not be generated
+     *                              or a conversion run failed.
+     * @throws InterruptedException Thrown if interrupted while waiting for a
+     *                              conversion run.
+     */
+    private List<Map<String, Object>> runMatrix(final Path dir) throws IOException, InterruptedException {
+        final Set<Integer> threads = new LinkedHashSet<>(4);
+        if (threadCounts == null) {
+            threads.add(1);
+            threads.add(Runtime.getRuntime().availableProcessors());
+        } else {
+            Arrays.stream(threadCounts).forEach(threads::add);
+        }
+
+        final List<Map<String, Object>> results = new ArrayList<>(16);
+
+        for (final int items : itemCounts) {
+            final SyntheticXmlGenerator generator
+                    = new SyntheticXmlGenerator(items, depth, width, valueLength, attributeDensity, seed);
+            final Path itemsDir = Files.createDirectories(dir.resolve("items-" + items));
+            final Path document = itemsDir.resolve("document.xml");
+            generator.write(document);
+            final String filterColumn = writeFilterFiles(generator, itemsDir);
+
+            for (final int files : fileCounts) {
+                final Path corpus = Files.createDirectories(itemsDir.resolve("files-" + files));
+                long inputBytes = 0;
+
+                // Files of a corpus are identical, so generating it only costs copying
+                for (int i = 1; i <= files; i++) {
+                    final Path file = corpus.resolve("input-" + i + ".xml");
+                    Files.copy(document, file, StandardCopyOption.REPLACE_EXISTING);
+                    inputBytes += Files.size(file);
+                }
+
+                for (final int threadCount : threads) {
+                    for (final Variant variant : variants) {
+                        final List<String> args = conversionArgs(generator, corpus, dir.resolve("output"), itemsDir,
+                                filterColumn, threadCount, variant);
+                        final String id = "files=" + files + " items=" + items + " threads=" + threadCount
+                                + " variant=" + variant;
+                        System.err.println("Info: Running " + id);
+
+                        final Map<String, Object> result = new LinkedHashMap<>(32);
+                        result.put("id", id);
+                        result.put("files", files);
+                        result.put("itemsPerFile", items);
+                        result.put("threads", threadCount);
+                        result.put("variant", variant.name());
+                        result.put("inputBytes", inputBytes);
+                        result.putAll(runConfiguration(args, dir, inputBytes));
+                        results.add(result);
+
+                        System.err.println(String.format("Info: %.1f MB/s, %.0f rows/s, peak RSS %s, GC %s ms",
+                                result.get("mbPerSecond"), result.get("rowsPerSecond"),
+                                formatBytes(result.get("peakRssBytes")), result.get("gcTimeMs")));
+                    }
+                }
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Writes filter values and remapping files matching about half of the
+     * rows of the generated document.
+     *
+     * @param generator generator of the document
+     * @param dir       directory to write the files to
+     *
+     * @return name of the filtered and remapped column
+     *
+     * @throws IOException Thrown if the files could not be written.
+     */
+    private static String writeFilterFiles(final SyntheticXmlGenerator generator, final Path dir) throws IOException {
+        final String column = generator.getColumns().stream().filter(path -> !path.contains("@")).findFirst()
+                .orElseThrow();
+
+        final ConvertorSettings convertorSettings = new ConvertorSettings();
+        convertorSettings.generalOptions.itemName = SyntheticXmlGenerator.ITEM_PATH;
+        convertorSettings.generalOptions.columns = new String[]{column};
+        convertorSettings.generalOptions.noHeader = true;
+
+        final StringWriter values = new StringWriter();
+        try (InputStream inputStream = Files.newInputStream(dir.resolve("document.xml"))) {
+            Convertor.newConvertorFromStreams(inputStream, values, convertorSettings).convert();
+        }
+
+        try (BufferedWriter filterWriter = Files.newBufferedWriter(dir.resolve("filter-values.txt"));
+                BufferedWriter remapWriter = Files.newBufferedWriter(dir.resolve("remap-map.csv"));
+                BufferedReader reader = new BufferedReader(new StringReader(values.toString()))) {
+            int row = 0;
+
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (row++ % 2 == 0) {
+                    final String[] value = CsvUtils.parseValues(line);
+                    final String original = value.length == 0 ? "" : value[0];
+
+                    filterWriter.write(original);
+                    filterWriter.newLine();
+                    remapWriter.write(CsvUtils.quoteString(original) + ",\"remapped " + row + "\"");
+                    remapWriter.newLine();
+                }
+            }
+        }
+
+        return column;
+    }
+
+    /**
+     * Returns command line arguments of {@link Main} converting a corpus.
+     *
+     * @param generator    generator of the corpus files
+     * @param corpus       corpus directory
+     * @param outputDir    output directory
+     * @param filesDir     directory with filter values and remapping files
+     * @param filterColumn filtered and remapped column
+     * @param threads      number of threads
+     * @param variant      option variant
+     *
+     * @return command line arguments
+     */
+    private static List<String> conversionArgs(final SyntheticXmlGenerator generator, final Path corpus,
+            final Path outputDir, final Path filesDir, final String filterColumn, final int threads,
+            final Variant variant) {
+        final List<String> args = new ArrayList<>(16);
+        args.addAll(Arrays.asList("--input-dir", corpus.toString(), "--output-dir", outputDir.toString(),
+                "--parallel=" + threads, "--row-item-name", SyntheticXmlGenerator.ITEM_PATH,
+                "--columns", String.join(",", generator.getColumns())));
+
+        switch (variant) {
+            case JOIN:
+                args.add("--join-values");
+                break;
+            case TRIM:
+                args.add("--trim");
+                break;
+            case FILTER:
+                args.addAll(Arrays.asList("--filter-column", filterColumn,
+                        "--filter-values", filesDir.resolve("filter-values.txt").toString()));
+                break;
+            case REMAP:
+                args.addAll(Arrays.asList("--remap-column", filterColumn,
+                        "--remap-map", filesDir.resolve("remap-map.csv").toString()));
+                break;
+            case MINIMAL_QUOTE:
+                args.add("--quote-mode=MINIMAL");
+                break;
+            case PIPELINE:
+                args.add("--pipeline");
+                break;
+            case FAST_SCAN:
+                args.add("--fast-scan");
+                break;
+            case SPLIT:
+                args.add("--split-input");
+                break;
+            case GZIP:
+                args.add("--gzip-output");
+                break;
+            default:
+                break;
+        }
+
+        return args;
+    }
+
+    /**
+     * Runs configuration repeatedly in child JVMs.
+     *
+     * @param args       command line arguments of the conversion
+     * @param dir        work directory
+     * @param inputBytes total size of input files
+     *
+     * @return metrics of the run with median time
+     *
+     * @throws IOException          Thrown if a conversion run failed.
+     * @throws InterruptedException Thrown if interrupted while waiting for a
+     *                              conversion run.
+     */
+    private Map<String, Object> runConfiguration(final List<String> args, final Path dir, final long inputBytes)
+            throws IOException, InterruptedException {
+        final Path outputDir = dir.resolve("output");
+        final Path metricsFile = dir.resolve("metrics.json");
+        final Path logFile = dir.resolve("run.log");
+        final List<Map<String, Object>> runs = new ArrayList<>(repeat);
+
+        for (int run = 0; run < repeat; run++) {
+            deleteRecursively(outputDir);
+            Files.deleteIfExists(metricsFile);
+
+            final List<String> command = new ArrayList<>(javaCommand(jvmOptions));
+            command.addAll(Arrays.asList("--measure", metricsFile.toString(), "--"));
+            command.addAll(args);
+
+            final Process process = new ProcessBuilder(command).redirectErrorStream(true)
+                    .redirectOutput(logFile.toFile()).start();
+            final int exitCode = process.waitFor();
+
+            if (exitCode != 0 || !Files.exists(metricsFile)) {
+                throw new IOException("Conversion run failed with exit code " + exitCode + ":\n"
+                        + Files.readString(logFile));
+            }
+
+            @SuppressWarnings("unchecked")
+            final Map<String, Object> metrics = (Map<String, Object>) Json.parse(Files.readString(metricsFile));
+
+            if (((Number) metrics.get("failedFiles")).intValue() > 0) {
+                throw new IOException("Conversion of some files failed:\n" + Files.readString(logFile));
+            }
+
+            metrics.put("rows", countRows(outputDir));
+            runs.add(metrics);
+        }
+
+        final List<Double> times = runs.stream().map(metrics -> ((Number) metrics.get("seconds")).doubleValue())
+                .collect(Collectors.toList());
+        runs.sort(Comparator.comparingDouble(metrics -> ((Number) metrics.get("seconds")).doubleValue()));
+        final Map<String, Object> median = runs.get((runs.size() - 1) / 2);
+
+        final double seconds = Math.max(((Number) median.get("seconds")).doubleValue(), 1e-9);
+        final long rows = ((Number) median.get("rows")).longValue();
+        final Map<String, Object> result = new LinkedHashMap<>(16);
+        result.put("rows", rows);
+        result.put("seconds", seconds);
+        result.put("runSeconds", times);
+        result.put("mbPerSecond", inputBytes / 1e6 / seconds);
+        result.put("rowsPerSecond", rows / seconds);
+        result.put("peakRssBytes", median.get("peakRssBytes"));
+        result.put("gcTimeMs", median.get("gcTimeMs"));
+        result.put("gcCount", median.get("gcCount"));
+        result.put("processCpuSeconds", median.get("processCpuSeconds"));
+        result.put("threadCpuSeconds", median.get("threadCpuSeconds"));
+
+        return result;
+    }
+
+    /**
+     * Returns command starting a JVM which runs this command with the same
+     * class path as this JVM.
+     *
+     * @param jvmOptions additional JVM options
+     *
+     * @return command
+     */
+    private static List<String> javaCommand(final List<String> jvmOptions) {
+        final List<String> command = new ArrayList<>(8);
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(BenchCommand.class.getName());
+
+        return command;
+    }
+
+    /**
+     * Counts rows (excluding header lines) of all files in output directory.
+     *
+     * @param outputDir output directory
+     *
+     * @return number of rows
+     *
+     * @throws IOException Thrown if the output could not be read.
+     */
+    private static long countRows(final Path outputDir) throws IOException {
+        long rows = 0;
+
+        try (Stream<Path> files = Files.list(outputDir)) {
+            for (final Path file : (Iterable<Path>) files::iterator) {
+                long lines = 0;
+
+                try (InputStream in = CompressedInput.open(file)) {
+                    final byte[] buffer = new byte[CompressedInput.CHUNK_SIZE];
+
+                    for (int length = in.read(buffer); length >= 0; length = in.read(buffer)) {
+                        for (int i = 0; i < length; i++) {
+                            if (buffer[i] == '\n') {
+                                lines++;
+                            }
+                        }
+                    }
+                }
+
+                rows += Math.max(0, lines - 1);
+            }
+        }
+
+        return rows;
+    }
+
+    /**
+     * Converts files in this JVM and writes metrics of the conversion to
+     * {@link #measureFile}.
+     *
+     * @throws IOException Thrown if the metrics could not be written.
+     */
+    private void measure() throws IOException {
+        final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        final long gcTimeBefore = collectors.stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+        final long gcCountBefore = collectors.stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+        final ThreadCpuSampler sampler = new ThreadCpuSampler();
+        final Main main = new Main();
+
+        sampler.start();
+        final long start = System.nanoTime();
+        new CommandLine(main).setCaseInsensitiveEnumValuesAllowed(true).execute(conversionArgs.toArray(new String[0]));
+        final long end = System.nanoTime();
+        final Map<String, Double> threadCpu = sampler.finish();
+
+        final Map<String, Object> metrics = new LinkedHashMap<>(16);
+        metrics.put("seconds", (end - start) / 1e9);
+        metrics.put("failedFiles", main.getFailedFileCount());
+        metrics.put("gcTimeMs", collectors.stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum()
+                - gcTimeBefore);
+        metrics.put("gcCount", collectors.stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum()
+                - gcCountBefore);
+        metrics.put("peakRssBytes", peakRss());
+        metrics.put("processCpuSeconds", ProcessHandle.current().info().totalCpuDuration()
+                .map(duration -> duration.toNanos() / 1e9).orElse(null));
+        metrics.put("threadCpuSeconds", threadCpu);
+
+        Files.writeString(measureFile, Json.write(metrics), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns peak resident set size of this process.
+     *
+     * @return peak resident set size in bytes, or null if it is not available
+     *         on this platform
+     */
+    private static Long peakRss() {
+        final Path status = Path.of("/proc/self/status");
+
+        if (!Files.isReadable(status)) {
+            return null;
+        }
+
+        try {
+            for (final String line : Files.readAllLines(status)) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.substring(6).replace("kB", "").trim()) * 1024;
+                }
+            }
+        } catch (final IOException | NumberFormatException ex) {
+            // Not available
+        }
+
+        return null;
+    }
+
+    /**
+     * Creates report of results.
+     *
+     * @param results results of all configurations
+     *
+     * @return report
+     */
+    private Map<String, Object> newReport(final List<Map<String, Object>> results) {
+        final Map<String, Object> environment = new LinkedHashMap<>(8);
+        environment.put("javaVersion", System.getProperty("java.version"));
+        environment.put("javaVm", System.getProperty("java.vm.name"));
+        environment.put("os", System.getProperty("os.name") + " " + System.getProperty("os.arch"));
+        environment.put("processors", Runtime.getRuntime().availableProcessors());
+        environment.put("jvmOptions", jvmOptions);
+
+        final Map<String, Object> report = new LinkedHashMap<>(8);
+        report.put("version", Main.class.getAnnotation(Command.class).version()[0]);
+        report.put("timestamp", Instant.now().toString());
+        report.put("environment", environment);
+        report.put("corpus", corpusParameters());
+        report.put("repeat", repeat);
+        report.put("results", results);
+
+        return report;
+    }
+
+    /**
+     * Returns parameters of generated corpus files.
+     *
+     * @return corpus parameters
+     */
+    private Map<String, Object> corpusParameters() {
+        final Map<String, Object> corpus = new LinkedHashMap<>(8);
+        corpus.put("depth", depth);
+        corpus.put("width", width);
+        corpus.put("valueLength", valueLength);
+        corpus.put("attributeDensity", attributeDensity);
+        corpus.put("seed", seed);
+
+        return corpus;
+    }
+
+    /**
+     * Reads report file.
+     *
+     * @param file report file
+     *
+     * @return report
+     *
+     * @throws IOException Thrown if the file could not be read.
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> readReport(final Path file) throws IOException {
+        final Object report = Json.parse(Files.readString(file, StandardCharsets.UTF_8));
+
+        if (!(report instanceof Map) || !(((Map<String, Object>) report).get("results") instanceof List)) {
+            throw new IllegalArgumentException("Not a benchmark report: " + file);
+        }
+
+        return (Map<String, Object>) report;
+    }
+
+    /**
+     * Compares results with baseline report and prints the comparison.
+     *
+     * @param results  results of all configurations
+     * @param baseline baseline report
+     *
+     * @return comparison
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> compare(final List<Map<String, Object>> results, final Map<String, Object> baseline) {
+        final Map<String, Map<String, Object>> baselineResults = new HashMap<>(32);
+        for (final Object result : (List<Object>) baseline.get("results")) {
+            baselineResults.put((String) ((Map<String, Object>) result).get("id"), (Map<String, Object>) result);
+        }
+
+        final List<Map<String, Object>> comparisons = new ArrayList<>(results.size());
+        int regressions = 0;
+
+        System.err.println("\nComparison with " + baselineFile + " (tolerance " + tolerance + " %):\n"
+                + "-------------------");
+
+        final Object baselineCorpus = baseline.get("corpus");
+        // Parsed back from JSON so that number types match the baseline
+        if (baselineCorpus != null && !baselineCorpus.equals(Json.parse(Json.write(corpusParameters())))) {
+            System.err.println("Warning: Baseline corpus was generated with different parameters.");
+        }
+
+        for (final Map<String, Object> result : results) {
+            final Map<String, Object> baselineResult = baselineResults.get((String) result.get("id"));
+
+            if (baselineResult == null) {
+                System.err.println(result.get("id") + ": not in baseline");
+                continue;
+            }
+
+            final Double throughputChange = change(baselineResult.get("mbPerSecond"), result.get("mbPerSecond"));
+            final Double memoryChange = change(baselineResult.get("peakRssBytes"), result.get("peakRssBytes"));
+            final boolean regression = throughputChange != null && throughputChange < -tolerance
+                    || memoryChange != null && memoryChange > tolerance;
+
+            final Map<String, Object> comparison = new LinkedHashMap<>(8);
+            comparison.put("id", result.get("id"));
+            comparison.put("baselineMbPerSecond", baselineResult.get("mbPerSecond"));
+            comparison.put("mbPerSecond", result.get("mbPerSecond"));
+            comparison.put("throughputChangePercent", throughputChange);
+            comparison.put("baselinePeakRssBytes", baselineResult.get("peakRssBytes"));
+            comparison.put("peakRssBytes", result.get("peakRssBytes"));
+            comparison.put("peakRssChangePercent", memoryChange);
+            comparison.put("regression", regression);
+            comparisons.add(comparison);
+
+            if (regression) {
+                regressions++;
+            }
+
+            System.err.println(String.format("%s: throughput %s, peak RSS %s%s", result.get("id"),
+                    formatChange(throughputChange), formatChange(memoryChange), regression ? "  REGRESSION" : ""));
+        }
+
+        System.err.println("Regressions: " + regressions);
+
+        final Map<String, Object> comparison = new LinkedHashMap<>(8);
+        comparison.put("file", baselineFile.toString());
+        comparison.put("timestamp", baseline.get("timestamp"));
+        comparison.put("tolerancePercent", tolerance);
+        comparison.put("regressions", regressions);
+        comparison.put("comparisons", comparisons);
+
+        return comparison;
+    }
+
+    /**
+     * Returns relative change of a metric in percent.
+     *
+     * @param baseline baseline value, may be null
+     * @param current  current value, may be null
+     *
+     * @return change in percent, or null if either value is not available
+     *         (e.g. peak memory measured on a platform without
+     *         {@code /proc/self/status})
+     */
+    private static Double change(final Object baseline, final Object current) {
+        if (!(baseline instanceof Number) || !(current instanceof Number)
+                || ((Number) baseline).doubleValue() <= 0) {
+            return null;
+        }
+
+        return (((Number) current).doubleValue() / ((Number) baseline).doubleValue() - 1) * 100;
+    }
+
+    /**
+     * Formats relative change of a metric.
+     *
+     * @param change change in percent, may be null
+     *
+     * @return formatted value
+     */
+    private static String formatChange(final Double change) {
+        return change == null ? "n/a" : String.format("%+.1f %%", change);
+    }
+
+    /**
+     * Formats number of bytes in MiB.
+     *
+     * @param bytes number of bytes, may be null
+     *
+     * @return formatted value
+     */
+    private static String formatBytes(final Object bytes) {
+        return bytes instanceof Number ? String.format("%.1f MiB", ((Number) bytes).doubleValue() / (1 << 20)) : "n/a";
+    }
+
+    /**
+     * Deletes file or directory with all its content, if it exists.
+     *
+     * @param path file or directory
+     *
+     * @throws IOException Thrown if deleting failed.
+     */
+    private static void deleteRecursively(final Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (final Path file : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Samples CPU time of all threads while a conversion runs, so that CPU
+     * time of worker threads is known even after they terminate.
+     */
+    private static final class ThreadCpuSampler extends Thread {
+
+        /**
+         * Sampling interval.
+         */
+        private static final Duration INTERVAL = Duration.ofMillis(10);
+
+        /**
+         * Thread management bean.
+         */
+        private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        /**
+         * Last sampled CPU time in nanoseconds of each thread, by thread ID.
+         */
+        private final Map<Long, Long> cpuTimes = new HashMap<>(32);
+        /**
+         * Name of each sampled thread, by thread ID.
+         */
+        private final Map<Long, String> names = new HashMap<>(32);
+        /**
+         * CPU time of each thread at start of sampling, by thread ID.
+         */
+        private final Map<Long, Long> initialCpuTimes = new HashMap<>(32);
+        /**
+         * Whether sampling should stop.
+         */
+        private volatile boolean stopped = false;
+
+        private ThreadCpuSampler() {
+            super("xml2table-bench-sampler");
+            setDaemon(true);
+
+            if (threadBean.isThreadCpuTimeSupported()) {
+                threadBean.setThreadCpuTimeEnabled(true);
+                sample();
+                initialCpuTimes.putAll(cpuTimes);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (!stopped && threadBean.isThreadCpuTimeSupported()) {
+                synchronized (this) {
+                    sample();
+                }
+
+                try {
+                    Thread.sleep(INTERVAL.toMillis());
+                } catch (final InterruptedException ex) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Stops sampling and returns CPU time of threads.
+         *
+         * @return CPU time in seconds spent by each thread since sampling
+         *         started, by thread name (threads with the same name are
+         *         summed)
+         */
+        private Map<String, Double> finish() {
+            stopped = true;
+            interrupt();
+
+            try {
+                join();
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+
+            final Map<String, Double> result = new TreeMap<>();
+
+            if (!threadBean.isThreadCpuTimeSupported()) {
+                return result;
+            }
+
+            synchronized (this) {
+                sample();
+
+                for (final Map.Entry<Long, Long> entry : cpuTimes.entrySet()) {
+                    final long cpuTime = entry.getValue() - initialCpuTimes.getOrDefault(entry.getKey(), 0L);
+
+                    if (cpuTime > 0 && entry.getKey() != getId()) {
+                        result.merge(names.get(entry.getKey()), cpuTime / 1e9, Double::sum);
+                    }
+                }
+            }
+
+            return result;
+        }
+
+        /**
+         * Records CPU time of all live threads.
+         */
+        private void sample() {
+            for (final ThreadInfo info : threadBean.getThreadInfo(threadBean.getAllThreadIds())) {
+                if (info == null) {
+                    continue;
+                }
+
+                final long cpuTime = threadBean.getThreadCpuTime(info.getThreadId());
+
+                if (cpuTime >= 0) {
+                    cpuTimes.put(info.getThreadId(), cpuTime);
+                    names.put(info.getThreadId(), info.getThreadName());
+                }
+            }
+        }
+    }
+}
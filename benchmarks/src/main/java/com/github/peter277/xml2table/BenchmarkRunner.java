@@ -0,0 +1,42 @@
+package com.github.peter277.xml2table;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs benchmarks with the standard JMH command line, adding the GC profiler
+ * unless it was requested explicitly, so that allocation rate ({@code gc.alloc.rate.norm}, bytes per
+ * operation) is reported next to throughput.
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(final String[] args) throws CommandLineOptionException, IOException, RunnerException {
+        final CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+
+        if (commandLineOptions.shouldHelp() || commandLineOptions.shouldList()
+                || commandLineOptions.shouldListProfilers() || commandLineOptions.shouldListResultFormats()
+                || commandLineOptions.shouldListWithParams()) {
+            org.openjdk.jmh.Main.main(args);
+
+            return;
+        }
+
+        final OptionsBuilder optionsBuilder = new OptionsBuilder();
+        optionsBuilder.parent(commandLineOptions);
+
+        if (commandLineOptions.getProfilers().stream().noneMatch(profiler -> "gc".equals(profiler.getKlass()))) {
+            optionsBuilder.addProfiler(GCProfiler.class);
+        }
+
+        new Runner(optionsBuilder.build()).run();
+    }
+}
@@ -0,0 +1,57 @@
+package com.github.peter277.xml2table;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Finds columns of a synthetic document held in memory. One operation scans
+ * the whole document of {@link #items} row items.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ColumnFinderBenchmark {
+
+    @Param({"1000"})
+    public int items;
+
+    @Param({"1", "3"})
+    public int depth;
+
+    @Param({"10"})
+    public int width;
+
+    @Param({"16"})
+    public int valueLength;
+
+    @Param({"0.5"})
+    public double attributeDensity;
+
+    private byte[] document;
+
+    @Setup
+    public void setUp() {
+        document = new SyntheticXmlGenerator(items, depth, width, valueLength, attributeDensity, 42).toBytes();
+    }
+
+    @Benchmark
+    public List<String> find() {
+        return ColumnFinder.find(new ByteArrayInputStream(document), SyntheticXmlGenerator.ITEM_PATH + "/");
+    }
+}
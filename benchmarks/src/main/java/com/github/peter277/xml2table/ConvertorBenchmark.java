@@ -0,0 +1,92 @@
+package com.github.peter277.xml2table;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Converts a synthetic document held in memory, exercising parsing, item
+ * processing ({@code Convertor.processItem}) and row formatting. Output is
+ * discarded, so file system speed does not affect the result. One operation
+ * converts the whole document of {@link #items} row items.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConvertorBenchmark {
+
+    @Param({"1000"})
+    public int items;
+
+    @Param({"1", "3"})
+    public int depth;
+
+    @Param({"10"})
+    public int width;
+
+    @Param({"8", "64"})
+    public int valueLength;
+
+    @Param({"0", "0.5"})
+    public double attributeDensity;
+
+    /**
+     * Parser backend.
+     */
+    @Param({"WOODSTOX"})
+    public ParserBackend.Type parser;
+
+    private byte[] document;
+    private ConvertorSettings convertorSettings;
+    private ConvertorSettings joinTrimSettings;
+
+    @Setup
+    public void setUp() {
+        final SyntheticXmlGenerator generator
+                = new SyntheticXmlGenerator(items, depth, width, valueLength, attributeDensity, 42);
+        document = generator.toBytes();
+
+        convertorSettings = newSettings(generator);
+
+        joinTrimSettings = newSettings(generator);
+        joinTrimSettings.generalOptions.join = true;
+        joinTrimSettings.generalOptions.trimValues = true;
+    }
+
+    private ConvertorSettings newSettings(final SyntheticXmlGenerator generator) {
+        final ConvertorSettings settings = new ConvertorSettings();
+        settings.generalOptions.itemName = SyntheticXmlGenerator.ITEM_PATH;
+        settings.generalOptions.columns = generator.getColumns().toArray(new String[0]);
+        settings.generalOptions.parser = parser;
+
+        return settings;
+    }
+
+    @Benchmark
+    public void convert() throws IOException {
+        Convertor.newConvertorFromStreams(new ByteArrayInputStream(document), Writer.nullWriter(), convertorSettings)
+                .convert();
+    }
+
+    @Benchmark
+    public void convertJoinTrim() throws IOException {
+        Convertor.newConvertorFromStreams(new ByteArrayInputStream(document), Writer.nullWriter(), joinTrimSettings)
+                .convert();
+    }
+}
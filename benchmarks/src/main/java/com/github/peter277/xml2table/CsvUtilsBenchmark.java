@@ -0,0 +1,84 @@
+package com.github.peter277.xml2table;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Quotes values and parses CSV lines taken from converted synthetic
+ * documents. One operation processes a single value or line.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CsvUtilsBenchmark {
+
+    /**
+     * Number of lines (and values) processed by one benchmark invocation.
+     */
+    static final int BATCH = 1000;
+
+    @Param({"8", "64", "512"})
+    public int valueLength;
+
+    private String[] values;
+    private String[] lines;
+
+    @Setup
+    public void setUp() throws IOException {
+        final SyntheticXmlGenerator generator = new SyntheticXmlGenerator(BATCH, 1, 5, valueLength, 0, 42);
+        final ConvertorSettings convertorSettings = new ConvertorSettings();
+        convertorSettings.generalOptions.itemName = SyntheticXmlGenerator.ITEM_PATH;
+        convertorSettings.generalOptions.columns = generator.getColumns().toArray(new String[0]);
+        convertorSettings.generalOptions.noHeader = true;
+
+        final StringWriter writer = new StringWriter();
+        Convertor.newConvertorFromStreams(new ByteArrayInputStream(generator.toBytes()), writer, convertorSettings)
+                .convert();
+        lines = writer.toString().split("\n");
+
+        final List<String> parsedValues = new ArrayList<>(BATCH);
+        for (int i = 0; parsedValues.size() < BATCH; i++) {
+            for (final String value : CsvUtils.parseValues(lines[i])) {
+                parsedValues.add(value);
+            }
+        }
+        values = parsedValues.subList(0, BATCH).toArray(new String[0]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void quoteString(final Blackhole blackhole) {
+        for (final String value : values) {
+            blackhole.consume(CsvUtils.quoteString(value));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void parseValues(final Blackhole blackhole) {
+        for (final String line : lines) {
+            blackhole.consume(CsvUtils.parseValues(line));
+        }
+    }
+}
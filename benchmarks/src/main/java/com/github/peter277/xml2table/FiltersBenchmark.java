@@ -0,0 +1,91 @@
+package com.github.peter277.xml2table;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Matches item values against include and exclude filters, the way the
+ * convertor does for every row item. One operation matches a single item.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FiltersBenchmark {
+
+    /**
+     * Number of items matched by one benchmark invocation.
+     */
+    static final int BATCH = 1000;
+
+    /**
+     * Number of values of each filter.
+     */
+    @Param({"10", "10000"})
+    public int filterValues;
+
+    private Filters filters;
+    private String[][] items;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        final int distinctValues = filterValues * 2;
+
+        final ConvertorSettings convertorSettings = new ConvertorSettings();
+        convertorSettings.generalOptions.itemName = SyntheticXmlGenerator.ITEM_PATH;
+        convertorSettings.generalOptions.columns = new String[]{"id", "type", "@status"};
+        filters = convertorSettings.filters;
+        filters.addFilter(newFilter("type", filterValues, false));
+        filters.addFilter(newFilter("@status", filterValues / 2, true));
+        convertorSettings.getPathTrie();
+
+        // Roughly half of the items pass the include filter and a quarter of those is excluded
+        items = new String[BATCH][];
+        for (int i = 0; i < BATCH; i++) {
+            items[i] = new String[]{Integer.toString(i), "value" + random.nextInt(distinctValues),
+                "value" + random.nextInt(distinctValues)};
+        }
+    }
+
+    private static Filter newFilter(final String column, final int valueCount, final boolean exclude) {
+        // Values are loaded into a hash set by Main as well
+        final Collection<String> values = new HashSet<>(valueCount * 2);
+        for (int i = 0; i < valueCount; i++) {
+            values.add("value" + i);
+        }
+
+        final Filter filter = new Filter();
+        filter.setColumn(column);
+        filter.setValues(values);
+        filter.setExclude(exclude);
+
+        return filter;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void matchesFilters(final Blackhole blackhole) {
+        for (final String[] item : items) {
+            blackhole.consume(filters.matchesFilters(item));
+        }
+    }
+}
@@ -0,0 +1,424 @@
+package com.github.peter277.xml2table;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON writer and parser for benchmark reports.
+ * <p>
+ * Values are represented by plain Java objects: {@link Map} for objects (with
+ * {@link String} keys, in insertion order when parsed), {@link List} for
+ * arrays, {@link String}, {@link Number} (parsed as {@link Long} or
+ * {@link Double}), {@link Boolean} and null.
+ */
+final class Json {
+
+    /**
+     * Text being parsed.
+     */
+    private final String text;
+    /**
+     * Parsing position in {@link #text}.
+     */
+    private int pos = 0;
+
+    /**
+     * Creates new parser.
+     *
+     * @param text text to parse
+     */
+    private Json(final String text) {
+        this.text = text;
+    }
+
+    /**
+     * Formats value as indented JSON text.
+     *
+     * @param value value
+     *
+     * @return JSON text
+     */
+    static String write(final Object value) {
+        final StringBuilder sb = new StringBuilder(1024);
+        write(sb, value, "");
+        sb.append('\n');
+
+        return sb.toString();
+    }
+
+    /**
+     * Parses JSON text.
+     *
+     * @param text JSON text
+     *
+     * @return parsed value
+     *
+     * @throws IllegalArgumentException Thrown if the text is not valid JSON.
+     */
+    static Object parse(final String text) {
+        final Json parser = new Json(text);
+        final Object value = parser.parseValue();
+        parser.skipWhitespace();
+
+        if (parser.pos < text.length()) {
+            throw parser.error("Unexpected content after JSON value");
+        }
+
+        return value;
+    }
+
+    /**
+     * Appends value as JSON.
+     *
+     * @param sb     string builder
+     * @param value  value
+     * @param indent indentation of the current line
+     */
+    private static void write(final StringBuilder sb, final Object value, final String indent) {
+        if (value == null) {
+            sb.append("null");
+        } else if (value instanceof Map) {
+            final Map<?, ?> map = (Map<?, ?>) value;
+
+            if (map.isEmpty()) {
+                sb.append("{}");
+                return;
+            }
+
+            final String innerIndent = indent + "  ";
+            sb.append('{');
+            String separator = "\n";
+
+            for (final Map.Entry<?, ?> entry : map.entrySet()) {
+                sb.append(separator).append(innerIndent);
+                writeString(sb, entry.getKey().toString());
+                sb.append(": ");
+                write(sb, entry.getValue(), innerIndent);
+                separator = ",\n";
+            }
+
+            sb.append('\n').append(indent).append('}');
+        } else if (value instanceof List) {
+            final List<?> list = (List<?>) value;
+
+            if (list.isEmpty()) {
+                sb.append("[]");
+                return;
+            }
+
+            final String innerIndent = indent + "  ";
+            sb.append('[');
+            String separator = "\n";
+
+            for (final Object item : list) {
+                sb.append(separator).append(innerIndent);
+                write(sb, item, innerIndent);
+                separator = ",\n";
+            }
+
+            sb.append('\n').append(indent).append(']');
+        } else if (value instanceof Double || value instanceof Float) {
+            final double number = ((Number) value).doubleValue();
+
+            if (Double.isNaN(number) || Double.isInfinite(number)) {
+                sb.append("null");
+            } else {
+                sb.append(number);
+            }
+        } else if (value instanceof Number || value instanceof Boolean) {
+            sb.append(value);
+        } else {
+            writeString(sb, value.toString());
+        }
+    }
+
+    /**
+     * Appends quoted and escaped string.
+     *
+     * @param sb     string builder
+     * @param string string
+     */
+    private static void writeString(final StringBuilder sb, final String string) {
+        sb.append('"');
+
+        for (int i = 0; i < string.length(); i++) {
+            final char character = string.charAt(i);
+
+            switch (character) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (character < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) character));
+                    } else {
+                        sb.append(character);
+                    }
+            }
+        }
+
+        sb.append('"');
+    }
+
+    /**
+     * Parses value at current position.
+     *
+     * @return parsed value
+     */
+    private Object parseValue() {
+        skipWhitespace();
+
+        if (pos >= text.length()) {
+            throw error("Unexpected end of JSON text");
+        }
+
+        final char character = text.charAt(pos);
+
+        switch (character) {
+            case '{':
+                return parseObject();
+            case '[':
+                return parseArray();
+            case '"':
+                return parseString();
+            case 't':
+                expect("true");
+                return Boolean.TRUE;
+            case 'f':
+                expect("false");
+                return Boolean.FALSE;
+            case 'n':
+                expect("null");
+                return null;
+            default:
+                if (character == '-' || character >= '0' && character <= '9') {
+                    return parseNumber();
+                }
+
+                throw error("Unexpected character '" + character + "'");
+        }
+    }
+
+    /**
+     * Parses object at current position.
+     *
+     * @return parsed object
+     */
+    private Map<String, Object> parseObject() {
+        final Map<String, Object> map = new LinkedHashMap<>(16);
+        pos++;
+        skipWhitespace();
+
+        if (consume('}')) {
+            return map;
+        }
+
+        do {
+            skipWhitespace();
+
+            if (pos >= text.length() || text.charAt(pos) != '"') {
+                throw error("Expected object key");
+            }
+
+            final String key = parseString();
+            skipWhitespace();
+
+            if (!consume(':')) {
+                throw error("Expected ':'");
+            }
+
+            map.put(key, parseValue());
+            skipWhitespace();
+        } while (consume(','));
+
+        if (!consume('}')) {
+            throw error("Expected ',' or '}'");
+        }
+
+        return map;
+    }
+
+    /**
+     * Parses array at current position.
+     *
+     * @return parsed array
+     */
+    private List<Object> parseArray() {
+        final List<Object> list = new ArrayList<>(16);
+        pos++;
+        skipWhitespace();
+
+        if (consume(']')) {
+            return list;
+        }
+
+        do {
+            list.add(parseValue());
+            skipWhitespace();
+        } while (consume(','));
+
+        if (!consume(']')) {
+            throw error("Expected ',' or ']'");
+        }
+
+        return list;
+    }
+
+    /**
+     * Parses string at current position.
+     *
+     * @return parsed string
+     */
+    private String parseString() {
+        final StringBuilder sb = new StringBuilder(32);
+        pos++;
+
+        while (pos < text.length()) {
+            final char character = text.charAt(pos++);
+
+            if (character == '"') {
+                return sb.toString();
+            }
+
+            if (character != '\\') {
+                sb.append(character);
+                continue;
+            }
+
+            if (pos >= text.length()) {
+                break;
+            }
+
+            final char escaped = text.charAt(pos++);
+
+            switch (escaped) {
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    if (pos + 4 > text.length()) {
+                        throw error("Invalid unicode escape");
+                    }
+
+                    try {
+                        sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                    } catch (final NumberFormatException ex) {
+                        throw error("Invalid unicode escape");
+                    }
+
+                    pos += 4;
+                    break;
+                default:
+                    sb.append(escaped);
+            }
+        }
+
+        throw error("Unterminated string");
+    }
+
+    /**
+     * Parses number at current position.
+     *
+     * @return parsed number
+     */
+    private Number parseNumber() {
+        final int start = pos;
+        boolean decimal = false;
+
+        while (pos < text.length()) {
+            final char character = text.charAt(pos);
+
+            if (character == '.' || character == 'e' || character == 'E') {
+                decimal = true;
+            } else if (character != '-' && character != '+' && (character < '0' || character > '9')) {
+                break;
+            }
+
+            pos++;
+        }
+
+        final String number = text.substring(start, pos);
+
+        try {
+            return decimal ? (Number) Double.parseDouble(number) : (Number) Long.parseLong(number);
+        } catch (final NumberFormatException ex) {
+            throw error("Invalid number " + number);
+        }
+    }
+
+    /**
+     * Consumes expected literal at current position.
+     *
+     * @param literal literal
+     */
+    private void expect(final String literal) {
+        if (!text.startsWith(literal, pos)) {
+            throw error("Expected " + literal);
+        }
+
+        pos += literal.length();
+    }
+
+    /**
+     * Consumes character if it is at current position.
+     *
+     * @param character character
+     *
+     * @return true if the character was consumed
+     */
+    private boolean consume(final char character) {
+        if (pos < text.length() && text.charAt(pos) == character) {
+            pos++;
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Skips whitespace at current position.
+     */
+    private void skipWhitespace() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    /**
+     * Creates parsing error.
+     *
+     * @param message error message
+     *
+     * @return exception
+     */
+    private IllegalArgumentException error(final String message) {
+        return new IllegalArgumentException(message + " at position " + pos);
+    }
+}
@@ -0,0 +1,304 @@
+package com.github.peter277.xml2table;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates deterministic synthetic XML documents for benchmarks.
+ * <p>
+ * The document is a list of row items below {@link #ITEM_PATH}. Every item has
+ * the same structure: it contains {@code width} child elements, each of them
+ * again {@code width} child elements and so on, until the elements at
+ * {@code depth} levels below the item contain text values. Each element
+ * (including the item itself) carries an attribute with the probability given
+ * by the attribute density, decided once for the whole document, so all items
+ * have the same columns.
+ * <p>
+ * Values are random strings of the given length, occasionally containing
+ * quotes, markup characters (written as entities) and non-ASCII characters.
+ * The same parameters and seed always produce the same document.
+ */
+final class SyntheticXmlGenerator {
+
+    /**
+     * XPath of the row items of generated documents.
+     */
+    static final String ITEM_PATH = "/data/items/item";
+
+    /**
+     * Characters that values are made of. Spaces and letters are more
+     * frequent than characters needing escaping.
+     */
+    private static final String VALUE_CHARACTERS
+            = "abcdefghijklmnopqrstuvwxyz abcdefghijklmnopqrstuvwxyz 0123456789 ABCDEFGHIJ\"&<>ž";
+
+    /**
+     * Number of row items.
+     */
+    private final int items;
+    /**
+     * Length of values in characters.
+     */
+    private final int valueLength;
+    /**
+     * Seed of the random values.
+     */
+    private final long seed;
+    /**
+     * Structure of each row item.
+     */
+    private final Element item;
+    /**
+     * Column paths of all values relative to the row item, in document order.
+     */
+    private final List<String> columns = new ArrayList<>(16);
+
+    /**
+     * Creates new generator.
+     *
+     * @param items            number of row items
+     * @param depth            number of element levels below the row item
+     *                         (at least 1)
+     * @param width            number of child elements of each element above
+     *                         the values (at least 1)
+     * @param valueLength      length of values in characters
+     * @param attributeDensity probability that an element carries an attribute
+     *                         (0-1)
+     * @param seed             seed of the random structure and values
+     */
+    SyntheticXmlGenerator(final int items, final int depth, final int width, final int valueLength,
+            final double attributeDensity, final long seed) {
+        if (items < 0) {
+            throw new IllegalArgumentException("Number of items cannot be negative.");
+        }
+
+        if (depth < 1 || width < 1) {
+            throw new IllegalArgumentException("Depth and width must be positive.");
+        }
+
+        if (valueLength < 0) {
+            throw new IllegalArgumentException("Value length cannot be negative.");
+        }
+
+        if (attributeDensity < 0 || attributeDensity > 1) {
+            throw new IllegalArgumentException("Attribute density must be between 0 and 1.");
+        }
+
+        this.items = items;
+        this.valueLength = valueLength;
+        this.seed = seed;
+        this.item = buildElement("item", "", depth, width, attributeDensity, new Random(seed));
+    }
+
+    /**
+     * Returns column paths of all element and attribute values relative to
+     * the row item, in document order.
+     *
+     * @return column paths
+     */
+    List<String> getColumns() {
+        return Collections.unmodifiableList(columns);
+    }
+
+    /**
+     * Returns number of row items.
+     *
+     * @return number of row items
+     */
+    int getItems() {
+        return items;
+    }
+
+    /**
+     * Writes the document.
+     *
+     * @param writer writer
+     *
+     * @throws IOException Thrown if writing failed.
+     */
+    void write(final Writer writer) throws IOException {
+        final Random random = new Random(~seed);
+        final StringBuilder sb = new StringBuilder(1024);
+
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<data>\n<items>\n");
+
+        for (int i = 0; i < items; i++) {
+            sb.setLength(0);
+            writeElement(sb, item, random);
+            sb.append('\n');
+            writer.append(sb);
+        }
+
+        writer.write("</items>\n</data>\n");
+    }
+
+    /**
+     * Writes the document to a file in UTF-8.
+     *
+     * @param file file
+     *
+     * @throws IOException Thrown if writing failed.
+     */
+    void write(final Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            write(writer);
+        }
+    }
+
+    /**
+     * Returns the document encoded in UTF-8.
+     *
+     * @return document bytes
+     */
+    byte[] toBytes() {
+        final StringWriter writer = new StringWriter(items * 64 + 64);
+
+        try {
+            write(writer);
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        return writer.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Builds element of the item structure and records its columns.
+     *
+     * @param name             element name
+     * @param path             column path of the element relative to the row
+     *                         item, empty for the row item
+     * @param levels           number of element levels below this element
+     * @param width            number of child elements
+     * @param attributeDensity probability that an element carries an attribute
+     * @param random           random structure generator
+     *
+     * @return element
+     */
+    private Element buildElement(final String name, final String path, final int levels, final int width,
+            final double attributeDensity, final Random random) {
+        final boolean attribute = random.nextDouble() < attributeDensity;
+
+        if (attribute) {
+            columns.add(path.isEmpty() ? "@a" : path + "/@a");
+        }
+
+        if (levels == 0) {
+            columns.add(path);
+
+            return new Element(name, attribute, null);
+        }
+
+        final Element[] children = new Element[width];
+
+        for (int i = 0; i < width; i++) {
+            final String childName = "e" + i;
+            children[i] = buildElement(childName, path.isEmpty() ? childName : path + "/" + childName, levels - 1,
+                    width, attributeDensity, random);
+        }
+
+        return new Element(name, attribute, children);
+    }
+
+    /**
+     * Writes element with random values.
+     *
+     * @param sb      string builder
+     * @param element element
+     * @param random  random value generator
+     */
+    private void writeElement(final StringBuilder sb, final Element element, final Random random) {
+        sb.append('<').append(element.name);
+
+        if (element.attribute) {
+            sb.append(" a=\"");
+            appendValue(sb, random);
+            sb.append('"');
+        }
+
+        sb.append('>');
+
+        if (element.children == null) {
+            appendValue(sb, random);
+        } else {
+            for (final Element child : element.children) {
+                writeElement(sb, child, random);
+            }
+        }
+
+        sb.append("</").append(element.name).append('>');
+    }
+
+    /**
+     * Appends random value escaped for use in element text and attribute
+     * values.
+     *
+     * @param sb     string builder
+     * @param random random value generator
+     */
+    private void appendValue(final StringBuilder sb, final Random random) {
+        for (int i = 0; i < valueLength; i++) {
+            final char character = VALUE_CHARACTERS.charAt(random.nextInt(VALUE_CHARACTERS.length()));
+
+            switch (character) {
+                case '"':
+                    sb.append("&quot;");
+                    break;
+                case '&':
+                    sb.append("&amp;");
+                    break;
+                case '<':
+                    sb.append("&lt;");
+                    break;
+                case '>':
+                    sb.append("&gt;");
+                    break;
+                default:
+                    sb.append(character);
+            }
+        }
+    }
+
+    /**
+     * Element of the row item structure.
+     */
+    private static final class Element {
+
+        /**
+         * Element name.
+         */
+        private final String name;
+        /**
+         * Whether the element carries an attribute.
+         */
+        private final boolean attribute;
+        /**
+         * Child elements, or null if the element contains a value.
+         */
+        private final Element[] children;
+
+        /**
+         * Creates new element.
+         *
+         * @param name      element name
+         * @param attribute whether the element carries an attribute
+         * @param children  child elements, or null if the element contains a
+         *                  value
+         */
+        private Element(final String name, final boolean attribute, final Element[] children) {
+            this.name = name;
+            this.attribute = attribute;
+            this.children = children;
+        }
+    }
+}
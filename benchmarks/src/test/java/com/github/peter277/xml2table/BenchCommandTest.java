@@ -0,0 +1,79 @@
+package com.github.peter277.xml2table;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+public class BenchCommandTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testJson() {
+        final Map<String, Object> value = new LinkedHashMap<>();
+        value.put("string", "a \"quoted\"\\ value\n\u0001ž");
+        value.put("long", 12345678901L);
+        value.put("double", 0.25);
+        value.put("list", Arrays.asList(true, false, null, List.of(), Map.of()));
+
+        assertEquals(value, Json.parse(Json.write(value)));
+        assertEquals(-1.5e3, Json.parse(" -1.5E3 "));
+        assertThrows(IllegalArgumentException.class, () -> Json.parse("{\"a\": 1,}"));
+        assertThrows(IllegalArgumentException.class, () -> Json.parse("[1] 2"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testBench() throws IOException {
+        final Path report = tempDir.resolve("report.json");
+        final String[] args = {"--files", "2", "--items", "300", "--threads", "1", "--variants", "plain,filter",
+            "--repeat", "1", "--work-dir", tempDir.resolve("work").toString(), "--report", report.toString()};
+
+        assertEquals(0, new CommandLine(new BenchCommand()).setCaseInsensitiveEnumValuesAllowed(true).execute(args));
+
+        final Map<String, Object> results = (Map<String, Object>) Json.parse(Files.readString(report));
+        final List<Map<String, Object>> configurations = (List<Map<String, Object>>) results.get("results");
+        assertEquals(2, configurations.size());
+
+        final Map<String, Object> plain = configurations.get(0);
+        assertEquals("files=2 items=300 threads=1 variant=PLAIN", plain.get("id"));
+        assertEquals(600L, plain.get("rows"));
+        assertTrue(((Number) plain.get("mbPerSecond")).doubleValue() > 0);
+        assertTrue(((Map<String, Object>) plain.get("threadCpuSeconds")).containsKey("main"));
+
+        // About half of the rows pass the filter
+        final long filteredRows = (Long) configurations.get(1).get("rows");
+        assertTrue(filteredRows >= 200 && filteredRows <= 400, Long.toString(filteredRows));
+
+        // Baseline with much better throughput makes the comparison fail
+        for (final Map<String, Object> configuration : configurations) {
+            configuration.put("mbPerSecond", ((Number) configuration.get("mbPerSecond")).doubleValue() * 10);
+        }
+        // Peak memory is not compared if the baseline does not include it
+        configurations.get(0).remove("peakRssBytes");
+        final Path baseline = Files.writeString(tempDir.resolve("baseline.json"), Json.write(results));
+        final String[] compareArgs = Arrays.copyOf(args, args.length + 2);
+        compareArgs[args.length] = "--baseline";
+        compareArgs[args.length + 1] = baseline.toString();
+
+        assertEquals(1, new CommandLine(new BenchCommand()).setCaseInsensitiveEnumValuesAllowed(true)
+                .execute(compareArgs));
+
+        final Map<String, Object> comparison = (Map<String, Object>) ((Map<String, Object>) Json.parse(
+                Files.readString(report))).get("baseline");
+        assertEquals(2L, comparison.get("regressions"));
+        final List<Map<String, Object>> comparisons = (List<Map<String, Object>>) comparison.get("comparisons");
+        assertNull(comparisons.get(0).get("peakRssChangePercent"));
+        assertTrue(((Number) comparisons.get(0).get("throughputChangePercent")).doubleValue() < -50);
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.peter277.xml2table;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+public class SyntheticXmlGeneratorTest {
+
+    @Test
+    public void testDeterministic() {
+        final byte[] document = new SyntheticXmlGenerator(50, 2, 3, 20, 0.5, 7).toBytes();
+
+        assertArrayEquals(document, new SyntheticXmlGenerator(50, 2, 3, 20, 0.5, 7).toBytes());
+        assertFalse(Arrays.equals(document, new SyntheticXmlGenerator(50, 2, 3, 20, 0.5, 8).toBytes()));
+    }
+
+    @Test
+    public void testStructure() {
+        final SyntheticXmlGenerator generator = new SyntheticXmlGenerator(100, 2, 3, 10, 0.5, 42);
+        final List<String> columns = generator.getColumns();
+        final List<String> elementColumns = columns.stream().filter(column -> !column.contains("@"))
+                .collect(Collectors.toList());
+
+        assertEquals(Arrays.asList("e0/e0", "e0/e1", "e0/e2", "e1/e0", "e1/e1", "e1/e2", "e2/e0", "e2/e1", "e2/e2"),
+                elementColumns);
+        assertTrue(columns.size() > elementColumns.size());
+        assertEquals(elementColumns, ColumnFinder.find(new ByteArrayInputStream(generator.toBytes()),
+                SyntheticXmlGenerator.ITEM_PATH + "/"));
+
+        assertEquals(List.of("e0"), new SyntheticXmlGenerator(1, 1, 1, 1, 0, 1).getColumns());
+        assertEquals(List.of("@a", "e0/@a", "e0"), new SyntheticXmlGenerator(1, 1, 1, 1, 1, 1).getColumns());
+    }
+
+    @Test
+    public void testConvert() throws IOException {
+        final SyntheticXmlGenerator generator = new SyntheticXmlGenerator(200, 1, 4, 30, 1, 3);
+        final ConvertorSettings convertorSettings = new ConvertorSettings();
+        convertorSettings.generalOptions.columns = generator.getColumns().toArray(new String[0]);
+        convertorSettings.generalOptions.itemName = SyntheticXmlGenerator.ITEM_PATH;
+
+        final StringWriter writer = new StringWriter();
+        Convertor.newConvertorFromStreams(new ByteArrayInputStream(generator.toBytes()), writer, convertorSettings)
+                .convert();
+
+        final String[] lines = writer.toString().split("\n");
+        assertEquals(201, lines.length);
+
+        for (int i = 1; i < lines.length; i++) {
+            final String[] values = CsvUtils.parseValues(lines[i]);
+            assertEquals(generator.getColumns().size(), values.length);
+
+            for (final String value : values) {
+                assertEquals(30, value.length(), value);
+            }
+        }
+    }
+}
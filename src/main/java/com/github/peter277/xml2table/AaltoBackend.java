@@ -0,0 +1,153 @@
+package com.github.peter277.xml2table;
+
+import com.fasterxml.aalto.AsyncByteArrayFeeder;
+import com.fasterxml.aalto.AsyncXMLStreamReader;
+import com.fasterxml.aalto.stax.InputFactoryImpl;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+
+/**
+ * Aalto parser backend.
+ * <p>
+ * Aalto only supports UTF-8, ISO-8859-1 and US-ASCII input and does not
+ * expand entities declared in DTD. Either its blocking stream reader is used,
+ * or its non-blocking reader, which is fed with chunks read from the input
+ * stream whenever it runs out of input.
+ */
+final class AaltoBackend implements ParserBackend {
+
+    /**
+     * Configured factory. Aalto factories are thread-safe once configured.
+     */
+    private final InputFactoryImpl factory;
+    /**
+     * Size of chunks fed to the non-blocking reader.
+     */
+    private final int bufferSize;
+    /**
+     * Whether non-blocking reader is used.
+     */
+    private final boolean async;
+
+    /**
+     * Creates new backend.
+     *
+     * @param bufferSize size of chunks fed to the non-blocking reader
+     * @param async      whether non-blocking reader is used
+     */
+    AaltoBackend(final int bufferSize, final boolean async) {
+        this.factory = new InputFactoryImpl();
+        this.factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        this.bufferSize = bufferSize;
+        this.async = async;
+    }
+
+    @Override
+    public XMLStreamReader createReader(final InputStream inputStream) throws XMLStreamException {
+        if (!async) {
+            return factory.createXMLStreamReader(inputStream);
+        }
+
+        return new FeedingReader(factory.createAsyncForByteArray(), inputStream, bufferSize);
+    }
+
+    /**
+     * Blocking view of the non-blocking reader. Whenever the reader runs out
+     * of input, next chunk is read from the input stream and fed to it.
+     */
+    private static final class FeedingReader extends StreamReaderDelegate {
+
+        /**
+         * Non-blocking reader.
+         */
+        private final AsyncXMLStreamReader<AsyncByteArrayFeeder> asyncReader;
+        /**
+         * Input stream.
+         */
+        private final InputStream inputStream;
+        /**
+         * Chunk buffer, reused once the reader consumed previous chunk.
+         */
+        private final byte[] buffer;
+
+        /**
+         * Creates new reader and reads up to the start of the document.
+         *
+         * @param asyncReader non-blocking reader
+         * @param inputStream input stream
+         * @param bufferSize  size of chunks
+         *
+         * @throws XMLStreamException Thrown if problem occurred while reading
+         *                            the document start.
+         */
+        FeedingReader(final AsyncXMLStreamReader<AsyncByteArrayFeeder> asyncReader,
+                final InputStream inputStream, final int bufferSize) throws XMLStreamException {
+            super(asyncReader);
+            this.asyncReader = asyncReader;
+            this.inputStream = inputStream;
+            this.buffer = new byte[bufferSize];
+
+            // Blocking readers start positioned at the start of the document
+            next();
+        }
+
+        @Override
+        public int next() throws XMLStreamException {
+            int event = asyncReader.next();
+
+            while (event == AsyncXMLStreamReader.EVENT_INCOMPLETE) {
+                feed();
+                event = asyncReader.next();
+            }
+
+            return event;
+        }
+
+        @Override
+        public boolean hasNext() throws XMLStreamException {
+            return asyncReader.getEventType() != END_DOCUMENT;
+        }
+
+        @Override
+        public int nextTag() throws XMLStreamException {
+            int event = next();
+
+            while (event == CHARACTERS && isWhiteSpace() || event == CDATA && isWhiteSpace()
+                    || event == SPACE || event == PROCESSING_INSTRUCTION || event == COMMENT) {
+                event = next();
+            }
+
+            if (event != START_ELEMENT && event != END_ELEMENT) {
+                throw new XMLStreamException("Expected start or end tag", getLocation());
+            }
+
+            return event;
+        }
+
+        /**
+         * Feeds next chunk of input to the reader, or marks end of input.
+         *
+         * @throws XMLStreamException Thrown if problem occurred while reading
+         *                            input.
+         */
+        private void feed() throws XMLStreamException {
+            final int count;
+
+            try {
+                count = inputStream.read(buffer);
+            } catch (final IOException ex) {
+                throw new XMLStreamException("Unable to read input", ex);
+            }
+
+            if (count < 0) {
+                asyncReader.getInputFeeder().endOfInput();
+            } else {
+                asyncReader.getInputFeeder().feedInput(buffer, 0, count);
+            }
+        }
+    }
+}
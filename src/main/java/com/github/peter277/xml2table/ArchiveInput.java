@@ -0,0 +1,641 @@
+package com.github.peter277.xml2table;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Converts XML entries of zip and tar archives without extracting them to
+ * disk.
+ * <p>
+ * Entries are enumerated in a streaming way and each entry whose name ends
+ * with .xml is submitted for conversion as soon as it is found. Zip entries
+ * are read concurrently by the conversion tasks directly from the archive,
+ * which is closed once the last task finishes. Tar archives (optionally gzip
+ * compressed) can only be read sequentially, so small entries are read into
+ * memory and converted concurrently, with the number of entries held in
+ * memory bounded, while entries larger than
+ * {@link #MAX_BUFFERED_ENTRY_SIZE} are converted directly from the archive
+ * stream on the enumerating thread.
+ */
+final class ArchiveInput {
+
+    /**
+     * Maximum size of a tar entry which is read into memory.
+     */
+    static final long MAX_BUFFERED_ENTRY_SIZE = 16L * 1024 * 1024;
+
+    /**
+     * Size of a tar block.
+     */
+    private static final int TAR_BLOCK_SIZE = 512;
+
+    /**
+     * Converter of a single archive entry.
+     */
+    @FunctionalInterface
+    interface EntryConverter {
+
+        /**
+         * Converts the entry.
+         *
+         * @param name        entry name
+         * @param inputStream input stream of the entry data, closed by the
+         *                    caller
+         *
+         * @throws IOException Thrown if IO problem occurred.
+         */
+        void convert(String name, InputStream inputStream) throws IOException;
+    }
+
+    private ArchiveInput() {
+    }
+
+    /**
+     * Checks whether the file is a zip or tar archive (tar possibly gzip
+     * compressed).
+     *
+     * @param file input file path
+     *
+     * @return true if the file is an archive
+     *
+     * @throws IOException Thrown if the file could not be read.
+     */
+    static boolean isArchive(final Path file) throws IOException {
+        switch (CompressedInput.detect(file)) {
+            case ZIP:
+                return true;
+            case GZIP:
+                try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+                    return isTar(in);
+                } catch (final EOFException ex) {
+                    return false;
+                }
+            default:
+                try (InputStream in = Files.newInputStream(file)) {
+                    return isTar(in);
+                }
+        }
+    }
+
+    /**
+     * Checks whether the stream starts with a ustar (or GNU tar) header.
+     *
+     * @param in input stream
+     *
+     * @return true if the stream starts with tar header
+     *
+     * @throws IOException Thrown if the stream could not be read.
+     */
+    private static boolean isTar(final InputStream in) throws IOException {
+        final byte[] header = new byte[TAR_BLOCK_SIZE];
+
+        return in.readNBytes(header, 0, header.length) == header.length
+                && new String(header, 257, 5, StandardCharsets.US_ASCII).equals("ustar");
+    }
+
+    /**
+     * Submits conversion of all XML entries of the archive.
+     *
+     * @param archive    archive path
+     * @param executor   executor converting the entries
+     * @param maxPending maximum number of tar entries held in memory
+     * @param converter  entry converter
+     * @param tasks      consumer of the conversion task of each entry, given
+     *                   archive path and entry name and the task result
+     *
+     * @throws IOException          Thrown if the archive could not be read.
+     *                              Tasks submitted so far were consumed.
+     * @throws InterruptedException Thrown if interrupted while waiting for
+     *                              entries held in memory to be converted.
+     */
+    static void submitEntries(final Path archive, final ExecutorService executor, final int maxPending,
+            final EntryConverter converter, final BiConsumer<String, CompletableFuture<String>> tasks)
+            throws IOException, InterruptedException {
+        if (CompressedInput.detect(archive) == CompressedInput.Format.ZIP) {
+            submitZipEntries(archive, executor, converter, tasks);
+        } else {
+            submitTarEntries(archive, executor, maxPending, converter, tasks);
+        }
+    }
+
+    /**
+     * Submits conversion of XML entries of zip archive.
+     *
+     * @param archive   archive path
+     * @param executor  executor converting the entries
+     * @param converter entry converter
+     * @param tasks     consumer of the conversion tasks
+     *
+     * @throws IOException Thrown if the archive could not be read.
+     */
+    private static void submitZipEntries(final Path archive, final ExecutorService executor,
+            final EntryConverter converter, final BiConsumer<String, CompletableFuture<String>> tasks)
+            throws IOException {
+        final ZipFile zipFile = new ZipFile(archive.toFile());
+        // The archive is held open by the enumeration and by each unfinished task
+        final AtomicInteger holders = new AtomicInteger(1);
+
+        try {
+            final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+
+            while (entries.hasMoreElements()) {
+                final ZipEntry entry = entries.nextElement();
+
+                if (entry.isDirectory() || !isXml(entry.getName())) {
+                    continue;
+                }
+
+                final String name = displayName(archive, entry.getName());
+                final CompletableFuture<String> task = new CompletableFuture<>();
+                holders.incrementAndGet();
+
+                try {
+                    executor.execute(() -> {
+                        try (InputStream in = zipFile.getInputStream(entry)) {
+                            converter.convert(entry.getName(), in);
+                            task.complete(name);
+                        } catch (final Throwable ex) {
+                            task.completeExceptionally(ex);
+                        } finally {
+                            release(zipFile, holders);
+                        }
+                    });
+                    tasks.accept(name, task);
+                } catch (final RuntimeException ex) {
+                    release(zipFile, holders);
+                    throw ex;
+                }
+            }
+        } finally {
+            release(zipFile, holders);
+        }
+    }
+
+    /**
+     * Releases one hold of the zip file, closing it if it was the last one.
+     *
+     * @param zipFile zip file
+     * @param holders number of holders
+     */
+    private static void release(final ZipFile zipFile, final AtomicInteger holders) {
+        if (holders.decrementAndGet() == 0) {
+            try {
+                zipFile.close();
+            } catch (final IOException ex) {
+                // All entries were read already
+            }
+        }
+    }
+
+    /**
+     * Submits conversion of XML entries of tar archive.
+     *
+     * @param archive    archive path
+     * @param executor   executor converting the entries
+     * @param maxPending maximum number of entries held in memory
+     * @param converter  entry converter
+     * @param tasks      consumer of the conversion tasks
+     *
+     * @throws IOException          Thrown if the archive could not be read.
+     * @throws InterruptedException Thrown if interrupted while waiting for
+     *                              entries held in memory to be converted.
+     */
+    private static void submitTarEntries(final Path archive, final ExecutorService executor, final int maxPending,
+            final EntryConverter converter, final BiConsumer<String, CompletableFuture<String>> tasks)
+            throws IOException, InterruptedException {
+        final Semaphore pending = new Semaphore(maxPending);
+
+        try (TarReader tar = new TarReader(CompressedInput.open(archive))) {
+            while (tar.nextEntry()) {
+                if (!tar.isFile() || !isXml(tar.getName())) {
+                    continue;
+                }
+
+                final String entryName = tar.getName();
+                final String name = displayName(archive, entryName);
+
+                if (tar.getSize() > MAX_BUFFERED_ENTRY_SIZE) {
+                    final CompletableFuture<String> task = new CompletableFuture<>();
+
+                    try {
+                        converter.convert(entryName, tar.getEntryStream());
+                        task.complete(name);
+                    } catch (final IOException | RuntimeException ex) {
+                        task.completeExceptionally(ex);
+                    }
+
+                    tasks.accept(name, task);
+                    continue;
+                }
+
+                pending.acquire();
+
+                try {
+                    final byte[] data = tar.getEntryStream().readAllBytes();
+                    final CompletableFuture<String> task = new CompletableFuture<>();
+
+                    executor.execute(() -> {
+                        try {
+                            converter.convert(entryName, new ByteArrayInputStream(data));
+                            task.complete(name);
+                        } catch (final Throwable ex) {
+                            task.completeExceptionally(ex);
+                        } finally {
+                            pending.release();
+                        }
+                    });
+                    tasks.accept(name, task);
+                } catch (final IOException | RuntimeException ex) {
+                    pending.release();
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether the entry is an XML file.
+     *
+     * @param entryName entry name
+     *
+     * @return true if the entry name ends with .xml
+     */
+    private static boolean isXml(final String entryName) {
+        return entryName.regionMatches(true, entryName.length() - 4, ".xml", 0, 4);
+    }
+
+    /**
+     * Returns name of the entry used in messages.
+     *
+     * @param archive   archive path
+     * @param entryName entry name
+     *
+     * @return archive path and entry name
+     */
+    static String displayName(final Path archive, final String entryName) {
+        return archive + "!/" + entryName;
+    }
+
+    /**
+     * Sequential reader of ustar, GNU and pax tar archives. Only names and
+     * sizes of entries are read, other metadata is ignored.
+     */
+    private static final class TarReader implements Closeable {
+
+        /**
+         * Archive stream.
+         */
+        private final InputStream in;
+        /**
+         * Header block.
+         */
+        private final byte[] header = new byte[TAR_BLOCK_SIZE];
+        /**
+         * Name of the current entry.
+         */
+        private String name;
+        /**
+         * Type of the current entry.
+         */
+        private byte type;
+        /**
+         * Size of the current entry data.
+         */
+        private long size;
+        /**
+         * Number of bytes of the current entry data and padding not read yet.
+         */
+        private long remaining = 0;
+        /**
+         * Number of bytes of the current entry data not read yet.
+         */
+        private long dataRemaining = 0;
+
+        /**
+         * Creates new reader.
+         *
+         * @param in archive stream
+         */
+        TarReader(final InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * Moves to the next entry, skipping the rest of the current one.
+         * Long name and pax extended headers are applied to the entry they
+         * describe.
+         *
+         * @return false if there are no more entries
+         *
+         * @throws IOException Thrown if the archive could not be read or is
+         *                     corrupt.
+         */
+        boolean nextEntry() throws IOException {
+            String longName = null;
+
+            while (true) {
+                skip(remaining);
+
+                if (!readHeader()) {
+                    return false;
+                }
+
+                if (type == 'L' || type == 'x') {
+                    final String data = new String(readData(), StandardCharsets.UTF_8);
+
+                    if (type == 'L') {
+                        longName = data.indexOf('\0') >= 0 ? data.substring(0, data.indexOf('\0')) : data;
+                    } else {
+                        final String path = paxPath(data);
+                        longName = path != null ? path : longName;
+                    }
+
+                    continue;
+                }
+
+                if (longName != null) {
+                    name = longName;
+                }
+
+                return true;
+            }
+        }
+
+        /**
+         * Reads header block of the next entry.
+         *
+         * @return false if end of archive was reached
+         *
+         * @throws IOException Thrown if the archive could not be read or the
+         *                     header is corrupt.
+         */
+        private boolean readHeader() throws IOException {
+            final int count = in.readNBytes(header, 0, header.length);
+
+            if (count == 0) {
+                return false;
+            } else if (count < header.length) {
+                throw new EOFException("Truncated tar archive");
+            }
+
+            long checksum = 0;
+            boolean zero = true;
+
+            for (int i = 0; i < header.length; i++) {
+                // Checksum is computed with the checksum field filled with spaces
+                checksum += i >= 148 && i < 156 ? ' ' : header[i] & 0xff;
+                zero &= header[i] == 0;
+            }
+
+            // Archive ends with zero blocks
+            if (zero) {
+                return false;
+            }
+
+            if (checksum != parseNumber(148, 8)) {
+                throw new IOException("Invalid tar header checksum");
+            }
+
+            final String prefix = new String(header, 257, 5, StandardCharsets.US_ASCII).equals("ustar")
+                    ? parseString(345, 155) : "";
+
+            name = prefix.isEmpty() ? parseString(0, 100) : prefix + "/" + parseString(0, 100);
+            type = header[156];
+            size = parseNumber(124, 12);
+
+            if (size < 0) {
+                throw new IOException("Invalid tar entry size");
+            }
+
+            // Directories and links have no data
+            dataRemaining = type == '5' || type == '1' || type == '2' ? 0 : size;
+            remaining = (dataRemaining + TAR_BLOCK_SIZE - 1) / TAR_BLOCK_SIZE * TAR_BLOCK_SIZE;
+
+            return true;
+        }
+
+        /**
+         * Reads data of a long name or pax header entry.
+         *
+         * @return entry data
+         *
+         * @throws IOException Thrown if the archive could not be read.
+         */
+        private byte[] readData() throws IOException {
+            if (dataRemaining > MAX_BUFFERED_ENTRY_SIZE) {
+                throw new IOException("Tar extended header is too large");
+            }
+
+            final byte[] data = getEntryStream().readAllBytes();
+
+            if (data.length < size) {
+                throw new EOFException("Truncated tar archive");
+            }
+
+            return data;
+        }
+
+        /**
+         * Returns path record of pax extended header.
+         *
+         * @param data extended header data
+         *
+         * @return path, or null if the header does not contain path
+         */
+        private static String paxPath(final String data) {
+            // Records are in "<length> <key>=<value>\n" format
+            for (final String record : data.split("\n")) {
+                final int space = record.indexOf(' ');
+
+                if (space > 0 && record.startsWith("path=", space + 1)) {
+                    return record.substring(space + 6);
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * Parses NUL terminated string field.
+         *
+         * @param offset field offset
+         * @param length field length
+         *
+         * @return field value
+         */
+        private String parseString(final int offset, final int length) {
+            int end = offset;
+
+            while (end < offset + length && header[end] != 0) {
+                end++;
+            }
+
+            return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Parses numeric field, in octal or GNU base-256 format.
+         *
+         * @param offset field offset
+         * @param length field length
+         *
+         * @return field value
+         *
+         * @throws IOException Thrown if the field is not a valid number.
+         */
+        private long parseNumber(final int offset, final int length) throws IOException {
+            if ((header[offset] & 0x80) != 0) {
+                long value = header[offset] & 0x7f;
+
+                for (int i = offset + 1; i < offset + length; i++) {
+                    if (value > Long.MAX_VALUE >> 8) {
+                        throw new IOException("Tar number too large");
+                    }
+
+                    value = value << 8 | header[i] & 0xff;
+                }
+
+                return value;
+            }
+
+            long value = 0;
+            int i = offset;
+
+            while (i < offset + length && header[i] == ' ') {
+                i++;
+            }
+
+            while (i < offset + length && header[i] >= '0' && header[i] <= '7') {
+                value = value * 8 + header[i] - '0';
+                i++;
+            }
+
+            if (i < offset + length && header[i] != 0 && header[i] != ' ') {
+                throw new IOException("Invalid tar header number");
+            }
+
+            return value;
+        }
+
+        /**
+         * Skips bytes of the archive.
+         *
+         * @param count number of bytes to skip
+         *
+         * @throws IOException Thrown if the archive could not be read or is
+         *                     truncated.
+         */
+        private void skip(final long count) throws IOException {
+            long skipped = 0;
+
+            while (skipped < count) {
+                final long n = in.skip(count - skipped);
+
+                if (n <= 0) {
+                    if (in.read() < 0) {
+                        throw new EOFException("Truncated tar archive");
+                    }
+
+                    skipped++;
+                } else {
+                    skipped += n;
+                }
+            }
+
+            remaining -= count;
+        }
+
+        /**
+         * Checks whether the current entry is a regular file.
+         *
+         * @return true if the entry is a regular file
+         */
+        boolean isFile() {
+            return type == '0' || type == 0 || type == '7';
+        }
+
+        /**
+         * Returns name of the current entry.
+         *
+         * @return entry name
+         */
+        String getName() {
+            return name;
+        }
+
+        /**
+         * Returns size of the current entry.
+         *
+         * @return entry size
+         */
+        long getSize() {
+            return size;
+        }
+
+        /**
+         * Returns stream of the current entry data. Closing the stream does
+         * not close the archive.
+         *
+         * @return entry data stream
+         */
+        InputStream getEntryStream() {
+            return new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    if (dataRemaining == 0) {
+                        return -1;
+                    }
+
+                    final int b = in.read();
+
+                    if (b < 0) {
+                        throw new EOFException("Truncated tar archive");
+                    }
+
+                    dataRemaining--;
+                    remaining--;
+                    return b;
+                }
+
+                @Override
+                public int read(final byte[] b, final int off, final int len) throws IOException {
+                    if (len == 0) {
+                        return 0;
+                    } else if (dataRemaining == 0) {
+                        return -1;
+                    }
+
+                    final int count = in.read(b, off, (int) Math.min(len, dataRemaining));
+
+                    if (count < 0) {
+                        throw new EOFException("Truncated tar archive");
+                    }
+
+                    dataRemaining -= count;
+                    remaining -= count;
+                    return count;
+                }
+            };
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.github.peter277.xml2table;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Results of a batch of converted files, aggregated as each file (or archive
+ * entry) finishes, so no per-file state is kept for the successful ones.
+ * <p>
+ * Status of each file can be written to a report file, a tab separated table
+ * with the status, duration and start time (in seconds since the start of the
+ * batch), file name and error message. Without the report file, each
+ * successful file is printed to standard error output instead. Only failures
+ * and the slowest files are kept for the summary.
+ */
+final class BatchReport implements Closeable {
+
+    /**
+     * Number of slowest files kept for the summary.
+     */
+    static final int SLOWEST_FILES = 10;
+
+    /**
+     * Header of the report file.
+     */
+    static final String HEADER = "status\tseconds\tstarted_at\tfile\terror";
+
+    /**
+     * Duration of a converted file.
+     */
+    static final class Duration {
+
+        /**
+         * File name.
+         */
+        private final String name;
+        /**
+         * Start time in nanoseconds since the start of the batch.
+         */
+        private final long start;
+        /**
+         * Duration in nanoseconds.
+         */
+        private final long duration;
+
+        /**
+         * Creates new duration.
+         *
+         * @param name     file name
+         * @param start    start time in nanoseconds since the start of the
+         *                 batch
+         * @param duration duration in nanoseconds
+         */
+        private Duration(final String name, final long start, final long duration) {
+            this.name = name;
+            this.start = start;
+            this.duration = duration;
+        }
+
+        /**
+         * Returns file name.
+         *
+         * @return file name
+         */
+        String getName() {
+            return name;
+        }
+
+        /**
+         * Returns start time.
+         *
+         * @return seconds since the start of the batch
+         */
+        double getStartSeconds() {
+            return start / 1e9;
+        }
+
+        /**
+         * Returns duration.
+         *
+         * @return duration in seconds
+         */
+        double getSeconds() {
+            return duration / 1e9;
+        }
+    }
+
+    /**
+     * Start time of the batch, from {@link System#nanoTime()}.
+     */
+    private final long batchStart;
+    /**
+     * Writer of the report file, or null if per-file status is printed to
+     * standard error output.
+     */
+    private final Writer writer;
+    /**
+     * Failed files in the order they finished.
+     */
+    private final Map<String, Exception> failures = new LinkedHashMap<>();
+    /**
+     * Slowest files, the fastest of them first.
+     */
+    private final PriorityQueue<Duration> slowest = new PriorityQueue<>(
+            Comparator.comparingLong((Duration duration) -> duration.duration));
+    /**
+     * Number of successfully converted files.
+     */
+    private int successCount = 0;
+    /**
+     * Number of files skipped because they were unchanged.
+     */
+    private int skippedCount = 0;
+
+    /**
+     * Creates new report.
+     *
+     * @param reportFile report file path, or null to print per-file status to
+     *                   standard error output
+     * @param batchStart start time of the batch, from
+     *                   {@link System#nanoTime()}
+     *
+     * @throws IOException Thrown if the report file could not be created.
+     */
+    BatchReport(final Path reportFile, final long batchStart) throws IOException {
+        this.batchStart = batchStart;
+
+        if (reportFile != null) {
+            writer = Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8);
+            writer.write(HEADER);
+            writer.write('\n');
+        } else {
+            writer = null;
+        }
+    }
+
+    /**
+     * Returns whether per-file status is written to the report file.
+     *
+     * @return true if report file is used
+     */
+    boolean hasReportFile() {
+        return writer != null;
+    }
+
+    /**
+     * Records result of a file.
+     *
+     * @param name  file name
+     * @param start start time, from {@link System#nanoTime()}
+     * @param end   end time, from {@link System#nanoTime()}
+     * @param error exception if the conversion failed, otherwise null
+     */
+    synchronized void record(final String name, final long start, final long end, final Throwable error) {
+        final Duration duration = new Duration(name, start - batchStart, end - start);
+
+        if (error == null) {
+            successCount++;
+
+            if (writer == null) {
+                System.err.println("Successfully processed file: " + name);
+            }
+        } else {
+            failures.put(name, error instanceof Exception ? (Exception) error : new Exception(error));
+        }
+
+        slowest.add(duration);
+
+        if (slowest.size() > SLOWEST_FILES) {
+            slowest.poll();
+        }
+
+        if (writer != null) {
+            try {
+                writer.write(String.format(Locale.ROOT, "%s\t%.3f\t%.3f\t%s\t%s\n", error == null ? "OK" : "FAILED",
+                        duration.getSeconds(), duration.getStartSeconds(), clean(name),
+                        error == null ? "" : clean(error.getClass().getSimpleName() + ": " + error.getMessage())));
+            } catch (final IOException ex) {
+                // The report is incomplete, the conversion is not affected
+            }
+        }
+    }
+
+    /**
+     * Records file skipped because it is unchanged since the previous run.
+     *
+     * @param name file name
+     */
+    synchronized void recordSkipped(final String name) {
+        skippedCount++;
+
+        if (writer == null) {
+            System.err.println("Skipped unchanged file: " + name);
+        } else {
+            try {
+                writer.write(String.format(Locale.ROOT, "SKIPPED\t0.000\t%.3f\t%s\t\n",
+                        (System.nanoTime() - batchStart) / 1e9, clean(name)));
+            } catch (final IOException ex) {
+                // The report is incomplete, the conversion is not affected
+            }
+        }
+    }
+
+    /**
+     * Returns number of successfully converted files.
+     *
+     * @return number of successful files
+     */
+    synchronized int getSuccessCount() {
+        return successCount;
+    }
+
+    /**
+     * Returns number of files skipped because they were unchanged.
+     *
+     * @return number of skipped files
+     */
+    synchronized int getSkippedCount() {
+        return skippedCount;
+    }
+
+    /**
+     * Returns failed files and their exceptions.
+     *
+     * @return failed files in the order they finished
+     */
+    synchronized Map<String, Exception> getFailures() {
+        return new LinkedHashMap<>(failures);
+    }
+
+    /**
+     * Returns the slowest files.
+     *
+     * @return at most {@link #SLOWEST_FILES} files, the slowest first
+     */
+    synchronized List<Duration> getSlowest() {
+        final List<Duration> durations = new ArrayList<>(slowest);
+        durations.sort(Comparator.comparingLong((Duration duration) -> duration.duration).reversed());
+
+        return Collections.unmodifiableList(durations);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    /**
+     * Replaces tabs and line breaks which would break the report table.
+     *
+     * @param value value
+     *
+     * @return value without tabs and line breaks
+     */
+    private static String clean(final String value) {
+        return value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
@@ -0,0 +1,385 @@
+package com.github.peter277.xml2table;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Converts a single large XML file sequentially with periodic checkpoints,
+ * so that a conversion which died can be resumed instead of starting over.
+ * <p>
+ * The file is converted in byte ranges of approximately the checkpoint
+ * interval, ending at row item start tags found by
+ * {@link ItemBoundaryScanner}, each range wrapped into the start and end tags
+ * of the row item ancestors (as by {@link SplitConvertor}). After each range,
+ * the output is forced to disk and a checkpoint file next to the output file
+ * records the input offset of the next row item, the ancestor start tags, the
+ * output length and the number of rows written. A conversion restarted with
+ * the same input and settings truncates the output to the checkpoint length
+ * and resumes at the recorded row item. The checkpoint is deleted once the
+ * file is converted.
+ * <p>
+ * Compressed files, files smaller than the interval and documents which
+ * cannot be split safely are converted without checkpoints.
+ */
+public class CheckpointConvertor {
+
+    /**
+     * Suffix of the checkpoint file name.
+     */
+    static final String FILE_SUFFIX = ".checkpoint";
+    /**
+     * Suffix of the temporary file name.
+     */
+    private static final String TEMP_SUFFIX = ".tmp";
+    /**
+     * First line of the checkpoint, identifying its format.
+     */
+    private static final String HEADER = "# xml2table checkpoint 1";
+    /**
+     * Empty range prefix or suffix.
+     */
+    private static final byte[] EMPTY = new byte[0];
+
+    /**
+     * Position of a conversion after a completed range.
+     */
+    static final class Checkpoint {
+
+        /**
+         * Input offset of the next row item start tag.
+         */
+        final long inputOffset;
+        /**
+         * XML declaration and start tags of the row item ancestors.
+         */
+        final byte[] prefix;
+        /**
+         * Output length in bytes.
+         */
+        final long outputLength;
+        /**
+         * Number of rows written, excluding header.
+         */
+        final long rows;
+
+        /**
+         * Creates new checkpoint.
+         *
+         * @param inputOffset  input offset of the next row item start tag
+         * @param prefix       XML declaration and ancestor start tags
+         * @param outputLength output length in bytes
+         * @param rows         number of rows written
+         */
+        Checkpoint(final long inputOffset, final byte[] prefix, final long outputLength, final long rows) {
+            this.inputOffset = inputOffset;
+            this.prefix = prefix;
+            this.outputLength = outputLength;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * Input file path.
+     */
+    private final Path inputFile;
+    /**
+     * Output file path.
+     */
+    private final Path outputFile;
+    /**
+     * Checkpoint file path.
+     */
+    private final Path checkpointFile;
+    /**
+     * Convertor settings.
+     */
+    private final ConvertorSettings settings;
+    /**
+     * Approximate number of input bytes between checkpoints.
+     */
+    private final long interval;
+    /**
+     * Fingerprint of settings affecting the output.
+     */
+    private final String settingsFingerprint;
+
+    /**
+     * Creates new checkpoint convertor.
+     *
+     * @param inputFile           input file path
+     * @param outputFile          output file path
+     * @param settings            convertor settings
+     * @param interval            approximate number of input bytes between
+     *                            checkpoints
+     * @param settingsFingerprint fingerprint of settings affecting the output,
+     *                            a checkpoint is only resumed with the same
+     *                            fingerprint
+     */
+    public CheckpointConvertor(final Path inputFile, final Path outputFile, final ConvertorSettings settings,
+            final long interval, final String settingsFingerprint) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive.");
+        }
+
+        if (settings.generalOptions.gzipOutput) {
+            throw new IllegalArgumentException("Compressed output cannot be checkpointed.");
+        }
+
+        this.inputFile = inputFile;
+        this.outputFile = outputFile;
+        this.checkpointFile = getCheckpointFile(outputFile);
+        this.settings = settings;
+        this.interval = interval;
+        this.settingsFingerprint = settingsFingerprint;
+    }
+
+    /**
+     * Returns checkpoint file path of output file.
+     *
+     * @param outputFile output file path
+     *
+     * @return checkpoint file path
+     */
+    static Path getCheckpointFile(final Path outputFile) {
+        return outputFile.resolveSibling(outputFile.getFileName() + FILE_SUFFIX);
+    }
+
+    /**
+     * Converts the input file, resuming from its checkpoint if there is one.
+     *
+     * @throws RuntimeException Thrown if IO or XML stream exception occurred.
+     */
+    public void convert() {
+        try {
+            final String[] itemPath = settings.getPathTrie().getItemPath();
+
+            // Compressed files cannot be read from an offset
+            if (itemPath == null || itemPath.length < 2 || CompressedInput.isCompressed(inputFile)
+                    || !convertRanges(itemPath)) {
+                Files.deleteIfExists(checkpointFile);
+                Convertor.newConvertorFromFiles(inputFile, outputFile, settings).convert();
+            }
+        } catch (final IOException ex) {
+            throw new RuntimeException("IO operation failed", ex);
+        }
+    }
+
+    /**
+     * Converts the input file range by range, writing checkpoint after each
+     * range.
+     *
+     * @param itemPath local names of the row item path elements
+     *
+     * @return false if the file is not checkpointed and nothing was converted
+     *
+     * @throws IOException Thrown if IO problem occurred.
+     */
+    private boolean convertRanges(final String[] itemPath) throws IOException {
+        final long size = Files.size(inputFile);
+        final long modified = Files.getLastModifiedTime(inputFile).toMillis();
+        final Checkpoint checkpoint = load(size, modified);
+
+        if (checkpoint == null && size <= interval) {
+            return false;
+        }
+
+        long start = checkpoint == null ? 0 : checkpoint.inputOffset;
+        byte[] prefix = checkpoint == null ? EMPTY : checkpoint.prefix;
+        long rows = checkpoint == null ? 0 : checkpoint.rows;
+        boolean header = checkpoint == null;
+
+        // Output written after the checkpoint is converted again
+        try (FileChannel output = FileChannel.open(outputFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            output.truncate(checkpoint == null ? 0 : checkpoint.outputLength);
+        }
+
+        if (checkpoint != null) {
+            System.err.println("Info: Resuming conversion of " + inputFile + " from checkpoint at input offset "
+                    + start + " after " + rows + " rows");
+        }
+
+        try (FileChannel channel = FileChannel.open(inputFile, StandardOpenOption.READ);
+                ItemBoundaryScanner scanner = new ItemBoundaryScanner(
+                        newRangeStream(channel, start, size, prefix, EMPTY), itemPath)) {
+            // Scanner offsets include the ancestor start tags preceding the resumed range
+            final long scanBase = start - prefix.length;
+
+            while (true) {
+                final ItemBoundaryScanner.Boundary boundary = scanner.next(start + interval - scanBase);
+
+                if (!scanner.isSplittable()) {
+                    // Constructs preventing splitting can only occur before the first row item
+                    if (checkpoint == null && start == 0) {
+                        return false;
+                    }
+
+                    throw new IllegalStateException("Document cannot be split after conversion has started");
+                }
+
+                final long end = boundary == null ? size : boundary.offset + scanBase;
+                rows += convertRange(channel, start, end, prefix, boundary == null ? EMPTY : boundary.suffix, header);
+                header = false;
+
+                if (boundary == null) {
+                    break;
+                }
+
+                start = end;
+                prefix = boundary.prefix;
+                save(new Checkpoint(start, prefix, forceOutput(), rows), size, modified);
+            }
+        }
+
+        Files.deleteIfExists(checkpointFile);
+
+        return true;
+    }
+
+    /**
+     * Converts single range, appending its rows to the output file.
+     *
+     * @param channel input file channel
+     * @param start   offset of the range start
+     * @param end     offset of the range end
+     * @param prefix  bytes preceding the range
+     * @param suffix  bytes following the range
+     * @param header  whether header is written
+     *
+     * @return number of rows written, excluding header
+     *
+     * @throws IOException Thrown if IO problem occurred.
+     */
+    private long convertRange(final FileChannel channel, final long start, final long end, final byte[] prefix,
+            final byte[] suffix, final boolean header) throws IOException {
+        final Writer writer = Files.newBufferedWriter(outputFile, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        final Convertor convertor = Convertor.newConvertorFromStreams(
+                newRangeStream(channel, start, end, prefix, suffix), writer, settings);
+
+        convertor.noHeader = convertor.noHeader || !header;
+        convertor.convert();
+
+        return convertor.getRowCount();
+    }
+
+    /**
+     * Forces the output file to disk, so a checkpoint never records output
+     * which could be lost.
+     *
+     * @return output length in bytes
+     *
+     * @throws IOException Thrown if IO problem occurred.
+     */
+    private long forceOutput() throws IOException {
+        try (FileChannel output = FileChannel.open(outputFile, StandardOpenOption.WRITE)) {
+            output.force(false);
+
+            return output.size();
+        }
+    }
+
+    /**
+     * Loads checkpoint of the output file. A checkpoint of a different input
+     * (by size and modification time) or settings, or longer than the output
+     * file, is ignored.
+     *
+     * @param size     input file size
+     * @param modified input file modification time in milliseconds
+     *
+     * @return checkpoint, or null if the conversion starts from the beginning
+     *
+     * @throws IOException Thrown if the output file could not be read.
+     */
+    private Checkpoint load(final long size, final long modified) throws IOException {
+        final String[] fields;
+
+        try (BufferedReader reader = Files.newBufferedReader(checkpointFile, StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(reader.readLine())) {
+                return null;
+            }
+
+            final String line = reader.readLine();
+            fields = line == null ? new String[0] : line.split("\t", -1);
+        } catch (final NoSuchFileException ex) {
+            return null;
+        }
+
+        try {
+            if (fields.length != 7 || Long.parseLong(fields[3]) != size || Long.parseLong(fields[4]) != modified
+                    || !fields[5].equals(settingsFingerprint)) {
+                System.err.println("Info: Ignoring checkpoint of different input or settings: " + checkpointFile);
+                return null;
+            }
+
+            final Checkpoint checkpoint = new Checkpoint(Long.parseLong(fields[0]),
+                    Base64.getDecoder().decode(fields[6]), Long.parseLong(fields[1]), Long.parseLong(fields[2]));
+
+            if (!Files.exists(outputFile) || Files.size(outputFile) < checkpoint.outputLength) {
+                System.err.println("Info: Ignoring checkpoint of incomplete output file: " + checkpointFile);
+                return null;
+            }
+
+            return checkpoint;
+        } catch (final IllegalArgumentException ex) {
+            System.err.println("Warning: Ignoring unreadable checkpoint " + checkpointFile + ": " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes checkpoint, replacing the previous one atomically.
+     *
+     * @param checkpoint checkpoint
+     * @param size       input file size
+     * @param modified   input file modification time in milliseconds
+     *
+     * @throws IOException Thrown if the checkpoint could not be written.
+     */
+    private void save(final Checkpoint checkpoint, final long size, final long modified) throws IOException {
+        final Path tempFile = checkpointFile.resolveSibling(checkpointFile.getFileName() + TEMP_SUFFIX);
+
+        Files.writeString(tempFile, HEADER + "\n" + checkpoint.inputOffset + "\t" + checkpoint.outputLength + "\t"
+                + checkpoint.rows + "\t" + size + "\t" + modified + "\t" + settingsFingerprint + "\t"
+                + Base64.getEncoder().encodeToString(checkpoint.prefix) + "\n", StandardCharsets.UTF_8);
+
+        try {
+            Files.move(tempFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(tempFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Creates stream reading byte range of the input file wrapped into
+     * prefix and suffix.
+     *
+     * @param channel input file channel
+     * @param start   offset of the range start
+     * @param end     offset of the range end
+     * @param prefix  bytes preceding the range
+     * @param suffix  bytes following the range
+     *
+     * @return input stream
+     */
+    private static InputStream newRangeStream(final FileChannel channel, final long start, final long end,
+            final byte[] prefix, final byte[] suffix) {
+        return new SequenceInputStream(Collections.enumeration(List.of(
+                new ByteArrayInputStream(prefix),
+                new SplitConvertor.FileRangeInputStream(channel, start, end),
+                new ByteArrayInputStream(suffix))));
+    }
+}
@@ -21,16 +21,23 @@
  */
 package com.github.peter277.xml2table;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.LinkedHashSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
-import javax.xml.stream.XMLInputFactory;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 
@@ -38,6 +45,11 @@ import javax.xml.stream.XMLStreamReader;
  * Small tool which can be used to find names of all XML elements in a given XML
  * file. <br>
  * Result can be used as a argument for XML to CSV conversion utility.
+ * <p>
+ * Documents can also be profiled: paths of elements with text and of
+ * attributes are discovered relative to row items, with statistics of each
+ * path. Profiling can stop after a number of row items or bytes, sample every
+ * k-th row item, and read many files in parallel, merging their results.
  *
  * @see Convertor
  *
@@ -147,13 +159,28 @@ public class ColumnFinder {
      */
     public static List<String> find(final InputStream inputStream,
             final String parentElement) {
-        final Set<String> elements = findElements(inputStream);
-        final List<String> result = new ArrayList<>(elements.size() * 20);
+        return find(inputStream, parentElement, ParserBackend.newDefault());
+    }
 
-        for (final String element : elements) {
-            if (element.startsWith(parentElement)) {
-                result.add(element.substring(parentElement.length(),
-                        element.length()));
+    /**
+     * Returns XPath expressions for XML elements which contains text in a given
+     * XML document, read using given parser backend. Result is limited to XML
+     * elements which are children of given XML element.
+     *
+     * @param inputStream   {@link InputStream} containing XML document
+     * @param parentElement XPath which refers to parent XML element
+     * @param parserBackend parser backend
+     *
+     * @return list of XPath expressions for elements which contains text
+     */
+    public static List<String> find(final InputStream inputStream,
+            final String parentElement, final ParserBackend parserBackend) {
+        final Profile profile = profile(inputStream, "", parserBackend, Sampling.ALL);
+        final List<String> result = new ArrayList<>(profile.columns.size());
+
+        for (final ColumnStats column : profile.columns.values()) {
+            if (!column.isAttribute() && column.getPath().startsWith(parentElement)) {
+                result.add(column.getPath().substring(parentElement.length()));
             }
         }
 
@@ -161,67 +188,744 @@ public class ColumnFinder {
     }
 
     /**
-     * Returns XPath expressions for all XML elements in a given XML document.
+     * Profiles columns of a given XML document. Paths of elements which
+     * contain text and of attributes are discovered relative to row items,
+     * in the order they are first seen (elements when they end, attributes
+     * when their element starts).
      *
-     * @param inputStream {@link InputStream} containing XML document
+     * @param inputStream   {@link InputStream} containing XML document
+     * @param itemPath      XPath of row items, or empty string for absolute
+     *                      paths of all elements, with children of the root
+     *                      element counted as row items
+     * @param parserBackend parser backend
+     * @param sampling      part of the document that is profiled
      *
-     * @return list of XPath expressions for all XML elements which contains
-     *         text
+     * @return profile of the document
      */
-    private static Set<String> findElements(final InputStream inputStream) {
-        final Set<String> elementNames = new LinkedHashSet<>(10);
-        final XMLInputFactory xMLInputFactory = XMLInputFactory.newInstance();
+    public static Profile profile(final InputStream inputStream, final String itemPath,
+            final ParserBackend parserBackend, final Sampling sampling) {
+        final CountingInputStream countingStream = new CountingInputStream(inputStream);
+        final String normalizedItemPath = itemPath.endsWith("/")
+                ? itemPath.substring(0, itemPath.length() - 1) : itemPath;
 
         try {
-            final XMLStreamReader reader = xMLInputFactory
-                    .createXMLStreamReader(inputStream);
+            final XMLStreamReader reader = parserBackend.createReader(countingStream);
+            final Scanner scanner = new Scanner(reader, countingStream, normalizedItemPath, sampling);
+
+            scanner.scan();
+            reader.close();
 
-            find(elementNames, reader, "");
+            return scanner.profile;
         } catch (final XMLStreamException ex) {
-            throw new RuntimeException("XML stream exception", ex);
+            throw new RuntimeException("XML stream exception: " + ex.getMessage(), ex);
         }
-
-        return elementNames;
     }
 
     /**
-     * Finds XPath expressions for all XML elements in given
-     * {@link XMLStreamReader} and adds it to given set.
+     * Profiles columns of given XML files in parallel and merges the results
+     * in the order of the files. Compressed files are decompressed
+     * transparently. Sampling limits apply to each file separately.
+     *
+     * @param files         input files
+     * @param itemPath      XPath of row items, see
+     *                      {@link #profile(InputStream, String, ParserBackend, Sampling)}
+     * @param parserBackend parser backend
+     * @param sampling      part of each file that is profiled
+     * @param threads       number of files read in parallel
      *
-     * @param elementNames   set with XPath expressions
-     * @param reader         XML stream reader
-     * @param currentElement current XML element
+     * @return merged profile of all files
      *
-     * @throws XMLStreamException if unexpected XML processing error occurs
+     * @throws IOException Thrown if a file could not be read or parsed.
      */
-    private static void find(final Set<String> elementNames,
-            final XMLStreamReader reader, final String currentElement)
-            throws XMLStreamException {
-        boolean hasText = false;
-
-        while (reader.hasNext()) {
-            switch (reader.next()) {
-                case XMLStreamReader.START_ELEMENT:
-                    final String currentName = currentElement + "/" + reader.
-                            getLocalName();
-                    find(elementNames, reader, currentName);
-
-                    break;
-                case XMLStreamReader.CHARACTERS:
-                    if (reader.isWhiteSpace()) {
-                        break;
+    public static Profile profile(final List<Path> files, final String itemPath,
+            final ParserBackend parserBackend, final Sampling sampling, final int threads) throws IOException {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, files.size())),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "xml2table-columns-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        try {
+            final List<Future<Profile>> futures = new ArrayList<>(files.size());
+
+            for (final Path file : files) {
+                futures.add(executor.submit(() -> {
+                    try (InputStream inputStream = CompressedInput.open(file)) {
+                        return profile(inputStream, itemPath, parserBackend, sampling);
                     }
+                }));
+            }
+
+            final Profile result = new Profile();
+
+            for (int i = 0; i < files.size(); i++) {
+                try {
+                    result.merge(futures.get(i).get());
+                } catch (final ExecutionException ex) {
+                    throw new IOException(files.get(i) + ": " + ex.getCause().getMessage(), ex.getCause());
+                }
+            }
+
+            return result;
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+
+            throw new IOException("Profiling was interrupted", ex);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Part of a document that is profiled.
+     */
+    public static final class Sampling {
+
+        /**
+         * Whole documents are profiled.
+         */
+        public static final Sampling ALL = new Sampling(0, 0, 1);
+
+        /**
+         * Maximum number of profiled row items, 0 for no limit.
+         */
+        private final long maxItems;
+        /**
+         * Number of bytes read after which no further row item is profiled, 0
+         * for no limit.
+         */
+        private final long maxBytes;
+        /**
+         * Every k-th row item is profiled.
+         */
+        private final int sampleEvery;
+
+        /**
+         * Creates new sampling.
+         *
+         * @param maxItems    maximum number of profiled row items, 0 for no
+         *                    limit
+         * @param maxBytes    number of bytes read after which no further row
+         *                    item is profiled, 0 for no limit. Parsers read
+         *                    ahead, so the limit is approximate.
+         * @param sampleEvery every k-th row item is profiled, starting with
+         *                    the first one
+         */
+        public Sampling(final long maxItems, final long maxBytes, final int sampleEvery) {
+            if (maxItems < 0 || maxBytes < 0 || sampleEvery < 1) {
+                throw new IllegalArgumentException("Sampling limits cannot be negative and sample interval must be positive.");
+            }
+
+            this.maxItems = maxItems;
+            this.maxBytes = maxBytes;
+            this.sampleEvery = sampleEvery;
+        }
+    }
+
+    /**
+     * Statistics of a single discovered path.
+     */
+    public static final class ColumnStats {
+
+        /**
+         * Path relative to row items, or absolute path.
+         */
+        private final String path;
+        /**
+         * Whether the path refers to an attribute.
+         */
+        private final boolean attribute;
+        /**
+         * Number of occurrences.
+         */
+        private long occurrences = 0;
+        /**
+         * Number of row items containing the path.
+         */
+        private long items = 0;
+        /**
+         * Maximum number of occurrences within a row item.
+         */
+        private int maxRepetitions = 0;
+        /**
+         * Maximum length of a value.
+         */
+        private long maxLength = 0;
+        /**
+         * Number of the last row item containing the path, while scanning.
+         */
+        private long lastItem = 0;
+        /**
+         * Number of occurrences within the last row item, while scanning.
+         */
+        private int repetitions = 0;
+
+        /**
+         * Creates new statistics.
+         *
+         * @param path      path
+         * @param attribute whether the path refers to an attribute
+         */
+        private ColumnStats(final String path, final boolean attribute) {
+            this.path = path;
+            this.attribute = attribute;
+        }
+
+        /**
+         * Returns path relative to row items, or absolute path.
+         *
+         * @return path
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Returns whether the path refers to an attribute.
+         *
+         * @return true for attributes
+         */
+        public boolean isAttribute() {
+            return attribute;
+        }
+
+        /**
+         * Returns number of occurrences (of elements with text, or of
+         * attributes).
+         *
+         * @return number of occurrences
+         */
+        public long getOccurrences() {
+            return occurrences;
+        }
+
+        /**
+         * Returns number of row items containing the path.
+         *
+         * @return number of row items
+         */
+        public long getItems() {
+            return items;
+        }
+
+        /**
+         * Returns maximum number of occurrences within a row item. Paths
+         * repeated in row items need --join-values to keep all values.
+         *
+         * @return maximum repetitions
+         */
+        public int getMaxRepetitions() {
+            return maxRepetitions;
+        }
+
+        /**
+         * Returns maximum length of a value.
+         *
+         * @return maximum length
+         */
+        public long getMaxLength() {
+            return maxLength;
+        }
+
+        /**
+         * Adds statistics of the same path from another profile.
+         *
+         * @param other statistics of the same path
+         */
+        private void merge(final ColumnStats other) {
+            occurrences += other.occurrences;
+            items += other.items;
+            maxRepetitions = Math.max(maxRepetitions, other.maxRepetitions);
+            maxLength = Math.max(maxLength, other.maxLength);
+        }
+    }
+
+    /**
+     * Discovered paths of one or more documents with their statistics.
+     */
+    public static final class Profile {
+
+        /**
+         * Statistics of paths in the order they were first seen.
+         */
+        private final Map<String, ColumnStats> columns = new LinkedHashMap<>(64);
+        /**
+         * Number of profiled row items.
+         */
+        private long items = 0;
+        /**
+         * Number of profiled documents.
+         */
+        private int documents = 0;
+        /**
+         * Number of documents which were not read completely because of
+         * sampling limits.
+         */
+        private int partialDocuments = 0;
+
+        /**
+         * Returns statistics of discovered paths in the order they were first
+         * seen.
+         *
+         * @return list of statistics
+         */
+        public List<ColumnStats> getColumnStats() {
+            return new ArrayList<>(columns.values());
+        }
+
+        /**
+         * Returns discovered paths in the order they were first seen, usable
+         * as --columns.
+         *
+         * @return list of paths
+         */
+        public List<String> getColumns() {
+            return new ArrayList<>(columns.keySet());
+        }
+
+        /**
+         * Returns number of profiled row items.
+         *
+         * @return number of row items
+         */
+        public long getItems() {
+            return items;
+        }
+
+        /**
+         * Returns number of profiled documents.
+         *
+         * @return number of documents
+         */
+        public int getDocuments() {
+            return documents;
+        }
+
+        /**
+         * Returns number of documents which were not read completely
+         * because of sampling limits.
+         *
+         * @return number of partially read documents
+         */
+        public int getPartialDocuments() {
+            return partialDocuments;
+        }
+
+        /**
+         * Adds another profile to this one. Paths first seen in the other
+         * profile follow the paths of this one.
+         *
+         * @param other profile
+         */
+        void merge(final Profile other) {
+            for (final ColumnStats column : other.columns.values()) {
+                final ColumnStats existing = columns.get(column.path);
+
+                if (existing == null) {
+                    final ColumnStats copy = new ColumnStats(column.path, column.attribute);
+                    copy.merge(column);
+                    columns.put(column.path, copy);
+                } else {
+                    existing.merge(column);
+                }
+            }
+
+            items += other.items;
+            documents += other.documents;
+            partialDocuments += other.partialDocuments;
+        }
+    }
+
+    /**
+     * Node of the trie of element paths of a scanned document. Each distinct
+     * path is a single node, so its column path and statistics are created
+     * once, however many times the path occurs.
+     */
+    private static final class PathNode {
 
-                    hasText = true;
+        /**
+         * Parent node, null for the document node.
+         */
+        private final PathNode parent;
+        /**
+         * Local name of the element.
+         */
+        private final String name;
+        /**
+         * Depth of the element, 1 for the root element.
+         */
+        private final int depth;
+        /**
+         * Column path, built when the path is first recorded.
+         */
+        private String column = null;
+        /**
+         * Whether the node is on the path to row items.
+         */
+        private final boolean onItemPath;
+        /**
+         * Whether the node is a row item element.
+         */
+        private final boolean item;
+        /**
+         * Child nodes by local name.
+         */
+        private final Map<String, PathNode> children = new HashMap<>(8);
+        /**
+         * Child node matched last, checked before the child map since
+         * siblings usually repeat in the same order.
+         */
+        private PathNode lastChild = null;
+        /**
+         * Statistics of text of the element, created when first recorded.
+         */
+        private ColumnStats textStats = null;
+        /**
+         * Statistics of attributes of the element by local name.
+         */
+        private Map<String, ColumnStats> attributeStats = null;
 
-                    break;
-                case XMLStreamReader.END_ELEMENT:
-                    if (hasText) {
-                        elementNames.add(currentElement);
+        /**
+         * Creates new node.
+         *
+         * @param parent     parent node
+         * @param name       local name
+         * @param depth      depth of the element
+         * @param onItemPath whether the node is on the path to row items
+         * @param item       whether the node is a row item element
+         */
+        private PathNode(final PathNode parent, final String name, final int depth, final boolean onItemPath,
+                final boolean item) {
+            this.parent = parent;
+            this.name = name;
+            this.depth = depth;
+            this.onItemPath = onItemPath;
+            this.item = item;
+        }
+    }
+
+    /**
+     * Scans a single document into a profile. Elements are tracked on an
+     * explicit stack of path trie nodes, so deep documents do not exhaust the
+     * thread stack and each element event only follows one trie edge.
+     */
+    private static final class Scanner {
+
+        private final XMLStreamReader reader;
+        private final CountingInputStream countingStream;
+        /**
+         * Local names of the path of row items, empty for absolute paths.
+         */
+        private final String[] itemSegments;
+        private final Sampling sampling;
+        private final Profile profile = new Profile();
+        /**
+         * Document node, the parent of the root element.
+         */
+        private final PathNode document;
+        /**
+         * Nodes of open elements, the document node at depth 0.
+         */
+        private PathNode[] nodeStack = new PathNode[32];
+        /**
+         * Whether open elements have text other than whitespace.
+         */
+        private boolean[] textStack = new boolean[32];
+        /**
+         * Length of text of open elements.
+         */
+        private long[] lengthStack = new long[32];
+        /**
+         * Depth of the open sampled row item, or -1 outside row items.
+         */
+        private int itemDepth = -1;
+        /**
+         * Number of row items seen, including ones that were not sampled.
+         */
+        private long seenItems = 0;
+        /**
+         * Whether scanning stopped because of sampling limits.
+         */
+        private boolean stopped = false;
+
+        Scanner(final XMLStreamReader reader, final CountingInputStream countingStream, final String itemPath,
+                final Sampling sampling) {
+            this.reader = reader;
+            this.countingStream = countingStream;
+            this.itemSegments = itemPath.isEmpty() ? new String[0] : itemPath.substring(1).split("/");
+            this.sampling = sampling;
+            this.document = new PathNode(null, "", 0, true, false);
+        }
+
+        /**
+         * Scans the document.
+         *
+         * @throws XMLStreamException if unexpected XML processing error occurs
+         */
+        void scan() throws XMLStreamException {
+            int depth = 0;
+            nodeStack[0] = document;
+
+            while (!stopped && reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamReader.START_ELEMENT:
+                        final PathNode node = child(nodeStack[depth], reader.getLocalName(), depth + 1);
+
+                        if (node.item) {
+                            if (sampling.maxItems > 0 && profile.items >= sampling.maxItems
+                                    || sampling.maxBytes > 0 && countingStream.count >= sampling.maxBytes) {
+                                stopped = true;
+                                break;
+                            }
+
+                            if (seenItems++ % sampling.sampleEvery != 0) {
+                                skipElement();
+                                break;
+                            }
+
+                            profile.items++;
+                            itemDepth = depth + 1;
+                        }
+
+                        depth++;
+                        if (depth == nodeStack.length) {
+                            nodeStack = Arrays.copyOf(nodeStack, depth * 2);
+                            textStack = Arrays.copyOf(textStack, depth * 2);
+                            lengthStack = Arrays.copyOf(lengthStack, depth * 2);
+                        }
+                        nodeStack[depth] = node;
+                        textStack[depth] = false;
+                        lengthStack[depth] = 0;
+
+                        // Outside row items, paths are only recorded if they are absolute
+                        if (itemSegments.length == 0 || itemDepth >= 0) {
+                            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                                record(attributeStats(node, reader.getAttributeLocalName(i)),
+                                        reader.getAttributeValue(i).length());
+                            }
+                        }
+
+                        break;
+                    case XMLStreamReader.CHARACTERS:
+                        lengthStack[depth] += reader.getTextLength();
+
+                        if (!textStack[depth] && !reader.isWhiteSpace()) {
+                            textStack[depth] = true;
+                        }
+
+                        break;
+                    case XMLStreamReader.END_ELEMENT:
+                        // Text of row item elements themselves is not a column
+                        if (textStack[depth] && depth > itemSegments.length
+                                && (itemSegments.length == 0 || itemDepth >= 0)) {
+                            record(textStats(nodeStack[depth]), lengthStack[depth]);
+                        }
+
+                        if (depth == itemDepth) {
+                            itemDepth = -1;
+                        }
+
+                        depth--;
+                        break;
+                }
+            }
+
+            profile.documents = 1;
+            profile.partialDocuments = stopped ? 1 : 0;
+        }
+
+        /**
+         * Returns child node of a node, creating it when the path is seen for
+         * the first time.
+         *
+         * @param parent parent node
+         * @param name   local name of the child element
+         * @param depth  depth of the child element, 1 for the root element
+         *
+         * @return child node
+         */
+        private PathNode child(final PathNode parent, final String name, final int depth) {
+            final PathNode last = parent.lastChild;
+
+            if (last != null && last.name.equals(name)) {
+                return last;
+            }
+
+            PathNode node = parent.children.get(name);
+
+            if (node == null) {
+                final boolean onItemPath = parent.onItemPath && depth <= itemSegments.length
+                        && itemSegments[depth - 1].equals(name);
+
+                node = new PathNode(parent, name, depth, onItemPath,
+                        itemSegments.length == 0 ? depth == 2 : onItemPath && depth == itemSegments.length);
+                parent.children.put(name, node);
+            }
+
+            parent.lastChild = node;
+
+            return node;
+        }
+
+        /**
+         * Returns column path of an element, relative to row items or
+         * absolute. It is built when first needed, by walking up the trie.
+         *
+         * @param node element node
+         *
+         * @return column path, empty for row item elements and elements
+         *         outside row items
+         */
+        private String column(final PathNode node) {
+            if (node.column == null) {
+                final int firstDepth = itemSegments.length + 1;
+
+                if (node.depth < firstDepth) {
+                    node.column = "";
+                } else {
+                    final String[] names = new String[node.depth - firstDepth + 1];
+
+                    for (PathNode current = node; current.depth >= firstDepth; current = current.parent) {
+                        names[current.depth - firstDepth] = current.name;
                     }
 
-                    return;
+                    node.column = (itemSegments.length == 0 ? "/" : "") + String.join("/", names);
+                }
+            }
+
+            return node.column;
+        }
+
+        /**
+         * Returns statistics of text of an element, adding them to the
+         * profile when first used.
+         *
+         * @param node element node
+         *
+         * @return statistics
+         */
+        private ColumnStats textStats(final PathNode node) {
+            if (node.textStats == null) {
+                node.textStats = new ColumnStats(column(node), false);
+                profile.columns.put(node.textStats.path, node.textStats);
+            }
+
+            return node.textStats;
+        }
+
+        /**
+         * Returns statistics of an attribute of an element, adding them to
+         * the profile when first used.
+         *
+         * @param node element node
+         * @param name local name of the attribute
+         *
+         * @return statistics
+         */
+        private ColumnStats attributeStats(final PathNode node, final String name) {
+            if (node.attributeStats == null) {
+                node.attributeStats = new HashMap<>(4);
+            }
+
+            ColumnStats stats = node.attributeStats.get(name);
+
+            if (stats == null) {
+                final String column = (column(node).isEmpty() ? "@" : column(node) + "/@") + name;
+                stats = new ColumnStats(column, true);
+                node.attributeStats.put(name, stats);
+                profile.columns.put(column, stats);
+            }
+
+            return stats;
+        }
+
+        /**
+         * Records occurrence of a path.
+         *
+         * @param stats  statistics of the path
+         * @param length length of the value
+         */
+        private void record(final ColumnStats stats, final long length) {
+            stats.occurrences++;
+            stats.maxLength = Math.max(stats.maxLength, length);
+
+            if (itemDepth >= 0) {
+                if (stats.lastItem != profile.items) {
+                    stats.lastItem = profile.items;
+                    stats.items++;
+                    stats.repetitions = 0;
+                }
+
+                stats.repetitions++;
+                stats.maxRepetitions = Math.max(stats.maxRepetitions, stats.repetitions);
+            }
+        }
+
+        /**
+         * Skips the current element including all its content.
+         *
+         * @throws XMLStreamException if unexpected XML processing error occurs
+         */
+        private void skipElement() throws XMLStreamException {
+            int depth = 1;
+
+            while (depth > 0 && reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamReader.START_ELEMENT:
+                        depth++;
+                        break;
+                    case XMLStreamReader.END_ELEMENT:
+                        depth--;
+                        break;
+                }
             }
         }
     }
+
+    /**
+     * Input stream counting bytes read from the underlying stream.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        /**
+         * Number of bytes read.
+         */
+        private long count = 0;
+
+        CountingInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int value = super.read();
+
+            if (value >= 0) {
+                count++;
+            }
+
+            return value;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int length = super.read(b, off, len);
+
+            if (length > 0) {
+                count += length;
+            }
+
+            return length;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = super.skip(n);
+            count += skipped;
+
+            return skipped;
+        }
+    }
 }
@@ -0,0 +1,112 @@
+package com.github.peter277.xml2table;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+import picocli.CommandLine.Help.Visibility;
+
+/**
+ * Discovers and profiles columns of XML files, e.g. to build --columns for a
+ * new feed.
+ * <p>
+ * Files are profiled in parallel by {@link ColumnFinder} and their results
+ * are merged. Row items can be sampled and reading can stop after a number of
+ * row items or bytes of each file, so large files do not have to be read
+ * completely.
+ */
+@Command(name = "xml2table columns", version = "0.1.0",
+         mixinStandardHelpOptions = true,
+         sortOptions = false,
+         description = {"%nDiscover columns of XML files for --columns and profile them. Files are read in parallel and their results are merged. Row items can be sampled and reading of each file can stop early.%n",
+                        "Columns are printed comma separated in the order they were first seen. With --profile, a tab separated table is printed instead, with number of occurrences of each column, number of row items containing it, maximum repetitions within a row item (more than 1 needs --join-values to keep all values) and maximum value length.%n"})
+public class ColumnsCommand implements Callable<Integer> {
+
+    /**
+     * Name of the command, given as the first argument of {@link Main}.
+     */
+    static final String NAME = "columns";
+
+    @Parameters(arity = "1..*", paramLabel = "<file>", description = "Input XML files. Gzip and zip compressed files are decompressed transparently.")
+    List<Path> inputFiles = new ArrayList<>();
+
+    @Option(names = {"--row-item-name"}, paramLabel = "<XPath>", description = "XPath of row items. Columns of elements with text and of attributes are discovered relative to it. By default absolute XPaths are discovered and children of the root element are counted as row items.")
+    String itemName = "";
+
+    @Option(names = {"--max-items"}, paramLabel = "<items>", description = "Stop reading a file after the specified number of row items were profiled. By default files are read completely.")
+    long maxItems = 0;
+
+    @Option(names = {"--max-bytes"}, paramLabel = "<bytes>", description = "Do not profile further row items of a file after approximately the specified number of bytes (after decompression) were read. By default files are read completely.")
+    long maxBytes = 0;
+
+    @Option(names = {"--sample-every"}, paramLabel = "<k>", description = "Profile every k-th row item only, starting with the first one.", defaultValue = "1", showDefaultValue = Visibility.ALWAYS)
+    int sampleEvery = 1;
+
+    @Option(names = {"--parallel"}, paramLabel = "<threads>", description = "Number of files read in parallel. By default available processors are used.")
+    int threads = 0;
+
+    @Option(names = {"--profile"}, description = "Print statistics of each column instead of the column list.")
+    boolean profile = false;
+
+    @Option(names = {"--parser"}, paramLabel = "<backend>", description = "XML parser backend: ${COMPLETION-CANDIDATES}.", defaultValue = "WOODSTOX", showDefaultValue = Visibility.ALWAYS)
+    ParserBackend.Type parser = ParserBackend.Type.WOODSTOX;
+
+    @Option(names = {"--parser-buffer-size"}, paramLabel = "<size>", description = "Size of the parser input buffer.", defaultValue = "" + ParserBackend.DEFAULT_BUFFER_SIZE, showDefaultValue = Visibility.ALWAYS)
+    int parserBufferSize = ParserBackend.DEFAULT_BUFFER_SIZE;
+
+    @Option(names = {"--no-dtd"}, description = "Do not process DTD. Entities declared in DTD cannot be used then.")
+    boolean noDtd = false;
+
+    @Override
+    public Integer call() {
+        final ColumnFinder.Sampling sampling;
+
+        try {
+            sampling = new ColumnFinder.Sampling(maxItems, maxBytes, sampleEvery);
+        } catch (final IllegalArgumentException ex) {
+            System.err.println("Error: " + ex.getMessage());
+
+            return 2;
+        }
+
+        if (threads < 0) {
+            System.err.println("Error: Number of threads cannot be negative.");
+
+            return 2;
+        }
+
+        final ColumnFinder.Profile result;
+
+        try {
+            result = ColumnFinder.profile(inputFiles, itemName,
+                    ParserBackend.newBackend(parser, parserBufferSize, !noDtd), sampling,
+                    threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        } catch (final IOException | RuntimeException ex) {
+            System.err.println("Error: " + ex.getMessage());
+
+            return 1;
+        }
+
+        if (profile) {
+            System.out.println("column\tattribute\toccurrences\titems\tmax_repetitions\tmax_length");
+
+            for (final ColumnFinder.ColumnStats column : result.getColumnStats()) {
+                System.out.println(column.getPath() + '\t' + column.isAttribute() + '\t' + column.getOccurrences()
+                        + '\t' + column.getItems() + '\t' + column.getMaxRepetitions() + '\t' + column.getMaxLength());
+            }
+        } else {
+            System.out.println(String.join(",", result.getColumns()));
+        }
+
+        System.err.println("Info: Profiled " + result.getItems() + " row items of " + result.getDocuments() + " files"
+                + (result.getPartialDocuments() > 0
+                        ? ", " + result.getPartialDocuments() + " files were read partially" : ""));
+
+        return 0;
+    }
+}
@@ -0,0 +1,626 @@
+package com.github.peter277.xml2table;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * Opens input files, transparently decompressing gzip and zip files.
+ * <p>
+ * The format is recognized by the leading magic bytes, not by the file name
+ * extension. Compressed files are decompressed on a background thread, which
+ * hands chunks of decompressed data to the reading thread through a bounded
+ * queue, so decompression overlaps with parsing. Gzip files made of
+ * independent members that record their compressed size (BGZF, as written by
+ * {@code bgzip}) are additionally inflated in parallel, member by member.
+ */
+final class CompressedInput {
+
+    /**
+     * Size of chunks of decompressed data.
+     */
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Maximum number of decompressed chunks waiting for the reading thread.
+     */
+    private static final int QUEUE_CAPACITY = 4;
+
+    /**
+     * Maximum uncompressed size of a BGZF member.
+     */
+    private static final int MAX_BGZF_MEMBER_SIZE = 64 * 1024;
+
+    /**
+     * Marker of the end of decompressed data.
+     */
+    private static final Future<byte[]> END = CompletableFuture.completedFuture(null);
+
+    /**
+     * Number of the stream, used for naming its threads.
+     */
+    private static final AtomicInteger STREAM_NUMBER = new AtomicInteger();
+
+    /**
+     * Input file formats.
+     */
+    enum Format {
+        /**
+         * Uncompressed file.
+         */
+        PLAIN,
+        /**
+         * Gzip file, possibly with multiple members.
+         */
+        GZIP,
+        /**
+         * Zip file with a single entry.
+         */
+        ZIP
+    }
+
+    private CompressedInput() {
+    }
+
+    /**
+     * Detects format of the file from its leading magic bytes.
+     *
+     * @param file input file path
+     *
+     * @return file format
+     *
+     * @throws IOException Thrown if the file could not be read.
+     */
+    static Format detect(final Path file) throws IOException {
+        final byte[] magic = new byte[4];
+        final int count;
+
+        try (InputStream in = Files.newInputStream(file)) {
+            count = in.readNBytes(magic, 0, magic.length);
+        }
+
+        if (count >= 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b) {
+            return Format.GZIP;
+        } else if (count == 4 && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4) {
+            return Format.ZIP;
+        }
+
+        return Format.PLAIN;
+    }
+
+    /**
+     * Checks whether the file is compressed.
+     *
+     * @param file input file path
+     *
+     * @return true if the file is compressed
+     *
+     * @throws IOException Thrown if the file could not be read.
+     */
+    static boolean isCompressed(final Path file) throws IOException {
+        return detect(file) != Format.PLAIN;
+    }
+
+    /**
+     * Opens the file for reading, decompressing it if it is compressed.
+     *
+     * @param file input file path
+     *
+     * @return buffered input stream of uncompressed data
+     *
+     * @throws IOException Thrown if the file could not be opened.
+     */
+    static InputStream open(final Path file) throws IOException {
+        switch (detect(file)) {
+            case GZIP:
+                return openGzip(file);
+            case ZIP:
+                return openZip(file);
+            default:
+                return new BufferedInputStream(Files.newInputStream(file));
+        }
+    }
+
+    /**
+     * Opens gzip file. BGZF files are inflated in parallel, other gzip files
+     * are inflated sequentially on the background thread.
+     *
+     * @param file input file path
+     *
+     * @return input stream of uncompressed data
+     *
+     * @throws IOException Thrown if the file could not be opened.
+     */
+    private static InputStream openGzip(final Path file) throws IOException {
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+
+        try {
+            if (bgzfMemberSize(channel, 0) < 0) {
+                return new BackgroundInputStream(queue -> inflateSequential(channel, 0, queue), channel, null);
+            }
+
+            final int threads = Runtime.getRuntime().availableProcessors();
+            final String name = "xml2table-inflate-" + STREAM_NUMBER.incrementAndGet();
+            final AtomicInteger threadNumber = new AtomicInteger();
+            final ExecutorService inflaters = Executors.newFixedThreadPool(threads, runnable -> {
+                final Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            return new BackgroundInputStream(queue -> inflateParallel(channel, inflaters, queue), channel, inflaters,
+                    threads * 2);
+        } catch (final IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Opens zip file, which must contain exactly one file entry.
+     *
+     * @param file input file path
+     *
+     * @return input stream of uncompressed data of the entry
+     *
+     * @throws IOException Thrown if the file could not be opened or does not
+     *                     contain exactly one file entry.
+     */
+    private static InputStream openZip(final Path file) throws IOException {
+        final ZipFile zipFile = new ZipFile(file.toFile());
+
+        try {
+            final List<ZipEntry> entries = new ArrayList<>(1);
+            final Enumeration<? extends ZipEntry> enumeration = zipFile.entries();
+
+            while (enumeration.hasMoreElements()) {
+                final ZipEntry entry = enumeration.nextElement();
+
+                if (!entry.isDirectory()) {
+                    entries.add(entry);
+                }
+            }
+
+            if (entries.size() != 1) {
+                throw new ZipException("Zip file must contain exactly one file, found " + entries.size()
+                        + ": " + file);
+            }
+
+            return new BackgroundInputStream(queue -> {
+                try (InputStream in = zipFile.getInputStream(entries.get(0))) {
+                    readChunks(in, queue);
+                }
+            }, zipFile, null);
+        } catch (final IOException | RuntimeException ex) {
+            zipFile.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Inflates gzip members starting at the offset sequentially.
+     *
+     * @param channel file channel
+     * @param offset  offset of the first member
+     * @param queue   queue of decompressed chunks
+     *
+     * @throws IOException          Thrown if the data could not be read or
+     *                              inflated.
+     * @throws InterruptedException Thrown if the stream was closed.
+     */
+    private static void inflateSequential(final FileChannel channel, final long offset,
+            final BlockingQueue<Future<byte[]>> queue) throws IOException, InterruptedException {
+        channel.position(offset);
+
+        try (InputStream in = new GZIPInputStream(Channels.newInputStream(channel), CHUNK_SIZE)) {
+            readChunks(in, queue);
+        }
+    }
+
+    /**
+     * Reads BGZF members and submits them to be inflated in parallel. If a
+     * member which is not a BGZF member is found, that member and all
+     * following members are inflated sequentially.
+     *
+     * @param channel   file channel
+     * @param inflaters executor inflating the members
+     * @param queue     queue of decompressed chunks
+     *
+     * @throws IOException          Thrown if the data could not be read or
+     *                              inflated.
+     * @throws InterruptedException Thrown if the stream was closed.
+     */
+    private static void inflateParallel(final FileChannel channel, final ExecutorService inflaters,
+            final BlockingQueue<Future<byte[]>> queue) throws IOException, InterruptedException {
+        final long size = channel.size();
+        long offset = 0;
+
+        while (offset < size) {
+            final int memberSize = bgzfMemberSize(channel, offset);
+
+            if (memberSize < 0) {
+                inflateSequential(channel, offset, queue);
+                return;
+            }
+
+            final ByteBuffer member = ByteBuffer.allocate(memberSize);
+            readFully(channel, member, offset);
+            queue.put(inflaters.submit(() -> inflateBgzfMember(member.array())));
+            offset += memberSize;
+        }
+    }
+
+    /**
+     * Reads size of the BGZF member at the offset from its extra field.
+     *
+     * @param channel file channel
+     * @param offset  offset of the member
+     *
+     * @return total size of the member, or -1 if there is no BGZF member at
+     *         the offset
+     *
+     * @throws IOException Thrown if the file could not be read.
+     */
+    private static int bgzfMemberSize(final FileChannel channel, final long offset) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+
+        if (!readFully(channel, header, offset) || (header.get(0) & 0xff) != 0x1f || (header.get(1) & 0xff) != 0x8b
+                || header.get(2) != 8 || header.get(3) != 4) {
+            return -1;
+        }
+
+        final ByteBuffer extra = ByteBuffer.allocate(header.getShort(10) & 0xffff).order(ByteOrder.LITTLE_ENDIAN);
+
+        if (!readFully(channel, extra, offset + header.capacity())) {
+            return -1;
+        }
+
+        // Look for the BC subfield holding total member size minus one
+        while (extra.remaining() >= 4) {
+            final byte id1 = extra.get();
+            final byte id2 = extra.get();
+            final int length = extra.getShort() & 0xffff;
+
+            if (id1 == 'B' && id2 == 'C' && length == 2 && extra.remaining() >= 2) {
+                final int memberSize = (extra.getShort() & 0xffff) + 1;
+                return memberSize >= header.capacity() + extra.capacity() + 8 ? memberSize : -1;
+            } else if (length > extra.remaining()) {
+                return -1;
+            }
+
+            extra.position(extra.position() + length);
+        }
+
+        return -1;
+    }
+
+    /**
+     * Inflates single BGZF member and verifies its checksum and size.
+     *
+     * @param member complete member including its header and trailer
+     *
+     * @return uncompressed data
+     *
+     * @throws IOException Thrown if the member is corrupt.
+     */
+    private static byte[] inflateBgzfMember(final byte[] member) throws IOException {
+        final ByteBuffer trailer = ByteBuffer.wrap(member, member.length - 8, 8).order(ByteOrder.LITTLE_ENDIAN);
+        final long crc = trailer.getInt() & 0xffffffffL;
+        final long uncompressedSize = trailer.getInt() & 0xffffffffL;
+        final int dataStart = 12 + (((member[11] & 0xff) << 8) | (member[10] & 0xff));
+
+        if (uncompressedSize > MAX_BGZF_MEMBER_SIZE) {
+            throw new ZipException("Invalid BGZF member size");
+        }
+
+        final byte[] data = new byte[(int) uncompressedSize];
+        final Inflater inflater = new Inflater(true);
+
+        try {
+            inflater.setInput(member, dataStart, member.length - 8 - dataStart);
+
+            int length = 0;
+            while (!inflater.finished()) {
+                final int count = inflater.inflate(data, length, data.length - length);
+                length += count;
+
+                if (count == 0 && !inflater.finished() && (inflater.needsInput() || length == data.length)) {
+                    throw new ZipException("Corrupt BGZF member");
+                }
+            }
+
+            if (length != data.length) {
+                throw new ZipException("Corrupt BGZF member: size mismatch");
+            }
+        } catch (final DataFormatException ex) {
+            throw new ZipException("Corrupt BGZF member: " + ex.getMessage());
+        } finally {
+            inflater.end();
+        }
+
+        final CRC32 checksum = new CRC32();
+        checksum.update(data);
+
+        if (checksum.getValue() != crc) {
+            throw new ZipException("Corrupt BGZF member: CRC mismatch");
+        }
+
+        return data;
+    }
+
+    /**
+     * Reads the stream in chunks and adds them to the queue.
+     *
+     * @param in    input stream
+     * @param queue queue of decompressed chunks
+     *
+     * @throws IOException          Thrown if the data could not be read.
+     * @throws InterruptedException Thrown if the stream was closed.
+     */
+    private static void readChunks(final InputStream in, final BlockingQueue<Future<byte[]>> queue)
+            throws IOException, InterruptedException {
+        while (true) {
+            final byte[] chunk = new byte[CHUNK_SIZE];
+            final int count = in.readNBytes(chunk, 0, chunk.length);
+
+            if (count == 0) {
+                return;
+            }
+
+            queue.put(CompletableFuture.completedFuture(count == chunk.length ? chunk : Arrays.copyOf(chunk, count)));
+        }
+    }
+
+    /**
+     * Reads bytes from the channel at the offset until the buffer is full.
+     *
+     * @param channel file channel
+     * @param buffer  buffer to fill
+     * @param offset  offset in the file
+     *
+     * @return false if end of the file was reached before the buffer was
+     *         filled
+     *
+     * @throws IOException Thrown if the file could not be read.
+     */
+    private static boolean readFully(final FileChannel channel, final ByteBuffer buffer, final long offset)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                return false;
+            }
+        }
+
+        buffer.flip();
+        return true;
+    }
+
+    /**
+     * Producer of decompressed chunks, running on the background thread.
+     */
+    @FunctionalInterface
+    private interface ChunkSource {
+
+        /**
+         * Adds all decompressed chunks to the queue in order.
+         *
+         * @param queue queue of decompressed chunks
+         *
+         * @throws IOException          Thrown if the data could not be read
+         *                              or decompressed.
+         * @throws InterruptedException Thrown if the stream was closed.
+         */
+        void produce(BlockingQueue<Future<byte[]>> queue) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Input stream reading chunks produced by a background thread.
+     */
+    private static final class BackgroundInputStream extends InputStream {
+
+        /**
+         * Chunks in original order, waiting for the reading thread.
+         */
+        private final BlockingQueue<Future<byte[]>> queue;
+        /**
+         * Thread producing the chunks.
+         */
+        private final Thread producerThread;
+        /**
+         * Underlying file, closed with the stream.
+         */
+        private final Closeable resource;
+        /**
+         * Executor producing chunks in parallel, shut down with the stream,
+         * or null.
+         */
+        private final ExecutorService executor;
+        /**
+         * Chunk being read.
+         */
+        private byte[] chunk = new byte[0];
+        /**
+         * Position in the chunk being read.
+         */
+        private int chunkPos = 0;
+        /**
+         * Whether all chunks were read.
+         */
+        private boolean eof = false;
+        /**
+         * Whether the stream was closed.
+         */
+        private boolean closed = false;
+
+        /**
+         * Creates new stream and starts the producer thread.
+         *
+         * @param source   chunk source
+         * @param resource underlying file
+         * @param executor executor producing chunks in parallel, or null
+         */
+        BackgroundInputStream(final ChunkSource source, final Closeable resource, final ExecutorService executor) {
+            this(source, resource, executor, QUEUE_CAPACITY);
+        }
+
+        /**
+         * Creates new stream and starts the producer thread.
+         *
+         * @param source        chunk source
+         * @param resource      underlying file
+         * @param executor      executor producing chunks in parallel, or
+         *                      null
+         * @param queueCapacity maximum number of pending chunks
+         */
+        BackgroundInputStream(final ChunkSource source, final Closeable resource, final ExecutorService executor,
+                final int queueCapacity) {
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+            this.resource = resource;
+            this.executor = executor;
+            this.producerThread = new Thread(() -> produce(source),
+                    "xml2table-decompress-" + STREAM_NUMBER.incrementAndGet());
+            this.producerThread.setDaemon(true);
+            this.producerThread.start();
+        }
+
+        /**
+         * Runs the source and marks the end of chunks, or passes the failure
+         * to the reading thread.
+         *
+         * @param source chunk source
+         */
+        private void produce(final ChunkSource source) {
+            try {
+                source.produce(queue);
+                queue.put(END);
+            } catch (final InterruptedException ex) {
+                // Stream was closed
+            } catch (final IOException | RuntimeException ex) {
+                try {
+                    queue.put(CompletableFuture.failedFuture(ex));
+                } catch (final InterruptedException ignored) {
+                    // Stream was closed
+                }
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+
+            return chunk[chunkPos++] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            } else if (!fill()) {
+                return -1;
+            }
+
+            final int count = Math.min(len, chunk.length - chunkPos);
+            System.arraycopy(chunk, chunkPos, b, off, count);
+            chunkPos += count;
+
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return chunk.length - chunkPos;
+        }
+
+        /**
+         * Takes next non-empty chunk if the current one was read.
+         *
+         * @return false if all chunks were read
+         *
+         * @throws IOException Thrown if decompression failed.
+         */
+        private boolean fill() throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+
+            while (chunkPos == chunk.length) {
+                if (eof) {
+                    return false;
+                }
+
+                try {
+                    final Future<byte[]> future = queue.take();
+
+                    if (future == END) {
+                        eof = true;
+                    } else {
+                        chunk = future.get();
+                        chunkPos = 0;
+                    }
+                } catch (final InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for decompressed data", ex);
+                } catch (final ExecutionException ex) {
+                    if (ex.getCause() instanceof IOException) {
+                        throw new IOException(ex.getCause().getMessage(), ex.getCause());
+                    }
+
+                    throw new IOException("Decompression failed", ex.getCause());
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+            producerThread.interrupt();
+
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+
+            try {
+                producerThread.join();
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                resource.close();
+            }
+        }
+    }
+}
@@ -21,27 +21,14 @@
  */
 package com.github.peter277.xml2table;
 
-import com.ctc.wstx.stax.WstxInputFactory;
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Writer;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.AbstractMap;
-import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.Deque;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Objects;
-import java.util.regex.Pattern;
-import javax.xml.stream.XMLInputFactory;
+import java.util.Arrays;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
+import org.codehaus.stax2.XMLStreamReader2;
 
 /**
  * XML to flat file convertor.
@@ -51,111 +38,88 @@ import javax.xml.stream.XMLStreamReader;
 public class Convertor {
     // IO Resources
     InputStream inputStream = null;
+    boolean closeInputStream = false; // Whether the input stream was opened by the convertor
     Writer writer = null;
+    RowWriter rowWriter = null;
 
-    XMLInputFactory xMLInputFactory = null;
     XMLStreamReader reader = null;
 
     // Settings
-    String[] columns = null;
-    Filters filters = null;
-    Remappings remappings = null;
-    String separator = ",";
-    boolean trim = false;
-    boolean join = false;
     String rootItemName = null;
-    String joinSeparator = "||";
-    boolean quoteValues = true;
     boolean noHeader = false;
+    boolean join = false;
+    boolean trim = false;
+    int pipelineWorkers = 0;
 
+    // Compiled row item and column paths
+    PathTrie pathTrie = null;
 
-    public static Convertor newConvertorFromFiles(final Path infile, final Path outfile, final ConvertorSettings settings)
-        throws IOException {        
-        Convertor newObj = new Convertor(
-            infile, outfile,
-            settings.generalOptions.columns, settings.filters, settings.remappings, settings.generalOptions.separator,
-            settings.generalOptions.trimValues, settings.generalOptions.join, settings.generalOptions.itemName
-        );
+    // Reusable item processing state
+    RowBuffer rowBuffer = null;
+    RowFormatter rowFormatter = null;
+    RowPipeline pipeline = null;
+    PathTrie.Node[] nodeStack = new PathTrie.Node[16];
+    ValueBuffer[] textStack = new ValueBuffer[16];
+    ValueLimits valueLimits = null;
+    ValueLimits.Tracker limitTracker = null;
+    ValueCache[] valueCaches = null;
 
-        newObj.joinSeparator = settings.generalOptions.joinSeparator;
-        newObj.quoteValues = !settings.generalOptions.noQuote;
-        newObj.noHeader = settings.generalOptions.noHeader;
+    // Number of the current row item and of the last row item which selected a value of each slot
+    long itemNumber = 0;
+    long[] slotItems = null;
 
-        return newObj;
+    public static Convertor newConvertorFromFiles(final Path infile, final Path outfile, final ConvertorSettings settings)
+        throws IOException {        
+        return new Convertor(infile, outfile, settings);
     }
 
     public static Convertor newConvertorFromStreams(final InputStream inputStream, final Writer writer, final ConvertorSettings settings)
         throws IOException {        
-        Convertor newObj = new Convertor(
-            inputStream, writer,
-            settings.generalOptions.columns, settings.filters, settings.remappings, settings.generalOptions.separator,
-            settings.generalOptions.trimValues, settings.generalOptions.join, settings.generalOptions.itemName
-        );
-
-        newObj.joinSeparator = settings.generalOptions.joinSeparator;
-        newObj.quoteValues = !settings.generalOptions.noQuote;
-        newObj.noHeader = settings.generalOptions.noHeader;
-
-        return newObj;
+        return new Convertor(inputStream, writer, settings);
     }
 
     /**
-     * Constructs object to convert input XML file to output flat file (e.g. CSV, TSV). Deprecated - will be refactored in future.
+     * Constructs object to convert input XML file to output flat file (e.g. CSV, TSV).
+     * Gzip and zip compressed input files are decompressed transparently.
      *
      * @param inputFile  input file path
      * @param outputFile output file path
-     * @param columns    array of column names
-     * @param filters    optional filters
-     * @param remappings optional remappings
-     * @param separator  field separator
-     * @param trim       whether to trim values or not
-     * @param join       whether to join multiple values or not
-     * @param itemName   XPath which refers to XML element which will be
-     *                   converted to a row
+     * @param settings   convertor settings
      */
-    private Convertor(final Path inputFile, final Path outputFile,
-            final String[] columns, final Filters filters,
-            final Remappings remappings, final String separator,
-            final boolean trim, final boolean join, final String itemName)
+    private Convertor(final Path inputFile, final Path outputFile, final ConvertorSettings settings)
             throws IOException {
                 this(
-                    new BufferedInputStream(Files.newInputStream(inputFile)),
-                    Files.newBufferedWriter(outputFile, StandardCharsets.UTF_8),
-                    columns, filters, remappings, separator,
-                    trim, join, itemName
+                    CompressedInput.open(inputFile),
+                    settings.newOutputWriter(outputFile),
+                    settings
                 );
+                this.closeInputStream = true;
     }
 
     /**
-     * Constructs object to convert input stream with XML to flat file saved into writer. Deprecated - will be refactored in future.
+     * Constructs object to convert input stream with XML to flat file saved into writer.
      *
      * @param inputStream input stream
      * @param writer      writer
-     * @param columns     array of column names
-     * @param filters     optional filters
-     * @param remappings  optional remappings
-     * @param separator   field separator
-     * @param trim        whether to trim values or not
-     * @param join        whether to join multiple values or not
-     * @param itemName    XPath which refers to XML element which will be
-     *                    converted to a row
+     * @param settings    convertor settings
      */
     private Convertor(final InputStream inputStream,
             final Writer writer,
-            final String[] columns, final Filters filters,
-            final Remappings remappings, final String separator,
-            final boolean trim, final boolean join, final String itemName)
+            final ConvertorSettings settings)
             throws RuntimeException, IOException
         {
+            final String itemName = settings.generalOptions.itemName;
+
             this.inputStream = inputStream;
             this.writer = writer;
-            this.columns = columns;
-            this.filters = filters;
-            this.remappings = remappings;
-            this.separator = separator;
-            this.trim = trim;
-            this.join = join;
             this.rootItemName = itemName;
+            this.noHeader = settings.generalOptions.noHeader;
+            this.join = settings.generalOptions.join;
+            this.trim = settings.generalOptions.trimValues;
+            this.pipelineWorkers = settings.generalOptions.pipelineWorkers;
+            this.rowWriter = new RowWriter(writer, RowWriter.DEFAULT_BUFFER_SIZE,
+                    settings.generalOptions.flushRows, settings.generalOptions.flushBytes,
+                    settings.generalOptions.flushIntervalMs);
 
             if (itemName.trim().isEmpty()) {
                 throw new IllegalArgumentException("itemName is an empty string. ");
@@ -166,9 +130,20 @@ public class Convertor {
                         "itemName cannot end with a shash (/).");
             }
 
+            if (pipelineWorkers < 0) {
+                throw new IllegalArgumentException("Number of pipeline workers cannot be negative.");
+            }
+
+            this.pathTrie = settings.getPathTrie();
+            this.rowBuffer = new RowBuffer(pathTrie.getSlotCount());
+            this.valueLimits = settings.getValueLimits();
+            this.rowFormatter = new RowFormatter(settings, pathTrie, valueLimits);
+            this.limitTracker = valueLimits.new Tracker();
+            this.slotItems = new long[pathTrie.getSlotCount()];
+            this.valueCaches = settings.newValueCaches();
+
             try {
-                this.xMLInputFactory = new WstxInputFactory();
-                this.reader = xMLInputFactory.createXMLStreamReader(this.inputStream);
+                this.reader = settings.getParserBackend().createReader(this.inputStream);
             } catch (final XMLStreamException ex) {
                 throw new RuntimeException("XML stream exception: unable to create stream reader", ex);
             }
@@ -182,246 +157,308 @@ public class Convertor {
     public void convert() {        
         try {
             if (!this.noHeader) {
-                writeHeader();
+                rowFormatter.writeHeader(rowWriter);
             }
 
+            if (pipelineWorkers > 0) {
+                pipeline = new RowPipeline(rowFormatter, rowWriter, pathTrie.getSlotCount(), pipelineWorkers);
+            }
+
+            final String[] itemPath = pathTrie.getItemPath();
+            int depth = 0; // Number of open elements, all of which match the row item path
+
             while (reader.hasNext()) {
                 switch (reader.next()) {
                     case XMLStreamReader.START_ELEMENT:
-                        processRoot(getParentName(null,reader.getLocalName()));
+                        if (itemPath != null && depth < itemPath.length
+                                && itemPath[depth].equals(reader.getLocalName())) {
+                            depth++;
+
+                            // The document root element is never treated as a row item
+                            if (depth == itemPath.length && depth > 1) {
+                                processItem(pathTrie.getItemNode());
+                                depth--;
+                            }
+                        } else {
+                            // No row item can be found in the subtree
+                            skipElement();
+                        }
+
+                        break;
+                    case XMLStreamReader.END_ELEMENT:
+                        depth--;
+                        break;
                 }
             }
 
-            writer.close();
+            if (pipeline != null) {
+                pipeline.close();
+                pipeline = null;
+            }
+
+            rowWriter.close();
             reader.close();
+
+            final long failedItems = limitTracker.getFailedItems() + rowFormatter.getFailedItems();
+
+            if (failedItems > 0) {
+                System.err.println("Warning: " + failedItems + " row items exceeded value limits and were not written");
+            }
         } catch (final IOException ex) {
             throw new RuntimeException("IO operation failed", ex);
         } catch (final XMLStreamException ex) {
             throw new RuntimeException("XML stream exception", ex);
-        }
-    }
-
-    /**
-     * Writes header for delimited flat file.
-     *
-     * @throws IOException Thrown if problem occurred while writing to output
-     *                     file.
-     */
-    private void writeHeader() throws IOException {
-        for (int i = 0; i < this.columns.length; i++) {
-            if (i > 0) {
-                writer.append(this.separator);
+        } finally {
+            if (pipeline != null) {
+                pipeline.abort();
             }
 
-            writer.append(this.quoteValues ? CsvUtils.quoteString(this.columns[i]) : Objects.requireNonNullElse(this.columns[i],""));
-        }
+            // Spilled values of row items not written
+            for (final ValueBuffer buffer : textStack) {
+                if (buffer != null) {
+                    buffer.clear();
+                }
+            }
 
-        writer.append('\n');
+            valueLimits.deleteSpilled();
 
-        writer.flush();
+            // Stops background decompression of compressed input too
+            if (closeInputStream) {
+                try {
+                    inputStream.close();
+                } catch (final IOException ex) {
+                    // Input was already read or conversion failed anyway
+                }
+            }
+        }
     }
 
     /**
-     * Processes root element and its subelements.
+     * Returns number of rows written by the conversion, excluding header.
      *
-     * @param parentElement XPath which refers to parent element
-     *
-     * @throws XMLStreamException Thrown if problem occurred while reading XML
-     *                            stream.
-     * @throws IOException        Thrown if IO problem occurred.
+     * @return number of rows
      */
-    private void processRoot(final String parentElement) throws XMLStreamException,
-            IOException {
-        final Deque<String> stack = new ArrayDeque<>();
-        stack.push(parentElement);
-
-        while (!stack.isEmpty() && reader.hasNext()) {
-            switch (reader.next()) {
-                case XMLStreamReader.START_ELEMENT:
-                    final String currentElementPath = getParentName(
-                            stack.peek(), reader.getLocalName());
-
-                    if ((currentElementPath).compareTo(rootItemName) == 0) {
-                        processItem(currentElementPath);
-                    } else {
-                        stack.push(currentElementPath);
-                    }
-
-                    break;
-                case XMLStreamReader.END_ELEMENT:
-                    stack.pop();
-                    break;
-            }
-        }
+    long getRowCount() {
+        return rowWriter.getRowCount() - (noHeader ? 0 : 1);
     }
 
     /**
      * Processes item element.
+     * <p>
+     * Unless values are joined, only the first value of each slot is used,
+     * so text of further elements of an already selected slot is not
+     * accumulated and their subtrees are skipped if they contain no other
+     * requested value.
      *
-     * @param parentElement XPath which refers to parent element
-     * @param values        values of XML element for current row
+     * @param itemNode trie node of the row item element
      *
      * @throws XMLStreamException Thrown if problem occurred while reading XML
      *                            stream.
      * @throws IOException        Thrown if IO problem occurred.
      */
-    private void processItem(final String parentElement)
+    private void processItem(final PathTrie.Node itemNode)
         throws XMLStreamException, IOException {
         
-        final Map<String, List<String>> values = new HashMap<>(columns.length);
+        if (pipeline == null) {
+            rowBuffer.reset();
+        }
+
+        itemNumber++;
+        limitTracker.startItem();
 
         // Process attributes of the root element
-        for (int i = 0; i < reader.getAttributeCount(); i++) {
-            String attributeName = reader.getAttributeLocalName(i);
-            String attributeValue = reader.getAttributeValue(i);
-            String attributePath = parentElement + "/@" + attributeName;
-            processValue(attributePath.replaceFirst(Pattern.quote(
-                rootItemName + "/"), ""), attributeValue, values);
+        if (!processAttributes(itemNode)) {
+            skipItem(0, 1);
+            return;
         }
 
-        final Deque<Entry<String, StringBuilder>> stack = new ArrayDeque<>(); // Use Entry as substitute for Pair
-        stack.push(new AbstractMap.SimpleEntry<>(parentElement, null));
+        int depth = 0;
+        nodeStack[0] = itemNode;
 
-        while (!stack.isEmpty() && reader.hasNext()) {
+        while (depth >= 0 && reader.hasNext()) {
             switch (reader.next()) {
                 case XMLStreamReader.START_ELEMENT:
-                    final String currentElementPath = getParentName(
-                        stack.peek().getKey(), reader.getLocalName());
+                    final PathTrie.Node node = nodeStack[depth].child(reader.getLocalName());
+
+                    // Skip the whole subtree if it does not contain any requested value, or only the value of a slot
+                    // whose first value is already selected
+                    if (node == null || isSelected(node.getSlot()) && !node.hasChildren() && !node.hasAttributes()) {
+                        skipElement();
+                        break;
+                    }
 
                     // Process attributes of the current element
-                    for (int i = 0; i < reader.getAttributeCount(); i++) {
-                        String attributeName = reader.getAttributeLocalName(i);
-                        String attributeValue = reader.getAttributeValue(i);
-                        String attributePath = currentElementPath + "/@" + attributeName;
-                        processValue(attributePath.replaceFirst(Pattern.quote(
-                            rootItemName + "/"), ""), attributeValue, values);
+                    if (!processAttributes(node)) {
+                        skipItem(depth, depth + 2);
+                        return;
                     }
 
                     // Process any child elements
-                    stack.push(new AbstractMap.SimpleEntry<>(currentElementPath, null));
+                    depth++;
+                    if (depth == nodeStack.length) {
+                        nodeStack = Arrays.copyOf(nodeStack, depth * 2);
+                        textStack = Arrays.copyOf(textStack, depth * 2);
+                    }
+                    nodeStack[depth] = node;
+                    if (textStack[depth] == null) {
+                        textStack[depth] = new ValueBuffer();
+                    }
 
                     break;
                 case XMLStreamReader.CHARACTERS:
-                    if (stack.peek().getValue() == null) {
-                        stack.peek().setValue(new StringBuilder(100));
+                    final int slot = nodeStack[depth].getSlot();
+
+                    if (slot < 0 || isSelected(slot)) {
+                        break;
+                    }
+
+                    // Text is copied from the parser buffer, without creating a string per text event
+                    if (!limitTracker.append(textStack[depth], reader.getTextCharacters(), reader.getTextStart(),
+                            reader.getTextLength())) {
+                        skipItem(depth, depth + 1);
+                        return;
                     }
-                    stack.peek().getValue().append(reader.getText());
 
                     break;
                 case XMLStreamReader.END_ELEMENT:
                     // If we have reached the closing tag of the root item, concatenate or truncate multiple values (depending on join setting),
                     // apply any filter conditions, and write out the values as a row
-                    if ((stack.peek().getKey()).compareTo(rootItemName) == 0) {
-                        final Map<String, String> singleValues = new HashMap<>(
-                                columns.length);
-
-                        for (Entry<String, List<String>> mapEntry : values.entrySet()) {
-                            singleValues.put(mapEntry.getKey(), prepareValue(mapEntry.getValue()));
+                    if (depth == 0) {
+                        if (pipeline != null) {
+                            pipeline.endItem();
+                        } else {
+                            rowFormatter.writeRow(rowBuffer, rowWriter);
                         }
-
-                        if (filters == null || filters.matchesFilters(
-                                singleValues)) {
-                            if (remappings != null) {
-                                remappings.replaceValues(singleValues);
-                            }
-
-                            writeRow(singleValues);
-                        }
-                    } else {
-                        StringBuilder sb =  stack.peek().getValue();
-                        processValue(stack.peek().getKey().replaceFirst(Pattern.quote(
-                                rootItemName + "/"), ""), sb == null ? "" : sb.toString(), values);
+                    } else if (nodeStack[depth].getSlot() >= 0 && !isSelected(nodeStack[depth].getSlot())) {
+                        addValue(nodeStack[depth].getSlot(), textStack[depth].takeValue(trim,
+                                valueCaches == null ? null : valueCaches[nodeStack[depth].getSlot()]));
                     }
 
-                    stack.pop();
+                    depth--;
                     break;
             }
         }
     }
 
     /**
-     * Writes XML item to flat file as delimited row of columns.
+     * Skips the rest of a row item which exceeded value limits, discarding
+     * its values.
      *
-     * @param values    map of values
+     * @param depth        depth of the current element within the row item
+     * @param openElements number of open elements of the row item, including
+     *                     the current one
      *
-     * @throws IOException Thrown if problem occurred while writing to output
-     *                     file.
+     * @throws XMLStreamException Thrown if problem occurred while reading XML
+     *                            stream.
      */
-    private void writeRow(final Map<String, String> values)
-            throws IOException {
-        final StringBuilder sb = new StringBuilder(columns.length * 20); // Pre-allocate size
-
-        for (int i = 0; i < columns.length; i++) {
-            if (i > 0) {
-                sb.append(this.separator);
-            }
+    private void skipItem(final int depth, int openElements) throws XMLStreamException {
+        for (int i = 1; i <= depth; i++) {
+            textStack[i].clear();
+        }
 
-            sb.append(this.quoteValues ? CsvUtils.quoteString(values.get(columns[i])) : Objects.requireNonNullElse(values.get(columns[i]),""));
+        if (pipeline != null) {
+            pipeline.discardItem();
         }
 
-        writer.append(sb.toString()).append('\n');
-        writer.flush();
+        while (openElements > 0 && reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamReader.START_ELEMENT:
+                    openElements++;
+                    break;
+                case XMLStreamReader.END_ELEMENT:
+                    openElements--;
+                    break;
+            }
+        }
     }
 
     /**
-     * Joins elements from the list using configured join separator or return first
-     * element from the list. Use trim=<code>true</code> to trim values.
+     * Checks whether the first value of a slot is already selected for the
+     * current row item, so further values of the slot are not used.
      *
-     * @param values         list of values
+     * @param slot slot index
      *
-     * @return String containing separated values from the list or first element
-     *         from the list.
+     * @return true if values of the slot are not joined and a value was
+     *         already added
      */
-    private String prepareValue(List<String> values) {
-        if (values.isEmpty()) {
-            return null;
-        }
-        if (join) {
-            final StringBuilder sb = new StringBuilder(1_024);
-
-            for (int i = 0; i < values.size(); i++) {
-                final String processedValue = trim ? values.get(i).trim() : values.get(i);
-                sb.append(processedValue);
-                if (i < values.size() - 1) { // Append separator only if not the last element
-                    sb.append(joinSeparator);
-                }
-            }
+    private boolean isSelected(final int slot) {
+        return !join && slot >= 0 && slotItems[slot] == itemNumber;
+    }
 
-            return sb.toString();
+    /**
+     * Adds a single raw value of the current row item, either to the row
+     * buffer or to the pipeline.
+     *
+     * @param slot  slot index
+     * @param value value to be added
+     */
+    private void addValue(final int slot, final String value) {
+        slotItems[slot] = itemNumber;
+
+        if (pipeline != null) {
+            pipeline.add(slot, value);
         } else {
-            final String value = values.get(0);
-            return trim ? value.trim() : value;
+            rowBuffer.add(slot, value);
         }
     }
 
     /**
-     * Prepare path to the current element.
+     * Adds values of requested attributes of the current element.
      *
-     * @param parentName     path to parent element
-     * @param currentElement XML element name
+     * @param node trie node of the current element
      *
-     * @return path to the current element
+     * @return false if the row item exceeded value limits and must be
+     *         skipped
+     *
+     * @throws IOException Thrown if a value could not be spilled.
      */
-    private static String getParentName(final String parentName, final String currentElement) {
-        final StringBuilder sb = new StringBuilder();
-        if (parentName != null) {
-            sb.append(parentName);
+    private boolean processAttributes(final PathTrie.Node node) throws IOException {
+        if (!node.hasAttributes()) {
+            return true;
+        }
+
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            final int slot = node.attributeSlot(reader.getAttributeLocalName(i));
+
+            if (slot >= 0 && !isSelected(slot)) {
+                final String value = limitTracker.limit(reader.getAttributeValue(i));
+
+                if (value == null) {
+                    return false;
+                }
+
+                addValue(slot, valueCaches == null || ValueLimits.isSpilled(value)
+                        ? value : valueCaches[slot].intern(value, 0, value.length()));
+            }
         }
-        sb.append("/").append(currentElement);
-        return sb.toString();
+
+        return true;
     }
 
     /**
-     * Adds a single value of XML item. Only columns contained in array are
-     * added to the values map.
+     * Skips the current element including all its content, without
+     * accumulating any text.
      *
-     * @param elementName name of XML element
-     * @param value       value to be added
-     * @param values      map for storing values
+     * @throws XMLStreamException Thrown if problem occurred while reading XML
+     *                            stream.
      */
-    private void processValue(String elementName, String value, Map<String, List<String>> values) {
-        List<String> elementValues = values.computeIfAbsent(elementName, k -> new ArrayList<String>(10));
-        
-        elementValues.add(value);
+    private void skipElement() throws XMLStreamException {
+        if (reader instanceof XMLStreamReader2) {
+            ((XMLStreamReader2) reader).skipElement();
+            return;
+        }
+
+        int depth = 1;
+
+        while (depth > 0 && reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamReader.START_ELEMENT:
+                    depth++;
+                    break;
+                case XMLStreamReader.END_ELEMENT:
+                    depth--;
+                    break;
+            }
+        }
     }
 }
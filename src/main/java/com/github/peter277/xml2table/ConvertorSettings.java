@@ -1,16 +1,275 @@
 package com.github.peter277.xml2table;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import picocli.CommandLine.ArgGroup;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Help.Visibility;
 
 public class ConvertorSettings {
+    /**
+     * Generated column with the number of the row item in document order,
+     * added to the row item table when child tables are converted. Element
+     * names cannot contain #, so the column never matches a value.
+     */
+    static final String KEY_COLUMN = "#key";
+    /**
+     * Generated column of child tables with the key of the parent row item.
+     */
+    static final String PARENT_KEY_COLUMN = "#parent_key";
+
     @ArgGroup(exclusive = false, multiplicity = "1", heading = "%nGeneral options:%n%n")
     final GeneralOptions generalOptions = new GeneralOptions();
 
+    @ArgGroup(exclusive = false, multiplicity = "0..*", heading = "%nChild table options:%n%n")
+    final List<ChildTableOptions> childTableOptions = new ArrayList<>();
+
     final Filters filters = new Filters();
     final Remappings remappings = new Remappings();
 
+    /**
+     * Settings of the row item table, if these are settings of a child table.
+     */
+    ConvertorSettings parent = null;
+    /**
+     * Name of the child table, appended to the output file name.
+     */
+    String childTableName = null;
+
+    private PathTrie pathTrie = null;
+    private ParserBackend parserBackend = null;
+    private List<ConvertorSettings> tableSettings = null;
+
+    /**
+     * Returns compiled row item and column paths. They are compiled on first
+     * use, when filter and remapping columns are also resolved to slot
+     * indexes, so all settings must be complete by then.
+     *
+     * @return compiled row item and column paths
+     */
+    synchronized PathTrie getPathTrie() {
+        if (pathTrie == null) {
+            // Only paths used for output, filtering or remapping are read from the input
+            final Collection<String> requestedPaths = new ArrayList<>(Arrays.asList(generalOptions.columns));
+            requestedPaths.addAll(filters.getColumns());
+            requestedPaths.addAll(remappings.getColumns());
+
+            pathTrie = new PathTrie(generalOptions.itemName, requestedPaths);
+            filters.resolveColumnIndexes(pathTrie);
+            remappings.resolveColumnIndexes(pathTrie);
+        }
+
+        return pathTrie;
+    }
+
+    /**
+     * Returns settings of all tables converted using these settings, i.e. of
+     * the row item table followed by its child tables. When there are child
+     * tables, the generated key column is prepended to the columns of the row
+     * item table, so this must be called before the settings are used for
+     * conversion.
+     *
+     * @return settings of the row item table and its child tables
+     *
+     * @throws IllegalArgumentException Thrown if child tables are used with
+     *                                  settings dropping row items.
+     */
+    synchronized List<ConvertorSettings> getTableSettings() {
+        if (tableSettings == null) {
+            if (!childTableOptions.isEmpty()) {
+                checkRowItemsKept();
+            }
+
+            tableSettings = new ArrayList<>(1 + childTableOptions.size());
+            tableSettings.add(this);
+
+            for (final ChildTableOptions options : childTableOptions) {
+                tableSettings.add(newChildTableSettings(options));
+            }
+
+            if (tableSettings.size() > 1 && !Arrays.asList(generalOptions.columns).contains(KEY_COLUMN)) {
+                final String[] columns = new String[generalOptions.columns.length + 1];
+                columns[0] = KEY_COLUMN;
+                System.arraycopy(generalOptions.columns, 0, columns, 1, generalOptions.columns.length);
+                generalOptions.columns = columns;
+            }
+        }
+
+        return tableSettings;
+    }
+
+    /**
+     * Checks that every row item of this table is written, as rows of its
+     * child tables are written as soon as their elements end and would refer
+     * to keys of dropped row items.
+     *
+     * @throws IllegalArgumentException Thrown if filters or the FAIL_ITEM
+     *                                  limit policy can drop row items.
+     */
+    void checkRowItemsKept() {
+        if (!filters.getColumns().isEmpty()) {
+            throw new IllegalArgumentException("Child tables cannot be used with --filter-column, "
+                    + "child rows of filtered row items would refer to missing rows.");
+        }
+
+        if (getValueLimits().isLimited() && generalOptions.limitPolicy == ValueLimits.Policy.FAIL_ITEM) {
+            throw new IllegalArgumentException("Child tables cannot be used with --limit-policy=FAIL_ITEM, "
+                    + "child rows of skipped row items would refer to missing rows.");
+        }
+    }
+
+    /**
+     * Returns output file path of a table, which is the output file path of
+     * the row item table with the child table name appended to its base name,
+     * e.g. orders_line.csv for orders.csv.
+     *
+     * @param outputFile output file path of the row item table
+     *
+     * @return output file path of the table
+     */
+    Path getTableOutputFile(final Path outputFile) {
+        if (childTableName == null) {
+            return outputFile;
+        }
+
+        final String fileName = outputFile.getFileName().toString();
+        final int dot = fileName.indexOf('.', 1);
+        final String tableFileName = dot < 0 ? fileName + "_" + childTableName
+                : fileName.substring(0, dot) + "_" + childTableName + fileName.substring(dot);
+
+        return outputFile.resolveSibling(tableFileName);
+    }
+
+    /**
+     * Creates settings of a child table. Output options are copied from these
+     * settings, remappings only apply to the row item table.
+     *
+     * @param options child table options
+     *
+     * @return child table settings
+     */
+    private ConvertorSettings newChildTableSettings(final ChildTableOptions options) {
+        final String path = options.path.startsWith("/") ? options.path.substring(1) : options.path;
+
+        if (path.isEmpty() || path.endsWith("/") || path.contains("@")) {
+            throw new IllegalArgumentException("Child table path must be a relative path of elements: " + options.path);
+        }
+
+        final ConvertorSettings settings = new ConvertorSettings();
+        final GeneralOptions childOptions = settings.generalOptions;
+        settings.parent = this;
+        settings.childTableName = options.name != null ? options.name : path.substring(path.lastIndexOf('/') + 1);
+
+        childOptions.itemName = generalOptions.itemName + "/" + path;
+        childOptions.columns = new String[options.columns.length + 1];
+        childOptions.columns[0] = PARENT_KEY_COLUMN;
+        System.arraycopy(options.columns, 0, childOptions.columns, 1, options.columns.length);
+        childOptions.separator = generalOptions.separator;
+        childOptions.quoteMode = generalOptions.quoteMode;
+        childOptions.noQuote = generalOptions.noQuote;
+        childOptions.noHeader = generalOptions.noHeader;
+        childOptions.trimValues = generalOptions.trimValues;
+        childOptions.join = generalOptions.join;
+        childOptions.joinSeparator = generalOptions.joinSeparator;
+        childOptions.maxValueLength = generalOptions.maxValueLength;
+        childOptions.maxItemSize = generalOptions.maxItemSize;
+        childOptions.limitPolicy = generalOptions.limitPolicy;
+        childOptions.valueCacheSize = generalOptions.valueCacheSize;
+        childOptions.flushRows = generalOptions.flushRows;
+        childOptions.flushBytes = generalOptions.flushBytes;
+        childOptions.flushIntervalMs = generalOptions.flushIntervalMs;
+        childOptions.pipelineWorkers = generalOptions.pipelineWorkers;
+        childOptions.gzipOutput = generalOptions.gzipOutput;
+        childOptions.gzipThreads = generalOptions.gzipThreads;
+        childOptions.gzipLevel = generalOptions.gzipLevel;
+
+        return settings;
+    }
+
+    /**
+     * Returns limits of memory used by values of a row item.
+     *
+     * @return value limits
+     */
+    ValueLimits getValueLimits() {
+        return new ValueLimits(generalOptions.maxValueLength, generalOptions.maxItemSize, generalOptions.limitPolicy);
+    }
+
+    /**
+     * Creates caches of canonical values for each slot, to be used by a
+     * single convertor. Original values of remappings are pinned in the cache
+     * of their column.
+     *
+     * @return caches indexed by slot, or null if values are not cached
+     */
+    ValueCache[] newValueCaches() {
+        if (generalOptions.valueCacheSize <= 0) {
+            return null;
+        }
+
+        final ValueCache[] caches = new ValueCache[getPathTrie().getSlotCount()];
+
+        for (int slot = 0; slot < caches.length; slot++) {
+            caches[slot] = new ValueCache(generalOptions.valueCacheSize, remappings.getRemappedValues(slot));
+        }
+
+        return caches;
+    }
+
+    /**
+     * Returns parser backend shared by all convertors using these settings.
+     * It is created on first use.
+     *
+     * @return parser backend
+     */
+    synchronized ParserBackend getParserBackend() {
+        if (parserBackend == null) {
+            parserBackend = ParserBackend.newBackend(generalOptions.parser, generalOptions.parserBufferSize,
+                    !generalOptions.noDtd);
+        }
+
+        return parserBackend;
+    }
+
+    /**
+     * Opens writer of output file, compressing the output if requested.
+     *
+     * @param file output file path
+     *
+     * @return buffered writer using UTF-8 encoding
+     *
+     * @throws IOException Thrown if the file could not be opened.
+     */
+    Writer newOutputWriter(final Path file) throws IOException {
+        if (!generalOptions.gzipOutput) {
+            return Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        }
+
+        if (generalOptions.gzipThreads < 0) {
+            throw new IllegalArgumentException("Number of gzip threads cannot be negative.");
+        }
+
+        if (generalOptions.gzipLevel < 1 || generalOptions.gzipLevel > 9) {
+            throw new IllegalArgumentException("Gzip compression level must be between 1 and 9.");
+        }
+
+        final int threads = generalOptions.gzipThreads > 0
+                ? generalOptions.gzipThreads : Runtime.getRuntime().availableProcessors();
+
+        return new BufferedWriter(new OutputStreamWriter(
+                new ParallelGzipOutputStream(Files.newOutputStream(file), threads, generalOptions.gzipLevel),
+                StandardCharsets.UTF_8.newEncoder()));
+    }
+
     static class GeneralOptions {
         @Option(names = {"--row-item-name"}, required = true, paramLabel = "<XPath>", description = "Parent XPath referring to the XML element that will be traversed using child XPath specifications from --columns and converted into a row. It cannot end with a slash (/).")
         String itemName = null;
@@ -21,7 +280,10 @@ public class ConvertorSettings {
         @Option(names = {"--separator"}, paramLabel = "<string>", description = "String that should be used to separate output columns.", defaultValue = ",", showDefaultValue = Visibility.ALWAYS)
         String separator = ",";
 
-        @Option(names = {"--no-quote"}, description = "Do not quote values in flat file output. By default all values are quoted.")
+        @Option(names = {"--quote-mode"}, paramLabel = "<mode>", description = "How values are quoted: ${COMPLETION-CANDIDATES}. ALWAYS quotes all non-empty values, MINIMAL only values containing a separator character, a quote or a line break (RFC 4180), NEVER writes values as they are, without escaping.", defaultValue = "ALWAYS", showDefaultValue = Visibility.ALWAYS)
+        RowWriter.QuoteMode quoteMode = RowWriter.QuoteMode.ALWAYS;
+
+        @Option(names = {"--no-quote"}, description = "Do not quote values in flat file output, same as --quote-mode=NEVER.")
         boolean noQuote = false;
 
         @Option(names = {"--no-header"}, description = "Do not output header line with column names. By default header line is output.")
@@ -35,5 +297,58 @@ public class ConvertorSettings {
 
         @Option(names = {"--join-separator"}, paramLabel = "<string>", description = "Separator used to join multiple values matched by a child XPath for a column when the --join-values option is enabled.", defaultValue = "||", showDefaultValue = Visibility.ALWAYS)
         String joinSeparator = "||";
+
+        @Option(names = {"--max-value-length"}, paramLabel = "<chars>", description = "Maximum length of a single value (text of an element, attribute value or joined values of a column). Longer values are handled according to --limit-policy. By default values are not limited.")
+        long maxValueLength = 0;
+
+        @Option(names = {"--max-item-size"}, paramLabel = "<chars>", description = "Maximum total length of values kept in memory for a row item. Values exceeding it are handled according to --limit-policy. By default row items are not limited.")
+        long maxItemSize = 0;
+
+        @Option(names = {"--limit-policy"}, paramLabel = "<policy>", description = "Handling of values exceeding --max-value-length or --max-item-size: ${COMPLETION-CANDIDATES}. TRUNCATE cuts values at the limit, FAIL_ITEM skips the whole row item with a warning, SPILL keeps values in temporary files until the row is written.", defaultValue = "TRUNCATE", showDefaultValue = Visibility.ALWAYS)
+        ValueLimits.Policy limitPolicy = ValueLimits.Policy.TRUNCATE;
+
+        @Option(names = {"--value-cache"}, paramLabel = "<values>", description = "Cache up to the specified number of distinct values of each column, so values repeated in many row items (e.g. codes) share a single string instead of a new one per occurrence. Columns with mostly distinct values stop being cached automatically. By default values are not cached.")
+        int valueCacheSize = 0;
+
+        @Option(names = {"--flush-rows"}, paramLabel = "<rows>", description = "Flush output after every specified number of rows. By default output is only flushed when the output file is complete.")
+        long flushRows = 0;
+
+        @Option(names = {"--flush-bytes"}, paramLabel = "<bytes>", description = "Flush output after approximately every specified number of bytes (counted as characters before encoding).")
+        long flushBytes = 0;
+
+        @Option(names = {"--flush-interval"}, paramLabel = "<ms>", description = "Flush output when at least the specified number of milliseconds has passed since last flush. Checked whenever a row is written, e.g. for consumers tailing the output file.")
+        long flushIntervalMs = 0;
+
+        @Option(names = {"--pipeline"}, arity = "0..1", fallbackValue = "2", paramLabel = "<workers>", description = "Assemble, filter, remap and format rows on the specified number of worker threads (default: 2), while XML is parsed and output is written by separate threads. Lets a single input file use multiple cores without splitting it. By default a file is converted on a single thread.")
+        int pipelineWorkers = 0;
+
+        @Option(names = {"--parser"}, paramLabel = "<backend>", description = "XML parser backend: ${COMPLETION-CANDIDATES}. Aalto backends only support UTF-8, ISO-8859-1 and US-ASCII input and do not expand entities declared in DTD. AALTO_ASYNC feeds the non-blocking Aalto reader with chunks of --parser-buffer-size bytes.", defaultValue = "WOODSTOX", showDefaultValue = Visibility.ALWAYS)
+        ParserBackend.Type parser = ParserBackend.Type.WOODSTOX;
+
+        @Option(names = {"--parser-buffer-size"}, paramLabel = "<size>", description = "Size of the parser input buffer.", defaultValue = "" + ParserBackend.DEFAULT_BUFFER_SIZE, showDefaultValue = Visibility.ALWAYS)
+        int parserBufferSize = ParserBackend.DEFAULT_BUFFER_SIZE;
+
+        @Option(names = {"--no-dtd"}, description = "Do not process DTD. Entities declared in DTD cannot be used then. By default DTD is processed by Woodstox parser backend.")
+        boolean noDtd = false;
+
+        @Option(names = {"--gzip-output"}, description = "Compress output files with gzip. Blocks of output are compressed in parallel and written as concatenated gzip members, which any gzip decompressor can read. With --output-dir, .gz is appended to output file names.")
+        boolean gzipOutput = false;
+
+        @Option(names = {"--gzip-threads"}, paramLabel = "<threads>", description = "Number of threads compressing output of each file when --gzip-output is used. By default all available processors are used.")
+        int gzipThreads = 0;
+
+        @Option(names = {"--gzip-level"}, paramLabel = "<level>", description = "Gzip compression level (1-9).", defaultValue = "6", showDefaultValue = Visibility.ALWAYS)
+        int gzipLevel = 6;
+    }
+
+    static class ChildTableOptions {
+        @Option(names = {"--child-table"}, required = true, paramLabel = "<child XPath>", description = "XPath of repeating elements relative to --row-item-name that are converted into a child table in the same pass, one row per element. The row item table gets a generated #key column (number of the row item in document order) and the child table a #parent_key column referring to it. Cannot be used with --filter-column or --limit-policy=FAIL_ITEM, as child rows of dropped row items would refer to missing rows. You can specify multiple child tables by using this option group multiple times.")
+        String path = null;
+
+        @Option(names = {"--child-columns"}, split = ",", required = true, paramLabel = "<child XPath>", description = "List of columns of the child table, specified as child XPath expressions relative to --child-table.")
+        String[] columns = null;
+
+        @Option(names = {"--child-name"}, paramLabel = "<name>", description = "Name of the child table, appended to the output file name of the row item table after an underscore. By default the last element name of --child-table is used.")
+        String name = null;
     }
 }
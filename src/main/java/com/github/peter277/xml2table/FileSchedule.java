@@ -0,0 +1,214 @@
+package com.github.peter277.xml2table;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Order in which input files of a batch are converted by a pool of workers.
+ * <p>
+ * Large files are converted largest first (longest processing time first),
+ * so a huge file does not start last and run alone while the other workers
+ * are idle. Small files form a fast lane: whenever no worker converts a small
+ * file, the next worker takes the smallest remaining small file instead of a
+ * large one, so small files do not queue behind the large ones, and once the
+ * large files are all taken, every worker takes small files. Files are only
+ * assigned when a worker is free, so no worker is reserved for either kind.
+ * <p>
+ * Files can be added while others are already converted, e.g. while an input
+ * directory is traversed. The number of files waiting for a worker is
+ * bounded, adding a file blocks until a worker takes one, so files are
+ * ordered within the waiting ones only.
+ */
+final class FileSchedule {
+
+    /**
+     * Default maximum size of a file converted in the fast lane.
+     */
+    static final long DEFAULT_SMALL_FILE_SIZE = 8L * 1024 * 1024;
+    /**
+     * Default maximum number of files waiting for a worker.
+     */
+    static final int DEFAULT_MAX_WAITING_FILES = 10_000;
+
+    /**
+     * Scheduled input file.
+     */
+    static final class Entry {
+
+        /**
+         * Input file path.
+         */
+        private final Path file;
+        /**
+         * File size in bytes, 0 if it could not be determined.
+         */
+        private final long size;
+        /**
+         * Whether the file is converted in the fast lane.
+         */
+        private final boolean small;
+        /**
+         * Number of the file in the order files were added.
+         */
+        private final long number;
+
+        /**
+         * Creates new entry.
+         *
+         * @param file   input file path
+         * @param size   file size
+         * @param small  whether the file is small
+         * @param number number of the file in the order files were added
+         */
+        private Entry(final Path file, final long size, final boolean small, final long number) {
+            this.file = file;
+            this.size = size;
+            this.small = small;
+            this.number = number;
+        }
+
+        /**
+         * Returns input file path.
+         *
+         * @return input file path
+         */
+        Path getFile() {
+            return file;
+        }
+
+        /**
+         * Returns file size.
+         *
+         * @return file size in bytes, 0 if it could not be determined
+         */
+        long getSize() {
+            return size;
+        }
+
+        /**
+         * Returns whether the file is converted in the fast lane.
+         *
+         * @return true if the file is small
+         */
+        boolean isSmall() {
+            return small;
+        }
+    }
+
+    /**
+     * Maximum size of a file converted in the fast lane.
+     */
+    private final long smallFileSize;
+    /**
+     * Permits for files waiting for a worker.
+     */
+    private final Semaphore waiting;
+    /**
+     * Large files not taken yet, largest first, files of equal size in the
+     * order they were added.
+     */
+    private final PriorityQueue<Entry> largeFiles = new PriorityQueue<>(
+            Comparator.comparingLong((Entry entry) -> -entry.size).thenComparingLong(entry -> entry.number));
+    /**
+     * Small files not taken yet, smallest first, files of equal size in the
+     * order they were added.
+     */
+    private final PriorityQueue<Entry> smallFiles = new PriorityQueue<>(
+            Comparator.comparingLong((Entry entry) -> entry.size).thenComparingLong(entry -> entry.number));
+    /**
+     * Number of files added.
+     */
+    private long addedFiles = 0;
+    /**
+     * Number of small files being converted.
+     */
+    private int runningSmallFiles = 0;
+
+    /**
+     * Creates new schedule.
+     *
+     * @param smallFileSize   maximum size of a file converted in the fast lane
+     * @param maxWaitingFiles maximum number of files waiting for a worker
+     */
+    FileSchedule(final long smallFileSize, final int maxWaitingFiles) {
+        this.smallFileSize = smallFileSize;
+        this.waiting = new Semaphore(maxWaitingFiles);
+    }
+
+    /**
+     * Reads size of a file. Files whose size cannot be read are treated as
+     * empty (and so small), their errors are reported when they are
+     * converted.
+     *
+     * @param file file path
+     *
+     * @return file size
+     */
+    static long size(final Path file) {
+        try {
+            return Files.size(file);
+        } catch (final IOException ex) {
+            return 0;
+        }
+    }
+
+    /**
+     * Adds file to the schedule, waiting while the maximum number of files
+     * waits for a worker. A worker must be started for each file added.
+     *
+     * @param file input file path
+     * @param size file size
+     *
+     * @return entry of the file
+     *
+     * @throws InterruptedException Thrown if interrupted while waiting.
+     */
+    Entry add(final Path file, final long size) throws InterruptedException {
+        waiting.acquire();
+
+        synchronized (this) {
+            final Entry entry = new Entry(file, size, size <= smallFileSize, addedFiles++);
+            (entry.isSmall() ? smallFiles : largeFiles).add(entry);
+
+            return entry;
+        }
+    }
+
+    /**
+     * Takes the next file to be converted by a free worker. The caller must
+     * call {@link #done(Entry)} once the file is converted.
+     *
+     * @return entry of the file, or null if no file waits for a worker
+     */
+    synchronized Entry next() {
+        final Entry entry;
+
+        if (!smallFiles.isEmpty() && (runningSmallFiles == 0 || largeFiles.isEmpty())) {
+            entry = smallFiles.poll();
+            runningSmallFiles++;
+        } else {
+            entry = largeFiles.poll();
+        }
+
+        if (entry != null) {
+            waiting.release();
+        }
+
+        return entry;
+    }
+
+    /**
+     * Marks file taken by {@link #next()} as converted.
+     *
+     * @param entry entry of the file
+     */
+    synchronized void done(final Entry entry) {
+        if (entry.isSmall()) {
+            runningSmallFiles--;
+        }
+    }
+}
@@ -23,7 +23,6 @@ package com.github.peter277.xml2table;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Map;
 
 /**
  * Filter class.
@@ -40,6 +39,11 @@ public class Filter {
      * Filter values.
      */
     private Collection<String> values;
+    /**
+     * Slot index of {@link #column} in item values, or -1 if the column can
+     * never match a value.
+     */
+    private int columnIndex = -1;
     /**
      * If true then items with specified values are excluded, if true then only
      * items with specified values are included.
@@ -101,20 +105,38 @@ public class Filter {
         this.exclude = exclude;
     }
 
+    /**
+     * Resolves {@link #column} to its slot index in item values.
+     *
+     * @param pathTrie compiled row item and column paths
+     */
+    void resolveColumnIndex(final PathTrie pathTrie) {
+        this.columnIndex = pathTrie.indexOf(column);
+    }
+
+    /**
+     * Returns slot index of {@link #column} in item values.
+     *
+     * @return slot index, or -1 if the column can never match a value
+     */
+    int getColumnIndex() {
+        return columnIndex;
+    }
+
     /**
      * Checks whether the item matches the filter.
      *
-     * @param itemValues map of item columns and corresponding values
+     * @param itemValues item values indexed by slot
      *
      * @return true if item matches filter and should be included, false if item
      *         does not match filter and should be excluded
      */
-    public boolean matchesFilter(final Map<String, String> itemValues) {
+    public boolean matchesFilter(final String[] itemValues) {
         if (values == null) {
             return exclude;
         }
 
-        final String itemValue = itemValues.get(column);
+        final String itemValue = columnIndex < 0 ? null : itemValues[columnIndex];
 
         if (itemValue == null) {
             return exclude;
@@ -23,7 +23,6 @@ package com.github.peter277.xml2table;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Map;
 
 /**
  * Filters handler.
@@ -46,15 +45,68 @@ public class Filters {
         filters.add(filter);
     }
 
+    /**
+     * Returns names of columns used by all defined filters.
+     *
+     * @return collection of column names
+     */
+    public Collection<String> getColumns() {
+        final Collection<String> columns = new ArrayList<>(filters.size());
+
+        for (final Filter filter : filters) {
+            columns.add(filter.getColumn());
+        }
+
+        return columns;
+    }
+
+    /**
+     * Resolves columns of all defined filters to their slot indexes in item
+     * values.
+     *
+     * @param pathTrie compiled row item and column paths
+     */
+    void resolveColumnIndexes(final PathTrie pathTrie) {
+        for (final Filter filter : filters) {
+            filter.resolveColumnIndex(pathTrie);
+        }
+    }
+
+    /**
+     * Returns length of the longest value of all filters of a slot. Must be
+     * called after the columns are resolved.
+     *
+     * @param slot slot index
+     *
+     * @return maximum value length, or -1 if no filter uses the slot
+     */
+    int getMaxValueLength(final int slot) {
+        int maxLength = -1;
+
+        for (final Filter filter : filters) {
+            if (filter.getColumnIndex() == slot) {
+                maxLength = Math.max(maxLength, 0);
+
+                if (filter.getValues() != null) {
+                    for (final String value : filter.getValues()) {
+                        maxLength = Math.max(maxLength, value.length());
+                    }
+                }
+            }
+        }
+
+        return maxLength;
+    }
+
     /**
      * Checks whether item matches all defined filters.
      *
-     * @param itemValues map of item columns and corresponding values
+     * @param itemValues item values indexed by slot
      *
      * @return true if item matches all filters, false if item does not match at
      *         least one filter
      */
-    public boolean matchesFilters(final Map<String, String> itemValues) {
+    public boolean matchesFilters(final String[] itemValues) {
         for (final Filter filter : filters) {
             if (!filter.matchesFilter(itemValues)) {
                 return false;
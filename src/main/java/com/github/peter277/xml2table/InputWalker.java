@@ -0,0 +1,208 @@
+package com.github.peter277.xml2table;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Traverses input directory and passes each input file to a visitor as soon
+ * as it is found, so conversion can start before the traversal finishes and
+ * the list of files is never held in memory.
+ * <p>
+ * Files are selected by glob patterns. A pattern containing a slash is
+ * matched against the path relative to the input directory, other patterns
+ * against the file name only, so {@code *.xml} selects XML files in any
+ * subdirectory. Without include patterns, files with a known input extension
+ * are selected. Subdirectories matching an exclude pattern are not
+ * traversed.
+ */
+final class InputWalker {
+
+    /**
+     * Visitor of input files.
+     */
+    @FunctionalInterface
+    interface Visitor {
+
+        /**
+         * Visits input file.
+         *
+         * @param file input file path
+         * @param size file size
+         *
+         * @throws IOException Thrown to stop the traversal.
+         */
+        void visit(Path file, long size) throws IOException;
+
+        /**
+         * Handles file or directory that could not be read. The traversal
+         * continues.
+         *
+         * @param path file or directory path
+         * @param ex   exception
+         */
+        default void failed(final Path path, final IOException ex) {
+        }
+    }
+
+    /**
+     * Input directory.
+     */
+    private final Path dir;
+    /**
+     * Whether subdirectories are traversed.
+     */
+    private final boolean recursive;
+    /**
+     * Extensions of files selected without include patterns.
+     */
+    private final Pattern defaultExtension;
+    /**
+     * Include patterns matched against relative path.
+     */
+    private final List<PathMatcher> includePaths = new ArrayList<>();
+    /**
+     * Include patterns matched against file name.
+     */
+    private final List<PathMatcher> includeNames = new ArrayList<>();
+    /**
+     * Exclude patterns matched against relative path.
+     */
+    private final List<PathMatcher> excludePaths = new ArrayList<>();
+    /**
+     * Exclude patterns matched against file name.
+     */
+    private final List<PathMatcher> excludeNames = new ArrayList<>();
+
+    /**
+     * Creates new walker.
+     *
+     * @param dir              input directory
+     * @param recursive        whether subdirectories are traversed
+     * @param includes         glob patterns of included files, empty to
+     *                         select files by default extension
+     * @param excludes         glob patterns of excluded files and directories
+     * @param defaultExtension extensions of files selected without include
+     *                         patterns, matched against file name
+     *
+     * @throws IllegalArgumentException Thrown if a pattern is invalid.
+     */
+    InputWalker(final Path dir, final boolean recursive, final List<String> includes, final List<String> excludes,
+            final Pattern defaultExtension) {
+        this.dir = dir;
+        this.recursive = recursive;
+        this.defaultExtension = defaultExtension;
+
+        final FileSystem fileSystem = dir.getFileSystem();
+
+        for (final String include : includes) {
+            (include.contains("/") ? includePaths : includeNames).add(fileSystem.getPathMatcher("glob:" + include));
+        }
+        for (final String exclude : excludes) {
+            (exclude.contains("/") ? excludePaths : excludeNames).add(fileSystem.getPathMatcher("glob:" + exclude));
+        }
+    }
+
+    /**
+     * Traverses the input directory.
+     *
+     * @param visitor visitor of input files
+     *
+     * @throws IOException Thrown if the input directory could not be read or
+     *                     the visitor stopped the traversal.
+     */
+    void walk(final Visitor visitor) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            throw new IOException("Input directory does not exist: " + dir);
+        }
+
+        Files.walkFileTree(dir, EnumSet.of(FileVisitOption.FOLLOW_LINKS), recursive ? Integer.MAX_VALUE : 1,
+                new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(final Path subdir, final BasicFileAttributes attrs) {
+                        return subdir.equals(dir) || !isExcluded(subdir) ? FileVisitResult.CONTINUE
+                                : FileVisitResult.SKIP_SUBTREE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs)
+                            throws IOException {
+                        if (attrs.isRegularFile() && isIncluded(file) && !isExcluded(file)) {
+                            visitor.visit(file, attrs.size());
+                        }
+
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(final Path file, final IOException ex) {
+                        visitor.failed(file, ex);
+
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult postVisitDirectory(final Path subdir, final IOException ex) {
+                        if (ex != null) {
+                            visitor.failed(subdir, ex);
+                        }
+
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+    }
+
+    /**
+     * Checks whether file is selected by include patterns.
+     *
+     * @param file file path
+     *
+     * @return true if the file is included
+     */
+    private boolean isIncluded(final Path file) {
+        if (includePaths.isEmpty() && includeNames.isEmpty()) {
+            return defaultExtension.matcher(file.getFileName().toString()).find();
+        }
+
+        return matches(includePaths, includeNames, file);
+    }
+
+    /**
+     * Checks whether file or directory is excluded.
+     *
+     * @param path file or directory path
+     *
+     * @return true if the path is excluded
+     */
+    private boolean isExcluded(final Path path) {
+        return matches(excludePaths, excludeNames, path);
+    }
+
+    /**
+     * Checks whether path matches any of the patterns.
+     *
+     * @param pathMatchers patterns matched against relative path
+     * @param nameMatchers patterns matched against file name
+     * @param path         file or directory path
+     *
+     * @return true if any pattern matches
+     */
+    private boolean matches(final List<PathMatcher> pathMatchers, final List<PathMatcher> nameMatchers,
+            final Path path) {
+        final Path relative = dir.relativize(path);
+        final Path name = path.getFileName();
+
+        return pathMatchers.stream().anyMatch(matcher -> matcher.matches(relative))
+                || nameMatchers.stream().anyMatch(matcher -> matcher.matches(name));
+    }
+}
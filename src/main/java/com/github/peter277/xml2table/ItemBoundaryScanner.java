@@ -0,0 +1,542 @@
+package com.github.peter277.xml2table;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Byte level scanner which finds start tags of row items in an XML document,
+ * so that the document can be split into ranges of whole row items.
+ * <p>
+ * The scanner tokenizes markup only as far as needed to track element
+ * nesting: comments, CDATA sections and processing instructions are skipped
+ * as a whole, so tag-like text inside them is never mistaken for a row item.
+ * For each boundary, the start tags of the open ancestor elements are
+ * captured verbatim (including any namespace declarations), so that a range
+ * can be parsed on its own by wrapping it into those tags.
+ * <p>
+ * Documents with a DOCTYPE declaration (which may declare entities or default
+ * attributes) or in an encoding which is not ASCII compatible cannot be split
+ * safely; {@link #isSplittable()} returns false once such construct has been
+ * found.
+ */
+final class ItemBoundaryScanner implements Closeable {
+
+    /**
+     * Encoding declaration in XML declaration.
+     */
+    private static final Pattern ENCODING_PATTERN = Pattern.compile("encoding\\s*=\\s*[\"']([^\"']*)[\"']");
+    /**
+     * Encodings in which markup characters can be found by their ASCII byte
+     * values.
+     */
+    private static final Pattern ASCII_COMPATIBLE_ENCODING = Pattern.compile(
+            "utf-?8|us-ascii|ascii|iso-?8859-\\d+|latin-?1|windows-125\\d|cp125\\d");
+
+    /**
+     * Input stream.
+     */
+    private final InputStream inputStream;
+    /**
+     * UTF-8 encoded local names of the row item path elements.
+     */
+    private final byte[][] itemPath;
+    /**
+     * Read buffer.
+     */
+    private final byte[] buffer = new byte[1 << 20];
+    /**
+     * Position of next byte in {@link #buffer}.
+     */
+    private int bufferPosition = 0;
+    /**
+     * Number of valid bytes in {@link #buffer}.
+     */
+    private int bufferLength = 0;
+    /**
+     * Offset of {@link #buffer} start in the input.
+     */
+    private long bufferOffset = 0;
+    /**
+     * Number of open elements.
+     */
+    private int depth = 0;
+    /**
+     * Number of leading open elements which match the row item path.
+     */
+    private int matchedDepth = 0;
+    /**
+     * Start tags of open elements which match the row item path.
+     */
+    private final byte[][] ancestorTags;
+    /**
+     * Qualified names of open elements which match the row item path.
+     */
+    private final byte[][] ancestorNames;
+    /**
+     * XML declaration, empty if the document has none.
+     */
+    private byte[] declaration = new byte[0];
+    /**
+     * Whether the document starts with UTF-8 byte order mark.
+     */
+    private boolean bom = false;
+    /**
+     * Whether the document can be split safely.
+     */
+    private boolean splittable = true;
+    /**
+     * Buffer for capturing markup.
+     */
+    private byte[] capture = new byte[256];
+    /**
+     * Number of captured bytes in {@link #capture}.
+     */
+    private int captureLength = 0;
+
+    /**
+     * Creates new scanner.
+     *
+     * @param inputStream input stream positioned at the start of the document
+     * @param itemPath    local names of the row item path elements
+     */
+    ItemBoundaryScanner(final InputStream inputStream, final String[] itemPath) {
+        this.inputStream = inputStream;
+        this.itemPath = new byte[itemPath.length][];
+        this.ancestorTags = new byte[itemPath.length][];
+        this.ancestorNames = new byte[itemPath.length][];
+
+        for (int i = 0; i < itemPath.length; i++) {
+            this.itemPath[i] = itemPath[i].getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Returns whether the document can be split safely. Only meaningful for
+     * the part of the document scanned so far.
+     *
+     * @return false if a construct preventing safe splitting was found
+     */
+    boolean isSplittable() {
+        return splittable;
+    }
+
+    /**
+     * Finds start tag of the next row item at or after given offset.
+     *
+     * @param minOffset minimum offset of the row item start tag
+     *
+     * @return boundary at the row item start tag, or null if the end of the
+     *         document was reached or the document cannot be split
+     *
+     * @throws IOException Thrown if problem occurred while reading input.
+     */
+    Boundary next(final long minOffset) throws IOException {
+        while (splittable && skipText()) {
+            final long tagOffset = bufferOffset + bufferPosition;
+            bufferPosition++;
+
+            final int chr = read();
+
+            if (chr == '?') {
+                skipProcessingInstruction(tagOffset);
+            } else if (chr == '!') {
+                skipDeclaration();
+            } else if (chr == '/') {
+                skipPast('>');
+                depth--;
+
+                if (matchedDepth > depth) {
+                    matchedDepth = depth;
+                }
+            } else if (chr >= 0) {
+                final Boundary boundary = scanStartTag(chr, tagOffset, minOffset);
+
+                if (boundary != null) {
+                    return boundary;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Scans start tag after its first name character.
+     *
+     * @param firstChr  first character of element name
+     * @param tagOffset offset of the tag
+     * @param minOffset minimum offset of the row item start tag
+     *
+     * @return boundary if the tag is a row item start tag at or after
+     *         minimum offset, otherwise null
+     *
+     * @throws IOException Thrown if problem occurred while reading input.
+     */
+    private Boundary scanStartTag(final int firstChr, final long tagOffset, final long minOffset)
+            throws IOException {
+        // Only start tags of possible row item ancestors are captured
+        final boolean candidate = matchedDepth == depth && depth < itemPath.length;
+
+        captureLength = 0;
+        if (candidate) {
+            capture('<');
+            capture(firstChr);
+        }
+
+        // Element name
+        int localNameStart = candidate ? 1 : -1;
+        int chr = firstChr;
+
+        while (true) {
+            if (chr == ':' && candidate) {
+                localNameStart = captureLength;
+            }
+
+            chr = read();
+
+            if (chr < 0 || chr == '>' || chr == '/' || isWhiteSpace(chr)) {
+                break;
+            }
+
+            if (candidate) {
+                capture(chr);
+            }
+        }
+
+        final int nameEnd = captureLength;
+
+        // Attributes
+        int quote = 0;
+        int previous = 0;
+
+        while (chr >= 0 && (chr != '>' || quote != 0)) {
+            if (candidate) {
+                capture(chr);
+            }
+
+            if (quote == 0 && (chr == '"' || chr == '\'')) {
+                quote = chr;
+            } else if (chr == quote) {
+                quote = 0;
+            }
+
+            previous = chr;
+            chr = read();
+        }
+
+        if (chr < 0) {
+            return null;
+        }
+
+        final boolean empty = previous == '/';
+
+        if (candidate) {
+            capture('>');
+
+            if (Arrays.equals(capture, localNameStart, nameEnd, itemPath[depth], 0, itemPath[depth].length)) {
+                if (depth == itemPath.length - 1) {
+                    // Row item start tag; the document root element is never a row item
+                    final Boundary boundary = depth > 0 && tagOffset >= minOffset
+                            ? createBoundary(tagOffset) : null;
+
+                    if (!empty) {
+                        depth++;
+                    }
+
+                    return boundary;
+                } else if (!empty) {
+                    ancestorTags[depth] = Arrays.copyOf(capture, captureLength);
+                    ancestorNames[depth] = Arrays.copyOfRange(capture, 1, nameEnd);
+                    depth++;
+                    matchedDepth = depth;
+                }
+
+                return null;
+            }
+        }
+
+        if (!empty) {
+            depth++;
+        }
+
+        return null;
+    }
+
+    /**
+     * Creates boundary for a row item start tag using current open elements.
+     *
+     * @param offset offset of the row item start tag
+     *
+     * @return boundary
+     */
+    private Boundary createBoundary(final long offset) {
+        final ByteArrayOutputStream prefix = new ByteArrayOutputStream(256);
+        final ByteArrayOutputStream suffix = new ByteArrayOutputStream(64);
+
+        prefix.writeBytes(declaration);
+
+        for (int i = 0; i < depth; i++) {
+            prefix.writeBytes(ancestorTags[i]);
+        }
+
+        for (int i = depth - 1; i >= 0; i--) {
+            suffix.write('<');
+            suffix.write('/');
+            suffix.writeBytes(ancestorNames[i]);
+            suffix.write('>');
+        }
+
+        return new Boundary(offset, prefix.toByteArray(), suffix.toByteArray());
+    }
+
+    /**
+     * Skips processing instruction, capturing it if it is the XML
+     * declaration.
+     *
+     * @param tagOffset offset of the processing instruction
+     *
+     * @throws IOException Thrown if problem occurred while reading input.
+     */
+    private void skipProcessingInstruction(final long tagOffset) throws IOException {
+        final boolean first = tagOffset == 0 || tagOffset == 3 && declaration.length == 0 && bom;
+
+        captureLength = 0;
+        capture('<');
+        capture('?');
+
+        int previous = 0;
+        int chr;
+
+        while ((chr = read()) >= 0) {
+            capture(chr);
+
+            if (previous == '?' && chr == '>') {
+                break;
+            }
+
+            previous = chr;
+        }
+
+        if (first) {
+            final String pi = new String(capture, 0, captureLength, StandardCharsets.ISO_8859_1);
+
+            if (pi.startsWith("<?xml") && pi.length() > 5 && isWhiteSpace(pi.charAt(5))) {
+                final Matcher matcher = ENCODING_PATTERN.matcher(pi);
+
+                if (matcher.find() && !ASCII_COMPATIBLE_ENCODING.matcher(
+                        matcher.group(1).toLowerCase(Locale.ROOT)).matches()) {
+                    splittable = false;
+                }
+
+                declaration = Arrays.copyOf(capture, captureLength);
+            }
+        }
+    }
+
+    /**
+     * Skips comment or CDATA section. Any other declaration (DOCTYPE) makes
+     * the document unsplittable.
+     *
+     * @throws IOException Thrown if problem occurred while reading input.
+     */
+    private void skipDeclaration() throws IOException {
+        final int chr = read();
+
+        if (chr == '-') {
+            read();
+            skipPast('-', '-', '>');
+        } else if (chr == '[') {
+            skipPast(']', ']', '>');
+        } else {
+            splittable = false;
+        }
+    }
+
+    /**
+     * Skips input past given character.
+     *
+     * @param end character
+     *
+     * @throws IOException Thrown if problem occurred while reading input.
+     */
+    private void skipPast(final int end) throws IOException {
+        int chr;
+
+        do {
+            chr = read();
+        } while (chr >= 0 && chr != end);
+    }
+
+    /**
+     * Skips input past given sequence of three characters.
+     *
+     * @param first  first character
+     * @param second second character
+     * @param third  third character
+     *
+     * @throws IOException Thrown if problem occurred while reading input.
+     */
+    private void skipPast(final int first, final int second, final int third) throws IOException {
+        int previous2 = 0;
+        int previous1 = 0;
+        int chr;
+
+        while ((chr = read()) >= 0) {
+            if (chr == third && previous1 == second && previous2 == first) {
+                return;
+            }
+
+            previous2 = previous1;
+            previous1 = chr;
+        }
+    }
+
+    /**
+     * Skips text up to the next markup.
+     *
+     * @return true if positioned at '&lt;', false at the end of input
+     *
+     * @throws IOException Thrown if problem occurred while reading input.
+     */
+    private boolean skipText() throws IOException {
+        while (bufferPosition < bufferLength || fill()) {
+            final byte[] bytes = buffer;
+            final int end = bufferLength;
+            int i = bufferPosition;
+
+            while (i < end && bytes[i] != '<') {
+                i++;
+            }
+
+            bufferPosition = i;
+
+            if (i < end) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Reads next byte of input.
+     *
+     * @return next byte, or -1 at the end of input
+     *
+     * @throws IOException Thrown if problem occurred while reading input.
+     */
+    private int read() throws IOException {
+        if (bufferPosition == bufferLength && !fill()) {
+            return -1;
+        }
+
+        return buffer[bufferPosition++] & 0xff;
+    }
+
+    /**
+     * Fills read buffer with next bytes of input.
+     *
+     * @return false at the end of input
+     *
+     * @throws IOException Thrown if problem occurred while reading input.
+     */
+    private boolean fill() throws IOException {
+        final boolean start = bufferOffset == 0 && bufferLength == 0;
+
+        bufferOffset += bufferLength;
+        bufferLength = Math.max(0, inputStream.readNBytes(buffer, 0, buffer.length));
+        bufferPosition = 0;
+
+        if (start && bufferLength > 0) {
+            checkByteOrderMark();
+        }
+
+        return bufferLength > 0;
+    }
+
+    /**
+     * Appends byte to captured markup.
+     *
+     * @param chr byte
+     */
+    private void capture(final int chr) {
+        if (captureLength == capture.length) {
+            capture = Arrays.copyOf(capture, captureLength * 2);
+        }
+
+        capture[captureLength++] = (byte) chr;
+    }
+
+    /**
+     * Checks byte order mark at the start of the document. Documents in UTF-16
+     * or UTF-32 are not splittable.
+     */
+    private void checkByteOrderMark() {
+        final int b0 = buffer[0] & 0xff;
+        final int b1 = bufferLength > 1 ? buffer[1] & 0xff : -1;
+        final int b2 = bufferLength > 2 ? buffer[2] & 0xff : -1;
+
+        if (b0 == 0xef && b1 == 0xbb && b2 == 0xbf) {
+            bom = true;
+        } else if (b0 == 0xfe || b0 == 0xff || b0 == 0 || b1 == 0) {
+            splittable = false;
+        }
+    }
+
+    /**
+     * Checks whether character is XML white space.
+     *
+     * @param chr character
+     *
+     * @return true if character is white space
+     */
+    private static boolean isWhiteSpace(final int chr) {
+        return chr == ' ' || chr == '\t' || chr == '\n' || chr == '\r';
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+
+    /**
+     * Boundary at a row item start tag.
+     */
+    static final class Boundary {
+
+        /**
+         * Offset of the row item start tag.
+         */
+        final long offset;
+        /**
+         * XML declaration and start tags of open ancestor elements, which
+         * make a document starting at this boundary well-formed.
+         */
+        final byte[] prefix;
+        /**
+         * End tags of open ancestor elements, which make a document ending
+         * at this boundary well-formed.
+         */
+        final byte[] suffix;
+
+        /**
+         * Creates new boundary.
+         *
+         * @param offset offset of the row item start tag
+         * @param prefix XML declaration and ancestor start tags
+         * @param suffix ancestor end tags
+         */
+        Boundary(final long offset, final byte[] prefix, final byte[] suffix) {
+            this.offset = offset;
+            this.prefix = prefix;
+            this.suffix = suffix;
+        }
+    }
+}
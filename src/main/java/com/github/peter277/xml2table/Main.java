@@ -23,21 +23,31 @@ package com.github.peter277.xml2table;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Writer;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 
 import picocli.CommandLine;
 import picocli.CommandLine.Option;
@@ -53,8 +63,24 @@ import picocli.CommandLine.Mixin;
 @Command(name = "xml2table", version = "0.1.0",
          mixinStandardHelpOptions = true,
          sortOptions = false,
-         description = "%nConvert XML to flat files. The application reads and writes files using UTF-8 encoding.%n")
+         description = "%nConvert XML to flat files. The application reads and writes files using UTF-8 encoding.%n",
+         footer = {"%nRun 'xml2table tables --help' for converting a file into several tables.",
+                   "Run 'xml2table columns --help' for discovering and profiling columns."})
 public class Main implements Runnable {
+    /**
+     * Extensions of input files looked up in input directory, replaced by
+     * .txt in output file names.
+     */
+    private static final Pattern INPUT_FILE_EXTENSION = Pattern.compile("(?i)\\.(xml(\\.gz)?|tar(\\.gz)?|tgz|gz|zip)$");
+    /**
+     * Factories of commands run instead of the conversion, by the command
+     * name given as the first argument. They are not picocli subcommands,
+     * which would require the options of the conversion.
+     */
+    private static final Map<String, Supplier<Callable<Integer>>> COMMANDS = Map.of(
+            TablesCommand.NAME, TablesCommand::new,
+            ColumnsCommand.NAME, ColumnsCommand::new);
+
     @ArgGroup(exclusive = false, multiplicity = "1", heading = "%nFile processing options:%n%n")
     private FileProcessingOptions fileProcessingOptions = new FileProcessingOptions();
 
@@ -67,55 +93,109 @@ public class Main implements Runnable {
     @ArgGroup(exclusive = false, multiplicity = "0..*", heading = "%nRemapping (value replacement) options:%n%n")
     private final List<RemappingOptions> remappingOptions = new ArrayList<>();
 
+    /**
+     * Number of files (or archive entries) whose conversion failed.
+     */
+    private int failedFileCount = 0;
+
     /**
      * Main method.
      *
      * @param args
      */
     public static void main(String[] args) {
-        int exitCode = new CommandLine(new Main()).execute(args);
-        System.exit(exitCode);
+        System.exit(execute(args));
+    }
+
+    /**
+     * Runs the conversion, or the command named by the first argument.
+     *
+     * @param args command line arguments
+     *
+     * @return exit code
+     */
+    static int execute(final String... args) {
+        final Supplier<Callable<Integer>> command = args.length > 0 ? COMMANDS.get(args[0]) : null;
+
+        if (command == null) {
+            return new CommandLine(new Main()).setCaseInsensitiveEnumValuesAllowed(true).execute(args);
+        }
+
+        return new CommandLine(command.get()).setCaseInsensitiveEnumValuesAllowed(true)
+                .execute(Arrays.copyOfRange(args, 1, args.length));
+    }
+
+    /**
+     * Returns number of files (or archive entries) whose conversion failed in
+     * the last run.
+     *
+     * @return number of failed files
+     */
+    int getFailedFileCount() {
+        return failedFileCount;
     }
 
     @Override
     public void run() {
-        // Process any filtering options
-        for (FilteringOptions filteringOption : filteringOptions) {
-            Filter filter = new Filter();
-            filter.setColumn(filteringOption.filterColumn);
-            filter.setValues(loadValues(filteringOption.filterValuesFile));
-            filter.setExclude(filteringOption.filterExclude);
-            convertorSettings.filters.addFilter(filter);
+        addFiltersAndRemappings(convertorSettings, filteringOptions, remappingOptions);
+
+        // Child tables are converted together with the row item table in a single pass
+        final List<ConvertorSettings> tableSettings;
+        try {
+            tableSettings = convertorSettings.getTableSettings();
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            return;
         }
 
-        // Process any remapping options
-        for (RemappingOptions remappingOption : remappingOptions) {
-            Remapping remapping = new Remapping();
-            remapping.setColumn(remappingOption.remapColumn);
-            remapping.setMap(loadMap(remappingOption.remapMapFile));
-            convertorSettings.remappings.addRemapping(remapping);
+        if (tableSettings.size() > 1 && (fileProcessingOptions.splitInput || fileProcessingOptions.fastScan)) {
+            System.err.println("Error: Child tables cannot be used with --split-input or --fast-scan.");
+            return;
         }
 
-        // If input directory is specified, add all XML files in the directory
-        // to the input files list
-        if (fileProcessingOptions.inputOptions.inputDir != null) {
+        if (fileProcessingOptions.checkpointInterval < 0) {
+            System.err.println("Error: Checkpoint interval cannot be negative.");
+            return;
+        }
+        if (fileProcessingOptions.checkpointInterval > 0 && (tableSettings.size() > 1
+                || fileProcessingOptions.splitInput || convertorSettings.generalOptions.gzipOutput)) {
+            System.err.println("Error: --checkpoint-interval cannot be used with child tables, --split-input or --gzip-output.");
+            return;
+        }
+
+        // Files of input directory are discovered while they are converted
+        final Path inputDir = fileProcessingOptions.inputOptions.inputDir;
+        if (inputDir != null) {
             if (fileProcessingOptions.outputOptions.outputDir == null) {
                 System.err.println("Error: Output directory must be specified when input directory is used.");
                 return;
             }
+        } else if (fileProcessingOptions.recursive || !fileProcessingOptions.includes.isEmpty()
+                || !fileProcessingOptions.excludes.isEmpty()) {
+            System.err.println("Error: --recursive, --include and --exclude can only be used with --input-dir.");
+            return;
+        }
 
-            try {
-                fileProcessingOptions.inputOptions.inputFiles = Files.list(fileProcessingOptions.inputOptions.inputDir)
-                        .filter(path -> path.toString().toLowerCase().endsWith(".xml"))
-                        .toArray(Path[]::new);
-            } catch (IOException e) {
-                System.err.println("Error processing input directory: " + e.toString());
-                return;
-            }
+        if (fileProcessingOptions.incremental && fileProcessingOptions.outputOptions.outputDir == null) {
+            System.err.println("Error: Output directory must be specified when --incremental is used.");
+            return;
+        }
+        if (fileProcessingOptions.force && !fileProcessingOptions.incremental) {
+            System.err.println("Error: --force can only be used with --incremental.");
+            return;
+        }
+
+        final InputWalker inputWalker;
+        try {
+            inputWalker = inputDir == null ? null : new InputWalker(inputDir, fileProcessingOptions.recursive,
+                    fileProcessingOptions.includes, fileProcessingOptions.excludes, INPUT_FILE_EXTENSION);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: Invalid glob pattern: " + e.getMessage());
+            return;
         }
 
         // If multiple input files are specified, ensure that an output directory is specified
-        if (fileProcessingOptions.inputOptions.inputFiles.length > 1 && fileProcessingOptions.outputOptions.outputFile != null) {
+        if (inputDir == null && fileProcessingOptions.inputOptions.inputFiles.length > 1 && fileProcessingOptions.outputOptions.outputFile != null) {
             System.err.println("Error: Output directory must be specified when multiple input files are used.");
             return;
         }
@@ -146,47 +226,258 @@ public class Main implements Runnable {
         }
 
         // Determine parallelism
-        int parallelism;
+        int threads;
         if (fileProcessingOptions.parallelOption == null) {
-            parallelism = 1;
+            threads = 1;
         } else if ("__AUTO__".equals(fileProcessingOptions.parallelOption)) {
-            parallelism = Math.min(Runtime.getRuntime().availableProcessors(), fileProcessingOptions.inputOptions.inputFiles.length);
+            threads = Runtime.getRuntime().availableProcessors();
         } else {
             int requested = Integer.parseInt(fileProcessingOptions.parallelOption);
             int max = Runtime.getRuntime().availableProcessors();
-            parallelism = Math.min(Math.min(requested, max), fileProcessingOptions.inputOptions.inputFiles.length);
+            threads = Math.min(requested, max);
+        }
+        // Archives are expanded into their XML entries when output directory is used
+        final Path outputDir = fileProcessingOptions.outputOptions.outputDir;
+        final Path[] inputFiles = inputDir == null ? fileProcessingOptions.inputOptions.inputFiles : new Path[0];
+        final boolean[] archives = new boolean[inputFiles.length];
+        boolean hasArchives = false;
+
+        if (outputDir != null) {
+            for (int i = 0; i < inputFiles.length; i++) {
+                archives[i] = isArchive(inputFiles[i]);
+                hasArchives |= archives[i];
+            }
+        }
+
+        // Number of files in input directory is not known in advance
+        int parallelism = hasArchives || inputDir != null ? threads : Math.min(threads, inputFiles.length);
+
+        // When splitting input files, all threads can work on a single file
+        final ExecutorService splitExecutorService;
+        if (fileProcessingOptions.splitInput && threads > 1) {
+            splitExecutorService = Executors.newFixedThreadPool(threads);
+            System.err.println("Info: Using " + threads + " threads for processing, splitting input files");
+        } else {
+            splitExecutorService = null;
+            System.err.println("Info: Using " + parallelism + " threads for processing");
+        }
+
+        // Results are aggregated as files finish, optionally writing status of each file to report file
+        final BatchReport report;
+        try {
+            report = new BatchReport(fileProcessingOptions.reportFile, System.nanoTime());
+        } catch (IOException e) {
+            System.err.println("Error creating report file: " + e.toString());
+            if (splitExecutorService != null) {
+                splitExecutorService.shutdown();
+            }
+            return;
         }
 
-        System.err.println("Info: Using " + parallelism + " threads for processing");
+        // Inputs unchanged since the previous incremental run are skipped
+        final Manifest manifest;
+        final String settingsFingerprint;
+        try {
+            manifest = fileProcessingOptions.incremental ? Manifest.load(outputDir, fileProcessingOptions.force) : null;
+            settingsFingerprint = fileProcessingOptions.incremental || fileProcessingOptions.checkpointInterval > 0
+                    ? getSettingsFingerprint(convertorSettings, filteringOptions, remappingOptions) : null;
+        } catch (IOException e) {
+            System.err.println("Error preparing manifest: " + e.toString());
+            if (splitExecutorService != null) {
+                splitExecutorService.shutdown();
+            }
+            return;
+        }
 
         // Initiate file processing using thread pool executor service
         ExecutorService executorService = Executors.newFixedThreadPool(parallelism);
-        
-        List<Future<String>> futures = new ArrayList<>();
-        int successCount = 0;
-        Map<Path, Exception> failedFiles = new HashMap<>();
 
-        for (Path file : fileProcessingOptions.inputOptions.inputFiles) {
+        // Files are taken by free workers largest first, with a fast lane for small files. Only a bounded
+        // number of discovered files waits for a worker, so the traversal is paced by the conversion.
+        final FileSchedule schedule = new FileSchedule(FileSchedule.DEFAULT_SMALL_FILE_SIZE,
+                inputDir != null ? FileSchedule.DEFAULT_MAX_WAITING_FILES : Math.max(1, inputFiles.length));
+        final List<Path> archiveFiles = new ArrayList<>();
+
+        // Each worker converts the next file of the schedule
+        final Runnable worker = () -> {
+            final FileSchedule.Entry entry = schedule.next();
+            final long start = System.nanoTime();
+            Throwable error = null;
+
             try {
-                System.err.println("Submitting file for processing: " + file.toString());
+                final Manifest.Entry state = manifest != null
+                        ? manifest.check(entry.getFile(), settingsFingerprint) : null;
+
+                if (state != null && state.isUnchanged() && getTableOutputFiles(tableSettings,
+                        getOutputFile(entry.getFile())).stream().allMatch(Files::exists)) {
+                    manifest.record(entry.getFile(), state);
+                    report.recordSkipped(entry.getFile().toString());
+                    return;
+                }
 
-                // Create a callable task for each file
-                Callable<String> task = () -> {
-                    if (fileProcessingOptions.outputOptions.outputDir != null) {
-                        Path outputFilePath = fileProcessingOptions.outputOptions.outputDir.resolve(file.getFileName().toString().replaceAll("(?i)\\.xml$", ".txt"));
-                        Convertor.newConvertorFromFiles(file, outputFilePath, convertorSettings).convert();
-                    }
-                    else {
-                        Convertor.newConvertorFromFiles(file, fileProcessingOptions.outputOptions.outputFile, convertorSettings).convert();
+                if (manifest != null) {
+                    manifest.starting(entry.getFile());
+                }
+
+                convertFile(entry.getFile(), tableSettings, splitExecutorService, threads, settingsFingerprint);
+
+                if (manifest != null) {
+                    manifest.record(entry.getFile(), state);
+                }
+            } catch (Throwable e) {
+                error = e;
+            } finally {
+                schedule.done(entry);
+            }
+
+            report.record(entry.getFile().toString(), start, System.nanoTime(), error);
+        };
+
+        final InputWalker.Visitor submitter = new InputWalker.Visitor() {
+            @Override
+            public void visit(final Path file, final long size) throws IOException {
+                if (inputDir != null && isArchive(file)) {
+                    archiveFiles.add(file);
+                    return;
+                }
+
+                if (!report.hasReportFile()) {
+                    System.err.println("Submitting file for processing: " + file.toString());
+                }
+
+                try {
+                    schedule.add(file, size);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for a worker");
+                }
+
+                // Files of input directory are converted while it is traversed
+                if (inputDir != null) {
+                    executorService.execute(worker);
+                }
+            }
+
+            @Override
+            public void failed(final Path path, final IOException e) {
+                final long now = System.nanoTime();
+                report.record(path.toString(), now, now, e);
+            }
+        };
+
+        try {
+            if (inputWalker != null) {
+                inputWalker.walk(submitter);
+            } else {
+                int scheduledFiles = 0;
+
+                for (int i = 0; i < inputFiles.length; i++) {
+                    if (archives[i]) {
+                        archiveFiles.add(inputFiles[i]);
+                    } else {
+                        submitter.visit(inputFiles[i], FileSchedule.size(inputFiles[i]));
+                        scheduledFiles++;
                     }
+                }
+
+                // Workers start once all listed files are scheduled, so the list is ordered as a whole
+                for (int i = 0; i < scheduledFiles; i++) {
+                    executorService.execute(worker);
+                }
+            }
+        } catch (IOException e) {
+            if (inputDir != null) {
+                System.err.println("Error processing input directory: " + e.toString());
+                submitter.failed(inputDir, e);
+            } else {
+                System.err.println("Error: " + e.toString());
+            }
+        }
+
+        // Start and end time of archive entries being converted
+        final Map<String, long[]> entryTimes = new ConcurrentHashMap<>();
+        final Set<Path> entryOutputFiles = ConcurrentHashMap.newKeySet();
+
+        for (final Path file : archiveFiles) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+
+            if (!report.hasReportFile()) {
+                System.err.println("Submitting archive entries for processing: " + file.toString());
+            }
+
+            // Output files of archives in subdirectories of input directory are written to the same subdirectories
+            final Path entryOutputDir = inputDir != null && file.getParent() != null
+                    ? outputDir.resolve(inputDir.relativize(file.getParent()).toString()) : outputDir;
+
+            // Archive is recorded in manifest once all its entries are converted
+            final Manifest.Entry state;
+            try {
+                state = manifest != null ? manifest.check(file, settingsFingerprint) : null;
 
-                    return file.toString();
-                };
+                if (state != null && state.isUnchanged()) {
+                    manifest.record(file, state);
+                    report.recordSkipped(file.toString());
+                    continue;
+                }
 
-                futures.add(executorService.submit(task));
+                if (manifest != null) {
+                    manifest.starting(file);
+                }
+            } catch (IOException e) {
+                final long now = System.nanoTime();
+                report.record(file.toString(), now, now, e);
+                continue;
+            }
+
+            final AtomicInteger unfinishedEntries = new AtomicInteger(1);
+            final AtomicBoolean entriesFailed = new AtomicBoolean(false);
+            final Runnable entryFinished = () -> {
+                if (unfinishedEntries.decrementAndGet() == 0 && !entriesFailed.get() && manifest != null) {
+                    manifest.record(file, state);
+                }
+            };
+
+            try {
+                ArchiveInput.submitEntries(file, executorService, parallelism * 2,
+                        (entryName, inputStream) -> {
+                            final String name = ArchiveInput.displayName(file, entryName);
+                            final long start = System.nanoTime();
+
+                            try {
+                                convertEntry(entryName, inputStream, entryOutputDir, entryOutputFiles);
+                            } finally {
+                                entryTimes.put(name, new long[]{start, System.nanoTime()});
+                            }
+                        },
+                        (name, task) -> {
+                            unfinishedEntries.incrementAndGet();
+                            task.whenComplete((result, error) -> {
+                                final long now = System.nanoTime();
+                                final long[] times = entryTimes.remove(name);
+                                report.record(name, times != null ? times[0] : now, times != null ? times[1] : now,
+                                        error instanceof CompletionException ? error.getCause() : error);
+                                if (error != null) {
+                                    entriesFailed.set(true);
+                                }
+                                entryFinished.run();
+                            });
+                        });
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                entriesFailed.set(true);
+                submitter.failed(file, new InterruptedIOException("Interrupted while submitting archive entries"));
+                break;
             }
             catch (Exception e) {
-                System.err.println("Error: " + e.getClass().getSimpleName() + ": " + e.toString());
+                entriesFailed.set(true);
+                final long now = System.nanoTime();
+                report.record(file.toString(), now, now, e);
+            }
+            finally {
+                entryFinished.run();
             }
         }
 
@@ -199,33 +490,311 @@ public class Main implements Runnable {
             System.err.println("Error: " + e.toString());
         }
 
-        // Check for exceptions in the futures
-        for (int i = 0; i < fileProcessingOptions.inputOptions.inputFiles.length; i++) {
-            Path file = fileProcessingOptions.inputOptions.inputFiles[i];
-            Future<String> future = futures.get(i);
+        if (splitExecutorService != null) {
+            splitExecutorService.shutdown();
+        }
 
+        try {
+            report.close();
+        } catch (IOException e) {
+            System.err.println("Error writing report file: " + e.toString());
+        }
+
+        if (manifest != null) {
             try {
-                String result = future.get();
-                System.err.println("Successfully processed file: " + result);
-                successCount++;
-            } catch (ExecutionException e) {
-                Throwable cause = e.getCause();
-                failedFiles.put(file, cause instanceof Exception ? (Exception) cause : new Exception(cause));
-            } catch (InterruptedException e) {
-                System.err.println("Error: " + e.toString());
+                manifest.save();
+            } catch (IOException e) {
+                System.err.println("Error writing manifest: " + e.toString());
             }
         }
 
+        final int successCount = report.getSuccessCount();
+        final Map<String, Exception> failedFiles = report.getFailures();
+        failedFileCount = failedFiles.size();
+
         // Print summary
         System.err.println("\nProcessing Summary:\n-------------------");
-        System.err.println("Total files: " + fileProcessingOptions.inputOptions.inputFiles.length);
+        System.err.println("Total files: " + (successCount + report.getSkippedCount() + failedFiles.size()));
         System.err.println("Successful: " + successCount);
+        if (manifest != null) {
+            System.err.println("Skipped (unchanged): " + report.getSkippedCount());
+        }
         System.err.println("Failed: " + failedFiles.size());
-        for (Map.Entry<Path, Exception> entry : failedFiles.entrySet()) {
-            System.out.println("File: " + entry.getKey().toString() + " | Error: " + entry.getValue().getClass().getSimpleName() + ": " + entry.getValue().getMessage());
+        for (Map.Entry<String, Exception> entry : failedFiles.entrySet()) {
+            System.out.println("File: " + entry.getKey() + " | Error: " + entry.getValue().getClass().getSimpleName() + ": " + entry.getValue().getMessage());
+        }
+        final List<BatchReport.Duration> slowest = report.getSlowest();
+        if (!slowest.isEmpty()) {
+            System.err.println("\nSlowest files:");
+            for (BatchReport.Duration duration : slowest) {
+                System.err.println(String.format(Locale.ROOT, "%10.3f s  (started at %.3f s)  %s",
+                        duration.getSeconds(), duration.getStartSeconds(), duration.getName()));
+            }
+        }
+        if (report.hasReportFile()) {
+            System.err.println("\nStatus of each file written to: " + fileProcessingOptions.reportFile);
         }
     }
 
+    /**
+     * Checks whether input file is an archive whose entries are converted.
+     *
+     * @param file input file path
+     *
+     * @return true if the file is an archive, false if it is not or it could
+     *         not be read (the error is reported when the file is converted)
+     */
+    private static boolean isArchive(final Path file) {
+        try {
+            return ArchiveInput.isArchive(file);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns output file path of input file that is not an archive.
+     *
+     * @param file input file path
+     *
+     * @return output file path of the row item table
+     */
+    private Path getOutputFile(final Path file) {
+        if (fileProcessingOptions.outputOptions.outputDir == null) {
+            return fileProcessingOptions.outputOptions.outputFile;
+        }
+
+        // Output files of files in subdirectories of input directory are written to the same subdirectories
+        final Path inputDir = fileProcessingOptions.inputOptions.inputDir;
+        final Path relativePath = inputDir != null ? inputDir.relativize(file) : file.getFileName();
+
+        return fileProcessingOptions.outputOptions.outputDir.resolve(INPUT_FILE_EXTENSION.matcher(relativePath.toString())
+                .replaceFirst(convertorSettings.generalOptions.gzipOutput ? ".txt.gz" : ".txt"));
+    }
+
+    /**
+     * Converts single input file that is not an archive.
+     *
+     * @param file                 input file path
+     * @param tableSettings        settings of the row item table and its child
+     *                             tables
+     * @param splitExecutorService executor service converting parts of split
+     *                             input files, or null if files are not split
+     * @param threads              number of threads of the split executor
+     *                             service
+     * @param settingsFingerprint  fingerprint of settings affecting the
+     *                             output, or null if files are not
+     *                             checkpointed
+     *
+     * @throws IOException Thrown if the file could not be converted.
+     */
+    private void convertFile(final Path file, final List<ConvertorSettings> tableSettings,
+            final ExecutorService splitExecutorService, final int threads, final String settingsFingerprint)
+            throws IOException {
+        final Path outputFilePath = getOutputFile(file);
+        if (fileProcessingOptions.inputOptions.inputDir != null) {
+            Files.createDirectories(outputFilePath.getParent());
+        }
+
+        if (tableSettings.size() > 1) {
+            MultiTableConvertor.newConvertorFromFiles(file, convertorSettings.getParserBackend(), tableSettings,
+                    getTableOutputFiles(tableSettings, outputFilePath)).convert();
+        }
+        else if (fileProcessingOptions.checkpointInterval > 0) {
+            new CheckpointConvertor(file, outputFilePath, convertorSettings, fileProcessingOptions.checkpointInterval,
+                    settingsFingerprint).convert();
+        }
+        else if (splitExecutorService != null) {
+            new SplitConvertor(file, outputFilePath, convertorSettings, splitExecutorService, threads).convert();
+        }
+        else if (fileProcessingOptions.fastScan) {
+            new MappedConvertor(file, outputFilePath, convertorSettings).convert();
+        }
+        else {
+            Convertor.newConvertorFromFiles(file, outputFilePath, convertorSettings).convert();
+        }
+    }
+
+    /**
+     * Adds filters and remappings specified by options to convertor settings,
+     * loading their values and maps.
+     *
+     * @param settings         convertor settings
+     * @param filteringOptions filtering options
+     * @param remappingOptions remapping options
+     */
+    static void addFiltersAndRemappings(final ConvertorSettings settings,
+            final List<FilteringOptions> filteringOptions, final List<RemappingOptions> remappingOptions) {
+        // Process any filtering options
+        for (FilteringOptions filteringOption : filteringOptions) {
+            Filter filter = new Filter();
+            filter.setColumn(filteringOption.filterColumn);
+            filter.setValues(loadValues(filteringOption.filterValuesFile));
+            filter.setExclude(filteringOption.filterExclude);
+            settings.filters.addFilter(filter);
+        }
+
+        // Process any remapping options
+        for (RemappingOptions remappingOption : remappingOptions) {
+            Remapping remapping = new Remapping();
+            remapping.setColumn(remappingOption.remapColumn);
+            remapping.setMap(loadMap(remappingOption.remapMapFile));
+            settings.remappings.addRemapping(remapping);
+        }
+    }
+
+    /**
+     * Returns fingerprint of settings affecting content of output files, i.e.
+     * conversion options (but not tuning options like threads, buffers or
+     * flushing), child tables, filters and remappings including content of
+     * their value and map files, and version of the application.
+     *
+     * @param settings         convertor settings
+     * @param filteringOptions filtering options
+     * @param remappingOptions remapping options
+     *
+     * @return fingerprint of the settings
+     *
+     * @throws IOException Thrown if a value or map file could not be read.
+     */
+    static String getSettingsFingerprint(final ConvertorSettings settings,
+            final List<FilteringOptions> filteringOptions, final List<RemappingOptions> remappingOptions)
+            throws IOException {
+        final ConvertorSettings.GeneralOptions options = settings.generalOptions;
+        final List<String> parts = new ArrayList<>(Arrays.asList(
+                "version=" + String.join(",", Main.class.getAnnotation(Command.class).version()),
+                "--row-item-name=" + options.itemName,
+                "--columns=" + String.join(",", options.columns),
+                "--separator=" + options.separator,
+                "--quote-mode=" + options.quoteMode,
+                "--no-quote=" + options.noQuote,
+                "--no-header=" + options.noHeader,
+                "--trim=" + options.trimValues,
+                "--join-values=" + options.join,
+                "--join-separator=" + options.joinSeparator,
+                "--max-value-length=" + options.maxValueLength,
+                "--max-item-size=" + options.maxItemSize,
+                "--limit-policy=" + options.limitPolicy,
+                "--parser=" + options.parser,
+                "--no-dtd=" + options.noDtd,
+                "--gzip-output=" + options.gzipOutput));
+
+        for (ConvertorSettings.ChildTableOptions childTable : settings.childTableOptions) {
+            parts.add("--child-table=" + childTable.path);
+            parts.add("--child-columns=" + String.join(",", childTable.columns));
+            parts.add("--child-name=" + childTable.name);
+        }
+        for (FilteringOptions filteringOption : filteringOptions) {
+            parts.add("--filter-column=" + filteringOption.filterColumn);
+            parts.add("--filter-values=" + Manifest.hash(filteringOption.filterValuesFile));
+            parts.add("--filter-exclude=" + filteringOption.filterExclude);
+        }
+        for (RemappingOptions remappingOption : remappingOptions) {
+            parts.add("--remap-column=" + remappingOption.remapColumn);
+            parts.add("--remap-map=" + Manifest.hash(remappingOption.remapMapFile));
+        }
+
+        return Manifest.fingerprint(parts);
+    }
+
+    /**
+     * Returns output file of an archive entry: the entry path within the
+     * output directory, with the .xml extension replaced.
+     *
+     * @param outputDir output directory
+     * @param entryName archive entry name
+     * @param extension extension of the output file
+     *
+     * @return normalized output file path
+     *
+     * @throws IOException Thrown if the entry path is outside of the output
+     *                     directory.
+     */
+    static Path getEntryOutputFile(final Path outputDir, final String entryName, final String extension)
+            throws IOException {
+        final Path outputFilePath = outputDir.resolve(INPUT_FILE_EXTENSION.matcher(entryName)
+                .replaceFirst(extension)).normalize();
+
+        // Entry names must not escape the output directory (e.g. "../x.xml" or absolute paths). Absolute paths
+        // are compared, as a relative directory like "." is normalized to an empty path
+        final Path absoluteOutputDir = outputDir.toAbsolutePath().normalize();
+        final Path absoluteOutputFile = outputFilePath.toAbsolutePath().normalize();
+
+        if (!absoluteOutputFile.startsWith(absoluteOutputDir) || absoluteOutputFile.equals(absoluteOutputDir)) {
+            throw new IOException("Archive entry path is outside of output directory: " + entryName);
+        }
+
+        return outputFilePath;
+    }
+
+    /**
+     * Converts single archive entry. Output file path is the entry path
+     * within the output directory, with the .xml extension replaced.
+     *
+     * @param entryName        archive entry name
+     * @param inputStream      entry data
+     * @param outputDir        output directory
+     * @param entryOutputFiles output files of all archive entries converted
+     *                         so far
+     *
+     * @throws IOException Thrown if the entry could not be converted.
+     */
+    private void convertEntry(final String entryName, final InputStream inputStream, final Path outputDir,
+            final Set<Path> entryOutputFiles) throws IOException {
+        final Path outputFilePath = getEntryOutputFile(outputDir, entryName,
+                convertorSettings.generalOptions.gzipOutput ? ".txt.gz" : ".txt");
+
+        if (!entryOutputFiles.add(outputFilePath)) {
+            throw new IOException("Output file is already written for another archive entry: " + outputFilePath);
+        }
+
+        // Output files of entries at the top of output directory "." have no parent
+        if (outputFilePath.getParent() != null) {
+            Files.createDirectories(outputFilePath.getParent());
+        }
+
+        final List<ConvertorSettings> tableSettings = convertorSettings.getTableSettings();
+
+        if (tableSettings.size() > 1) {
+            final List<Writer> writers = new ArrayList<>(tableSettings.size());
+
+            try {
+                for (final Path tableOutputFile : getTableOutputFiles(tableSettings, outputFilePath)) {
+                    writers.add(convertorSettings.newOutputWriter(tableOutputFile));
+                }
+            } catch (IOException e) {
+                for (final Writer writer : writers) {
+                    writer.close();
+                }
+                throw e;
+            }
+
+            MultiTableConvertor.newConvertorFromStreams(inputStream, convertorSettings.getParserBackend(), tableSettings,
+                    writers).convert();
+        } else {
+            Convertor.newConvertorFromStreams(inputStream, convertorSettings.newOutputWriter(outputFilePath), convertorSettings)
+                    .convert();
+        }
+    }
+
+    /**
+     * Returns output file paths of the row item table and its child tables.
+     *
+     * @param tableSettings settings of the row item table and its child tables
+     * @param outputFile    output file path of the row item table
+     *
+     * @return output file path of each table
+     */
+    static List<Path> getTableOutputFiles(final List<ConvertorSettings> tableSettings, final Path outputFile) {
+        final List<Path> outputFiles = new ArrayList<>(tableSettings.size());
+
+        for (final ConvertorSettings settings : tableSettings) {
+            outputFiles.add(settings.getTableOutputFile(outputFile));
+        }
+
+        return outputFiles;
+    }
+
     private static class FileProcessingOptions {
         @ArgGroup(exclusive = true, multiplicity = "1")
         InputOptions inputOptions = new InputOptions();
@@ -236,7 +805,8 @@ public class Main implements Runnable {
         @Option(names = "--parallel", 
         description = {
             "Enable parallel execution.",
-            "Optionally specify number of threads to run in parallel (max: lesser of available processors and number of input files). " +
+            "Optionally specify number of threads to run in parallel (max: lesser of available processors and number of input files, " +
+            "or available processors with --split-input). " +
             "If used without a value, uses max threads. " +
             "If omitted, runs single-threaded."
             },
@@ -245,11 +815,44 @@ public class Main implements Runnable {
         fallbackValue = "__AUTO__")
         String parallelOption;
 
+        @Option(names = "--split-input", description = "Split large input files at row item boundaries and convert the parts in parallel, using threads specified by --parallel. " +
+            "Falls back to sequential conversion of a file if its structure makes splitting unsafe (e.g. DOCTYPE declaration).")
+        boolean splitInput = false;
+
+        @Option(names = "--fast-scan", description = "Convert input files by scanning memory-mapped bytes instead of using the XML parser. Supports UTF-8 and US-ASCII documents without DTD and namespace prefixes. " +
+            "Falls back to the XML parser if a file contains unsupported constructs. Not used for files split by --split-input.")
+        boolean fastScan = false;
+
+        @Option(names = "--checkpoint-interval", paramLabel = "<bytes>", description = "Convert input files sequentially, writing a checkpoint next to the output file after approximately every specified number of input bytes. " +
+            "The checkpoint records the input offset of the last converted row item, the output length and the number of rows written. A conversion restarted with the same settings truncates the output to the checkpoint and resumes there. " +
+            "Compressed files and documents that cannot be split at row items are converted without checkpoints. Cannot be used with --split-input, --gzip-output or child tables.")
+        long checkpointInterval = 0;
+
+        @Option(names = "--recursive", description = "Convert files in subdirectories of --input-dir too. Output files are written to the same subdirectories of the output directory.")
+        boolean recursive = false;
+
+        @Option(names = "--include", paramLabel = "<glob>", description = "Glob pattern of files in --input-dir to convert, instead of files with xml, gz, zip, tar and tgz extensions. " +
+            "Patterns containing a slash are matched against the path relative to --input-dir, others against the file name. Can be specified multiple times.")
+        List<String> includes = new ArrayList<>();
+
+        @Option(names = "--exclude", paramLabel = "<glob>", description = "Glob pattern of files and subdirectories in --input-dir not to convert, matched the same way as --include. Can be specified multiple times.")
+        List<String> excludes = new ArrayList<>();
+
+        @Option(names = "--report-file", paramLabel = "<file>", description = "Write status of each converted file (tab separated status, duration and start time in seconds, file name and error) to the file, instead of printing each file to standard error output.")
+        Path reportFile = null;
+
+        @Option(names = "--incremental", description = "Skip input files converted by a previous run with this option, if their content and the settings affecting the output are unchanged. " +
+            "Their state is kept in a manifest file in the output directory.")
+        boolean incremental = false;
+
+        @Option(names = "--force", description = "With --incremental, convert all input files and record them in a new manifest.")
+        boolean force = false;
+
         static class InputOptions {
-            @Option(names = {"--input-file"}, arity = "1..*", paramLabel = "<file>", description = "Path to the input XML file(s).")
+            @Option(names = {"--input-file"}, arity = "1..*", paramLabel = "<file>", description = "Path to the input XML file(s). Gzip compressed files are decompressed transparently. With --output-dir, all XML entries of zip and tar (optionally gzip compressed) archives are converted, otherwise zip file must contain a single entry.")
             Path inputFiles[] = null;
 
-            @Option(names = {"--input-dir"}, arity = "1", paramLabel = "<dir>", description = "Path to input directory containing XML files. Mutually exclusive with --input-file option.")
+            @Option(names = {"--input-dir"}, arity = "1", paramLabel = "<dir>", description = "Path to input directory containing XML files. Files with xml, gz, zip, tar and tgz extensions are converted, see also --recursive, --include and --exclude. Files are converted while the directory is traversed. Mutually exclusive with --input-file option.")
             Path inputDir = null;
         }
 
@@ -257,12 +860,12 @@ public class Main implements Runnable {
             @Option(names = {"--output-file"}, paramLabel = "<file>", description = "Path to the output file.")
             Path outputFile = null;
 
-            @Option(names = {"--output-dir"}, paramLabel = "<dir>", description = "Path to output directory. Will be created if it does not exist. Output file name will be the same as input file name with the extension replaced by .txt. Mutually exclusive with --output-file option.")
+            @Option(names = {"--output-dir"}, paramLabel = "<dir>", description = "Path to output directory. Will be created if it does not exist. Output file name will be the same as input file name with the extension replaced by .txt (xml.gz is replaced as a single extension). Output files of archive entries are named by entry paths within the archive. Mutually exclusive with --output-file option.")
             Path outputDir = null;
         }
     }
 
-    private static class FilteringOptions {
+    static class FilteringOptions {
         @Option(names = {"--filter-column"}, required = true, paramLabel = "<name>", description = "Name of the column to filter on. You can specify multiple filters by using this option group multiple times.")
         String filterColumn = null;
 
@@ -273,7 +876,7 @@ public class Main implements Runnable {
         boolean filterExclude = false;
     }
 
-    private static class RemappingOptions {
+    static class RemappingOptions {
         @Option(names = {"--remap-column"}, required = true, paramLabel = "<name>", description = "Name of the column to remap. You can specify multiple remap rules by using this option group multiple times. Remapping is done after filtering.")
         String remapColumn = null;
 
@@ -0,0 +1,395 @@
+package com.github.peter277.xml2table;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * State of input files converted by previous runs, kept in the output
+ * directory, so unchanged inputs can be skipped.
+ * <p>
+ * For each input file, the manifest records its size, modification time,
+ * SHA-256 hash of its content and a fingerprint of the settings affecting the
+ * output. An input is unchanged if the settings fingerprint is the same and
+ * either its size and modification time are the same, or its content hash is
+ * (e.g. the file was only touched).
+ * <p>
+ * The manifest is written to a temporary file which replaces the previous
+ * manifest atomically, so a crash never leaves a partially written manifest.
+ * Before an input recorded in the manifest is converted again, it is appended
+ * to a journal file and the journal is deleted only after the new manifest is
+ * written. Inputs in the journal are treated as not converted when the
+ * manifest is loaded, so partially written output of a crashed run is never
+ * taken as complete.
+ */
+final class Manifest {
+
+    /**
+     * Name of the manifest file in the output directory.
+     */
+    static final String FILE_NAME = ".xml2table-manifest";
+    /**
+     * Suffix of the journal file name.
+     */
+    private static final String JOURNAL_SUFFIX = ".journal";
+    /**
+     * Suffix of the temporary file name.
+     */
+    private static final String TEMP_SUFFIX = ".tmp";
+    /**
+     * First line of the manifest, identifying its format.
+     */
+    private static final String HEADER = "# xml2table manifest 1";
+    /**
+     * Size of the buffer for reading input files.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * State of an input file.
+     */
+    static final class Entry {
+
+        /**
+         * File size.
+         */
+        private final long size;
+        /**
+         * Modification time in milliseconds.
+         */
+        private final long modified;
+        /**
+         * Hash of the file content.
+         */
+        private final String contentHash;
+        /**
+         * Fingerprint of settings the file was converted with.
+         */
+        private final String settings;
+        /**
+         * Whether the file is unchanged since the previous run.
+         */
+        private final boolean unchanged;
+
+        /**
+         * Creates new entry.
+         *
+         * @param size        file size
+         * @param modified    modification time in milliseconds
+         * @param contentHash hash of the file content
+         * @param settings    fingerprint of settings
+         * @param unchanged   whether the file is unchanged since the previous
+         *                    run
+         */
+        private Entry(final long size, final long modified, final String contentHash, final String settings,
+                final boolean unchanged) {
+            this.size = size;
+            this.modified = modified;
+            this.contentHash = contentHash;
+            this.settings = settings;
+            this.unchanged = unchanged;
+        }
+
+        /**
+         * Returns whether the file is unchanged since the previous run and
+         * does not need to be converted.
+         *
+         * @return true if the file is unchanged
+         */
+        boolean isUnchanged() {
+            return unchanged;
+        }
+    }
+
+    /**
+     * Manifest file path.
+     */
+    private final Path file;
+    /**
+     * Journal file path.
+     */
+    private final Path journalFile;
+    /**
+     * Entries of the previous run, by absolute input path.
+     */
+    private final Map<String, Entry> previous;
+    /**
+     * Entries of the current run, by absolute input path.
+     */
+    private final Map<String, Entry> current = new ConcurrentHashMap<>();
+    /**
+     * Writer of the journal, or null if it was not opened yet.
+     */
+    private Writer journal = null;
+
+    /**
+     * Creates new manifest.
+     *
+     * @param file     manifest file path
+     * @param previous entries of the previous run
+     */
+    private Manifest(final Path file, final Map<String, Entry> previous) {
+        this.file = file;
+        this.journalFile = file.resolveSibling(file.getFileName() + JOURNAL_SUFFIX);
+        this.previous = previous;
+    }
+
+    /**
+     * Loads manifest of the output directory. A missing or unreadable
+     * manifest is treated as empty.
+     *
+     * @param outputDir output directory
+     * @param rebuild   whether the previous manifest is discarded, so all
+     *                  inputs are converted
+     *
+     * @return manifest
+     *
+     * @throws IOException Thrown if the discarded manifest could not be
+     *                     deleted.
+     */
+    static Manifest load(final Path outputDir, final boolean rebuild) throws IOException {
+        final Path file = outputDir.resolve(FILE_NAME);
+        final Map<String, Entry> previous = new HashMap<>();
+        final Manifest manifest = new Manifest(file, previous);
+
+        if (rebuild) {
+            // A crashed rebuild must not leave the previous manifest behind
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(manifest.journalFile);
+
+            return manifest;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+
+            if (!HEADER.equals(line)) {
+                return manifest;
+            }
+
+            for (line = reader.readLine(); line != null; line = reader.readLine()) {
+                final String[] fields = line.split("\t", 5);
+
+                if (fields.length == 5) {
+                    previous.put(fields[4], new Entry(Long.parseLong(fields[0]), Long.parseLong(fields[1]),
+                            fields[2], fields[3], false));
+                }
+            }
+        } catch (NoSuchFileException ex) {
+            return manifest;
+        } catch (IOException | NumberFormatException ex) {
+            System.err.println("Warning: Ignoring unreadable manifest " + file + ": " + ex.getMessage());
+            previous.clear();
+
+            return manifest;
+        }
+
+        // Inputs whose conversion was started by a crashed run are converted again
+        try (BufferedReader reader = Files.newBufferedReader(manifest.journalFile, StandardCharsets.UTF_8)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                previous.remove(line);
+            }
+        } catch (NoSuchFileException ex) {
+            // No conversion was interrupted
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Checks input file against the previous run. The content is hashed
+     * unless size and modification time are the same as in the previous run.
+     *
+     * @param input    input file path
+     * @param settings fingerprint of settings
+     *
+     * @return entry to be recorded for the input
+     *
+     * @throws IOException Thrown if the file could not be read.
+     */
+    Entry check(final Path input, final String settings) throws IOException {
+        final BasicFileAttributes attrs = Files.readAttributes(input, BasicFileAttributes.class);
+        final long size = attrs.size();
+        final long modified = attrs.lastModifiedTime().toMillis();
+        final Entry entry = previous.get(key(input));
+
+        if (entry != null && entry.settings.equals(settings) && entry.size == size && entry.modified == modified) {
+            return new Entry(size, modified, entry.contentHash, settings, true);
+        }
+
+        final String contentHash = hash(input);
+
+        return new Entry(size, modified, contentHash, settings,
+                entry != null && entry.settings.equals(settings) && entry.contentHash.equals(contentHash));
+    }
+
+    /**
+     * Records that conversion of input file is starting. If the input was
+     * converted by the previous run, it is journaled first, so it is not
+     * taken as converted if this run crashes.
+     *
+     * @param input input file path
+     *
+     * @throws IOException Thrown if the journal could not be written.
+     */
+    void starting(final Path input) throws IOException {
+        final String key = key(input);
+
+        if (!previous.containsKey(key)) {
+            return;
+        }
+
+        synchronized (this) {
+            if (journal == null) {
+                journal = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+            }
+
+            journal.write(key);
+            journal.write('\n');
+            journal.flush();
+        }
+    }
+
+    /**
+     * Records input file as converted (or unchanged) by this run.
+     *
+     * @param input input file path
+     * @param entry entry returned by {@link #check(Path, String)}
+     */
+    void record(final Path input, final Entry entry) {
+        current.put(key(input), entry);
+    }
+
+    /**
+     * Writes entries recorded by this run as the new manifest, replacing the
+     * previous one atomically, and deletes the journal.
+     *
+     * @throws IOException Thrown if the manifest could not be written.
+     */
+    synchronized void save() throws IOException {
+        final Path tempFile = file.resolveSibling(file.getFileName() + TEMP_SUFFIX);
+
+        try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.write('\n');
+
+            for (final Map.Entry<String, Entry> entry : current.entrySet()) {
+                final Entry state = entry.getValue();
+                writer.write(state.size + "\t" + state.modified + "\t" + state.contentHash + "\t" + state.settings
+                        + "\t" + entry.getKey() + "\n");
+            }
+        }
+
+        try {
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+
+        Files.deleteIfExists(journalFile);
+    }
+
+    /**
+     * Computes fingerprint of settings.
+     *
+     * @param parts settings affecting the output, in a fixed order
+     *
+     * @return SHA-256 hash of the settings
+     */
+    static String fingerprint(final List<String> parts) {
+        final MessageDigest digest = newDigest();
+
+        for (final String part : parts) {
+            digest.update(part.getBytes(StandardCharsets.UTF_8));
+            // Separator that cannot occur in options or file content hashes
+            digest.update((byte) 0);
+        }
+
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Computes hash of file content.
+     *
+     * @param file file path
+     *
+     * @return SHA-256 hash of the content
+     *
+     * @throws IOException Thrown if the file could not be read.
+     */
+    static String hash(final Path file) throws IOException {
+        final MessageDigest digest = newDigest();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+
+        try (InputStream in = Files.newInputStream(file)) {
+            for (int length = in.read(buffer); length >= 0; length = in.read(buffer)) {
+                digest.update(buffer, 0, length);
+            }
+        }
+
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Returns key of input file in the manifest.
+     *
+     * @param input input file path
+     *
+     * @return absolute normalized path
+     */
+    private static String key(final Path input) {
+        return input.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Creates SHA-256 digest.
+     *
+     * @return digest
+     */
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            // Every Java platform implements SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Converts bytes to hexadecimal string.
+     *
+     * @param bytes bytes
+     *
+     * @return hexadecimal string
+     */
+    private static String toHex(final byte[] bytes) {
+        final StringBuilder sb = new StringBuilder(bytes.length * 2);
+
+        for (final byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return sb.toString();
+    }
+}
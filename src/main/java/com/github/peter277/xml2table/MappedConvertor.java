@@ -0,0 +1,1201 @@
+package com.github.peter277.xml2table;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Fast path convertor for simple, machine generated XML files.
+ * <p>
+ * The input file is memory-mapped and scanned for element tags directly,
+ * following the same {@link PathTrie} as {@link Convertor}. UTF-8 is decoded
+ * only for values which are added to a row; skipped content is only
+ * validated (UTF-8 sequences, characters and references). Rows are
+ * assembled and written by the same {@link RowFormatter} and
+ * {@link RowWriter} as the convertor uses, so the output is identical.
+ * <p>
+ * The scanner supports UTF-8 and US-ASCII documents without DTD and without
+ * namespace prefixes (a default namespace declaration is fine). Comments,
+ * processing instructions and CDATA sections are skipped. When the scanner
+ * meets anything else, including malformed XML, it discards its output and
+ * the file is converted by {@link Convertor} instead, which then also reports
+ * any errors. Unlike the XML parser, the scanner does not detect duplicate
+ * attributes.
+ * <p>
+ * Files are mapped in windows. A single token (tag, text, comment) or a
+ * single row item must fit into a quarter of the window, otherwise the file
+ * is converted by {@link Convertor} too.
+ */
+public class MappedConvertor {
+
+    /**
+     * Default size of the mapped window.
+     */
+    static final long DEFAULT_WINDOW_SIZE = 1L << 30;
+
+    /**
+     * Token types.
+     */
+    private static final int EOF = 0;
+    private static final int START = 1;
+    private static final int END = 2;
+    private static final int TEXT = 3;
+    private static final int OTHER = 4;
+    private static final int CDATA = 5;
+
+    /**
+     * Pattern of the encoding declaration.
+     */
+    private static final Pattern ENCODING_PATTERN = Pattern.compile("encoding\\s*=\\s*[\"']([^\"']*)[\"']");
+
+    /**
+     * Input file path.
+     */
+    private final Path inputFile;
+    /**
+     * Output file path.
+     */
+    private final Path outputFile;
+    /**
+     * Convertor settings.
+     */
+    private final ConvertorSettings settings;
+    /**
+     * Size of the mapped window.
+     */
+    private final long windowSize;
+    /**
+     * Whether the file was converted by {@link Convertor}.
+     */
+    private boolean fallback = false;
+
+    // Mapped window
+    private FileChannel channel;
+    private long fileSize;
+    private ByteBuffer buffer;
+    private long windowStart;
+    private int limit;
+    private boolean lastWindow;
+    private int pos;
+
+    // Current token
+    private int tokenStart;
+    private int nameStart;
+    private int nameEnd;
+    private boolean selfClosing;
+    private int attributeCount;
+    private int[] attributes = new int[32];
+    private int codePoint;
+
+    // Names of open elements
+    private byte[] names = new byte[1_024];
+    private int[] nameEnds = new int[16];
+    private int level = 0;
+
+    // Row processing
+    private byte[][] itemPath;
+    private PathTrie.Node itemNode;
+    private RowBuffer rowBuffer;
+    private RowFormatter rowFormatter;
+    private RowPipeline pipeline;
+    private PathTrie.Node[] nodeStack = new PathTrie.Node[16];
+    private StringBuilder[] textStack = new StringBuilder[16];
+    private ValueCache[] valueCaches;
+    private char[] chars = new char[1_024];
+
+    /**
+     * Creates new mapped convertor.
+     *
+     * @param inputFile  input file path
+     * @param outputFile output file path
+     * @param settings   convertor settings
+     */
+    public MappedConvertor(final Path inputFile, final Path outputFile, final ConvertorSettings settings) {
+        this(inputFile, outputFile, settings, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Creates new mapped convertor.
+     *
+     * @param inputFile  input file path
+     * @param outputFile output file path
+     * @param settings   convertor settings
+     * @param windowSize size of the mapped window in bytes
+     */
+    MappedConvertor(final Path inputFile, final Path outputFile, final ConvertorSettings settings,
+            final long windowSize) {
+        this.inputFile = inputFile;
+        this.outputFile = outputFile;
+        this.settings = settings;
+        this.windowSize = Math.min(windowSize, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns whether the file was converted by {@link Convertor} because the
+     * scanner does not support it.
+     *
+     * @return true if the file was converted by {@link Convertor}
+     */
+    boolean isFallback() {
+        return fallback;
+    }
+
+    /**
+     * Converts the input file.
+     *
+     * @throws RuntimeException Thrown if IO or XML stream exception occurred.
+     */
+    public void convert() {
+        try {
+            // Compressed files cannot be mapped and value limits are applied by the parser, they are streamed by the convertor
+            fallback = CompressedInput.isCompressed(inputFile) || settings.getValueLimits().isLimited() || !scan();
+        } catch (final IOException ex) {
+            throw new RuntimeException("IO operation failed", ex);
+        }
+
+        if (fallback) {
+            try {
+                Convertor.newConvertorFromFiles(inputFile, outputFile, settings).convert();
+            } catch (final IOException ex) {
+                throw new RuntimeException("IO operation failed", ex);
+            }
+        }
+    }
+
+    /**
+     * Converts the input file by scanning it.
+     *
+     * @return false if the file is not supported by the scanner
+     *
+     * @throws IOException Thrown if IO problem occurred.
+     */
+    private boolean scan() throws IOException {
+        final PathTrie pathTrie = settings.getPathTrie();
+
+        if (pathTrie.getItemPath() != null) {
+            itemPath = new byte[pathTrie.getItemPath().length][];
+
+            for (int i = 0; i < itemPath.length; i++) {
+                itemPath[i] = pathTrie.getItemPath()[i].getBytes(StandardCharsets.UTF_8);
+            }
+        }
+
+        itemNode = pathTrie.getItemNode();
+        rowBuffer = new RowBuffer(pathTrie.getSlotCount());
+        rowFormatter = new RowFormatter(settings, pathTrie);
+        valueCaches = settings.newValueCaches();
+
+        try (FileChannel fileChannel = FileChannel.open(inputFile, StandardOpenOption.READ)) {
+            channel = fileChannel;
+            fileSize = channel.size();
+            map(0);
+
+            if (!checkEncoding()) {
+                return false;
+            }
+
+            // The writer is closed on every path, after the pipeline has stopped writing to it
+            try (Writer writer = settings.newOutputWriter(outputFile)) {
+                final RowWriter rowWriter = new RowWriter(writer, RowWriter.DEFAULT_BUFFER_SIZE,
+                        settings.generalOptions.flushRows, settings.generalOptions.flushBytes,
+                        settings.generalOptions.flushIntervalMs);
+
+                try {
+                    if (!settings.generalOptions.noHeader) {
+                        rowFormatter.writeHeader(rowWriter);
+                    }
+
+                    if (settings.generalOptions.pipelineWorkers > 0) {
+                        pipeline = new RowPipeline(rowFormatter, rowWriter, pathTrie.getSlotCount(),
+                                settings.generalOptions.pipelineWorkers);
+                    }
+
+                    convertDocument(rowWriter);
+
+                    if (pipeline != null) {
+                        pipeline.close();
+                        pipeline = null;
+                    }
+
+                    rowWriter.close();
+
+                    return true;
+                } catch (final UnsupportedInputException ex) {
+                    // Output written so far is replaced by the convertor
+                    return false;
+                } finally {
+                    if (pipeline != null) {
+                        pipeline.abort();
+                        pipeline = null;
+                    }
+                }
+            }
+        } finally {
+            channel = null;
+            buffer = null;
+        }
+    }
+
+    /**
+     * Maps window of the file.
+     *
+     * @param start offset of the window start
+     *
+     * @throws IOException Thrown if IO problem occurred.
+     */
+    private void map(final long start) throws IOException {
+        final long size = Math.min(windowSize, fileSize - start);
+
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        windowStart = start;
+        limit = (int) size;
+        lastWindow = start + size == fileSize;
+        pos = 0;
+    }
+
+    /**
+     * Checks byte order mark and encoding declaration.
+     *
+     * @return false if the encoding is not supported by the scanner
+     */
+    private boolean checkEncoding() {
+        if (limit >= 3 && (buffer.get(0) & 0xff) == 0xef && (buffer.get(1) & 0xff) == 0xbb
+                && (buffer.get(2) & 0xff) == 0xbf) {
+            pos = 3;
+        }
+
+        // UTF-16 and UTF-32 documents start with a byte order mark or a zero byte
+        if (pos < limit && buffer.get(pos) != '<' && !isWhitespace(buffer.get(pos))) {
+            return false;
+        }
+
+        if (!startsWith(pos, "<?xml") || pos + 5 >= limit || !isWhitespace(buffer.get(pos + 5))) {
+            return true;
+        }
+
+        final int end = indexOf(pos, "?>");
+
+        if (end < 0) {
+            return false;
+        }
+
+        final byte[] declaration = new byte[end - pos];
+        for (int i = 0; i < declaration.length; i++) {
+            declaration[i] = buffer.get(pos + i);
+        }
+        pos = end + 2;
+
+        final Matcher matcher = ENCODING_PATTERN.matcher(new String(declaration, StandardCharsets.ISO_8859_1));
+
+        if (!matcher.find()) {
+            return true;
+        }
+
+        switch (matcher.group(1).toUpperCase(Locale.ROOT)) {
+            case "UTF-8":
+            case "UTF8":
+            case "US-ASCII":
+            case "ASCII":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Converts the document.
+     *
+     * @param rowWriter row writer
+     *
+     * @throws UnsupportedInputException Thrown if the document is not
+     *                                   supported by the scanner.
+     * @throws IOException               Thrown if IO problem occurred.
+     */
+    private void convertDocument(final RowWriter rowWriter) throws UnsupportedInputException, IOException {
+        int token = skipMisc();
+
+        if (token != START) {
+            throw new UnsupportedInputException("Root element not found");
+        }
+
+        int depth = 0; // Number of open elements, all of which match the row item path
+
+        do {
+            switch (token) {
+                case START:
+                    if (itemPath != null && depth < itemPath.length
+                            && PathTrie.nameEquals(itemPath[depth], buffer, nameStart, nameEnd)) {
+                        depth++;
+
+                        // The document root element is never treated as a row item
+                        if (depth == itemPath.length && depth > 1) {
+                            processItem(rowWriter);
+                            depth--;
+                        } else if (selfClosing) {
+                            depth--;
+                        } else {
+                            pushName();
+                        }
+                    } else {
+                        // No row item can be found in the subtree
+                        skipElement();
+                    }
+
+                    break;
+                case END:
+                    popName();
+                    depth--;
+                    break;
+                case EOF:
+                    throw new UnsupportedInputException("Unexpected end of document");
+                default:
+                    break;
+            }
+
+            if (level == 0) {
+                break;
+            }
+
+            token = next();
+        } while (true);
+
+        if (skipMisc() != EOF) {
+            throw new UnsupportedInputException("Unexpected content after root element");
+        }
+    }
+
+    /**
+     * Skips whitespace, comments and processing instructions outside of the
+     * root element.
+     *
+     * @return type of the first other token
+     *
+     * @throws UnsupportedInputException Thrown if the document is not
+     *                                   supported by the scanner.
+     * @throws IOException               Thrown if IO problem occurred.
+     */
+    private int skipMisc() throws UnsupportedInputException, IOException {
+        while (true) {
+            final int token = next();
+
+            if (token == TEXT) {
+                for (int i = tokenStart; i < pos; i++) {
+                    if (!isWhitespace(at(i))) {
+                        throw new UnsupportedInputException("Text outside of root element");
+                    }
+                }
+            } else if (token == CDATA) {
+                throw new UnsupportedInputException("CDATA outside of root element");
+            } else if (token != OTHER) {
+                return token;
+            }
+        }
+    }
+
+    /**
+     * Processes row item element.
+     *
+     * @param rowWriter row writer
+     *
+     * @throws UnsupportedInputException Thrown if the document is not
+     *                                   supported by the scanner.
+     * @throws IOException               Thrown if IO problem occurred.
+     */
+    private void processItem(final RowWriter rowWriter) throws UnsupportedInputException, IOException {
+        rowBuffer.reset();
+
+        // Process attributes of the root element
+        processAttributes(itemNode);
+
+        if (selfClosing) {
+            endItem(rowWriter);
+            return;
+        }
+
+        pushName();
+
+        int depth = 0;
+        nodeStack[0] = itemNode;
+
+        while (true) {
+            switch (next()) {
+                case START:
+                    final PathTrie.Node node = nodeStack[depth].child(buffer, nameStart, nameEnd);
+
+                    // Skip the whole subtree if it does not contain any requested value
+                    if (node == null) {
+                        skipElement();
+                        break;
+                    }
+
+                    // Process attributes of the current element
+                    processAttributes(node);
+
+                    if (selfClosing) {
+                        if (node.getSlot() >= 0) {
+                            addValue(node.getSlot(), "");
+                        }
+
+                        break;
+                    }
+
+                    // Process any child elements
+                    pushName();
+                    depth++;
+                    if (depth == nodeStack.length) {
+                        nodeStack = Arrays.copyOf(nodeStack, depth * 2);
+                        textStack = Arrays.copyOf(textStack, depth * 2);
+                    }
+                    nodeStack[depth] = node;
+                    if (textStack[depth] == null) {
+                        textStack[depth] = new StringBuilder(100);
+                    }
+                    textStack[depth].setLength(0);
+
+                    break;
+                case TEXT:
+                    if (nodeStack[depth].getSlot() >= 0) {
+                        textStack[depth].append(chars, 0, decode(tokenStart, pos, false));
+                    }
+
+                    break;
+                case END:
+                    popName();
+
+                    // If we have reached the closing tag of the root item, write out the row
+                    if (depth == 0) {
+                        endItem(rowWriter);
+                        return;
+                    }
+
+                    final int slot = nodeStack[depth].getSlot();
+
+                    if (slot >= 0) {
+                        addValue(slot, valueCaches == null ? textStack[depth].toString()
+                                : valueCaches[slot].intern(textStack[depth], 0, textStack[depth].length()));
+                    }
+
+                    depth--;
+                    break;
+                case EOF:
+                    throw new UnsupportedInputException("Unexpected end of document");
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Adds values of requested attributes of the current start tag.
+     *
+     * @param node trie node of the current element
+     *
+     * @throws UnsupportedInputException Thrown if the document is not
+     *                                   supported by the scanner.
+     */
+    private void processAttributes(final PathTrie.Node node) throws UnsupportedInputException {
+        if (!node.hasAttributes()) {
+            return;
+        }
+
+        for (int i = 0; i < attributeCount * 4; i += 4) {
+            final int slot = node.attributeSlot(buffer, attributes[i], attributes[i + 1]);
+
+            if (slot >= 0) {
+                final int length = decode(attributes[i + 2], attributes[i + 3], true);
+                addValue(slot, valueCaches == null ? new String(chars, 0, length)
+                        : valueCaches[slot].intern(CharBuffer.wrap(chars), 0, length));
+            }
+        }
+    }
+
+    /**
+     * Adds a single raw value of the current row item, either to the row
+     * buffer or to the pipeline.
+     *
+     * @param slot  slot index
+     * @param value value to be added
+     */
+    private void addValue(final int slot, final String value) {
+        if (pipeline != null) {
+            pipeline.add(slot, value);
+        } else {
+            rowBuffer.add(slot, value);
+        }
+    }
+
+    /**
+     * Writes the current row item.
+     *
+     * @param rowWriter row writer
+     *
+     * @throws IOException Thrown if IO problem occurred.
+     */
+    private void endItem(final RowWriter rowWriter) throws IOException {
+        if (pipeline != null) {
+            pipeline.endItem();
+        } else {
+            rowFormatter.writeRow(rowBuffer, rowWriter);
+        }
+    }
+
+    /**
+     * Skips the element of the current start tag including all its content.
+     *
+     * @throws UnsupportedInputException Thrown if the document is not
+     *                                   supported by the scanner.
+     * @throws IOException               Thrown if IO problem occurred.
+     */
+    private void skipElement() throws UnsupportedInputException, IOException {
+        if (selfClosing) {
+            return;
+        }
+
+        final int startLevel = level;
+        pushName();
+
+        while (level > startLevel) {
+            switch (next()) {
+                case START:
+                    if (!selfClosing) {
+                        pushName();
+                    }
+                    break;
+                case END:
+                    popName();
+                    break;
+                case EOF:
+                    throw new UnsupportedInputException("Unexpected end of document");
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Reads next token.
+     *
+     * @return token type
+     *
+     * @throws UnsupportedInputException Thrown if the document is not
+     *                                   supported by the scanner.
+     * @throws IOException               Thrown if IO problem occurred.
+     */
+    private int next() throws UnsupportedInputException, IOException {
+        // Move the window at a token boundary, no offsets are kept across tokens
+        if (!lastWindow && limit - pos < windowSize / 4) {
+            map(windowStart + pos);
+        }
+
+        tokenStart = pos;
+
+        if (pos == limit) {
+            return EOF;
+        }
+
+        if (at(pos) != '<') {
+            scanText();
+            return TEXT;
+        }
+
+        switch (at(pos + 1)) {
+            case '/':
+                scanEndTag();
+                return END;
+            case '?':
+                // Target xml is reserved for the declaration at the document start
+                if (pos + 5 < limit && (at(pos + 2) | 0x20) == 'x' && (at(pos + 3) | 0x20) == 'm'
+                        && (at(pos + 4) | 0x20) == 'l'
+                        && (isWhitespace(at(pos + 5)) || at(pos + 5) == '?')) {
+                    throw new UnsupportedInputException("Misplaced XML declaration");
+                }
+                pos = skipTo(pos + 2, "?>");
+                return OTHER;
+            case '!':
+                if (startsWith(pos, "<!--")) {
+                    pos = skipTo(pos + 4, "-->");
+                    return OTHER;
+                } else if (startsWith(pos, "<![CDATA[")) {
+                    pos = skipTo(pos + 9, "]]>");
+                    return CDATA;
+                }
+                throw new UnsupportedInputException("DTD is not supported");
+            default:
+                scanStartTag();
+                return START;
+        }
+    }
+
+    /**
+     * Scans text up to the next tag, checking entity references and that the
+     * text does not contain {@code ]]>}.
+     *
+     * @throws UnsupportedInputException Thrown if the document is not
+     *                                   supported by the scanner.
+     */
+    private void scanText() throws UnsupportedInputException {
+        int p = pos;
+
+        while (p < limit) {
+            final byte b = at(p);
+
+            if (b == '<') {
+                break;
+            } else if (b == '&') {
+                p = scanEntity(p);
+            } else if (b == '>' && p - pos >= 2 && at(p - 1) == ']' && at(p - 2) == ']') {
+                throw new UnsupportedInputException("CDATA end outside of CDATA section");
+            } else if (b >= 0x20) {
+                p++;
+            } else {
+                p = scanChar(p);
+            }
+        }
+
+        if (p == limit && !lastWindow) {
+            throw new UnsupportedInputException("Text does not fit into the window");
+        }
+
+        pos = p;
+    }
+
+    /**
+     * Scans start tag and its attributes.
+     *
+     * @throws UnsupportedInputException Thrown if the document is not
+     *                                   supported by the scanner.
+     */
+    private void scanStartTag() throws UnsupportedInputException {
+        int p = pos + 1;
+        byte b;
+
+        nameStart = p;
+        p = scanName(p);
+        nameEnd = p;
+        attributeCount = 0;
+
+        while (true) {
+            final int whitespaceStart = p;
+
+            while (isWhitespace(b = at(p))) {
+                p++;
+            }
+
+            if (b == '>') {
+                selfClosing = false;
+                p++;
+                break;
+            } else if (b == '/') {
+                if (at(p + 1) != '>') {
+                    throw new UnsupportedInputException("Malformed start tag");
+                }
+                selfClosing = true;
+                p += 2;
+                break;
+            } else if (p == whitespaceStart) {
+                throw new UnsupportedInputException("Malformed start tag");
+            }
+
+            final int attributeNameStart = p;
+            p = scanName(p);
+            final int attributeNameEnd = p;
+
+            while (isWhitespace(at(p))) {
+                p++;
+            }
+            if (at(p++) != '=') {
+                throw new UnsupportedInputException("Malformed attribute");
+            }
+            while (isWhitespace(at(p))) {
+                p++;
+            }
+
+            final byte quote = at(p++);
+
+            if (quote != '"' && quote != '\'') {
+                throw new UnsupportedInputException("Malformed attribute");
+            }
+
+            final int valueStart = p;
+
+            while ((b = at(p)) != quote) {
+                if (b == '<') {
+                    throw new UnsupportedInputException("Malformed attribute");
+                } else if (b == '&') {
+                    p = scanEntity(p);
+                } else if (b >= 0x20) {
+                    p++;
+                } else {
+                    p = scanChar(p);
+                }
+            }
+
+            final int valueEnd = p++;
+
+            // Default namespace declaration is not an attribute
+            if (startsWith(attributeNameStart, "xmlns") && attributeNameEnd - attributeNameStart == 5) {
+                continue;
+            }
+
+            if (attributeCount * 4 == attributes.length) {
+                attributes = Arrays.copyOf(attributes, attributes.length * 2);
+            }
+
+            attributes[attributeCount * 4] = attributeNameStart;
+            attributes[attributeCount * 4 + 1] = attributeNameEnd;
+            attributes[attributeCount * 4 + 2] = valueStart;
+            attributes[attributeCount * 4 + 3] = valueEnd;
+            attributeCount++;
+        }
+
+        pos = p;
+    }
+
+    /**
+     * Scans end tag.
+     *
+     * @throws UnsupportedInputException Thrown if the document is not
+     *                                   supported by the scanner.
+     */
+    private void scanEndTag() throws UnsupportedInputException {
+        int p = pos + 2;
+
+        nameStart = p;
+        p = scanName(p);
+        nameEnd = p;
+
+        while (isWhitespace(at(p))) {
+            p++;
+        }
+
+        if (at(p) != '>') {
+            throw new UnsupportedInputException("Malformed end tag");
+        }
+
+        pos = p + 1;
+    }
+
+    /**
+     * Scans element or attribute name.
+     *
+     * @param start index of the name start
+     *
+     * @return index after the name
+     *
+     * @throws UnsupportedInputException Thrown if the name is empty or
+     *                                   prefixed.
+     */
+    private int scanName(final int start) throws UnsupportedInputException {
+        int p = start;
+        byte b;
+
+        while (!isWhitespace(b = at(p)) && b != '>' && b != '/' && b != '=') {
+            if (b == ':') {
+                throw new UnsupportedInputException("Namespace prefixes are not supported");
+            } else if (b == '<' || b == '"' || b == '\'' || b == '&') {
+                throw new UnsupportedInputException("Malformed name");
+            } else if (b < 0) {
+                p = scanUtf8(p, limit);
+            } else {
+                p++;
+            }
+        }
+
+        if (p == start) {
+            throw new UnsupportedInputException("Malformed name");
+        }
+
+        return p;
+    }
+
+    /**
+     * Scans entity or character reference and stores its code point into
+     * {@link #codePoint}.
+     *
+     * @param start index of the ampersand
+     *
+     * @return index after the reference
+     *
+     * @throws UnsupportedInputException Thrown if the reference is malformed
+     *                                   or refers to an entity declared in
+     *                                   DTD.
+     */
+    private int scanEntity(final int start) throws UnsupportedInputException {
+        int p = start + 1;
+
+        if (at(p) == '#') {
+            final boolean hex = at(p + 1) == 'x';
+            int value = 0;
+            byte b;
+
+            p += hex ? 2 : 1;
+            final int digitsStart = p;
+
+            while ((b = at(p)) != ';') {
+                final int digit = Character.digit(b, hex ? 16 : 10);
+
+                if (digit < 0 || value > 0x10ffff) {
+                    throw new UnsupportedInputException("Malformed character reference");
+                }
+
+                value = value * (hex ? 16 : 10) + digit;
+                p++;
+            }
+
+            if (p == digitsStart || !isXmlChar(value)) {
+                throw new UnsupportedInputException("Invalid character reference");
+            }
+
+            codePoint = value;
+
+            return p + 1;
+        }
+
+        if (startsWith(p, "amp;")) {
+            codePoint = '&';
+            return p + 4;
+        } else if (startsWith(p, "lt;")) {
+            codePoint = '<';
+            return p + 3;
+        } else if (startsWith(p, "gt;")) {
+            codePoint = '>';
+            return p + 3;
+        } else if (startsWith(p, "quot;")) {
+            codePoint = '"';
+            return p + 5;
+        } else if (startsWith(p, "apos;")) {
+            codePoint = '\'';
+            return p + 5;
+        }
+
+        throw new UnsupportedInputException("Entity is not supported");
+    }
+
+    /**
+     * Decodes UTF-8 text or attribute value into {@link #chars}, resolving
+     * references and normalizing line ends (and whitespace in attribute
+     * values) like an XML parser.
+     *
+     * @param start     index of the first byte
+     * @param end       index after the last byte
+     * @param attribute whether an attribute value is decoded
+     *
+     * @return number of decoded characters
+     *
+     * @throws UnsupportedInputException Thrown if the text is not valid.
+     */
+    private int decode(final int start, final int end, final boolean attribute) throws UnsupportedInputException {
+        if (chars.length < end - start) {
+            chars = new char[Math.max(end - start, chars.length * 2)];
+        }
+
+        final char[] out = chars;
+        int length = 0;
+        int p = start;
+
+        while (p < end) {
+            final int b = at(p);
+
+            if (b >= 0x20) {
+                if (b == '&') {
+                    p = scanEntity(p);
+                    length += Character.toChars(codePoint, out, length);
+                } else {
+                    out[length++] = (char) b;
+                    p++;
+                }
+            } else if (b == '\r') {
+                p++;
+                if (p < end && at(p) == '\n') {
+                    p++;
+                }
+                out[length++] = attribute ? ' ' : '\n';
+            } else if (b == '\n' || b == '\t') {
+                out[length++] = attribute ? ' ' : (char) b;
+                p++;
+            } else if (b >= 0) {
+                throw new UnsupportedInputException("Invalid character");
+            } else {
+                p = scanUtf8(p, end);
+                length += Character.toChars(codePoint, out, length);
+            }
+        }
+
+        return length;
+    }
+
+    /**
+     * Scans UTF-8 sequence of a non-ASCII character and stores its code point
+     * into {@link #codePoint}.
+     *
+     * @param start index of the first byte of the sequence
+     * @param end   index after the last byte of the text
+     *
+     * @return index after the sequence
+     *
+     * @throws UnsupportedInputException Thrown if the sequence is not valid
+     *                                   or the character is not allowed in
+     *                                   XML.
+     */
+    private int scanUtf8(final int start, final int end) throws UnsupportedInputException {
+        final int b0 = at(start) & 0xff;
+        final int length;
+
+        if (b0 < 0xc2) {
+            throw new UnsupportedInputException("Invalid UTF-8 sequence");
+        } else if (b0 < 0xe0) {
+            codePoint = (b0 & 0x1f) << 6 | continuation(start + 1, end);
+            length = 2;
+        } else if (b0 < 0xf0) {
+            codePoint = (b0 & 0x0f) << 12 | continuation(start + 1, end) << 6 | continuation(start + 2, end);
+            length = 3;
+        } else if (b0 < 0xf5) {
+            codePoint = (b0 & 0x07) << 18 | continuation(start + 1, end) << 12
+                    | continuation(start + 2, end) << 6 | continuation(start + 3, end);
+            length = 4;
+        } else {
+            throw new UnsupportedInputException("Invalid UTF-8 sequence");
+        }
+
+        if (codePoint < (length == 2 ? 0x80 : length == 3 ? 0x800 : 0x10000) || !isXmlChar(codePoint)) {
+            throw new UnsupportedInputException("Invalid UTF-8 sequence");
+        }
+
+        return start + length;
+    }
+
+    /**
+     * Scans character which is neither markup nor reference, checking that
+     * it is allowed in XML.
+     *
+     * @param start index of the first byte of the character
+     *
+     * @return index after the character
+     *
+     * @throws UnsupportedInputException Thrown if the character is not
+     *                                   valid.
+     */
+    private int scanChar(final int start) throws UnsupportedInputException {
+        final byte b = at(start);
+
+        if (b >= 0x20 || b == '\n' || b == '\t' || b == '\r') {
+            return start + 1;
+        } else if (b < 0) {
+            return scanUtf8(start, limit);
+        }
+
+        throw new UnsupportedInputException("Invalid character");
+    }
+
+    /**
+     * Returns payload of UTF-8 continuation byte.
+     *
+     * @param index index of the byte
+     * @param end   index after the last byte of the text
+     *
+     * @return lower 6 bits of the byte
+     *
+     * @throws UnsupportedInputException Thrown if the byte is not a
+     *                                   continuation byte.
+     */
+    private int continuation(final int index, final int end) throws UnsupportedInputException {
+        final int b = index < end ? at(index) : 0;
+
+        if ((b & 0xc0) != 0x80) {
+            throw new UnsupportedInputException("Invalid UTF-8 sequence");
+        }
+
+        return b & 0x3f;
+    }
+
+    /**
+     * Pushes name of the current start tag to the stack of open elements.
+     */
+    private void pushName() {
+        final int start = nameEnds[level];
+        final int length = nameEnd - nameStart;
+
+        if (level + 1 == nameEnds.length) {
+            nameEnds = Arrays.copyOf(nameEnds, nameEnds.length * 2);
+        }
+
+        if (start + length > names.length) {
+            names = Arrays.copyOf(names, Math.max(names.length * 2, start + length));
+        }
+
+        for (int i = 0; i < length; i++) {
+            names[start + i] = buffer.get(nameStart + i);
+        }
+        nameEnds[++level] = start + length;
+    }
+
+    /**
+     * Pops name of the current end tag from the stack of open elements.
+     *
+     * @throws UnsupportedInputException Thrown if the end tag does not match
+     *                                   the last open element.
+     */
+    private void popName() throws UnsupportedInputException {
+        if (level == 0) {
+            throw new UnsupportedInputException("Unexpected end tag");
+        }
+
+        final int start = nameEnds[level - 1];
+
+        if (nameEnds[level] - start != nameEnd - nameStart) {
+            throw new UnsupportedInputException("Mismatched end tag");
+        }
+
+        for (int i = 0; i < nameEnd - nameStart; i++) {
+            if (names[start + i] != at(nameStart + i)) {
+                throw new UnsupportedInputException("Mismatched end tag");
+            }
+        }
+
+        level--;
+    }
+
+    /**
+     * Returns byte of the window. Indexes are checked here rather than by the
+     * buffer, so reading past the window is an unsupported input and not
+     * mistaken for an indexing bug.
+     *
+     * @param index index in the window
+     *
+     * @return byte at the index
+     *
+     * @throws UnsupportedInputException Thrown if the index is past the
+     *                                   window, i.e. the input is truncated or
+     *                                   the token does not fit into the window.
+     */
+    private byte at(final int index) throws UnsupportedInputException {
+        if (index >= limit) {
+            throw new UnsupportedInputException(lastWindow ? "Unexpected end of input"
+                    : "Token does not fit into the window");
+        }
+
+        return buffer.get(index);
+    }
+
+    /**
+     * Returns index after the first occurrence of an ASCII string.
+     *
+     * @param start  index to start searching at
+     * @param string string to search for
+     *
+     * @return index after the string
+     *
+     * @throws UnsupportedInputException Thrown if the string is not found in
+     *                                   the window.
+     */
+    private int skipTo(final int start, final String string) throws UnsupportedInputException {
+        final byte first = (byte) string.charAt(0);
+        int p = start;
+
+        while (p <= limit - string.length()) {
+            final byte b = at(p);
+
+            if (b == first && startsWith(p, string)) {
+                return p + string.length();
+            }
+
+            p = b >= 0x20 ? p + 1 : scanChar(p);
+        }
+
+        throw new UnsupportedInputException("Unterminated construct");
+    }
+
+    /**
+     * Returns index of the first occurrence of an ASCII string.
+     *
+     * @param start  index to start searching at
+     * @param string string to search for
+     *
+     * @return index of the string, or -1 if it is not found in the window
+     */
+    private int indexOf(final int start, final String string) {
+        final byte first = (byte) string.charAt(0);
+
+        for (int p = start; p <= limit - string.length(); p++) {
+            if (buffer.get(p) == first && startsWith(p, string)) {
+                return p;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Checks whether the window contains an ASCII string at given index.
+     *
+     * @param index  index
+     * @param string string
+     *
+     * @return true if the string is found at the index
+     */
+    private boolean startsWith(final int index, final String string) {
+        if (index + string.length() > limit) {
+            return false;
+        }
+
+        for (int i = 0; i < string.length(); i++) {
+            if (buffer.get(index + i) != string.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks whether byte is XML whitespace.
+     *
+     * @param b byte
+     *
+     * @return true if the byte is space, tab, line feed or carriage return
+     */
+    private static boolean isWhitespace(final byte b) {
+        return b == ' ' || b == '\n' || b == '\t' || b == '\r';
+    }
+
+    /**
+     * Checks whether code point is a valid XML 1.0 character.
+     *
+     * @param codePoint code point
+     *
+     * @return true if the character is allowed in XML documents
+     */
+    private static boolean isXmlChar(final int codePoint) {
+        return codePoint >= 0x20 && codePoint <= 0xd7ff
+                || codePoint == 0x9 || codePoint == 0xa || codePoint == 0xd
+                || codePoint >= 0xe000 && codePoint <= 0xfffd
+                || codePoint >= 0x10000 && codePoint <= 0x10ffff;
+    }
+
+    /**
+     * Thrown when the input contains a construct not supported by the
+     * scanner.
+     */
+    private static final class UnsupportedInputException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Creates new exception.
+         *
+         * @param message description of the unsupported construct
+         */
+        UnsupportedInputException(final String message) {
+            super(message, null, false, false);
+        }
+    }
+}
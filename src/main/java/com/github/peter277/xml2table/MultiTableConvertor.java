@@ -0,0 +1,710 @@
+package com.github.peter277.xml2table;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.codehaus.stax2.XMLStreamReader2;
+
+/**
+ * Converts a single XML document into multiple flat files (tables) in one
+ * pass.
+ * <p>
+ * Each table has its own settings, i.e. row item, columns, filters,
+ * remappings and output options. The document is parsed once and every
+ * element is offered to all tables, so row items of different tables may be
+ * nested or even be the same elements. Subtrees that no table reads are
+ * skipped without accumulating any text. Rows of each table are handed over
+ * to its own {@link RowPipeline}, so filtering, formatting and writing of
+ * every table run on separate threads, in parallel with parsing.
+ * <p>
+ * Tables with the generated {@link ConvertorSettings#KEY_COLUMN} column number
+ * their row items in document order. Child tables, whose row items are nested
+ * in row items of a parent table, write the key of the enclosing parent row
+ * item to {@link ConvertorSettings#PARENT_KEY_COLUMN}. Rows of child tables
+ * are written as soon as their elements end, so no table buffers whole
+ * parent row items.
+ */
+public class MultiTableConvertor {
+
+    /**
+     * Input stream.
+     */
+    private final InputStream inputStream;
+    /**
+     * Whether the input stream was opened by the convertor.
+     */
+    private final boolean closeInputStream;
+    /**
+     * Stream reader.
+     */
+    private final XMLStreamReader reader;
+    /**
+     * Conversion state of each table.
+     */
+    private final Table[] tables;
+
+    /**
+     * Creates convertor of input file into output files. Gzip and zip
+     * compressed input files are decompressed transparently.
+     *
+     * @param inputFile     input file path
+     * @param parserBackend parser backend reading the input
+     * @param settings      settings of each table
+     * @param outputFiles   output file path of each table
+     *
+     * @return convertor
+     *
+     * @throws IOException Thrown if input or any output file could not be
+     *                     opened.
+     */
+    public static MultiTableConvertor newConvertorFromFiles(final Path inputFile, final ParserBackend parserBackend,
+            final List<ConvertorSettings> settings, final List<Path> outputFiles) throws IOException {
+        if (settings.size() != outputFiles.size()) {
+            throw new IllegalArgumentException("Number of output files does not match number of tables.");
+        }
+
+        final List<Writer> writers = new ArrayList<>(outputFiles.size());
+        InputStream inputStream = null;
+
+        try {
+            for (int i = 0; i < outputFiles.size(); i++) {
+                writers.add(settings.get(i).newOutputWriter(outputFiles.get(i)));
+            }
+
+            inputStream = CompressedInput.open(inputFile);
+
+            return new MultiTableConvertor(inputStream, true, parserBackend, settings, writers);
+        } catch (final IOException | RuntimeException ex) {
+            closeQuietly(inputStream, writers);
+            throw ex;
+        }
+    }
+
+    /**
+     * Creates convertor of input stream into writers. The input stream is
+     * not closed by the convertor.
+     *
+     * @param inputStream   input stream
+     * @param parserBackend parser backend reading the input
+     * @param settings      settings of each table
+     * @param writers       output writer of each table
+     *
+     * @return convertor
+     */
+    public static MultiTableConvertor newConvertorFromStreams(final InputStream inputStream,
+            final ParserBackend parserBackend, final List<ConvertorSettings> settings, final List<Writer> writers) {
+        if (settings.size() != writers.size()) {
+            throw new IllegalArgumentException("Number of writers does not match number of tables.");
+        }
+
+        return new MultiTableConvertor(inputStream, false, parserBackend, settings, writers);
+    }
+
+    /**
+     * Creates new convertor.
+     *
+     * @param inputStream      input stream
+     * @param closeInputStream whether the input stream is closed after
+     *                         conversion
+     * @param parserBackend    parser backend reading the input
+     * @param settings         settings of each table
+     * @param writers          output writer of each table
+     */
+    private MultiTableConvertor(final InputStream inputStream, final boolean closeInputStream,
+            final ParserBackend parserBackend, final List<ConvertorSettings> settings, final List<Writer> writers) {
+        if (settings.isEmpty()) {
+            throw new IllegalArgumentException("At least one table must be specified.");
+        }
+
+        this.inputStream = inputStream;
+        this.closeInputStream = closeInputStream;
+        this.tables = new Table[settings.size()];
+
+        for (int i = 0; i < tables.length; i++) {
+            tables[i] = new Table(settings.get(i), writers.get(i));
+        }
+
+        // Child tables refer to keys of row items of their parent tables
+        for (int i = 0; i < tables.length; i++) {
+            final ConvertorSettings parent = settings.get(i).parent;
+
+            if (parent == null) {
+                continue;
+            }
+
+            final int parentIndex = settings.indexOf(parent);
+
+            if (parentIndex < 0 || tables[parentIndex].keySlot < 0) {
+                throw new IllegalArgumentException("Parent table of child table " + settings.get(i).childTableName
+                        + " is not converted.");
+            }
+
+            parent.checkRowItemsKept();
+
+            tables[i].parent = tables[parentIndex];
+        }
+
+        try {
+            this.reader = parserBackend.createReader(inputStream);
+        } catch (final XMLStreamException ex) {
+            throw new RuntimeException("XML stream exception: unable to create stream reader", ex);
+        }
+    }
+
+    /**
+     * Converts XML to all tables. Output writers are closed when all rows
+     * are written.
+     *
+     * @throws RuntimeException Thrown if IO or XML stream exception occurred.
+     */
+    public void convert() {
+        try {
+            for (final Table table : tables) {
+                table.start();
+            }
+
+            int depth = 0; // Number of open elements that are read by at least one table
+
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamReader.START_ELEMENT:
+                        final String name = reader.getLocalName();
+                        boolean read = false;
+
+                        for (final Table table : tables) {
+                            read |= table.accepts(name, depth);
+                        }
+
+                        // No table reads anything from the subtree
+                        if (!read) {
+                            skipElement();
+                            break;
+                        }
+
+                        for (final Table table : tables) {
+                            table.startElement(reader);
+                        }
+
+                        depth++;
+                        break;
+                    case XMLStreamReader.CHARACTERS:
+                        char[] text = null;
+
+                        // Text is copied from the parser buffer to each table that reads it
+                        for (final Table table : tables) {
+                            if (table.readsText()) {
+                                if (text == null) {
+                                    text = reader.getTextCharacters();
+                                }
+
+                                table.appendText(text, reader.getTextStart(), reader.getTextLength());
+                            }
+                        }
+
+                        break;
+                    case XMLStreamReader.END_ELEMENT:
+                        depth--;
+
+                        for (final Table table : tables) {
+                            table.endElement(depth);
+                        }
+
+                        break;
+                }
+            }
+
+            reader.close();
+
+            long failedItems = 0;
+
+            for (final Table table : tables) {
+                table.finish();
+                failedItems += table.getFailedItems();
+            }
+
+            if (failedItems > 0) {
+                System.err.println("Warning: " + failedItems + " row items exceeded value limits and were not written");
+            }
+        } catch (final IOException ex) {
+            throw new RuntimeException("IO operation failed", ex);
+        } catch (final XMLStreamException ex) {
+            throw new RuntimeException("XML stream exception", ex);
+        } finally {
+            for (final Table table : tables) {
+                table.abort();
+            }
+
+            // Stops background decompression of compressed input too
+            if (closeInputStream) {
+                try {
+                    inputStream.close();
+                } catch (final IOException ex) {
+                    // Input was already read or conversion failed anyway
+                }
+            }
+        }
+    }
+
+    /**
+     * Skips the current element including all its content, without
+     * accumulating any text.
+     *
+     * @throws XMLStreamException Thrown if problem occurred while reading XML
+     *                            stream.
+     */
+    private void skipElement() throws XMLStreamException {
+        if (reader instanceof XMLStreamReader2) {
+            ((XMLStreamReader2) reader).skipElement();
+            return;
+        }
+
+        int depth = 1;
+
+        while (depth > 0 && reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamReader.START_ELEMENT:
+                    depth++;
+                    break;
+                case XMLStreamReader.END_ELEMENT:
+                    depth--;
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Closes streams opened for a convertor that could not be created.
+     *
+     * @param inputStream input stream, may be null
+     * @param writers     output writers
+     */
+    private static void closeQuietly(final InputStream inputStream, final List<Writer> writers) {
+        try {
+            if (inputStream != null) {
+                inputStream.close();
+            }
+        } catch (final IOException ex) {
+            // Already failing
+        }
+
+        for (final Writer writer : writers) {
+            try {
+                writer.close();
+            } catch (final IOException ex) {
+                // Already failing
+            }
+        }
+    }
+
+    /**
+     * Conversion state of a single table.
+     */
+    private static final class Table {
+
+        /**
+         * Row writer of the table output.
+         */
+        private final RowWriter rowWriter;
+        /**
+         * Row formatter.
+         */
+        private final RowFormatter rowFormatter;
+        /**
+         * Compiled row item and column paths.
+         */
+        private final PathTrie pathTrie;
+        /**
+         * Local names of the row item path elements, or null if no element
+         * can match.
+         */
+        private final String[] itemPath;
+        /**
+         * Whether header line is omitted.
+         */
+        private final boolean noHeader;
+        /**
+         * Number of pipeline worker threads.
+         */
+        private final int pipelineWorkers;
+        /**
+         * Slot of the generated key column, or -1 if not requested.
+         */
+        private final int keySlot;
+        /**
+         * Slot of the generated parent key column, or -1 if not requested.
+         */
+        private final int parentKeySlot;
+        /**
+         * Parent table of a child table, or null.
+         */
+        private Table parent = null;
+        /**
+         * Number of row items started so far.
+         */
+        private long itemCount = 0;
+        /**
+         * Key of the current or last row item.
+         */
+        private String key = null;
+        /**
+         * Pipeline formatting and writing rows, while the conversion runs.
+         */
+        private RowPipeline pipeline = null;
+        /**
+         * Number of open elements matching the row item path. All open
+         * elements match it as long as this equals the document depth.
+         */
+        private int matched = 0;
+        /**
+         * Depth of the current element within the current row item, or -1
+         * outside of row items.
+         */
+        private int itemDepth = -1;
+        /**
+         * Number of open elements within the current row item that contain
+         * no requested value.
+         */
+        private int ignored = 0;
+        /**
+         * Trie node of the element being started, found by
+         * {@link #accepts(String, int)}.
+         */
+        private PathTrie.Node acceptedNode = null;
+        /**
+         * Trie nodes of open elements of the current row item.
+         */
+        private PathTrie.Node[] nodeStack = new PathTrie.Node[16];
+        /**
+         * Text of open elements of the current row item.
+         */
+        private ValueBuffer[] textStack = new ValueBuffer[16];
+        /**
+         * Whether multiple values of a slot are joined.
+         */
+        private final boolean join;
+        /**
+         * Whether values are trimmed.
+         */
+        private final boolean trim;
+        /**
+         * Limits of values, shared with the row formatter.
+         */
+        private final ValueLimits valueLimits;
+        /**
+         * Limits of values retained for the current row item.
+         */
+        private final ValueLimits.Tracker limitTracker;
+        /**
+         * Number of the last row item which selected a value of each slot.
+         */
+        private final long[] slotItems;
+        /**
+         * Caches of canonical values indexed by slot, or null if values are
+         * not cached.
+         */
+        private final ValueCache[] valueCaches;
+
+        /**
+         * Creates table state.
+         *
+         * @param settings table settings
+         * @param writer   output writer
+         */
+        Table(final ConvertorSettings settings, final Writer writer) {
+            final String itemName = settings.generalOptions.itemName;
+
+            if (itemName == null || itemName.trim().isEmpty()) {
+                throw new IllegalArgumentException("itemName is an empty string. ");
+            }
+
+            if (itemName.trim().length() != 1 && itemName.endsWith("/")) {
+                throw new IllegalArgumentException("itemName cannot end with a shash (/).");
+            }
+
+            if (settings.generalOptions.pipelineWorkers < 0) {
+                throw new IllegalArgumentException("Number of pipeline workers cannot be negative.");
+            }
+
+            this.rowWriter = new RowWriter(writer, RowWriter.DEFAULT_BUFFER_SIZE,
+                    settings.generalOptions.flushRows, settings.generalOptions.flushBytes,
+                    settings.generalOptions.flushIntervalMs);
+            this.pathTrie = settings.getPathTrie();
+            this.itemPath = pathTrie.getItemPath();
+            this.valueLimits = settings.getValueLimits();
+            this.rowFormatter = new RowFormatter(settings, pathTrie, valueLimits);
+            this.noHeader = settings.generalOptions.noHeader;
+            // Every table needs its own worker, parsing thread only collects values
+            this.pipelineWorkers = Math.max(1, settings.generalOptions.pipelineWorkers);
+            this.join = settings.generalOptions.join;
+            this.trim = settings.generalOptions.trimValues;
+            this.limitTracker = valueLimits.new Tracker();
+            this.slotItems = new long[pathTrie.getSlotCount()];
+            this.valueCaches = settings.newValueCaches();
+            this.keySlot = pathTrie.indexOf(ConvertorSettings.KEY_COLUMN);
+            this.parentKeySlot = pathTrie.indexOf(ConvertorSettings.PARENT_KEY_COLUMN);
+        }
+
+        /**
+         * Writes the header and starts the pipeline.
+         *
+         * @throws IOException Thrown if the header could not be written.
+         */
+        void start() throws IOException {
+            if (!noHeader) {
+                rowFormatter.writeHeader(rowWriter);
+            }
+
+            pipeline = new RowPipeline(rowFormatter, rowWriter, pathTrie.getSlotCount(), pipelineWorkers);
+        }
+
+        /**
+         * Checks whether the table reads anything from the element being
+         * started.
+         *
+         * @param name  local name of the element
+         * @param depth number of open ancestors of the element
+         *
+         * @return true if the element contains a row item or a requested
+         *         value of the current row item
+         */
+        boolean accepts(final String name, final int depth) {
+            if (itemDepth >= 0) {
+                final PathTrie.Node node = ignored == 0 && !limitTracker.isFailed()
+                        ? nodeStack[itemDepth].child(name) : null;
+
+                // Elements containing only the value of a slot whose first value is already selected are not read
+                acceptedNode = node == null || isSelected(node.getSlot()) && !node.hasChildren()
+                        && !node.hasAttributes() ? null : node;
+            } else if (itemPath != null && matched == depth && depth < itemPath.length
+                    && itemPath[depth].equals(name)) {
+                acceptedNode = pathTrie.getItemNode();
+            } else {
+                acceptedNode = null;
+            }
+
+            return acceptedNode != null;
+        }
+
+        /**
+         * Processes start of the element checked by the last call of
+         * {@link #accepts(String, int)}.
+         *
+         * @param reader stream reader positioned at the element
+         *
+         * @throws IOException Thrown if a value could not be spilled.
+         */
+        void startElement(final XMLStreamReader reader) throws IOException {
+            final PathTrie.Node node = acceptedNode;
+            acceptedNode = null;
+
+            if (itemDepth >= 0) {
+                if (node == null) {
+                    ignored++;
+                    return;
+                }
+
+                processAttributes(reader, node);
+
+                itemDepth++;
+                if (itemDepth == nodeStack.length) {
+                    nodeStack = Arrays.copyOf(nodeStack, itemDepth * 2);
+                    textStack = Arrays.copyOf(textStack, itemDepth * 2);
+                }
+                nodeStack[itemDepth] = node;
+                if (textStack[itemDepth] == null) {
+                    textStack[itemDepth] = new ValueBuffer();
+                }
+            } else if (node != null) {
+                matched++;
+
+                // The document root element is never treated as a row item
+                if (matched == itemPath.length && matched > 1) {
+                    itemCount++;
+                    limitTracker.startItem();
+
+                    if (keySlot >= 0) {
+                        key = Long.toString(itemCount);
+                        pipeline.add(keySlot, key);
+                    }
+
+                    if (parentKeySlot >= 0 && parent != null) {
+                        pipeline.add(parentKeySlot, parent.key);
+                    }
+
+                    itemDepth = 0;
+                    nodeStack[0] = node;
+                    processAttributes(reader, node);
+                }
+            }
+        }
+
+        /**
+         * Checks whether text of the current element is a requested value.
+         *
+         * @return true if text of the current element should be appended
+         */
+        boolean readsText() {
+            return itemDepth >= 0 && ignored == 0 && !limitTracker.isFailed() && nodeStack[itemDepth].getSlot() >= 0
+                    && !isSelected(nodeStack[itemDepth].getSlot());
+        }
+
+        /**
+         * Appends text of the current element.
+         *
+         * @param chars character array with the text
+         * @param start index of first character of the text
+         * @param count number of characters of the text
+         *
+         * @throws IOException Thrown if the value could not be spilled.
+         */
+        void appendText(final char[] chars, final int start, final int count) throws IOException {
+            if (!limitTracker.append(textStack[itemDepth], chars, start, count)) {
+                discardText();
+            }
+        }
+
+        /**
+         * Processes end of an element.
+         *
+         * @param depth number of open ancestors of the element
+         *
+         * @throws IOException Thrown if a pipeline thread failed.
+         */
+        void endElement(final int depth) throws IOException {
+            if (itemDepth < 0) {
+                if (matched == depth + 1) {
+                    matched--;
+                }
+            } else if (ignored > 0) {
+                ignored--;
+            } else if (itemDepth == 0) {
+                if (limitTracker.isFailed()) {
+                    pipeline.discardItem();
+                } else {
+                    pipeline.endItem();
+                }
+
+                itemDepth = -1;
+                matched--;
+            } else {
+                final int slot = nodeStack[itemDepth].getSlot();
+
+                if (slot >= 0 && !limitTracker.isFailed() && !isSelected(slot)) {
+                    addValue(slot, textStack[itemDepth].takeValue(trim, valueCaches == null ? null : valueCaches[slot]));
+                }
+
+                itemDepth--;
+            }
+        }
+
+        /**
+         * Returns number of row items that exceeded value limits and were not
+         * written.
+         *
+         * @return number of skipped row items
+         */
+        long getFailedItems() {
+            return limitTracker.getFailedItems() + rowFormatter.getFailedItems();
+        }
+
+        /**
+         * Waits until all rows are written and closes the output.
+         *
+         * @throws IOException Thrown if rows could not be written.
+         */
+        void finish() throws IOException {
+            pipeline.close();
+            pipeline = null;
+            rowWriter.close();
+        }
+
+        /**
+         * Stops the pipeline if the conversion did not finish and deletes
+         * spilled values of row items not written.
+         */
+        void abort() {
+            if (pipeline != null) {
+                pipeline.abort();
+                pipeline = null;
+            }
+
+            for (final ValueBuffer buffer : textStack) {
+                if (buffer != null) {
+                    buffer.clear();
+                }
+            }
+
+            valueLimits.deleteSpilled();
+        }
+
+        /**
+         * Checks whether the first value of a slot is already selected for the
+         * current row item, so further values of the slot are not used.
+         *
+         * @param slot slot index
+         *
+         * @return true if values of the slot are not joined and a value was
+         *         already added
+         */
+        private boolean isSelected(final int slot) {
+            return !join && slot >= 0 && slotItems[slot] == itemCount;
+        }
+
+        /**
+         * Adds a single raw value of the current row item.
+         *
+         * @param slot  slot index
+         * @param value value
+         */
+        private void addValue(final int slot, final String value) {
+            slotItems[slot] = itemCount;
+            pipeline.add(slot, value);
+        }
+
+        /**
+         * Discards text of open elements of a row item that exceeded value
+         * limits.
+         */
+        private void discardText() {
+            for (int i = 1; i <= itemDepth; i++) {
+                textStack[i].clear();
+            }
+        }
+
+        /**
+         * Adds values of requested attributes of the current element.
+         *
+         * @param reader stream reader positioned at the element
+         * @param node   trie node of the element
+         *
+         * @throws IOException Thrown if a value could not be spilled.
+         */
+        private void processAttributes(final XMLStreamReader reader, final PathTrie.Node node) throws IOException {
+            if (!node.hasAttributes()) {
+                return;
+            }
+
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                final int slot = node.attributeSlot(reader.getAttributeLocalName(i));
+
+                if (slot >= 0 && !isSelected(slot)) {
+                    final String value = limitTracker.limit(reader.getAttributeValue(i));
+
+                    if (value == null) {
+                        discardText();
+                        return;
+                    }
+
+                    addValue(slot, valueCaches == null || ValueLimits.isSpilled(value)
+                            ? value : valueCaches[slot].intern(value, 0, value.length()));
+                }
+            }
+        }
+    }
+}
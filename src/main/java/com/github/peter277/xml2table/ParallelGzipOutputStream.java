@@ -0,0 +1,303 @@
+package com.github.peter277.xml2table;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip output stream compressing blocks of data in parallel.
+ * <p>
+ * Data is collected into fixed-size blocks. Each full block is compressed on
+ * a pool of worker threads into a separate gzip member, and the members are
+ * written to the underlying stream in original order, so the output is a
+ * multi-member gzip file readable by any gzip decompressor. The members are
+ * written in BGZF format (each member records its compressed size in the
+ * extra field and the file ends with an empty member), so that
+ * {@link CompressedInput} can inflate the output in parallel again.
+ * <p>
+ * The number of blocks being compressed is bounded, so the writing thread
+ * blocks when the workers cannot keep up. Flushing the stream ends the
+ * current block early and waits for all pending members to be written.
+ */
+final class ParallelGzipOutputStream extends OutputStream {
+
+    /**
+     * Uncompressed size of a block. BGZF members are limited to 64 KiB, which
+     * leaves enough space for stored blocks of incompressible data.
+     */
+    static final int BLOCK_SIZE = 0xff00;
+
+    /**
+     * Maximum size of a BGZF member.
+     */
+    private static final int MAX_MEMBER_SIZE = 64 * 1024;
+
+    /**
+     * Size of the member header with the BGZF extra field.
+     */
+    private static final int HEADER_SIZE = 18;
+
+    /**
+     * Size of the member trailer (CRC32 and uncompressed size).
+     */
+    private static final int TRAILER_SIZE = 8;
+
+    /**
+     * Empty member marking the end of a BGZF file.
+     */
+    private static final byte[] EOF_MEMBER = {
+        0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0, 0x1b, 0, 3, 0, 0, 0, 0, 0, 0, 0,
+        0, 0
+    };
+
+    /**
+     * Number of the stream, used for naming its threads.
+     */
+    private static final AtomicInteger STREAM_NUMBER = new AtomicInteger();
+
+    /**
+     * Underlying output stream.
+     */
+    private final OutputStream out;
+    /**
+     * Worker threads compressing blocks.
+     */
+    private final ExecutorService compressors;
+    /**
+     * Deflater of each worker thread.
+     */
+    private final ThreadLocal<Deflater> deflater;
+    /**
+     * Compressed members in original order, waiting to be written.
+     */
+    private final Queue<Future<byte[]>> pending = new ArrayDeque<>();
+    /**
+     * Maximum number of blocks being compressed.
+     */
+    private final int maxPending;
+    /**
+     * Block being filled.
+     */
+    private byte[] block = new byte[BLOCK_SIZE];
+    /**
+     * Number of bytes in {@link #block}.
+     */
+    private int blockLength = 0;
+    /**
+     * Whether the stream was closed.
+     */
+    private boolean closed = false;
+
+    /**
+     * Creates new stream and starts its worker threads.
+     *
+     * @param out     underlying output stream
+     * @param threads number of worker threads
+     * @param level   compression level (0-9, or -1 for default)
+     */
+    ParallelGzipOutputStream(final OutputStream out, final int threads, final int level) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive.");
+        }
+
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level must be between 0 and 9.");
+        }
+
+        final String name = "xml2table-deflate-" + STREAM_NUMBER.incrementAndGet();
+        final AtomicInteger threadNumber = new AtomicInteger();
+
+        this.out = out;
+        this.maxPending = threads * 2;
+        this.deflater = ThreadLocal.withInitial(() -> new Deflater(level, true));
+        this.compressors = Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        ensureOpen();
+
+        if (blockLength == BLOCK_SIZE) {
+            submitBlock();
+        }
+
+        block[blockLength++] = (byte) b;
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        ensureOpen();
+
+        int offset = off;
+        int remaining = len;
+
+        while (remaining > 0) {
+            if (blockLength == BLOCK_SIZE) {
+                submitBlock();
+            }
+
+            final int count = Math.min(remaining, BLOCK_SIZE - blockLength);
+            System.arraycopy(b, offset, block, blockLength, count);
+            blockLength += count;
+            offset += count;
+            remaining -= count;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        submitBlock();
+
+        while (!pending.isEmpty()) {
+            writeMember();
+        }
+
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        try {
+            flush();
+            out.write(EOF_MEMBER);
+        } finally {
+            closed = true;
+            compressors.shutdownNow();
+            out.close();
+        }
+    }
+
+    /**
+     * Checks that the stream was not closed.
+     *
+     * @throws IOException Thrown if the stream was closed.
+     */
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    /**
+     * Submits the current block for compression, first writing the oldest
+     * member if too many blocks are being compressed.
+     *
+     * @throws IOException Thrown if compression or writing failed.
+     */
+    private void submitBlock() throws IOException {
+        if (blockLength == 0) {
+            return;
+        }
+
+        if (pending.size() == maxPending) {
+            writeMember();
+        }
+
+        final byte[] data = block;
+        final int length = blockLength;
+
+        pending.add(compressors.submit(() -> compress(data, length)));
+        block = new byte[BLOCK_SIZE];
+        blockLength = 0;
+    }
+
+    /**
+     * Waits for the oldest member and writes it to the underlying stream.
+     *
+     * @throws IOException Thrown if compression or writing failed.
+     */
+    private void writeMember() throws IOException {
+        try {
+            out.write(pending.remove().get());
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for compressed data", ex);
+        } catch (final ExecutionException ex) {
+            throw new IOException("Compression failed", ex.getCause());
+        }
+    }
+
+    /**
+     * Compresses block into a BGZF member.
+     *
+     * @param data   block data
+     * @param length length of the data
+     *
+     * @return complete member
+     */
+    private byte[] compress(final byte[] data, final int length) {
+        final byte[] member = new byte[MAX_MEMBER_SIZE];
+        final Deflater threadDeflater = deflater.get();
+        int size = deflate(threadDeflater, data, length, member);
+
+        if (size < 0) {
+            // Incompressible data does not fit into the member, store it
+            final Deflater storingDeflater = new Deflater(Deflater.NO_COMPRESSION, true);
+
+            try {
+                size = deflate(storingDeflater, data, length, member);
+            } finally {
+                storingDeflater.end();
+            }
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+
+        final int memberSize = HEADER_SIZE + size + TRAILER_SIZE;
+        final ByteBuffer buffer = ByteBuffer.wrap(member).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(EOF_MEMBER, 0, 16);
+        buffer.putShort((short) (memberSize - 1));
+        buffer.position(HEADER_SIZE + size);
+        buffer.putInt((int) crc.getValue());
+        buffer.putInt(length);
+
+        return Arrays.copyOf(member, memberSize);
+    }
+
+    /**
+     * Deflates data into the member after its header.
+     *
+     * @param deflater deflater
+     * @param data     data
+     * @param length   length of the data
+     * @param member   member buffer
+     *
+     * @return size of the deflated data, or -1 if it does not fit into the
+     *         member
+     */
+    private static int deflate(final Deflater deflater, final byte[] data, final int length, final byte[] member) {
+        final int capacity = member.length - HEADER_SIZE - TRAILER_SIZE;
+
+        deflater.reset();
+        deflater.setInput(data, 0, length);
+        deflater.finish();
+
+        int size = 0;
+        while (!deflater.finished() && size < capacity) {
+            size += deflater.deflate(member, HEADER_SIZE + size, capacity - size);
+        }
+
+        return deflater.finished() ? size : -1;
+    }
+}
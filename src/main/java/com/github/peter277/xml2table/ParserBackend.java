@@ -0,0 +1,95 @@
+package com.github.peter277.xml2table;
+
+import java.io.InputStream;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * XML parser backend used to read input documents.
+ * <p>
+ * A backend wraps a single configured parser factory. The factory is created
+ * once per run and shared by all convertors, which may create readers from
+ * multiple threads concurrently, so implementations must be thread-safe.
+ * <p>
+ * Readers must report text and CDATA sections as separate
+ * {@link XMLStreamReader#CHARACTERS} and {@link XMLStreamReader#CDATA} events
+ * (i.e. they must not coalesce text), as the convertor only treats character
+ * data outside of CDATA sections as element values.
+ *
+ * @see Convertor
+ * @see ColumnFinder
+ */
+public interface ParserBackend {
+
+    /**
+     * Default input buffer size in characters (or bytes for byte based
+     * parsers).
+     */
+    int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Available parser backends.
+     */
+    enum Type {
+        /**
+         * Woodstox, supports all encodings and DTD processing.
+         */
+        WOODSTOX,
+        /**
+         * Aalto blocking stream reader.
+         */
+        AALTO,
+        /**
+         * Aalto non-blocking reader, fed with bytes read from the input
+         * stream.
+         */
+        AALTO_ASYNC
+    }
+
+    /**
+     * Creates backend with default settings.
+     *
+     * @return backend
+     */
+    static ParserBackend newDefault() {
+        return newBackend(Type.WOODSTOX, DEFAULT_BUFFER_SIZE, true);
+    }
+
+    /**
+     * Creates backend of given type.
+     *
+     * @param type       backend type
+     * @param bufferSize input buffer size
+     * @param dtdSupport whether DTD is processed, only supported by Woodstox
+     *
+     * @return backend
+     */
+    static ParserBackend newBackend(final Type type, final int bufferSize, final boolean dtdSupport) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Parser buffer size must be positive.");
+        }
+
+        switch (type) {
+            case WOODSTOX:
+                return new WoodstoxBackend(bufferSize, dtdSupport);
+            case AALTO:
+                return new AaltoBackend(bufferSize, false);
+            case AALTO_ASYNC:
+                return new AaltoBackend(bufferSize, true);
+            default:
+                throw new IllegalArgumentException("Unsupported parser backend: " + type);
+        }
+    }
+
+    /**
+     * Creates new stream reader reading given input stream. Reader is
+     * positioned at the start of the document.
+     *
+     * @param inputStream input stream
+     *
+     * @return stream reader
+     *
+     * @throws XMLStreamException Thrown if reader could not be created.
+     */
+    XMLStreamReader createReader(InputStream inputStream) throws XMLStreamException;
+}
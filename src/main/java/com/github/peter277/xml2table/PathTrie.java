@@ -0,0 +1,352 @@
+package com.github.peter277.xml2table;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compiled form of the row item XPath and the column paths below it.
+ * <p>
+ * The row item XPath (e.g. {@code /root/item}) is split into element local
+ * names once, and column paths relative to the row item (e.g.
+ * {@code header/value1} or {@code value2/@attrib}) are stored as a trie keyed
+ * on element local names. While parsing, the convertor follows one trie edge
+ * per element event instead of building and comparing path strings.
+ * <p>
+ * The trie only contains paths which can contribute to a requested column, so
+ * the convertor can skip any element without a trie node together with its
+ * whole subtree. Each distinct requested path is assigned a slot index, which
+ * addresses its value in a {@link RowBuffer}.
+ *
+ * @see Convertor
+ */
+final class PathTrie {
+
+    /**
+     * Local names of the row item path elements, or null if the row item
+     * XPath can never match an element.
+     */
+    private final String[] itemPath;
+    /**
+     * Trie node of the row item element.
+     */
+    private final Node itemNode = new Node();
+    /**
+     * Slot indexes of requested paths.
+     */
+    private final Map<String, Integer> slots = new HashMap<>(16);
+
+    /**
+     * Compiles row item XPath and column paths.
+     *
+     * @param itemName XPath which refers to XML element which will be
+     *                 converted to a row
+     * @param columns  column paths relative to the row item
+     */
+    PathTrie(final String itemName, final Collection<String> columns) {
+        this.itemPath = splitItemPath(itemName);
+
+        for (final String column : columns) {
+            addColumn(column);
+        }
+    }
+
+    /**
+     * Returns local names of the row item path elements.
+     *
+     * @return local names of the row item path elements, or null if the row
+     *         item XPath can never match an element
+     */
+    String[] getItemPath() {
+        return itemPath;
+    }
+
+    /**
+     * Returns trie node of the row item element.
+     *
+     * @return trie node of the row item element
+     */
+    Node getItemNode() {
+        return itemNode;
+    }
+
+    /**
+     * Returns number of slots assigned to requested paths.
+     *
+     * @return number of slots
+     */
+    int getSlotCount() {
+        return slots.size();
+    }
+
+    /**
+     * Returns slot index of a column path.
+     *
+     * @param column column path relative to the row item
+     *
+     * @return slot index, or -1 if the column path can never match a value
+     */
+    int indexOf(final String column) {
+        final Integer slot = slots.get(column);
+
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Adds column path to the trie.
+     *
+     * @param column column path relative to the row item
+     */
+    private void addColumn(final String column) {
+        if (column == null || column.isEmpty()) {
+            return;
+        }
+
+        final String[] segments = column.split("/", -1);
+        Node node = itemNode;
+
+        for (int i = 0; i < segments.length; i++) {
+            final String segment = segments[i];
+
+            if (segment.isEmpty()) {
+                return;
+            }
+
+            if (segment.charAt(0) == '@') {
+                if (i == segments.length - 1 && !slots.containsKey(column)) {
+                    node.addAttribute(segment.substring(1), slots.size());
+                    slots.put(column, slots.size());
+                }
+
+                return;
+            }
+
+            node = node.addChild(segment);
+        }
+
+        if (node.slot < 0) {
+            node.slot = slots.size();
+            slots.put(column, slots.size());
+        }
+    }
+
+    /**
+     * Splits row item XPath into element local names.
+     *
+     * @param itemName row item XPath
+     *
+     * @return local names of the path elements, or null if the XPath is not
+     *         an absolute path of element names
+     */
+    private static String[] splitItemPath(final String itemName) {
+        if (itemName == null || !itemName.startsWith("/")) {
+            return null;
+        }
+
+        final String[] names = itemName.substring(1).split("/", -1);
+
+        for (final String name : names) {
+            if (name.isEmpty()) {
+                return null;
+            }
+        }
+
+        return names;
+    }
+
+    /**
+     * Compares bytes with a range of a byte buffer.
+     *
+     * @param bytes  bytes
+     * @param buffer byte buffer
+     * @param start  index of first byte of the range
+     * @param end    index after last byte of the range
+     *
+     * @return true if the range contains the same bytes
+     */
+    static boolean nameEquals(final byte[] bytes, final ByteBuffer buffer, final int start, final int end) {
+        if (bytes.length != end - start) {
+            return false;
+        }
+
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != buffer.get(start + i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Trie node representing single element path relative to the row item.
+     */
+    static final class Node {
+
+        /**
+         * Slot index of the element text, or -1 if it is not a requested
+         * value.
+         */
+        private int slot = -1;
+        /**
+         * Child element nodes by local name.
+         */
+        private final Map<String, Node> children = new HashMap<>(8);
+        /**
+         * Slot indexes of requested attributes by attribute local name.
+         */
+        private final Map<String, Integer> attributeSlots = new HashMap<>(4);
+        /**
+         * UTF-8 encoded local names of child elements, in the same order as
+         * {@link #childNodes}.
+         */
+        private byte[][] childNames = new byte[0][];
+        /**
+         * Child element nodes.
+         */
+        private Node[] childNodes = new Node[0];
+        /**
+         * UTF-8 encoded local names of requested attributes, in the same order
+         * as {@link #attributeSlotList}.
+         */
+        private byte[][] attributeNames = new byte[0][];
+        /**
+         * Slot indexes of requested attributes.
+         */
+        private int[] attributeSlotList = new int[0];
+
+        /**
+         * Returns slot index of the element text.
+         *
+         * @return slot index, or -1 if the element text is not a requested
+         *         value
+         */
+        int getSlot() {
+            return slot;
+        }
+
+        /**
+         * Returns whether any attribute of the element is a requested value.
+         *
+         * @return true if any attribute of the element is a requested value
+         */
+        boolean hasAttributes() {
+            return !attributeSlots.isEmpty();
+        }
+
+        /**
+         * Returns whether any child element contains a requested value.
+         *
+         * @return true if the node has child nodes
+         */
+        boolean hasChildren() {
+            return !children.isEmpty();
+        }
+
+        /**
+         * Returns child node for element with given local name.
+         *
+         * @param localName element local name
+         *
+         * @return child node, or null if no requested value is found in the
+         *         element subtree
+         */
+        Node child(final String localName) {
+            return children.get(localName);
+        }
+
+        /**
+         * Returns slot index of attribute with given local name.
+         *
+         * @param localName attribute local name
+         *
+         * @return slot index, or -1 if the attribute is not a requested value
+         */
+        int attributeSlot(final String localName) {
+            final Integer attributeSlot = attributeSlots.get(localName);
+
+            return attributeSlot == null ? -1 : attributeSlot;
+        }
+
+        /**
+         * Returns child node for element whose UTF-8 encoded local name is
+         * stored in a byte buffer.
+         *
+         * @param buffer byte buffer
+         * @param start  index of first byte of the name
+         * @param end    index after last byte of the name
+         *
+         * @return child node, or null if no requested value is found in the
+         *         element subtree
+         */
+        Node child(final ByteBuffer buffer, final int start, final int end) {
+            for (int i = 0; i < childNames.length; i++) {
+                if (nameEquals(childNames[i], buffer, start, end)) {
+                    return childNodes[i];
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * Returns slot index of attribute whose UTF-8 encoded local name is
+         * stored in a byte buffer.
+         *
+         * @param buffer byte buffer
+         * @param start  index of first byte of the name
+         * @param end    index after last byte of the name
+         *
+         * @return slot index, or -1 if the attribute is not a requested value
+         */
+        int attributeSlot(final ByteBuffer buffer, final int start, final int end) {
+            for (int i = 0; i < attributeNames.length; i++) {
+                if (nameEquals(attributeNames[i], buffer, start, end)) {
+                    return attributeSlotList[i];
+                }
+            }
+
+            return -1;
+        }
+
+        /**
+         * Adds requested attribute.
+         *
+         * @param localName attribute local name
+         * @param slot      slot index
+         */
+        private void addAttribute(final String localName, final int slot) {
+            attributeSlots.put(localName, slot);
+            attributeNames = Arrays.copyOf(attributeNames, attributeNames.length + 1);
+            attributeNames[attributeNames.length - 1] = localName.getBytes(StandardCharsets.UTF_8);
+            attributeSlotList = Arrays.copyOf(attributeSlotList, attributeSlotList.length + 1);
+            attributeSlotList[attributeSlotList.length - 1] = slot;
+        }
+
+        /**
+         * Returns child node for element with given local name, creating it
+         * if it does not exist yet.
+         *
+         * @param localName element local name
+         *
+         * @return child node
+         */
+        private Node addChild(final String localName) {
+            Node node = children.get(localName);
+
+            if (node == null) {
+                node = new Node();
+                children.put(localName, node);
+                childNames = Arrays.copyOf(childNames, childNames.length + 1);
+                childNames[childNames.length - 1] = localName.getBytes(StandardCharsets.UTF_8);
+                childNodes = Arrays.copyOf(childNodes, childNodes.length + 1);
+                childNodes[childNodes.length - 1] = node;
+            }
+
+            return node;
+        }
+    }
+}
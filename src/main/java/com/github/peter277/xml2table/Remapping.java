@@ -35,6 +35,11 @@ public class Remapping {
      * Column name.
      */
     private String column;
+    /**
+     * Slot index of {@link #column} in item values, or -1 if the column can
+     * never match a value.
+     */
+    private int columnIndex = -1;
     /**
      * Map of original values and new values.
      */
@@ -77,14 +82,36 @@ public class Remapping {
         this.map = map;
     }
 
+    /**
+     * Resolves {@link #column} to its slot index in item values.
+     *
+     * @param pathTrie compiled row item and column paths
+     */
+    void resolveColumnIndex(final PathTrie pathTrie) {
+        this.columnIndex = pathTrie.indexOf(column);
+    }
+
+    /**
+     * Returns slot index of {@link #column} in item values.
+     *
+     * @return slot index, or -1 if the column can never match a value
+     */
+    int getColumnIndex() {
+        return columnIndex;
+    }
+
     /**
      * Replaces values in {@link #column} with values from {@link #map} if
      * current value is present in {@link #map} as key.
      *
-     * @param itemValues item values
+     * @param itemValues item values indexed by slot
      */
-    public void replaceValues(final Map<String, String> itemValues) {
-        final String itemValue = itemValues.get(column);
+    public void replaceValues(final String[] itemValues) {
+        if (columnIndex < 0) {
+            return;
+        }
+
+        final String itemValue = itemValues[columnIndex];
 
         if (itemValue == null) {
             return;
@@ -93,7 +120,7 @@ public class Remapping {
         final String newValue = map.get(itemValue);
 
         if (newValue != null) {
-            itemValues.put(column, newValue);
+            itemValues[columnIndex] = newValue;
         }
     }
 }
@@ -23,7 +23,8 @@ package com.github.peter277.xml2table;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Map;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Remappings handler.
@@ -46,12 +47,77 @@ public class Remappings {
         remappings.add(remapping);
     }
 
+    /**
+     * Returns names of columns used by all specified remappings.
+     *
+     * @return collection of column names
+     */
+    public Collection<String> getColumns() {
+        final Collection<String> columns = new ArrayList<>(remappings.size());
+
+        for (final Remapping remapping : remappings) {
+            columns.add(remapping.getColumn());
+        }
+
+        return columns;
+    }
+
+    /**
+     * Resolves columns of all specified remappings to their slot indexes in
+     * item values.
+     *
+     * @param pathTrie compiled row item and column paths
+     */
+    void resolveColumnIndexes(final PathTrie pathTrie) {
+        for (final Remapping remapping : remappings) {
+            remapping.resolveColumnIndex(pathTrie);
+        }
+    }
+
+    /**
+     * Returns original values of all remappings of a slot. Must be called
+     * after the columns are resolved.
+     *
+     * @param slot slot index
+     *
+     * @return set of values that are remapped
+     */
+    Set<String> getRemappedValues(final int slot) {
+        final Set<String> values = new HashSet<>();
+
+        for (final Remapping remapping : remappings) {
+            if (remapping.getColumnIndex() == slot) {
+                values.addAll(remapping.getMap().keySet());
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * Returns length of the longest original value of all remappings of a
+     * slot. Must be called after the columns are resolved.
+     *
+     * @param slot slot index
+     *
+     * @return maximum value length, or -1 if no remapping uses the slot
+     */
+    int getMaxValueLength(final int slot) {
+        int maxLength = -1;
+
+        for (final String value : getRemappedValues(slot)) {
+            maxLength = Math.max(maxLength, value.length());
+        }
+
+        return maxLength;
+    }
+
     /**
      * Replaces values in item using all specified remappings.
      *
-     * @param itemValues item values
+     * @param itemValues item values indexed by slot
      */
-    public void replaceValues(final Map<String, String> itemValues) {
+    public void replaceValues(final String[] itemValues) {
         for (final Remapping remapping : remappings) {
             remapping.replaceValues(itemValues);
         }
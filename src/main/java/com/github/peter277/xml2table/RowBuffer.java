@@ -0,0 +1,80 @@
+package com.github.peter277.xml2table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reusable buffer of values of a single row item, addressed by slot index.
+ * <p>
+ * Slot indexes are assigned to requested paths by {@link PathTrie}. Raw values
+ * matched by a path are collected in its slot while the item is parsed and
+ * are then reduced to a single value per slot. The buffer is reset between
+ * items rather than reallocated.
+ */
+final class RowBuffer {
+
+    /**
+     * Raw values matched for each slot.
+     */
+    private final List<List<String>> rawValues;
+    /**
+     * Single value for each slot, prepared from raw values.
+     */
+    private final String[] values;
+
+    /**
+     * Creates new row buffer.
+     *
+     * @param slotCount number of slots
+     */
+    RowBuffer(final int slotCount) {
+        this.rawValues = new ArrayList<>(slotCount);
+        this.values = new String[slotCount];
+
+        for (int i = 0; i < slotCount; i++) {
+            rawValues.add(new ArrayList<>(10));
+        }
+    }
+
+    /**
+     * Adds a single raw value to a slot.
+     *
+     * @param slot  slot index
+     * @param value value to be added
+     */
+    void add(final int slot, final String value) {
+        rawValues.get(slot).add(value);
+    }
+
+    /**
+     * Returns raw values matched for a slot.
+     *
+     * @param slot slot index
+     *
+     * @return list of raw values, empty if no value was matched
+     */
+    List<String> getRawValues(final int slot) {
+        return rawValues.get(slot);
+    }
+
+    /**
+     * Returns single values of all slots.
+     *
+     * @return array of values indexed by slot
+     */
+    String[] getValues() {
+        return values;
+    }
+
+    /**
+     * Clears all slots before processing next row item.
+     */
+    void reset() {
+        for (final List<String> slotValues : rawValues) {
+            slotValues.clear();
+        }
+
+        Arrays.fill(values, null);
+    }
+}
@@ -0,0 +1,395 @@
+package com.github.peter277.xml2table;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Turns values of a row item collected in a {@link RowBuffer} into an output
+ * row. Raw values of each slot are joined or reduced to the first value,
+ * filters and remappings are applied and the row is written to a
+ * {@link RowWriter}.
+ * <p>
+ * The formatter keeps a reusable join buffer, so each thread needs its own
+ * instance. Settings, filters and remappings are only read and can be shared.
+ * <p>
+ * Joined values are limited by {@link ValueLimits}. Spilled values are copied
+ * from their temporary files to the output and the files are deleted once the
+ * row is written or filtered out. Spilled values of filter and remapping
+ * columns are read into memory if they are short enough to match any filter
+ * or remapping value.
+ */
+final class RowFormatter {
+
+    /**
+     * Output column paths.
+     */
+    private final String[] columns;
+    /**
+     * Slot index of each output column, or -1 if the column can never match
+     * a value.
+     */
+    private final int[] columnSlots;
+    /**
+     * Filters, or null.
+     */
+    private final Filters filters;
+    /**
+     * Remappings, or null.
+     */
+    private final Remappings remappings;
+    /**
+     * Column separator.
+     */
+    private final String separator;
+    /**
+     * Whether values are trimmed.
+     */
+    private final boolean trim;
+    /**
+     * Whether multiple values are joined.
+     */
+    private final boolean join;
+    /**
+     * Separator of joined values.
+     */
+    private final String joinSeparator;
+    /**
+     * How values are quoted.
+     */
+    private final RowWriter.QuoteMode quoteMode;
+    /**
+     * Limits of values.
+     */
+    private final ValueLimits limits;
+    /**
+     * Whether values may be spilled to temporary files.
+     */
+    private final boolean spilling;
+    /**
+     * Length of the longest filter or remapping value of each slot, -1 if
+     * the slot has no filter or remapping, or null if values are not spilled.
+     */
+    private final int[] matchLengths;
+    /**
+     * Number of rows skipped because joined values exceeded a limit, shared
+     * by copies of the formatter.
+     */
+    private final AtomicLong failedItems;
+    /**
+     * Reusable buffer for joining values.
+     */
+    private final StringBuilder joinBuilder = new StringBuilder(1_024);
+    /**
+     * Whether joined values of the current row exceeded a limit with
+     * {@link ValueLimits.Policy#FAIL_ITEM} policy.
+     */
+    private boolean itemFailed = false;
+
+    /**
+     * Creates new row formatter.
+     *
+     * @param settings convertor settings
+     * @param pathTrie compiled row item and column paths
+     */
+    RowFormatter(final ConvertorSettings settings, final PathTrie pathTrie) {
+        this(settings, pathTrie, settings.getValueLimits());
+    }
+
+    /**
+     * Creates new row formatter sharing limits, and so spilled values, with
+     * the parser of the convertor.
+     *
+     * @param settings convertor settings
+     * @param pathTrie compiled row item and column paths
+     * @param limits   limits of values
+     */
+    RowFormatter(final ConvertorSettings settings, final PathTrie pathTrie, final ValueLimits limits) {
+        this.columns = settings.generalOptions.columns;
+        this.filters = settings.filters;
+        this.remappings = settings.remappings;
+        this.separator = settings.generalOptions.separator;
+        this.trim = settings.generalOptions.trimValues;
+        this.join = settings.generalOptions.join;
+        this.joinSeparator = settings.generalOptions.joinSeparator;
+        this.quoteMode = settings.generalOptions.noQuote ? RowWriter.QuoteMode.NEVER
+                : settings.generalOptions.quoteMode;
+        this.columnSlots = new int[columns.length];
+        this.limits = limits;
+        this.spilling = limits.isLimited() && limits.getPolicy() == ValueLimits.Policy.SPILL;
+        this.failedItems = new AtomicLong();
+
+        for (int i = 0; i < columns.length; i++) {
+            this.columnSlots[i] = pathTrie.indexOf(columns[i]);
+        }
+
+        if (spilling && (filters != null || remappings != null)) {
+            this.matchLengths = new int[pathTrie.getSlotCount()];
+
+            for (int slot = 0; slot < matchLengths.length; slot++) {
+                matchLengths[slot] = Math.max(filters == null ? -1 : filters.getMaxValueLength(slot),
+                        remappings == null ? -1 : remappings.getMaxValueLength(slot));
+            }
+        } else {
+            this.matchLengths = null;
+        }
+    }
+
+    /**
+     * Creates new row formatter with the same settings.
+     *
+     * @param formatter formatter to copy settings from
+     */
+    RowFormatter(final RowFormatter formatter) {
+        this.columns = formatter.columns;
+        this.columnSlots = formatter.columnSlots;
+        this.filters = formatter.filters;
+        this.remappings = formatter.remappings;
+        this.separator = formatter.separator;
+        this.trim = formatter.trim;
+        this.join = formatter.join;
+        this.joinSeparator = formatter.joinSeparator;
+        this.quoteMode = formatter.quoteMode;
+        this.limits = formatter.limits;
+        this.spilling = formatter.spilling;
+        this.matchLengths = formatter.matchLengths;
+        this.failedItems = formatter.failedItems;
+    }
+
+    /**
+     * Returns number of rows skipped because joined values exceeded a limit,
+     * counted by this formatter and all its copies.
+     *
+     * @return number of skipped rows
+     */
+    long getFailedItems() {
+        return failedItems.get();
+    }
+
+    /**
+     * Writes header row with column names.
+     *
+     * @param out row writer
+     *
+     * @throws IOException Thrown if problem occurred while writing to output.
+     */
+    void writeHeader(final RowWriter out) throws IOException {
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                out.append(separator);
+            }
+
+            writeValue(out, columns[i]);
+        }
+
+        out.append('\n');
+        out.endRow();
+    }
+
+    /**
+     * Prepares single value of each slot from its raw values, applies filters
+     * and remappings and writes the row unless it is filtered out.
+     *
+     * @param rowBuffer values of the row item
+     * @param out       row writer
+     *
+     * @return true if the row was written, false if it was filtered out
+     *
+     * @throws IOException Thrown if problem occurred while writing to output.
+     */
+    boolean writeRow(final RowBuffer rowBuffer, final RowWriter out) throws IOException {
+        final String[] values = rowBuffer.getValues();
+
+        try {
+            itemFailed = false;
+
+            for (int slot = 0; slot < values.length; slot++) {
+                values[slot] = prepareValue(rowBuffer.getRawValues(slot));
+            }
+
+            if (itemFailed) {
+                failedItems.incrementAndGet();
+
+                return false;
+            }
+
+            if (matchLengths != null) {
+                readSpilledValues(values);
+            }
+
+            if (filters != null && !filters.matchesFilters(values)) {
+                return false;
+            }
+
+            if (remappings != null) {
+                remappings.replaceValues(values);
+            }
+
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) {
+                    out.append(separator);
+                }
+
+                writeValue(out, columnSlots[i] < 0 ? null : values[columnSlots[i]]);
+            }
+
+            out.append('\n');
+            out.endRow();
+
+            return true;
+        } finally {
+            if (spilling) {
+                deleteSpilledValues(rowBuffer);
+            }
+        }
+    }
+
+    /**
+     * Replaces spilled values of filter and remapping columns by their
+     * content, unless they are longer than any filter or remapping value of
+     * the column and so cannot match.
+     *
+     * @param values prepared values of the row
+     *
+     * @throws IOException Thrown if a spilled value could not be read.
+     */
+    private void readSpilledValues(final String[] values) throws IOException {
+        for (int slot = 0; slot < values.length; slot++) {
+            if (matchLengths[slot] >= 0 && ValueLimits.isSpilled(values[slot])) {
+                final String value = limits.readSpilled(values[slot], trim, matchLengths[slot]);
+
+                if (value != null) {
+                    limits.delete(values[slot]);
+                    values[slot] = value;
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes temporary files of spilled values of the row once it is
+     * written or filtered out.
+     *
+     * @param rowBuffer values of the row item
+     */
+    private void deleteSpilledValues(final RowBuffer rowBuffer) {
+        final String[] values = rowBuffer.getValues();
+
+        for (int slot = 0; slot < values.length; slot++) {
+            if (ValueLimits.isSpilled(values[slot])) {
+                limits.delete(values[slot]);
+            }
+
+            for (final String value : rowBuffer.getRawValues(slot)) {
+                if (ValueLimits.isSpilled(value)) {
+                    limits.delete(value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes single value, quoted according to the quote mode.
+     *
+     * @param out   row writer
+     * @param value value, null is written as empty string
+     *
+     * @throws IOException Thrown if problem occurred while writing to output.
+     */
+    private void writeValue(final RowWriter out, final String value) throws IOException {
+        if (spilling && ValueLimits.isSpilled(value)) {
+            limits.writeSpilled(value, out, quoteMode, separator, trim);
+
+            return;
+        }
+
+        switch (quoteMode) {
+            case ALWAYS:
+                out.appendQuoted(value);
+                break;
+            case MINIMAL:
+                out.appendMinimallyQuoted(value, separator);
+                break;
+            default:
+                if (value != null) {
+                    out.append(value);
+                }
+        }
+    }
+
+    /**
+     * Joins elements from the list using configured join separator or return first
+     * element from the list. Use trim=<code>true</code> to trim values.
+     *
+     * @param values         list of values
+     *
+     * @return String containing separated values from the list or first element
+     *         from the list.
+     *
+     * @throws IOException Thrown if joined values could not be spilled.
+     */
+    private String prepareValue(final List<String> values) throws IOException {
+        if (values.isEmpty()) {
+            return null;
+        }
+        if (join) {
+            if (values.size() == 1 && spilling && ValueLimits.isSpilled(values.get(0))) {
+                return values.get(0);
+            }
+
+            if (limits.isLimited() && exceedsLimit(values)) {
+                switch (limits.getPolicy()) {
+                    case SPILL:
+                        return limits.spillJoined(values, joinSeparator, trim);
+                    case FAIL_ITEM:
+                        itemFailed = true;
+                        return null;
+                    default:
+                        // Truncated below
+                }
+            }
+
+            final StringBuilder sb = joinBuilder;
+            sb.setLength(0);
+
+            for (int i = 0; i < values.size(); i++) {
+                final String processedValue = trim ? values.get(i).trim() : values.get(i);
+                sb.append(processedValue);
+                if (i < values.size() - 1) { // Append separator only if not the last element
+                    sb.append(joinSeparator);
+                }
+            }
+
+            if (sb.length() > limits.getMaxValueLength()) {
+                sb.setLength((int) limits.getMaxValueLength());
+            }
+
+            return sb.toString();
+        } else {
+            final String value = values.get(0);
+            // Spilled values are trimmed when they are read
+            return trim && !(spilling && ValueLimits.isSpilled(value)) ? value.trim() : value;
+        }
+    }
+
+    /**
+     * Checks whether joined values would exceed the maximum value length.
+     *
+     * @param values list of values
+     *
+     * @return true if any value is spilled or the joined value is too long
+     */
+    private boolean exceedsLimit(final List<String> values) {
+        long length = (long) joinSeparator.length() * (values.size() - 1);
+
+        for (final String value : values) {
+            if (ValueLimits.isSpilled(value)) {
+                return true;
+            }
+
+            length += trim ? value.trim().length() : value.length();
+        }
+
+        return length > limits.getMaxValueLength();
+    }
+}
@@ -0,0 +1,393 @@
+package com.github.peter277.xml2table;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pipelined processing of row items parsed by a {@link Convertor}.
+ * <p>
+ * The parsing thread only records raw values of row items, batched into
+ * compact records of slot indexes and values. Each full batch is submitted
+ * to a pool of worker threads, which prepare values, apply filters and
+ * remappings and format the rows in memory. A writer thread takes the
+ * formatted batches in the original order and appends them to the output
+ * {@link RowWriter}.
+ * <p>
+ * The number of batches submitted but not yet written is bounded, so the
+ * parsing thread blocks when workers or output cannot keep up and memory use
+ * stays bounded regardless of the input size.
+ */
+final class RowPipeline {
+
+    /**
+     * Number of row items in a batch.
+     */
+    static final int BATCH_SIZE = 256;
+
+    /**
+     * Initial size of the buffer for formatted rows of a batch.
+     */
+    private static final int BATCH_BUFFER_SIZE = 32 * 1024;
+
+    /**
+     * Marker of the end of the pending batches.
+     */
+    private static final Future<RowWriter> END = CompletableFuture.completedFuture(null);
+
+    /**
+     * Number of the pipeline, used for naming its threads.
+     */
+    private static final AtomicInteger PIPELINE_NUMBER = new AtomicInteger();
+
+    /**
+     * Output row writer, used only by the writer thread until the pipeline
+     * is closed.
+     */
+    private final RowWriter rowWriter;
+    /**
+     * Formatter whose settings are copied to the worker formatters.
+     */
+    private final RowFormatter formatter;
+    /**
+     * Number of slots of a row item.
+     */
+    private final int slotCount;
+    /**
+     * Worker threads formatting batches.
+     */
+    private final ExecutorService workers;
+    /**
+     * Formatter and row buffer of each worker thread.
+     */
+    private final ThreadLocal<WorkerState> workerState;
+    /**
+     * Formatted batches in original order, waiting for the writer thread.
+     */
+    private final BlockingQueue<Future<RowWriter>> pending;
+    /**
+     * Thread appending formatted batches to the output.
+     */
+    private final Thread writerThread;
+    /**
+     * First failure of a worker or the writer thread.
+     */
+    private volatile Throwable failure = null;
+    /**
+     * Batch being filled by the parsing thread.
+     */
+    private ItemBatch batch = new ItemBatch();
+
+    /**
+     * Creates new pipeline and starts its threads.
+     *
+     * @param formatter   formatter whose settings are used by the workers
+     * @param rowWriter   output row writer
+     * @param slotCount   number of slots of a row item
+     * @param workerCount number of worker threads
+     */
+    RowPipeline(final RowFormatter formatter, final RowWriter rowWriter, final int slotCount,
+            final int workerCount) {
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("workerCount must be positive.");
+        }
+
+        final String name = "xml2table-pipeline-" + PIPELINE_NUMBER.incrementAndGet();
+        final AtomicInteger workerNumber = new AtomicInteger();
+
+        this.formatter = formatter;
+        this.rowWriter = rowWriter;
+        this.slotCount = slotCount;
+        this.workerState = ThreadLocal.withInitial(() -> new WorkerState(this.formatter, this.slotCount));
+        this.pending = new ArrayBlockingQueue<>(workerCount * 2);
+        this.workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            final Thread thread = new Thread(runnable, name + "-worker-" + workerNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.writerThread = new Thread(this::writeBatches, name + "-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Adds a single raw value of the current row item.
+     *
+     * @param slot  slot index
+     * @param value value to be added
+     */
+    void add(final int slot, final String value) {
+        batch.add(slot, value);
+    }
+
+    /**
+     * Marks end of the current row item and submits the batch if it is full.
+     *
+     * @throws IOException Thrown if a worker or the writer thread failed.
+     */
+    void endItem() throws IOException {
+        batch.endItem();
+
+        if (batch.itemCount == BATCH_SIZE) {
+            submit();
+        }
+    }
+
+    /**
+     * Discards values of the current row item added so far.
+     */
+    void discardItem() {
+        batch.discardItem();
+    }
+
+    /**
+     * Submits the last batch and waits until all rows are written. The output
+     * row writer is neither flushed nor closed.
+     *
+     * @throws IOException Thrown if a worker or the writer thread failed.
+     */
+    void close() throws IOException {
+        try {
+            if (batch.itemCount > 0) {
+                submit();
+            }
+
+            pending.put(END);
+            writerThread.join();
+        } catch (final InterruptedException ex) {
+            abort();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Conversion interrupted", ex);
+        } finally {
+            workers.shutdown();
+        }
+
+        checkFailure();
+    }
+
+    /**
+     * Stops the pipeline after a failure of the parsing thread, discarding
+     * any rows not written yet. Returns once workers and the writer thread
+     * have stopped.
+     */
+    void abort() {
+        workers.shutdownNow();
+        writerThread.interrupt();
+
+        // The output row writer may be closed and spilled values of discarded
+        // rows deleted once the threads have stopped
+        boolean interrupted = false;
+
+        while (writerThread.isAlive() || !workers.isTerminated()) {
+            try {
+                writerThread.join();
+                workers.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (final InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Submits the current batch to the workers and starts a new one. Blocks
+     * while the maximum number of batches is pending.
+     *
+     * @throws IOException Thrown if a worker or the writer thread failed.
+     */
+    private void submit() throws IOException {
+        checkFailure();
+
+        final ItemBatch submitted = batch;
+        batch = new ItemBatch();
+
+        try {
+            pending.put(workers.submit(() -> format(submitted)));
+        } catch (final InterruptedException ex) {
+            abort();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Conversion interrupted", ex);
+        }
+    }
+
+    /**
+     * Rethrows failure of a worker or the writer thread.
+     *
+     * @throws IOException Thrown if a worker or the writer thread failed.
+     */
+    private void checkFailure() throws IOException {
+        final Throwable cause = failure;
+
+        if (cause == null) {
+            return;
+        }
+
+        abort();
+
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        } else {
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Formats rows of a batch in memory. Runs on a worker thread.
+     *
+     * @param itemBatch batch of row items
+     *
+     * @return row writer containing formatted rows
+     *
+     * @throws IOException Thrown if problem occurred while formatting rows.
+     */
+    private RowWriter format(final ItemBatch itemBatch) throws IOException {
+        final WorkerState state = workerState.get();
+        final RowWriter out = new RowWriter(BATCH_BUFFER_SIZE);
+        int value = 0;
+
+        for (int item = 0; item < itemBatch.itemCount; item++) {
+            state.rowBuffer.reset();
+
+            for (; value < itemBatch.itemEnds[item]; value++) {
+                state.rowBuffer.add(itemBatch.slots[value], itemBatch.values[value]);
+            }
+
+            state.formatter.writeRow(state.rowBuffer, out);
+        }
+
+        return out;
+    }
+
+    /**
+     * Appends formatted batches to the output in original order. Runs on the
+     * writer thread. After a failure the remaining batches are discarded, so
+     * the parsing thread never blocks on a full queue.
+     */
+    private void writeBatches() {
+        try {
+            while (true) {
+                final Future<RowWriter> future = pending.take();
+
+                if (future == END) {
+                    break;
+                }
+
+                if (failure != null) {
+                    future.cancel(false);
+                    continue;
+                }
+
+                try {
+                    future.get().appendTo(rowWriter);
+                } catch (final ExecutionException ex) {
+                    failure = ex.getCause();
+                } catch (final IOException | RuntimeException | Error ex) {
+                    failure = ex;
+                }
+            }
+        } catch (final InterruptedException ex) {
+            // Aborted by the parsing thread
+        }
+    }
+
+    /**
+     * Formatter and row buffer owned by a worker thread.
+     */
+    private static final class WorkerState {
+
+        /**
+         * Formatter.
+         */
+        final RowFormatter formatter;
+        /**
+         * Row buffer.
+         */
+        final RowBuffer rowBuffer;
+        /**
+         * Creates new worker state.
+         *
+         * @param formatter formatter to copy settings from
+         * @param slotCount number of slots of a row item
+         */
+        WorkerState(final RowFormatter formatter, final int slotCount) {
+            this.formatter = new RowFormatter(formatter);
+            this.rowBuffer = new RowBuffer(slotCount);
+        }
+    }
+
+    /**
+     * Raw values of a batch of row items, stored as parallel arrays of slot
+     * indexes and values.
+     */
+    private static final class ItemBatch {
+
+        /**
+         * Slot index of each value.
+         */
+        int[] slots = new int[BATCH_SIZE * 4];
+        /**
+         * Values.
+         */
+        String[] values = new String[BATCH_SIZE * 4];
+        /**
+         * Number of values.
+         */
+        int valueCount = 0;
+        /**
+         * Index after the last value of each row item.
+         */
+        final int[] itemEnds = new int[BATCH_SIZE];
+        /**
+         * Number of row items.
+         */
+        int itemCount = 0;
+
+        /**
+         * Adds a single raw value of the current row item.
+         *
+         * @param slot  slot index
+         * @param value value to be added
+         */
+        void add(final int slot, final String value) {
+            if (valueCount == values.length) {
+                slots = Arrays.copyOf(slots, valueCount * 2);
+                values = Arrays.copyOf(values, valueCount * 2);
+            }
+
+            slots[valueCount] = slot;
+            values[valueCount] = value;
+            valueCount++;
+        }
+
+        /**
+         * Marks end of the current row item.
+         */
+        void endItem() {
+            itemEnds[itemCount++] = valueCount;
+        }
+
+        /**
+         * Discards values of the current row item.
+         */
+        void discardItem() {
+            final int itemStart = itemCount == 0 ? 0 : itemEnds[itemCount - 1];
+            Arrays.fill(values, itemStart, valueCount, null);
+            valueCount = itemStart;
+        }
+    }
+}
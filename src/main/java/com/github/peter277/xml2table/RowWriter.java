@@ -0,0 +1,396 @@
+package com.github.peter277.xml2table;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Output stage of the convertor. Rows are serialized directly into a large
+ * reusable character buffer, which is written to the underlying writer when
+ * it fills up and flushed according to the configured flush policy.
+ * <p>
+ * By default the output is only flushed when the writer is closed.
+ * Optionally it can also be flushed every N rows, every N bytes or every N
+ * milliseconds, e.g. for consumers tailing the output file. All flush
+ * conditions are checked at row boundaries, so the interval policy does not
+ * flush while no rows are being written.
+ * <p>
+ * A row writer without underlying writer collects rows in memory, growing
+ * its buffer as needed, until they are appended to another row writer.
+ */
+final class RowWriter {
+
+    /**
+     * How values are quoted in CSV output.
+     */
+    enum QuoteMode {
+        /**
+         * All non-empty values are quoted.
+         */
+        ALWAYS,
+        /**
+         * Only values containing a character of the separator, a quote or a
+         * line break are quoted, as required by RFC 4180.
+         */
+        MINIMAL,
+        /**
+         * Values are written as they are, without quoting or escaping.
+         */
+        NEVER
+    }
+
+    /**
+     * Default size of the character buffer.
+     */
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Underlying writer, or null if rows are collected in memory.
+     */
+    private final Writer writer;
+    /**
+     * Character buffer.
+     */
+    private char[] buffer;
+    /**
+     * Number of characters in {@link #buffer}.
+     */
+    private int position = 0;
+    /**
+     * Flush after this number of rows, 0 to disable.
+     */
+    private final long flushRows;
+    /**
+     * Flush after this number of bytes, 0 to disable. Bytes are counted as
+     * characters before encoding, so the limit is approximate for non-ASCII
+     * output.
+     */
+    private final long flushBytes;
+    /**
+     * Flush after this number of nanoseconds, 0 to disable.
+     */
+    private final long flushIntervalNanos;
+    /**
+     * Number of rows written since last flush.
+     */
+    private long rowsSinceFlush = 0;
+    /**
+     * Number of rows written in total.
+     */
+    private long rowCount = 0;
+    /**
+     * Number of characters written since last flush.
+     */
+    private long charsSinceFlush = 0;
+    /**
+     * Time of last flush.
+     */
+    private long lastFlushNanos;
+
+    /**
+     * Creates new row writer.
+     *
+     * @param writer          underlying writer
+     * @param bufferSize      size of the character buffer
+     * @param flushRows       flush after this number of rows, 0 to disable
+     * @param flushBytes      flush after this number of bytes, 0 to disable
+     * @param flushIntervalMs flush after this number of milliseconds, 0 to
+     *                        disable
+     */
+    RowWriter(final Writer writer, final int bufferSize, final long flushRows,
+            final long flushBytes, final long flushIntervalMs) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive.");
+        }
+
+        if (flushRows < 0 || flushBytes < 0 || flushIntervalMs < 0) {
+            throw new IllegalArgumentException("Flush limits cannot be negative.");
+        }
+
+        this.writer = writer;
+        this.buffer = new char[bufferSize];
+        this.flushRows = flushRows;
+        this.flushBytes = flushBytes;
+        this.flushIntervalNanos = flushIntervalMs * 1_000_000L;
+        this.lastFlushNanos = flushIntervalMs > 0 ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Creates new row writer collecting rows in memory.
+     *
+     * @param initialSize initial size of the character buffer
+     */
+    RowWriter(final int initialSize) {
+        this(null, initialSize, 0, 0, 0);
+    }
+
+    /**
+     * Appends single character.
+     *
+     * @param chr character
+     *
+     * @throws IOException Thrown if problem occurred while writing to output.
+     */
+    void append(final char chr) throws IOException {
+        if (position == buffer.length) {
+            drain();
+        }
+
+        buffer[position++] = chr;
+    }
+
+    /**
+     * Appends string.
+     *
+     * @param string string
+     *
+     * @throws IOException Thrown if problem occurred while writing to output.
+     */
+    void append(final String string) throws IOException {
+        append(string, 0, string.length());
+    }
+
+    /**
+     * Appends part of a string.
+     *
+     * @param string string
+     * @param start  index of first character
+     * @param end    index after last character
+     *
+     * @throws IOException Thrown if problem occurred while writing to output.
+     */
+    void append(final String string, final int start, final int end) throws IOException {
+        int offset = start;
+
+        while (offset < end) {
+            if (position == buffer.length) {
+                drain();
+            }
+
+            final int length = Math.min(end - offset, buffer.length - position);
+            string.getChars(offset, offset + length, buffer, position);
+            position += length;
+            offset += length;
+        }
+    }
+
+    /**
+     * Appends part of a character array.
+     *
+     * @param chars characters
+     * @param start index of first character
+     * @param end   index after last character
+     *
+     * @throws IOException Thrown if problem occurred while writing to output.
+     */
+    void append(final char[] chars, final int start, final int end) throws IOException {
+        int offset = start;
+
+        while (offset < end) {
+            if (position == buffer.length) {
+                drain();
+            }
+
+            final int length = Math.min(end - offset, buffer.length - position);
+            System.arraycopy(chars, offset, buffer, position, length);
+            position += length;
+            offset += length;
+        }
+    }
+
+    /**
+     * Appends value quoted and escaped for CSV format. Null and empty values
+     * are written as empty string.
+     *
+     * @param value value
+     *
+     * @throws IOException Thrown if problem occurred while writing to output.
+     */
+    void appendQuoted(final String value) throws IOException {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+
+        append('"');
+
+        int start = 0;
+        int quote = value.indexOf('"');
+
+        while (quote >= 0) {
+            append(value, start, quote + 1);
+            append('"');
+            start = quote + 1;
+            quote = value.indexOf('"', start);
+        }
+
+        append(value, start, value.length());
+        append('"');
+    }
+
+    /**
+     * Appends value for CSV format, quoted and escaped only if it contains
+     * a character of the separator, a quote or a line break. Checking single
+     * characters keeps values unambiguous with multi-character separators too
+     * (e.g. value "a:" followed by separator "::"). The value is scanned once:
+     * the part before the first such character is copied as it is and only
+     * the rest is searched for quotes to escape. Null and empty values are
+     * written as empty string.
+     *
+     * @param value     value
+     * @param separator column separator
+     *
+     * @throws IOException Thrown if problem occurred while writing to output.
+     */
+    void appendMinimallyQuoted(final String value, final String separator) throws IOException {
+        if (value == null) {
+            return;
+        }
+
+        final int length = value.length();
+        // An empty separator cannot occur in values, the quote is checked anyway
+        final char separatorChar = separator.isEmpty() ? '"' : separator.charAt(0);
+        final boolean multiCharSeparator = separator.length() > 1;
+        int special = 0;
+
+        while (special < length) {
+            final char chr = value.charAt(special);
+
+            if (chr == '"' || chr == '\n' || chr == '\r' || chr == separatorChar
+                    || multiCharSeparator && separator.indexOf(chr) >= 0) {
+                break;
+            }
+
+            special++;
+        }
+
+        if (special == length) {
+            append(value, 0, length);
+
+            return;
+        }
+
+        append('"');
+
+        int start = 0;
+
+        for (int i = special; i < length; i++) {
+            if (value.charAt(i) == '"') {
+                append(value, start, i + 1);
+                append('"');
+                start = i + 1;
+            }
+        }
+
+        append(value, start, length);
+        append('"');
+    }
+
+    /**
+     * Checks whether a value containing the character must be quoted by
+     * {@link #appendMinimallyQuoted(String, String)}.
+     *
+     * @param chr       character of the value
+     * @param separator column separator
+     *
+     * @return true if the character is a quote, a line break or a character
+     *         of the separator
+     */
+    static boolean requiresQuotes(final char chr, final String separator) {
+        return chr == '"' || chr == '\n' || chr == '\r' || separator.indexOf(chr) >= 0;
+    }
+
+    /**
+     * Marks end of a row and flushes output if required by flush policy.
+     *
+     * @throws IOException Thrown if problem occurred while writing to output.
+     */
+    void endRow() throws IOException {
+        endRows(1);
+    }
+
+    /**
+     * Marks end of multiple rows appended at once and flushes output if
+     * required by flush policy.
+     *
+     * @param rows number of rows
+     *
+     * @throws IOException Thrown if problem occurred while writing to output.
+     */
+    void endRows(final long rows) throws IOException {
+        rowsSinceFlush += rows;
+        rowCount += rows;
+
+        if (flushRows > 0 && rowsSinceFlush >= flushRows
+                || flushBytes > 0 && charsSinceFlush + position >= flushBytes
+                || flushIntervalNanos > 0 && System.nanoTime() - lastFlushNanos >= flushIntervalNanos) {
+            flush();
+        }
+    }
+
+    /**
+     * Returns number of rows written, including header.
+     *
+     * @return number of rows
+     */
+    long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Writes buffered characters to the underlying writer and flushes it.
+     *
+     * @throws IOException Thrown if problem occurred while writing to output.
+     */
+    void flush() throws IOException {
+        drain();
+        writer.flush();
+
+        rowsSinceFlush = 0;
+        charsSinceFlush = 0;
+
+        if (flushIntervalNanos > 0) {
+            lastFlushNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Appends rows collected by this row writer in memory to another row
+     * writer.
+     *
+     * @param target target row writer
+     *
+     * @throws IOException Thrown if problem occurred while writing to output.
+     */
+    void appendTo(final RowWriter target) throws IOException {
+        target.append(buffer, 0, position);
+        target.endRows(rowsSinceFlush);
+    }
+
+    /**
+     * Flushes buffered characters and closes the underlying writer.
+     *
+     * @throws IOException Thrown if problem occurred while writing to output.
+     */
+    void close() throws IOException {
+        drain();
+        writer.close();
+    }
+
+    /**
+     * Writes buffered characters to the underlying writer without flushing
+     * it. Grows the buffer instead if rows are collected in memory.
+     *
+     * @throws IOException Thrown if problem occurred while writing to output.
+     */
+    private void drain() throws IOException {
+        if (writer == null) {
+            if (position == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        } else if (position > 0) {
+            writer.write(buffer, 0, position);
+            charsSinceFlush += position;
+            position = 0;
+        }
+    }
+}
@@ -0,0 +1,386 @@
+package com.github.peter277.xml2table;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Converts a single large XML file in parallel by splitting it into byte
+ * ranges at row item boundaries.
+ * <p>
+ * The file is scanned for row item start tags by {@link ItemBoundaryScanner}.
+ * As soon as the end of a range is known, the range is converted on a worker
+ * thread by its own {@link Convertor}, reading the range wrapped into the
+ * start and end tags of the row item ancestors. The first range is written
+ * directly to the output file, the others to temporary part files next to it,
+ * which are appended to the output file in original order once all ranges
+ * are converted. If the document cannot be split safely or the file is
+ * compressed, it is converted sequentially instead.
+ */
+public class SplitConvertor {
+
+    /**
+     * Default minimum size of a range.
+     */
+    static final long DEFAULT_MIN_RANGE_SIZE = 16L * 1024 * 1024;
+
+    /**
+     * Input file path.
+     */
+    private final Path inputFile;
+    /**
+     * Output file path.
+     */
+    private final Path outputFile;
+    /**
+     * Convertor settings.
+     */
+    private final ConvertorSettings settings;
+    /**
+     * Executor service converting the ranges.
+     */
+    private final ExecutorService executorService;
+    /**
+     * Maximum number of ranges.
+     */
+    private final int maxRanges;
+    /**
+     * Minimum size of a range.
+     */
+    private final long minRangeSize;
+
+    /**
+     * Creates new split convertor.
+     *
+     * @param inputFile       input file path
+     * @param outputFile      output file path
+     * @param settings        convertor settings
+     * @param executorService executor service converting the ranges
+     * @param maxRanges       maximum number of ranges, usually number of
+     *                        threads of the executor service
+     */
+    public SplitConvertor(final Path inputFile, final Path outputFile, final ConvertorSettings settings,
+            final ExecutorService executorService, final int maxRanges) {
+        this(inputFile, outputFile, settings, executorService, maxRanges, DEFAULT_MIN_RANGE_SIZE);
+    }
+
+    /**
+     * Creates new split convertor.
+     *
+     * @param inputFile       input file path
+     * @param outputFile      output file path
+     * @param settings        convertor settings
+     * @param executorService executor service converting the ranges
+     * @param maxRanges       maximum number of ranges
+     * @param minRangeSize    minimum size of a range in bytes
+     */
+    SplitConvertor(final Path inputFile, final Path outputFile, final ConvertorSettings settings,
+            final ExecutorService executorService, final int maxRanges, final long minRangeSize) {
+        this.inputFile = inputFile;
+        this.outputFile = outputFile;
+        this.settings = settings;
+        this.executorService = executorService;
+        this.maxRanges = maxRanges;
+        this.minRangeSize = minRangeSize;
+    }
+
+    /**
+     * Converts the input file.
+     *
+     * @throws RuntimeException Thrown if IO or XML stream exception occurred.
+     */
+    public void convert() {
+        try {
+            final long size = Files.size(inputFile);
+            final int ranges = (int) Math.min(maxRanges, Math.max(1, size / minRangeSize));
+            final String[] itemPath = settings.getPathTrie().getItemPath();
+
+            // Compressed files cannot be split into byte ranges
+            if (ranges <= 1 || itemPath == null || itemPath.length < 2 || CompressedInput.isCompressed(inputFile)
+                    || !convertRanges(size, ranges, itemPath)) {
+                Convertor.newConvertorFromFiles(inputFile, outputFile, settings).convert();
+            }
+        } catch (final IOException ex) {
+            throw new RuntimeException("IO operation failed", ex);
+        }
+    }
+
+    /**
+     * Splits the input file into ranges and converts them in parallel.
+     *
+     * @param size     size of the input file
+     * @param ranges   requested number of ranges
+     * @param itemPath local names of the row item path elements
+     *
+     * @return false if the document cannot be split safely and nothing was
+     *         converted
+     *
+     * @throws IOException Thrown if IO problem occurred.
+     */
+    private boolean convertRanges(final long size, final int ranges, final String[] itemPath) throws IOException {
+        final List<Future<?>> futures = new ArrayList<>(ranges);
+        final List<Path> partFiles = new ArrayList<>(ranges);
+
+        try (FileChannel channel = FileChannel.open(inputFile, StandardOpenOption.READ);
+                ItemBoundaryScanner scanner = new ItemBoundaryScanner(Files.newInputStream(inputFile), itemPath)) {
+            long start = 0;
+            byte[] prefix = new byte[0];
+
+            for (int i = 1; i < ranges; i++) {
+                final ItemBoundaryScanner.Boundary boundary = scanner.next(size / ranges * i);
+
+                if (!scanner.isSplittable()) {
+                    // Constructs preventing splitting can only occur before the first row item
+                    if (futures.isEmpty()) {
+                        return false;
+                    }
+
+                    throw new IllegalStateException("Document cannot be split after conversion has started");
+                }
+
+                if (boundary == null) {
+                    break;
+                }
+
+                futures.add(submitRange(channel, futures.size(), start, boundary.offset, prefix, boundary.suffix, partFiles));
+                start = boundary.offset;
+                prefix = boundary.prefix;
+            }
+
+            if (futures.isEmpty()) {
+                return false;
+            }
+
+            futures.add(submitRange(channel, futures.size(), start, size, prefix, new byte[0], partFiles));
+
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Conversion interrupted", ex);
+        } catch (final ExecutionException ex) {
+            throw ex.getCause() instanceof RuntimeException
+                    ? (RuntimeException) ex.getCause() : new RuntimeException(ex.getCause());
+        } finally {
+            for (final Future<?> future : futures) {
+                future.cancel(true);
+            }
+
+            if (futures.stream().anyMatch(future -> !future.isDone() || isFailed(future))) {
+                deleteFiles(partFiles);
+            }
+        }
+
+        mergeParts(partFiles);
+
+        return true;
+    }
+
+    /**
+     * Submits conversion of single range.
+     *
+     * @param channel   input file channel
+     * @param index     index of the range
+     * @param start     offset of the range start
+     * @param end       offset of the range end
+     * @param prefix    bytes preceding the range
+     * @param suffix    bytes following the range
+     * @param partFiles list of part files to add the range output to
+     *
+     * @return future of the conversion
+     */
+    private Future<?> submitRange(final FileChannel channel, final int index, final long start, final long end,
+            final byte[] prefix, final byte[] suffix, final List<Path> partFiles) {
+        final Path output = index == 0 ? outputFile
+                : outputFile.resolveSibling(outputFile.getFileName().toString() + ".part" + index);
+
+        if (index > 0) {
+            partFiles.add(output);
+        }
+
+        return executorService.submit(() -> {
+            final InputStream inputStream = new SequenceInputStream(Collections.enumeration(List.of(
+                    new ByteArrayInputStream(prefix),
+                    new FileRangeInputStream(channel, start, end),
+                    new ByteArrayInputStream(suffix))));
+
+            try {
+                final Convertor convertor = Convertor.newConvertorFromStreams(inputStream,
+                        settings.newOutputWriter(output), settings);
+
+                // Only the first range writes header
+                convertor.noHeader = convertor.noHeader || index > 0;
+                convertor.convert();
+            } catch (final IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+
+    /**
+     * Appends part files to the output file in order and deletes them.
+     *
+     * @param partFiles part files
+     *
+     * @throws IOException Thrown if IO problem occurred.
+     */
+    private void mergeParts(final List<Path> partFiles) throws IOException {
+        try (FileChannel output = FileChannel.open(outputFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            for (final Path partFile : partFiles) {
+                try (FileChannel part = FileChannel.open(partFile, StandardOpenOption.READ)) {
+                    final long partSize = part.size();
+                    long transferred = 0;
+
+                    while (transferred < partSize) {
+                        transferred += part.transferTo(transferred, partSize - transferred, output);
+                    }
+                }
+            }
+        } finally {
+            deleteFiles(partFiles);
+        }
+    }
+
+    /**
+     * Checks whether a completed future failed.
+     *
+     * @param future future
+     *
+     * @return true if the future completed exceptionally or was cancelled
+     */
+    private static boolean isFailed(final Future<?> future) {
+        if (future.isCancelled()) {
+            return true;
+        }
+
+        try {
+            future.get();
+            return false;
+        } catch (final InterruptedException | ExecutionException ex) {
+            return true;
+        }
+    }
+
+    /**
+     * Deletes files, ignoring any errors.
+     *
+     * @param files files to delete
+     */
+    private static void deleteFiles(final List<Path> files) {
+        for (final Path file : files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (final IOException ex) {
+                // Ignore, the file is a leftover of a failed conversion
+            }
+        }
+    }
+
+    /**
+     * Input stream reading a byte range of a file channel using positional
+     * reads, so that multiple streams can share the channel.
+     */
+    static final class FileRangeInputStream extends InputStream {
+
+        /**
+         * File channel.
+         */
+        private final FileChannel channel;
+        /**
+         * Offset of next byte.
+         */
+        private long position;
+        /**
+         * Offset of the range end.
+         */
+        private final long end;
+        /**
+         * Read buffer.
+         */
+        private final ByteBuffer buffer = ByteBuffer.allocate(256 * 1024);
+
+        /**
+         * Creates new stream.
+         *
+         * @param channel file channel
+         * @param start   offset of the range start
+         * @param end     offset of the range end
+         */
+        FileRangeInputStream(final FileChannel channel, final long start, final long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+            this.buffer.flip();
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+
+            return buffer.get() & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+
+            if (!fill()) {
+                return -1;
+            }
+
+            final int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+
+            return count;
+        }
+
+        /**
+         * Fills read buffer if it is empty.
+         *
+         * @return false at the end of the range
+         *
+         * @throws IOException Thrown if problem occurred while reading input.
+         */
+        private boolean fill() throws IOException {
+            if (buffer.hasRemaining()) {
+                return true;
+            }
+
+            if (position >= end) {
+                return false;
+            }
+
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+
+            final int count = channel.read(buffer, position);
+            buffer.flip();
+
+            if (count <= 0) {
+                return false;
+            }
+
+            position += count;
+
+            return true;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.github.peter277.xml2table;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import picocli.CommandLine;
+import picocli.CommandLine.ArgGroup;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Help.Visibility;
+
+/**
+ * Converts a single XML file into multiple tables in one pass.
+ * <p>
+ * Tables are defined in a definition file, one table per line, using the
+ * general, filtering and remapping options of {@link Main} and an output
+ * file. All tables are fed by a single {@link MultiTableConvertor}, so the
+ * input is read and parsed only once.
+ */
+@Command(name = "xml2table tables", version = "0.1.0",
+         mixinStandardHelpOptions = true,
+         sortOptions = false,
+         description = {"%nConvert a single XML file into multiple flat files (tables) in one pass. The input is read and parsed once, rows of each table are filtered, formatted and written by its own threads.%n",
+                        "Each line of the definition file defines a table (and its child tables) using the general, child table, filtering and remapping options of xml2table and --output-file=<file>, e.g.:%n",
+                        "  --row-item-name=/doc/order --columns=@id,date --output-file=orders.csv",
+                        "  --row-item-name=/doc/order/line --columns=@no,sku --output-file=lines.csv%n",
+                        "Values containing spaces can be quoted with single or double quotes. Empty lines and lines starting with # are ignored, a line ending with a backslash (\\) continues on the next line. Parser options apply to all tables and are given on the command line.%n"})
+public class TablesCommand implements Callable<Integer> {
+
+    /**
+     * Name of the command, given as the first argument of {@link Main}.
+     */
+    static final String NAME = "tables";
+
+    @Option(names = {"--input-file"}, required = true, paramLabel = "<file>", description = "Path to the input XML file. Gzip and zip compressed files are decompressed transparently.")
+    Path inputFile = null;
+
+    @Option(names = {"--definitions"}, required = true, paramLabel = "<file>", description = "Path to the table definition file.")
+    Path definitionsFile = null;
+
+    @Option(names = {"--output-dir"}, paramLabel = "<dir>", description = "Directory that relative output file paths of the tables are resolved against. Will be created if it does not exist. By default they are relative to the current directory.")
+    Path outputDir = null;
+
+    @Option(names = {"--parser"}, paramLabel = "<backend>", description = "XML parser backend: ${COMPLETION-CANDIDATES}.", defaultValue = "WOODSTOX", showDefaultValue = Visibility.ALWAYS)
+    ParserBackend.Type parser = ParserBackend.Type.WOODSTOX;
+
+    @Option(names = {"--parser-buffer-size"}, paramLabel = "<size>", description = "Size of the parser input buffer.", defaultValue = "" + ParserBackend.DEFAULT_BUFFER_SIZE, showDefaultValue = Visibility.ALWAYS)
+    int parserBufferSize = ParserBackend.DEFAULT_BUFFER_SIZE;
+
+    @Option(names = {"--no-dtd"}, description = "Do not process DTD. Entities declared in DTD cannot be used then.")
+    boolean noDtd = false;
+
+    @Override
+    public Integer call() {
+        final List<TableDefinition> definitions;
+
+        try {
+            definitions = readDefinitions(definitionsFile);
+        } catch (final IOException ex) {
+            System.err.println("Error reading table definitions: " + ex.getMessage());
+
+            return 2;
+        }
+
+        if (definitions.isEmpty()) {
+            System.err.println("Error: No tables are defined in " + definitionsFile);
+
+            return 2;
+        }
+
+        final List<ConvertorSettings> settings = new ArrayList<>(definitions.size());
+        final List<Path> outputFiles = new ArrayList<>(definitions.size());
+        final Set<Path> uniqueOutputFiles = new HashSet<>();
+
+        for (final TableDefinition definition : definitions) {
+            final Path outputFile = outputDir == null ? definition.outputFile : outputDir.resolve(definition.outputFile);
+            final List<ConvertorSettings> tableSettings;
+
+            try {
+                // Filters are added first, so that child tables are checked against them
+                Main.addFiltersAndRemappings(definition.convertorSettings, definition.filteringOptions,
+                        definition.remappingOptions);
+                tableSettings = definition.convertorSettings.getTableSettings();
+            } catch (final IllegalArgumentException ex) {
+                System.err.println("Error: " + ex.getMessage());
+
+                return 2;
+            } catch (final RuntimeException ex) {
+                System.err.println("Error: " + ex.getClass().getSimpleName() + ": " + ex.getMessage()
+                        + (ex.getCause() == null ? "" : " (" + ex.getCause() + ")"));
+
+                return 1;
+            }
+
+            for (final Path tableOutputFile : Main.getTableOutputFiles(tableSettings, outputFile)) {
+                if (!uniqueOutputFiles.add(tableOutputFile.toAbsolutePath().normalize())) {
+                    System.err.println("Error: Output file is used by multiple tables: " + tableOutputFile);
+
+                    return 2;
+                }
+
+                outputFiles.add(tableOutputFile);
+            }
+
+            settings.addAll(tableSettings);
+        }
+
+        try {
+            if (outputDir != null) {
+                Files.createDirectories(outputDir);
+            }
+
+            System.err.println("Info: Converting " + inputFile + " into " + settings.size() + " tables");
+
+            MultiTableConvertor.newConvertorFromFiles(inputFile, ParserBackend.newBackend(parser, parserBufferSize, !noDtd),
+                    settings, outputFiles).convert();
+        } catch (final IOException | RuntimeException ex) {
+            System.err.println("Error: " + ex.getClass().getSimpleName() + ": " + ex.getMessage()
+                    + (ex.getCause() == null ? "" : " (" + ex.getCause() + ")"));
+
+            return 1;
+        }
+
+        for (final Path outputFile : outputFiles) {
+            System.err.println("Successfully written table: " + outputFile);
+        }
+
+        return 0;
+    }
+
+    /**
+     * Reads table definitions from definition file.
+     *
+     * @param file definition file path
+     *
+     * @return table definitions
+     *
+     * @throws IOException Thrown if the file could not be read or a table
+     *                     definition is not valid.
+     */
+    static List<TableDefinition> readDefinitions(final Path file) throws IOException {
+        final List<TableDefinition> definitions = new ArrayList<>();
+        final List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        final StringBuilder definition = new StringBuilder(256);
+        int firstLine = 0;
+
+        for (int i = 0; i < lines.size(); i++) {
+            final String line = lines.get(i);
+
+            if (definition.length() == 0) {
+                firstLine = i + 1;
+
+                if (line.trim().isEmpty() || line.trim().startsWith("#")) {
+                    continue;
+                }
+            }
+
+            if (line.endsWith("\\")) {
+                definition.append(line, 0, line.length() - 1).append(' ');
+
+                if (i < lines.size() - 1) {
+                    continue;
+                }
+            } else {
+                definition.append(line);
+            }
+
+            definitions.add(parseDefinition(definition.toString(), file + ":" + firstLine));
+            definition.setLength(0);
+        }
+
+        return definitions;
+    }
+
+    /**
+     * Parses a single table definition.
+     *
+     * @param line     definition
+     * @param location location of the definition, used in error messages
+     *
+     * @return table definition
+     *
+     * @throws IOException Thrown if the definition is not valid.
+     */
+    private static TableDefinition parseDefinition(final String line, final String location) throws IOException {
+        final TableDefinition definition = new TableDefinition();
+        final CommandLine commandLine = new CommandLine(definition).setCaseInsensitiveEnumValuesAllowed(true);
+
+        try {
+            final CommandLine.ParseResult parseResult = commandLine.parseArgs(splitArguments(line).toArray(new String[0]));
+
+            for (final String option : new String[]{"--parser", "--parser-buffer-size", "--no-dtd"}) {
+                if (parseResult.hasMatchedOption(option)) {
+                    throw new IOException(location + ": " + option + " must be specified on the command line");
+                }
+            }
+        } catch (final CommandLine.ParameterException | IllegalArgumentException ex) {
+            throw new IOException(location + ": " + ex.getMessage(), ex);
+        }
+
+        return definition;
+    }
+
+    /**
+     * Splits definition into arguments at whitespace. Single or double quotes
+     * group characters including whitespace into a single argument, the
+     * quotes themselves are removed.
+     *
+     * @param line definition
+     *
+     * @return arguments
+     *
+     * @throws IllegalArgumentException Thrown if a quote is not closed.
+     */
+    static List<String> splitArguments(final String line) {
+        final List<String> arguments = new ArrayList<>();
+        final StringBuilder argument = new StringBuilder(64);
+        boolean inArgument = false;
+        char quote = 0;
+
+        for (int i = 0; i < line.length(); i++) {
+            final char character = line.charAt(i);
+
+            if (quote != 0) {
+                if (character == quote) {
+                    quote = 0;
+                } else {
+                    argument.append(character);
+                }
+            } else if (character == '"' || character == '\'') {
+                quote = character;
+                inArgument = true;
+            } else if (Character.isWhitespace(character)) {
+                if (inArgument) {
+                    arguments.add(argument.toString());
+                    argument.setLength(0);
+                    inArgument = false;
+                }
+            } else {
+                argument.append(character);
+                inArgument = true;
+            }
+        }
+
+        if (quote != 0) {
+            throw new IllegalArgumentException("Unterminated quote " + quote);
+        }
+
+        if (inArgument) {
+            arguments.add(argument.toString());
+        }
+
+        return arguments;
+    }
+
+    /**
+     * Options of a single table.
+     */
+    @Command(name = "table")
+    static class TableDefinition {
+        @Option(names = {"--output-file"}, required = true, paramLabel = "<file>", description = "Path to the output file of the table.")
+        Path outputFile = null;
+
+        @Mixin
+        ConvertorSettings convertorSettings;
+
+        @ArgGroup(exclusive = false, multiplicity = "0..*")
+        final List<Main.FilteringOptions> filteringOptions = new ArrayList<>();
+
+        @ArgGroup(exclusive = false, multiplicity = "0..*")
+        final List<Main.RemappingOptions> remappingOptions = new ArrayList<>();
+    }
+}
@@ -0,0 +1,177 @@
+package com.github.peter277.xml2table;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Reusable buffer accumulating text of a single element value. Text is copied
+ * directly from the character array of the parser, and a string is only
+ * created when the value is taken. Text can be moved to a temporary file
+ * (spilled) when it exceeds the limits of {@link ValueLimits}, further text is
+ * then appended to the file.
+ */
+final class ValueBuffer {
+
+    /**
+     * Initial capacity of the text buffer.
+     */
+    private static final int INITIAL_CAPACITY = 128;
+    /**
+     * Maximum capacity of the text buffer kept for the next value.
+     */
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    /**
+     * Text kept in memory.
+     */
+    private StringBuilder text = new StringBuilder(INITIAL_CAPACITY);
+    /**
+     * Writer of the temporary file, or null if the value is not spilled.
+     */
+    private Writer spillWriter = null;
+    /**
+     * Marker of the spilled value.
+     */
+    private String spilledValue = null;
+    /**
+     * Limits the spilled value is registered with.
+     */
+    private ValueLimits limits = null;
+    /**
+     * Length of the value.
+     */
+    private long length = 0;
+
+    /**
+     * Returns length of the value.
+     *
+     * @return length of the value
+     */
+    long length() {
+        return length;
+    }
+
+    /**
+     * Returns whether the value is kept in a temporary file.
+     *
+     * @return true if the value is spilled
+     */
+    boolean isSpilled() {
+        return spillWriter != null;
+    }
+
+    /**
+     * Appends characters.
+     *
+     * @param chars  character array
+     * @param start  index of first character
+     * @param count  number of characters
+     *
+     * @throws IOException Thrown if the spilled value could not be written.
+     */
+    void append(final char[] chars, final int start, final int count) throws IOException {
+        if (spillWriter != null) {
+            spillWriter.write(chars, start, count);
+        } else {
+            text.append(chars, start, count);
+        }
+
+        length += count;
+    }
+
+    /**
+     * Moves the value to a temporary file.
+     *
+     * @param limits limits to register the spilled value with
+     *
+     * @throws IOException Thrown if the file could not be written.
+     */
+    void spill(final ValueLimits limits) throws IOException {
+        if (spillWriter != null) {
+            return;
+        }
+
+        this.limits = limits;
+        spilledValue = limits.newSpilledValue();
+        spillWriter = limits.newWriter(spilledValue);
+        spillWriter.append(text);
+        releaseText();
+    }
+
+    /**
+     * Returns the value and clears the buffer. Leading and trailing whitespace
+     * is trimmed by offsets (the same way as {@link String#trim()}), so no
+     * untrimmed copy of the value is created.
+     *
+     * @param trim  whether the value is trimmed, spilled values are trimmed
+     *              when they are read
+     * @param cache cache of canonical values of the column, may be null
+     *
+     * @return value, or spilled value marker if the value is kept in a
+     *         temporary file
+     *
+     * @throws IOException Thrown if the spilled value could not be written.
+     */
+    String takeValue(final boolean trim, final ValueCache cache) throws IOException {
+        final String value;
+
+        if (spillWriter != null) {
+            spillWriter.close();
+            value = spilledValue;
+            spillWriter = null;
+            spilledValue = null;
+        } else {
+            int start = 0;
+            int end = text.length();
+
+            if (trim) {
+                while (start < end && text.charAt(start) <= ' ') {
+                    start++;
+                }
+                while (end > start && text.charAt(end - 1) <= ' ') {
+                    end--;
+                }
+            }
+
+            value = cache == null ? text.substring(start, end) : cache.intern(text, start, end);
+            releaseText();
+        }
+
+        length = 0;
+
+        return value;
+    }
+
+    /**
+     * Clears the buffer, discarding the value.
+     */
+    void clear() {
+        if (spillWriter != null) {
+            try {
+                spillWriter.close();
+            } catch (final IOException ex) {
+                // The file is deleted anyway
+            }
+
+            limits.delete(spilledValue);
+            spillWriter = null;
+            spilledValue = null;
+        }
+
+        releaseText();
+        length = 0;
+    }
+
+    /**
+     * Clears the text kept in memory. Large buffers are not retained, so a
+     * single huge value does not keep its memory for the rest of the
+     * conversion.
+     */
+    private void releaseText() {
+        if (text.capacity() > MAX_RETAINED_CAPACITY) {
+            text = new StringBuilder(INITIAL_CAPACITY);
+        } else {
+            text.setLength(0);
+        }
+    }
+}
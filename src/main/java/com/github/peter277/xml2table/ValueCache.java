@@ -0,0 +1,200 @@
+package com.github.peter277.xml2table;
+
+import java.util.Collection;
+
+/**
+ * Bounded cache of canonical values of a single column, so values repeated
+ * in many row items (status codes, currencies, countries) share a single
+ * string which is only created on the first occurrence.
+ * <p>
+ * Values are looked up by their characters in the text buffer, without
+ * creating a string. The cache is organized in sets of two entries addressed
+ * by hash. A hit moves the entry to the front of its set and a miss evicts
+ * the least recently used entry of the set, so the cache never grows beyond
+ * its capacity. Columns with too many distinct values are detected by their
+ * hit ratio, and the cache then stops storing values to avoid the cost of
+ * hashing and eviction.
+ * <p>
+ * Remapped values can be pinned. They are never evicted and are returned as
+ * the very instances used as keys of the remapping map, so the remapping
+ * lookup does not need to compare characters.
+ * <p>
+ * A cache is used by a single parsing thread.
+ */
+final class ValueCache {
+
+    /**
+     * Number of lookups after which the hit ratio is checked.
+     */
+    private static final int SAMPLE_SIZE = 4096;
+    /**
+     * Minimum ratio of hits, as 1 / value, to keep storing values.
+     */
+    private static final int MIN_HIT_RATIO = 8;
+
+    /**
+     * Cached values, two entries per set, the more recently used first.
+     */
+    private final String[] entries;
+    /**
+     * Mask of set index.
+     */
+    private final int setMask;
+    /**
+     * Pinned values, an open addressing table, or null if none are pinned.
+     */
+    private final String[] pinned;
+    /**
+     * Whether values are stored.
+     */
+    private boolean storing = true;
+    /**
+     * Number of lookups in the current sample.
+     */
+    private int lookups = 0;
+    /**
+     * Number of hits in the current sample.
+     */
+    private int hits = 0;
+
+    /**
+     * Creates new cache.
+     *
+     * @param capacity     maximum number of cached values, rounded up to a
+     *                     power of two
+     * @param pinnedValues values that are never evicted, may be empty
+     */
+    ValueCache(final int capacity, final Collection<String> pinnedValues) {
+        this.entries = new String[Math.max(2, Integer.highestOneBit(Math.max(1, capacity - 1)) * 2)];
+        this.setMask = entries.length / 2 - 1;
+
+        if (pinnedValues.isEmpty()) {
+            this.pinned = null;
+        } else {
+            this.pinned = new String[Integer.highestOneBit(pinnedValues.size() * 2) * 2];
+
+            for (final String value : pinnedValues) {
+                int index = hash(value, 0, value.length()) & (pinned.length - 1);
+
+                while (pinned[index] != null && !pinned[index].equals(value)) {
+                    index = (index + 1) & (pinned.length - 1);
+                }
+
+                pinned[index] = value;
+            }
+        }
+    }
+
+    /**
+     * Returns canonical value of a range of characters, creating it if it is
+     * not cached.
+     *
+     * @param chars characters
+     * @param start index of first character
+     * @param end   index after last character
+     *
+     * @return value
+     */
+    String intern(final CharSequence chars, final int start, final int end) {
+        if (!storing && pinned == null) {
+            return chars.subSequence(start, end).toString();
+        }
+
+        final int hash = hash(chars, start, end);
+
+        if (pinned != null) {
+            int index = hash & (pinned.length - 1);
+
+            while (pinned[index] != null) {
+                if (matches(pinned[index], chars, start, end)) {
+                    return pinned[index];
+                }
+
+                index = (index + 1) & (pinned.length - 1);
+            }
+        }
+
+        if (!storing) {
+            return chars.subSequence(start, end).toString();
+        }
+
+        final int first = (hash & setMask) * 2;
+        final String value;
+
+        if (matches(entries[first], chars, start, end)) {
+            hits++;
+            value = entries[first];
+        } else if (matches(entries[first + 1], chars, start, end)) {
+            hits++;
+            value = entries[first + 1];
+            entries[first + 1] = entries[first];
+            entries[first] = value;
+        } else {
+            value = chars.subSequence(start, end).toString();
+            entries[first + 1] = entries[first];
+            entries[first] = value;
+        }
+
+        if (++lookups == SAMPLE_SIZE) {
+            storing = hits * MIN_HIT_RATIO >= lookups;
+            lookups = 0;
+            hits = 0;
+        }
+
+        return value;
+    }
+
+    /**
+     * Returns whether values are stored, i.e. the column was not detected as
+     * having too many distinct values.
+     *
+     * @return true if values are stored
+     */
+    boolean isStoring() {
+        return storing;
+    }
+
+    /**
+     * Computes hash of a range of characters, the same as
+     * {@link String#hashCode()} of the range, spread over the low bits.
+     *
+     * @param chars characters
+     * @param start index of first character
+     * @param end   index after last character
+     *
+     * @return hash
+     */
+    private static int hash(final CharSequence chars, final int start, final int end) {
+        int hash = 0;
+
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars.charAt(i);
+        }
+
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Checks whether value equals a range of characters.
+     *
+     * @param value value, may be null
+     * @param chars characters
+     * @param start index of first character
+     * @param end   index after last character
+     *
+     * @return true if the value equals the characters
+     */
+    private static boolean matches(final String value, final CharSequence chars, final int start, final int end) {
+        if (value == null || value.length() != end - start) {
+            return false;
+        }
+
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) != chars.charAt(start + i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
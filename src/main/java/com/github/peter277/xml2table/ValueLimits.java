@@ -0,0 +1,639 @@
+package com.github.peter277.xml2table;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits of memory used by values of a row item and handling of values
+ * exceeding them.
+ * <p>
+ * Each value (text of an element, attribute value or joined values of a
+ * column) can be limited in length and all values retained for a row item can
+ * be limited in total size. Values exceeding a limit are handled by
+ * {@link Policy}. Spilled values are kept in temporary files and passed
+ * through row buffers and pipelines as marker strings, which start with
+ * U+0000 (a character that cannot occur in XML) followed by a number unique
+ * for these limits. Files are only accessed through the markers registered
+ * here, so each convertor creates its own limits and deletes files left
+ * behind by a failed conversion with {@link #deleteSpilled()}. Otherwise the
+ * file is deleted when the row is written or filtered out.
+ */
+final class ValueLimits {
+
+    /**
+     * Handling of values exceeding a limit.
+     */
+    enum Policy {
+        /**
+         * Values are cut at the limit.
+         */
+        TRUNCATE,
+        /**
+         * The whole row item is skipped.
+         */
+        FAIL_ITEM,
+        /**
+         * Values are kept in temporary files until the row is written.
+         */
+        SPILL
+    }
+
+    /**
+     * First character of spilled value markers.
+     */
+    private static final char SPILL_MARKER = '\u0000';
+
+    /**
+     * Size of the buffer for copying spilled values.
+     */
+    private static final int COPY_BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * Maximum length of a value.
+     */
+    private final long maxValueLength;
+    /**
+     * Maximum total length of values retained for a row item.
+     */
+    private final long maxItemSize;
+    /**
+     * Handling of values exceeding a limit.
+     */
+    private final Policy policy;
+    /**
+     * Temporary files of spilled values not deleted yet, by marker.
+     */
+    private final Map<String, Path> spillFiles = new ConcurrentHashMap<>();
+    /**
+     * Counter of spilled values, used for unique markers.
+     */
+    private final AtomicLong spillCounter = new AtomicLong();
+
+    /**
+     * Creates new limits.
+     *
+     * @param maxValueLength maximum length of a value, 0 for no limit
+     * @param maxItemSize    maximum total length of values retained for a row
+     *                       item, 0 for no limit
+     * @param policy         handling of values exceeding a limit
+     */
+    ValueLimits(final long maxValueLength, final long maxItemSize, final Policy policy) {
+        if (maxValueLength < 0 || maxItemSize < 0) {
+            throw new IllegalArgumentException("Value limits cannot be negative.");
+        }
+
+        this.maxValueLength = maxValueLength == 0 ? Long.MAX_VALUE : maxValueLength;
+        this.maxItemSize = maxItemSize == 0 ? Long.MAX_VALUE : maxItemSize;
+        this.policy = policy;
+    }
+
+    /**
+     * Returns whether any limit is set.
+     *
+     * @return true if any limit is set
+     */
+    boolean isLimited() {
+        return maxValueLength != Long.MAX_VALUE || maxItemSize != Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns handling of values exceeding a limit.
+     *
+     * @return policy
+     */
+    Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Returns maximum length of a value.
+     *
+     * @return maximum length, {@link Long#MAX_VALUE} if not limited
+     */
+    long getMaxValueLength() {
+        return maxValueLength;
+    }
+
+    /**
+     * Checks whether value is a spilled value marker.
+     *
+     * @param value value, may be null
+     *
+     * @return true if the value is kept in a temporary file
+     */
+    static boolean isSpilled(final String value) {
+        return value != null && !value.isEmpty() && value.charAt(0) == SPILL_MARKER;
+    }
+
+    /**
+     * Creates new temporary file for a spilled value, registered with these
+     * limits until it is deleted.
+     *
+     * @return spilled value marker
+     *
+     * @throws IOException Thrown if the file could not be created.
+     */
+    String newSpilledValue() throws IOException {
+        final String value = SPILL_MARKER + Long.toString(spillCounter.incrementAndGet());
+        spillFiles.put(value, Files.createTempFile("xml2table-value-", ".tmp"));
+
+        return value;
+    }
+
+    /**
+     * Opens writer of a spilled value created by {@link #newSpilledValue()}.
+     *
+     * @param value spilled value marker
+     *
+     * @return writer of the temporary file
+     *
+     * @throws IOException Thrown if the file could not be opened.
+     */
+    Writer newWriter(final String value) throws IOException {
+        return Files.newBufferedWriter(spillFile(value), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes value to a new temporary file.
+     *
+     * @param value value
+     *
+     * @return spilled value marker
+     *
+     * @throws IOException Thrown if the file could not be written.
+     */
+    String spill(final CharSequence value) throws IOException {
+        final String spilled = newSpilledValue();
+
+        try (Writer writer = newWriter(spilled)) {
+            writer.append(value);
+        }
+
+        return spilled;
+    }
+
+    /**
+     * Joins values, some of which may be spilled, into a new temporary file.
+     * Spilled values are deleted.
+     *
+     * @param values        values
+     * @param joinSeparator separator of joined values
+     * @param trim          whether values are trimmed
+     *
+     * @return spilled value marker
+     *
+     * @throws IOException Thrown if the files could not be read or written.
+     */
+    String spillJoined(final List<String> values, final String joinSeparator, final boolean trim)
+            throws IOException {
+        final String spilled = newSpilledValue();
+
+        try (Writer writer = newWriter(spilled)) {
+            for (int i = 0; i < values.size(); i++) {
+                if (i > 0) {
+                    writer.write(joinSeparator);
+                }
+
+                final String value = values.get(i);
+
+                if (isSpilled(value)) {
+                    read(value, trim, (chars, length) -> {
+                        writer.write(chars, 0, length);
+
+                        return true;
+                    });
+                    delete(value);
+                } else {
+                    writer.write(trim ? value.trim() : value);
+                }
+            }
+        }
+
+        return spilled;
+    }
+
+    /**
+     * Copies spilled value to row writer, quoted and escaped for CSV format
+     * the same way as {@link RowWriter#appendQuoted(String)} and
+     * {@link RowWriter#appendMinimallyQuoted(String, String)} quote values in
+     * memory: empty values are never quoted and with
+     * {@link RowWriter.QuoteMode#MINIMAL} the file is scanned for characters
+     * requiring quotes first. The temporary file is kept, the value may be
+     * written to several columns.
+     *
+     * @param value     spilled value marker
+     * @param out       row writer
+     * @param quoteMode how the value is quoted
+     * @param separator column separator
+     * @param trim      whether the value is trimmed
+     *
+     * @throws IOException Thrown if the file could not be read or the value
+     *                     could not be written.
+     */
+    void writeSpilled(final String value, final RowWriter out, final RowWriter.QuoteMode quoteMode,
+            final String separator, final boolean trim) throws IOException {
+        final boolean quote = quoteMode == RowWriter.QuoteMode.ALWAYS
+                || quoteMode == RowWriter.QuoteMode.MINIMAL && !read(value, trim, (chars, length) -> {
+                    for (int i = 0; i < length; i++) {
+                        if (RowWriter.requiresQuotes(chars[i], separator)) {
+                            return false;
+                        }
+                    }
+
+                    return true;
+                });
+        // Chunks are never empty, so the opening quote is written with the first one
+        final boolean[] quoted = {false};
+
+        read(value, trim, (chars, length) -> {
+            int start = 0;
+
+            if (quote && !quoted[0]) {
+                out.append('"');
+                quoted[0] = true;
+            }
+
+            for (int i = 0; quote && i < length; i++) {
+                if (chars[i] == '"') {
+                    out.append(chars, start, i + 1);
+                    out.append('"');
+                    start = i + 1;
+                }
+            }
+
+            out.append(chars, start, length);
+
+            return true;
+        });
+
+        if (quoted[0]) {
+            out.append('"');
+        }
+    }
+
+    /**
+     * Reads spilled value into memory if it is not longer than the given
+     * length, so it can be compared with filter and remapping values. The
+     * temporary file is kept.
+     *
+     * @param value     spilled value marker
+     * @param trim      whether the value is trimmed
+     * @param maxLength maximum length of the value to read
+     *
+     * @return the value, or null if it is longer than the maximum length
+     *
+     * @throws IOException Thrown if the file could not be read.
+     */
+    String readSpilled(final String value, final boolean trim, final int maxLength) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+
+        final boolean complete = read(value, trim, (chars, length) -> {
+            if (sb.length() + length > maxLength) {
+                return false;
+            }
+
+            sb.append(chars, 0, length);
+
+            return true;
+        });
+
+        return complete ? sb.toString() : null;
+    }
+
+    /**
+     * Deletes temporary file of spilled value. Values already deleted are
+     * ignored.
+     *
+     * @param value spilled value marker
+     */
+    void delete(final String value) {
+        final Path file = spillFiles.remove(value);
+
+        if (file != null) {
+            deleteFile(file);
+        }
+    }
+
+    /**
+     * Deletes temporary files of all spilled values that were not deleted
+     * yet, e.g. values of row items not written because the conversion
+     * failed or the pipeline was aborted.
+     */
+    void deleteSpilled() {
+        for (final String value : spillFiles.keySet()) {
+            delete(value);
+        }
+    }
+
+    /**
+     * Reads spilled value in chunks. Leading and trailing whitespace is
+     * trimmed by file offsets: UTF-8 encodes characters up to U+0020 as single
+     * bytes which never occur within other characters.
+     *
+     * @param value    spilled value marker
+     * @param trim     whether the value is trimmed
+     * @param consumer consumer of the chunks
+     *
+     * @return false if the consumer stopped reading
+     *
+     * @throws IOException Thrown if the file could not be read.
+     */
+    private boolean read(final String value, final boolean trim, final ChunkConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(spillFile(value), StandardOpenOption.READ)) {
+            long start = 0;
+            long end = channel.size();
+
+            if (trim) {
+                final ByteBuffer bytes = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+
+                end = trimEnd(channel, bytes, end);
+                start = trimStart(channel, bytes, end);
+            }
+
+            final char[] buffer = new char[COPY_BUFFER_SIZE];
+
+            try (Reader reader = new InputStreamReader(new SplitConvertor.FileRangeInputStream(channel, start, end),
+                    StandardCharsets.UTF_8)) {
+                int length = reader.read(buffer);
+
+                while (length >= 0) {
+                    if (length > 0 && !consumer.accept(buffer, length)) {
+                        return false;
+                    }
+
+                    length = reader.read(buffer);
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Finds end of a file range without trailing whitespace.
+     *
+     * @param channel file channel
+     * @param bytes   read buffer
+     * @param end     offset of the range end
+     *
+     * @return offset of the trimmed range end
+     *
+     * @throws IOException Thrown if the file could not be read.
+     */
+    private static long trimEnd(final FileChannel channel, final ByteBuffer bytes, long end) throws IOException {
+        while (end > 0) {
+            final long position = Math.max(0, end - bytes.capacity());
+            bytes.clear();
+            bytes.limit((int) (end - position));
+            channel.read(bytes, position);
+
+            for (int i = bytes.position() - 1; i >= 0; i--) {
+                if ((bytes.get(i) & 0xff) > ' ') {
+                    return position + i + 1;
+                }
+            }
+
+            end = position;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Finds start of a file range without leading whitespace.
+     *
+     * @param channel file channel
+     * @param bytes   read buffer
+     * @param end     offset of the range end
+     *
+     * @return offset of the trimmed range start
+     *
+     * @throws IOException Thrown if the file could not be read.
+     */
+    private static long trimStart(final FileChannel channel, final ByteBuffer bytes, final long end)
+            throws IOException {
+        long start = 0;
+
+        while (start < end) {
+            bytes.clear();
+            bytes.limit((int) Math.min(bytes.capacity(), end - start));
+            final int count = channel.read(bytes, start);
+
+            for (int i = 0; i < count; i++) {
+                if ((bytes.get(i) & 0xff) > ' ') {
+                    return start + i;
+                }
+            }
+
+            start += count;
+        }
+
+        return end;
+    }
+
+    /**
+     * Returns temporary file of a spilled value.
+     *
+     * @param value spilled value marker
+     *
+     * @return file path
+     */
+    private Path spillFile(final String value) {
+        final Path file = spillFiles.get(value);
+
+        if (file == null) {
+            throw new IllegalStateException("Spilled value was already deleted.");
+        }
+
+        return file;
+    }
+
+    /**
+     * Deletes temporary file.
+     *
+     * @param file file path
+     */
+    private static void deleteFile(final Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (final IOException ex) {
+            // Temporary file is left behind, the conversion is not affected
+        }
+    }
+
+    /**
+     * Consumer of chunks of a spilled value.
+     */
+    @FunctionalInterface
+    private interface ChunkConsumer {
+
+        /**
+         * Accepts next chunk of the value.
+         *
+         * @param chars  buffer with the chunk, reused for next chunk
+         * @param length number of characters of the chunk
+         *
+         * @return false to stop reading
+         *
+         * @throws IOException Thrown if the chunk could not be processed.
+         */
+        boolean accept(char[] chars, int length) throws IOException;
+    }
+
+    /**
+     * Tracks size of values retained for the current row item and applies
+     * the limits while values are collected. Used by a single parsing thread.
+     */
+    final class Tracker {
+
+        /**
+         * Total length of values retained in memory for the current row item.
+         */
+        private long itemSize = 0;
+        /**
+         * Whether the current row item exceeded a limit with
+         * {@link Policy#FAIL_ITEM} policy.
+         */
+        private boolean failed = false;
+        /**
+         * Number of row items skipped with {@link Policy#FAIL_ITEM} policy.
+         */
+        private long failedItems = 0;
+
+        /**
+         * Resets the tracker before processing next row item.
+         */
+        void startItem() {
+            itemSize = 0;
+            failed = false;
+        }
+
+        /**
+         * Returns whether the current row item exceeded a limit and must be
+         * skipped.
+         *
+         * @return true if the current row item is skipped
+         */
+        boolean isFailed() {
+            return failed;
+        }
+
+        /**
+         * Returns number of row items skipped because they exceeded a limit.
+         *
+         * @return number of skipped row items
+         */
+        long getFailedItems() {
+            return failedItems;
+        }
+
+        /**
+         * Appends text to value buffer, unless it exceeds a limit.
+         *
+         * @param buffer value buffer
+         * @param chars  character array with the text
+         * @param start  index of first character of the text
+         * @param count  number of characters of the text
+         *
+         * @return false if the row item must be skipped
+         *
+         * @throws IOException Thrown if the value could not be spilled.
+         */
+        boolean append(final ValueBuffer buffer, final char[] chars, final int start, final int count)
+                throws IOException {
+            if (buffer.isSpilled()) {
+                buffer.append(chars, start, count);
+
+                return true;
+            }
+
+            final long room = Math.min(maxValueLength - buffer.length(), maxItemSize - itemSize);
+
+            if (count <= room) {
+                buffer.append(chars, start, count);
+                itemSize += count;
+
+                return true;
+            }
+
+            switch (policy) {
+                case TRUNCATE:
+                    if (room > 0) {
+                        buffer.append(chars, start, (int) room);
+                        itemSize += room;
+                    }
+
+                    return true;
+                case SPILL:
+                    itemSize -= buffer.length();
+                    buffer.spill(ValueLimits.this);
+                    buffer.append(chars, start, count);
+
+                    return true;
+                default:
+                    return fail();
+            }
+        }
+
+        /**
+         * Applies limits to a value that is already in memory, e.g. an
+         * attribute value.
+         *
+         * @param value value
+         *
+         * @return value to be retained, or null if the row item must be
+         *         skipped
+         *
+         * @throws IOException Thrown if the value could not be spilled.
+         */
+        String limit(final String value) throws IOException {
+            final long room = Math.min(maxValueLength, maxItemSize - itemSize);
+
+            if (value.length() <= room) {
+                itemSize += value.length();
+
+                return value;
+            }
+
+            switch (policy) {
+                case TRUNCATE:
+                    final int length = (int) Math.max(0, room);
+                    itemSize += length;
+
+                    return value.substring(0, length);
+                case SPILL:
+                    return spill(value);
+                default:
+                    fail();
+
+                    return null;
+            }
+        }
+
+        /**
+         * Marks the current row item as skipped.
+         *
+         * @return false
+         */
+        private boolean fail() {
+            if (!failed) {
+                failed = true;
+                failedItems++;
+            }
+
+            return false;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.peter277.xml2table;
+
+import com.ctc.wstx.api.WstxInputProperties;
+import com.ctc.wstx.stax.WstxInputFactory;
+import java.io.InputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.codehaus.stax2.XMLInputFactory2;
+
+/**
+ * Woodstox parser backend.
+ * <p>
+ * The factory is tuned for streaming conversion: text events are parsed
+ * lazily, so text of skipped elements is never decoded, text is not
+ * coalesced, and element names are interned, so that symbol tables are
+ * shared between all readers created by the factory. The element depth is
+ * not limited, as with the Aalto backend, since conversion does not recurse
+ * into nested elements.
+ */
+final class WoodstoxBackend implements ParserBackend {
+
+    /**
+     * Configured factory. Woodstox factories are thread-safe once configured.
+     */
+    private final XMLInputFactory factory;
+
+    /**
+     * Creates new backend.
+     *
+     * @param bufferSize input buffer size in characters
+     * @param dtdSupport whether DTD is processed
+     */
+    WoodstoxBackend(final int bufferSize, final boolean dtdSupport) {
+        factory = new WstxInputFactory();
+        factory.setProperty(XMLInputFactory2.P_LAZY_PARSING, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        factory.setProperty(XMLInputFactory2.P_INTERN_NAMES, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, dtdSupport);
+        factory.setProperty(WstxInputProperties.P_INPUT_BUFFER_LENGTH, bufferSize);
+        factory.setProperty(WstxInputProperties.P_MAX_ELEMENT_DEPTH, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public XMLStreamReader createReader(final InputStream inputStream) throws XMLStreamException {
+        return factory.createXMLStreamReader(inputStream);
+    }
+}
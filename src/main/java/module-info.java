@@ -3,6 +3,7 @@ module com.github.peter277.xml2table {
     // Third party dependencies
     requires info.picocli;
     requires com.ctc.wstx; // Woodstox XML
+    requires com.fasterxml.aalto; // Aalto XML
     
     exports com.github.peter277.xml2table;
     // Allow PicoCLI to use reflection on the classes in the CLI package
@@ -0,0 +1,199 @@
+package com.github.peter277.xml2table;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+public class ArchiveInputTest {
+
+    @TempDir
+    Path tempDir;
+
+    ExecutorService executorService;
+
+    @BeforeEach
+    public void setUp() {
+        executorService = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executorService.shutdown();
+    }
+
+    static String document(final int id) {
+        return "<r><i id=\"" + id + "\"><v>value " + id + "</v></i></r>";
+    }
+
+    byte[] zip(final String... namesAndContents) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                out.putNextEntry(new ZipEntry(namesAndContents[i]));
+                if (namesAndContents[i + 1] != null) {
+                    out.write(namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        }
+
+        return bytes.toByteArray();
+    }
+
+    static void tarHeader(final OutputStream out, final String name, final char type, final long size)
+            throws IOException {
+        final byte[] header = new byte[512];
+        final byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(nameBytes, 0, header, 0, Math.min(100, nameBytes.length));
+        System.arraycopy(String.format("%07o\0", 0644).getBytes(StandardCharsets.US_ASCII), 0, header, 100, 8);
+        System.arraycopy(String.format("%011o\0", size).getBytes(StandardCharsets.US_ASCII), 0, header, 124, 12);
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        header[156] = (byte) type;
+        System.arraycopy("ustar\00000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+
+        int checksum = 0;
+        for (final byte b : header) {
+            checksum += b & 0xff;
+        }
+        System.arraycopy(String.format("%06o\0 ", checksum).getBytes(StandardCharsets.US_ASCII), 0, header, 148, 8);
+
+        out.write(header);
+    }
+
+    static void tarEntry(final OutputStream out, final String name, final char type, final byte[] data)
+            throws IOException {
+        tarHeader(out, name, type, data.length);
+        out.write(data);
+        out.write(new byte[(512 - data.length % 512) % 512]);
+    }
+
+    byte[] tar() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final String longName = "long/" + "n".repeat(120) + ".xml";
+
+        tarEntry(bytes, "dir/", '5', new byte[0]);
+        tarEntry(bytes, "dir/a.xml", '0', document(1).getBytes(StandardCharsets.UTF_8));
+        tarEntry(bytes, "dir/readme.txt", '0', "not xml".getBytes(StandardCharsets.UTF_8));
+        tarEntry(bytes, "././@LongLink", 'L', (longName + "\0").getBytes(StandardCharsets.UTF_8));
+        tarEntry(bytes, "truncated-name", '0', document(2).getBytes(StandardCharsets.UTF_8));
+        tarEntry(bytes, "PaxHeaders/x", 'x', "18 path=pax/b.xml\n".getBytes(StandardCharsets.UTF_8));
+        tarEntry(bytes, "ignored.xml", '0', document(3).getBytes(StandardCharsets.UTF_8));
+        bytes.write(new byte[1024]);
+
+        return bytes.toByteArray();
+    }
+
+    Map<String, String> readEntries(final Path archive) throws Exception {
+        final Map<String, String> contents = new ConcurrentHashMap<>();
+        final Map<String, Future<String>> tasks = new TreeMap<>();
+
+        ArchiveInput.submitEntries(archive, executorService, 2,
+                (name, in) -> contents.put(name, new String(in.readAllBytes(), StandardCharsets.UTF_8)), tasks::put);
+
+        for (final Map.Entry<String, Future<String>> task : tasks.entrySet()) {
+            assertEquals(task.getKey(), task.getValue().get());
+        }
+
+        return new TreeMap<>(contents);
+    }
+
+    @Test
+    public void testZipEntries() throws Exception {
+        final Path archive = Files.write(tempDir.resolve("input.zip"),
+                zip("dir/", null, "dir/a.xml", document(1), "b.XML", document(2), "c.txt", "not xml"));
+
+        assertTrue(ArchiveInput.isArchive(archive));
+        assertEquals(Map.of("dir/a.xml", document(1), "b.XML", document(2)), readEntries(archive));
+    }
+
+    @Test
+    public void testTarEntries() throws Exception {
+        final Map<String, String> expected = Map.of(
+                "dir/a.xml", document(1),
+                "long/" + "n".repeat(120) + ".xml", document(2),
+                "pax/b.xml", document(3));
+
+        final Path tar = Files.write(tempDir.resolve("input.tar"), tar());
+        assertTrue(ArchiveInput.isArchive(tar));
+        assertEquals(expected, readEntries(tar));
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(tar());
+        }
+        final Path tarGz = Files.write(tempDir.resolve("input.tgz"), bytes.toByteArray());
+        assertTrue(ArchiveInput.isArchive(tarGz));
+        assertEquals(expected, readEntries(tarGz));
+
+        assertFalse(ArchiveInput.isArchive(Files.writeString(tempDir.resolve("input.xml"), document(1))));
+    }
+
+    @Test
+    public void testCorruptTar() throws Exception {
+        final byte[] data = tar();
+        data[600] ^= 1; // Second header
+
+        final Path tar = Files.write(tempDir.resolve("corrupt.tar"), data);
+        assertThrows(IOException.class, () -> ArchiveInput.submitEntries(tar, executorService, 2,
+                (name, in) -> in.readAllBytes(), (name, task) -> { }));
+    }
+
+    @Test
+    public void testConvertArchives() throws IOException, ExecutionException, InterruptedException {
+        final Path inputDir = Files.createDirectory(tempDir.resolve("in"));
+        final Path outputDir = tempDir.resolve("out");
+        Files.write(inputDir.resolve("first.zip"), zip("a.xml", document(1), "sub/b.xml", document(2),
+                "../escape.xml", document(3), "/absolute.xml", document(4)));
+        Files.write(inputDir.resolve("second.tar"), tar());
+
+        new CommandLine(new Main()).execute("--input-dir", inputDir.toString(), "--output-dir", outputDir.toString(),
+                "--parallel", "--row-item-name", "/r/i", "--columns", "@id,v");
+
+        assertEquals("\"@id\",\"v\"\n\"1\",\"value 1\"\n", Files.readString(outputDir.resolve("a.txt")));
+        assertEquals("\"@id\",\"v\"\n\"2\",\"value 2\"\n", Files.readString(outputDir.resolve("sub/b.txt")));
+        assertEquals("\"@id\",\"v\"\n\"1\",\"value 1\"\n", Files.readString(outputDir.resolve("dir/a.txt")));
+        assertEquals("\"@id\",\"v\"\n\"3\",\"value 3\"\n", Files.readString(outputDir.resolve("pax/b.txt")));
+        assertFalse(Files.exists(tempDir.resolve("escape.txt")));
+        assertFalse(Files.exists(outputDir.resolve("escape.txt")));
+        assertFalse(Files.exists(Path.of("/absolute.txt")));
+    }
+
+    @Test
+    public void testEntryOutputFile() throws IOException {
+        // Relative output directory "." is normalized to an empty path
+        final Path current = Path.of(".");
+        assertEquals(Path.of("a.txt"), Main.getEntryOutputFile(current, "a.xml", ".txt"));
+        assertEquals(Path.of("src/b.txt.gz"), Main.getEntryOutputFile(current, "src/b.xml", ".txt.gz"));
+        assertEquals(Path.of("src/b.txt"), Main.getEntryOutputFile(Path.of("out/.."), "src/b.xml", ".txt"));
+        assertEquals(Path.of("../o2/a.txt"), Main.getEntryOutputFile(Path.of("../o2"), "a.xml", ".txt"));
+
+        for (final Path outputDir : List.of(current, Path.of("../o2"), tempDir)) {
+            for (final String entryName : List.of("../escape.xml", "/absolute.xml", "sub/../../escape.xml", ".")) {
+                assertThrows(IOException.class, () -> Main.getEntryOutputFile(outputDir, entryName, ".txt"),
+                        outputDir + " " + entryName);
+            }
+        }
+    }
+}
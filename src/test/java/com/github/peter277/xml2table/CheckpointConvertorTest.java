@@ -0,0 +1,143 @@
+package com.github.peter277.xml2table;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+public class CheckpointConvertorTest {
+
+    @TempDir
+    Path tempDir;
+
+    Path input;
+    Path output;
+    String document;
+
+    ConvertorSettings newSettings() {
+        ConvertorSettings convertorSettings = new ConvertorSettings();
+        convertorSettings.generalOptions.columns = new String[]{"@id", "v"};
+        convertorSettings.generalOptions.itemName = "/r/g/i";
+        return convertorSettings;
+    }
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        final StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<r xmlns:n=\"urn:n\">\n");
+
+        for (int g = 0; g < 4; g++) {
+            sb.append("<g>\n");
+            for (int i = 0; i < 10; i++) {
+                sb.append("  <!-- <i id=\"comment\"> -->\n");
+                sb.append("  <n:i id=\"").append(g).append('.').append(i).append("\"><v>ž").append(i).append("</v></n:i>\n");
+            }
+            sb.append("</g>\n<h><i id=\"other\"/></h>\n");
+        }
+        sb.append("</r>\n");
+
+        document = sb.toString();
+        input = Files.writeString(tempDir.resolve("input.xml"), document, StandardCharsets.UTF_8);
+        output = tempDir.resolve("output.txt");
+    }
+
+    String convertSequential() throws IOException {
+        final Path sequential = tempDir.resolve("sequential.txt");
+        Convertor.newConvertorFromFiles(input, sequential, newSettings()).convert();
+        return Files.readString(sequential, StandardCharsets.UTF_8);
+    }
+
+    void convertCheckpointed(final String settings) {
+        new CheckpointConvertor(input, output, newSettings(), 200, settings).convert();
+    }
+
+    @Test
+    public void testCheckpointedMatchesSequential() throws IOException {
+        final String expected = convertSequential();
+        assertEquals(41, expected.split("\n").length);
+
+        convertCheckpointed("s");
+        assertEquals(expected, Files.readString(output, StandardCharsets.UTF_8));
+        assertFalse(Files.exists(CheckpointConvertor.getCheckpointFile(output)));
+    }
+
+    @Test
+    public void testResume() throws IOException {
+        final String expected = convertSequential();
+        final FileTime modified = Files.getLastModifiedTime(input);
+
+        // Conversion dies in the last range, leaving checkpoint behind
+        Files.writeString(input, document.replace("</r>", "<r/>"), StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(input, modified);
+        assertThrows(RuntimeException.class, () -> convertCheckpointed("s"));
+
+        final Path checkpointFile = CheckpointConvertor.getCheckpointFile(output);
+        final List<String> checkpoint = Files.readAllLines(checkpointFile);
+        final String[] fields = checkpoint.get(1).split("\t");
+        final int outputLength = Integer.parseInt(fields[1]);
+        final int rows = Integer.parseInt(fields[2]);
+        assertTrue(rows > 0 && rows < 40);
+
+        // Checkpoint covers the header and the rows written before it
+        final String written = new String(Files.readAllBytes(output), 0, outputLength, StandardCharsets.UTF_8);
+        assertEquals(rows + 1, written.split("\n").length);
+        assertTrue(expected.startsWith(written));
+
+        // Output written after the checkpoint is discarded on resume
+        Files.writeString(output, "garbage\n", StandardOpenOption.APPEND);
+        Files.writeString(input, document, StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(input, modified);
+        convertCheckpointed("s");
+
+        assertEquals(expected, Files.readString(output, StandardCharsets.UTF_8));
+        assertFalse(Files.exists(checkpointFile));
+    }
+
+    @Test
+    public void testCheckpointOfDifferentSettings() throws IOException {
+        final String expected = convertSequential();
+        final FileTime modified = Files.getLastModifiedTime(input);
+
+        Files.writeString(input, document.replace("</r>", "<r/>"), StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(input, modified);
+        assertThrows(RuntimeException.class, () -> convertCheckpointed("s"));
+        assertTrue(Files.exists(CheckpointConvertor.getCheckpointFile(output)));
+
+        Files.writeString(input, document, StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(input, modified);
+        convertCheckpointed("other");
+
+        assertEquals(expected, Files.readString(output, StandardCharsets.UTF_8));
+        assertFalse(Files.exists(CheckpointConvertor.getCheckpointFile(output)));
+    }
+
+    @Test
+    public void testUnsplittableDocument() throws IOException {
+        document = document.replace("<r xmlns", "<!DOCTYPE r>\n<r xmlns");
+        Files.writeString(input, document, StandardCharsets.UTF_8);
+
+        final String expected = convertSequential();
+        convertCheckpointed("s");
+        assertEquals(expected, Files.readString(output, StandardCharsets.UTF_8));
+        assertFalse(Files.exists(CheckpointConvertor.getCheckpointFile(output)));
+    }
+
+    @Test
+    public void testCheckpointOptions() throws IOException {
+        new CommandLine(new Main()).execute("--input-file", input.toString(), "--output-file", output.toString(),
+                "--checkpoint-interval", "200", "--split-input", "--row-item-name", "/r/g/i", "--columns", "@id,v");
+        assertFalse(Files.exists(output));
+
+        new CommandLine(new Main()).execute("--input-file", input.toString(), "--output-file", output.toString(),
+                "--checkpoint-interval", "200", "--row-item-name", "/r/g/i", "--columns", "@id,v");
+        assertEquals(convertSequential(), Files.readString(output, StandardCharsets.UTF_8));
+    }
+}
@@ -21,15 +21,42 @@
  */
 package com.github.peter277.xml2table;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
 
 public class ColumnFinderTest {
 
+    private static final String DOCUMENT = "<doc><header><date>2024-01-01</date></header>"
+            + "<order id=\"1\"><line no=\"1\"><sku>A</sku></line><line no=\"2\"><sku>BB</sku></line></order>"
+            + "<order id=\"2\"><note> </note><line no=\"1\"><sku>CCC</sku></line></order>"
+            + "<order id=\"30\"><note>urgent</note></order>"
+            + "</doc>";
+
+    @TempDir
+    Path tempDir;
+
+    private static ColumnFinder.Profile profile(final String itemPath, final ColumnFinder.Sampling sampling) {
+        return ColumnFinder.profile(new ByteArrayInputStream(DOCUMENT.getBytes(StandardCharsets.UTF_8)), itemPath,
+                ParserBackend.newDefault(), sampling);
+    }
+
+    private static String toString(final ColumnFinder.ColumnStats column) {
+        return column.getPath() + " " + column.isAttribute() + " " + column.getOccurrences() + " " + column.getItems()
+                + " " + column.getMaxRepetitions() + " " + column.getMaxLength();
+    }
+
     @Test
     public void test() {
         final InputStream inputStream = this.getClass().getResourceAsStream(
@@ -44,4 +71,105 @@ public class ColumnFinderTest {
 
         assertEquals(expected, columns);
     }
+
+    @Test
+    public void testParserBackends() {
+        for (final ParserBackend.Type parser : ParserBackend.Type.values()) {
+            final InputStream inputStream = this.getClass().getResourceAsStream(
+                    "/input-columns.xml");
+
+            final List<String> columns = ColumnFinder.find(inputStream,
+                    "/root/item/", ParserBackend.newBackend(parser, 16, true));
+
+            assertEquals(Arrays.asList("item1/item2/value1", "value2", "value3", "value4"), columns, parser.name());
+        }
+    }
+
+    @Test
+    public void testProfile() throws IOException {
+        final ColumnFinder.Profile profile = profile("/doc/order", ColumnFinder.Sampling.ALL);
+
+        assertEquals(Arrays.asList("@id", "line/@no", "line/sku", "note"), profile.getColumns());
+        assertEquals(Arrays.asList("@id true 3 3 1 2", "line/@no true 3 2 2 1", "line/sku false 3 2 2 3",
+                "note false 1 1 1 6"), profile.getColumnStats().stream().map(ColumnFinderTest::toString).collect(Collectors.toList()));
+        assertEquals(3, profile.getItems());
+        assertEquals(0, profile.getPartialDocuments());
+
+        // Without row item path, paths are absolute and children of the root element are row items
+        assertEquals(Arrays.asList("/doc/header/date", "/doc/order/@id", "/doc/order/line/@no", "/doc/order/line/sku",
+                "/doc/order/note"),
+                profile("", ColumnFinder.Sampling.ALL).getColumns());
+        assertEquals(4, profile("", ColumnFinder.Sampling.ALL).getItems());
+
+        // Sampling
+        final ColumnFinder.Profile firstItems = profile("/doc/order", new ColumnFinder.Sampling(2, 0, 1));
+        assertEquals(2, firstItems.getItems());
+        assertEquals(1, firstItems.getPartialDocuments());
+        assertEquals(Arrays.asList("@id", "line/@no", "line/sku"), firstItems.getColumns());
+
+        final ColumnFinder.Profile everySecond = profile("/doc/order", new ColumnFinder.Sampling(0, 0, 2));
+        assertEquals(2, everySecond.getItems());
+        assertEquals(Arrays.asList("@id true 2 2 1 2", "line/@no true 2 1 2 1", "line/sku false 2 1 2 2",
+                "note false 1 1 1 6"), everySecond.getColumnStats().stream().map(ColumnFinderTest::toString).collect(Collectors.toList()));
+
+        assertEquals(1, profile("/doc/order", new ColumnFinder.Sampling(0, 1, 1)).getPartialDocuments());
+        assertThrows(IllegalArgumentException.class, () -> new ColumnFinder.Sampling(0, 0, 0));
+
+        // Files are profiled in parallel and merged in their order
+        final Path first = Files.writeString(tempDir.resolve("first.xml"), DOCUMENT);
+        final Path second = Files.writeString(tempDir.resolve("second.xml"),
+                "<doc><order id=\"100\"><total>1</total><line no=\"1\"/><line no=\"2\"/><line no=\"3\"/></order></doc>");
+        final ColumnFinder.Profile merged = ColumnFinder.profile(Arrays.asList(first, second), "/doc/order",
+                ParserBackend.newDefault(), ColumnFinder.Sampling.ALL, 2);
+
+        assertEquals(4, merged.getItems());
+        assertEquals(2, merged.getDocuments());
+        assertEquals(Arrays.asList("@id true 4 4 1 3", "line/@no true 6 3 3 1", "line/sku false 3 2 2 3",
+                "note false 1 1 1 6", "total false 1 1 1 1"),
+                merged.getColumnStats().stream().map(ColumnFinderTest::toString).collect(Collectors.toList()));
+
+        assertEquals(0, new CommandLine(new ColumnsCommand()).execute(first.toString(), second.toString(),
+                "--row-item-name=/doc/order", "--profile", "--parallel=2"));
+        assertEquals(2, Main.execute(ColumnsCommand.NAME, first.toString(), "--sample-every=0"));
+        assertEquals(1, new CommandLine(new ColumnsCommand()).execute(tempDir.resolve("missing.xml").toString()));
+    }
+
+    @Test
+    public void testDeepDocument() throws IOException {
+        // Deeper than the default thread stack allows for recursive scanning and the default Woodstox limit
+        final int depth = 20000;
+        final StringBuilder sb = new StringBuilder("<root>");
+
+        for (int i = 0; i < depth; i++) {
+            sb.append("<e").append(i % 3).append('>');
+        }
+        sb.append("x");
+        for (int i = depth - 1; i >= 0; i--) {
+            sb.append("</e").append(i % 3).append('>');
+        }
+        sb.append("</root>");
+
+        final List<String> columns = ColumnFinder.find(new ByteArrayInputStream(sb.toString().getBytes(
+                StandardCharsets.UTF_8)), "/root/", ParserBackend.newBackend(ParserBackend.Type.WOODSTOX, 65536, true));
+        assertEquals(1, columns.size());
+        assertEquals(depth * 3 - 1, columns.get(0).length());
+
+        final ColumnFinder.Profile profile = ColumnFinder.profile(new ByteArrayInputStream(sb.toString().getBytes(
+                StandardCharsets.UTF_8)), "/root/e0", ParserBackend.newBackend(ParserBackend.Type.WOODSTOX, 65536, true),
+                ColumnFinder.Sampling.ALL);
+        assertEquals(1, profile.getItems());
+        assertEquals(1, profile.getColumns().size());
+        assertTrue(profile.getColumns().get(0).startsWith("e1/e2/e0/e1/"));
+
+        final Path deep = tempDir.resolve("deep.xml");
+        Files.write(deep, sb.toString().getBytes(StandardCharsets.UTF_8));
+        assertEquals(0, Main.execute(ColumnsCommand.NAME, deep.toString()));
+
+        final Path malformed = tempDir.resolve("malformed.xml");
+        Files.write(malformed, "<root><a></b></root>".getBytes(StandardCharsets.UTF_8));
+        final IOException ex = assertThrows(IOException.class, () -> ColumnFinder.profile(List.of(malformed),
+                "/root/", ParserBackend.newDefault(), ColumnFinder.Sampling.ALL, 1));
+        assertTrue(ex.getMessage().startsWith(malformed + ": XML stream exception: "), ex.getMessage());
+        assertTrue(ex.getMessage().length() > (malformed + ": XML stream exception: ").length());
+    }
 }
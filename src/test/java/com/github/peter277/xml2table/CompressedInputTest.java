@@ -0,0 +1,170 @@
+package com.github.peter277.xml2table;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CompressedInputTest {
+
+    @TempDir
+    Path tempDir;
+
+    byte[] document;
+
+    @BeforeEach
+    public void setUp() {
+        final StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<r>\n");
+
+        for (int i = 0; i < 5000; i++) {
+            sb.append("<i id=\"").append(i).append("\"><v>ž").append(i * 7919 % 1000).append("</v></i>\n");
+        }
+        sb.append("</r>\n");
+
+        document = sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    byte[] gzip(final byte[] data, final int from, final int to) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(data, from, to - from);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    byte[] bgzfMember(final byte[] data, final int from, final int to) {
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data, from, to - from);
+        deflater.finish();
+        final byte[] compressed = new byte[(to - from) * 2 + 64];
+        final int length = deflater.deflate(compressed);
+        deflater.end();
+
+        final CRC32 crc = new CRC32();
+        crc.update(data, from, to - from);
+
+        final ByteBuffer member = ByteBuffer.allocate(18 + length + 8).order(ByteOrder.LITTLE_ENDIAN);
+        member.put(new byte[]{0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff});
+        member.putShort((short) 6).put((byte) 'B').put((byte) 'C').putShort((short) 2);
+        member.putShort((short) (member.capacity() - 1));
+        member.put(compressed, 0, length);
+        member.putInt((int) crc.getValue()).putInt(to - from);
+
+        return member.array();
+    }
+
+    byte[] bgzf(final byte[] data, final int blockSize) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        for (int from = 0; from < data.length; from += blockSize) {
+            bytes.writeBytes(bgzfMember(data, from, Math.min(data.length, from + blockSize)));
+        }
+        bytes.writeBytes(bgzfMember(data, 0, 0)); // End of file marker
+
+        return bytes.toByteArray();
+    }
+
+    byte[] read(final Path file) throws IOException {
+        try (InputStream in = CompressedInput.open(file)) {
+            return in.readAllBytes();
+        }
+    }
+
+    Path write(final String name, final byte[] data) throws IOException {
+        return Files.write(tempDir.resolve(name), data);
+    }
+
+    @Test
+    public void testDetect() throws IOException {
+        assertEquals(CompressedInput.Format.PLAIN, CompressedInput.detect(write("plain.xml", document)));
+        assertEquals(CompressedInput.Format.PLAIN, CompressedInput.detect(write("empty.xml", new byte[0])));
+        assertEquals(CompressedInput.Format.GZIP, CompressedInput.detect(write("input.xml", gzip(document, 0, document.length))));
+    }
+
+    @Test
+    public void testGzip() throws IOException {
+        assertArrayEquals(document, read(write("single.xml.gz", gzip(document, 0, document.length))));
+
+        // Ordinary multi-member gzip is inflated sequentially
+        final ByteArrayOutputStream members = new ByteArrayOutputStream();
+        members.writeBytes(gzip(document, 0, 1000));
+        members.writeBytes(gzip(document, 1000, document.length));
+        assertArrayEquals(document, read(write("multi.xml.gz", members.toByteArray())));
+    }
+
+    @Test
+    public void testBgzf() throws IOException {
+        assertArrayEquals(document, read(write("bgzf.xml.gz", bgzf(document, 4096))));
+
+        // Ordinary member following BGZF members is inflated sequentially
+        final ByteArrayOutputStream members = new ByteArrayOutputStream();
+        members.writeBytes(bgzfMember(document, 0, 1000));
+        members.writeBytes(bgzfMember(document, 1000, 2000));
+        members.writeBytes(gzip(document, 2000, document.length));
+        assertArrayEquals(document, read(write("mixed.xml.gz", members.toByteArray())));
+
+        // Corrupt member data is detected by checksum
+        final byte[] corrupt = bgzf(document, 4096);
+        final byte[] member = bgzfMember(document, 0, 4096);
+        corrupt[member.length + 30] ^= 0x55;
+        assertThrows(IOException.class, () -> read(write("corrupt.xml.gz", corrupt)));
+    }
+
+    @Test
+    public void testZip() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            out.putNextEntry(new ZipEntry("dir/"));
+            out.putNextEntry(new ZipEntry("dir/input.xml"));
+            out.write(document);
+        }
+        assertArrayEquals(document, read(write("single.zip", bytes.toByteArray())));
+
+        bytes.reset();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            out.putNextEntry(new ZipEntry("a.xml"));
+            out.putNextEntry(new ZipEntry("b.xml"));
+        }
+        assertThrows(IOException.class, () -> read(write("multiple.zip", bytes.toByteArray())));
+    }
+
+    @Test
+    public void testConvertCompressed() throws IOException {
+        final ConvertorSettings convertorSettings = new ConvertorSettings();
+        convertorSettings.generalOptions.columns = new String[]{"@id", "v"};
+        convertorSettings.generalOptions.itemName = "/r/i";
+
+        final Path output = tempDir.resolve("output.txt");
+        Convertor.newConvertorFromFiles(write("input.xml", document), output, convertorSettings).convert();
+        final byte[] expected = Files.readAllBytes(output);
+        assertEquals(5001, new String(expected, StandardCharsets.UTF_8).split("\n").length);
+
+        for (final Path input : Arrays.asList(write("input.xml.gz", gzip(document, 0, document.length)),
+                write("bgzf.xml.gz", bgzf(document, 1000)))) {
+            Convertor.newConvertorFromFiles(input, output, convertorSettings).convert();
+            assertArrayEquals(expected, Files.readAllBytes(output), input.toString());
+
+            new MappedConvertor(input, output, convertorSettings).convert();
+            assertArrayEquals(expected, Files.readAllBytes(output), input.toString());
+        }
+    }
+}
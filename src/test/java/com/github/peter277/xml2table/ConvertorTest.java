@@ -30,7 +30,12 @@ import java.net.URISyntaxException;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.Test;
@@ -255,4 +260,388 @@ public class ConvertorTest {
             List.of(writer.toString().split("\\R"))
         );
     }
+
+    @Test
+    public void testConvertParserBackends()
+            throws IOException, URISyntaxException {
+        final String expected = readFile("/output-hierarchy.csv", StandardCharsets.UTF_8);
+
+        for (final ParserBackend.Type parser : ParserBackend.Type.values()) {
+            final Writer writer = new StringWriter();
+
+            ConvertorSettings convertorSettings = new ConvertorSettings();
+            convertorSettings.generalOptions.columns = new String[]{"header/value1", "body/value3", "body/value4/value41", "body/value4/value42"};
+            convertorSettings.generalOptions.itemName = "/root/item";
+            convertorSettings.generalOptions.parser = parser;
+            convertorSettings.generalOptions.parserBufferSize = 7;
+
+            Convertor convertor = Convertor.newConvertorFromStreams(this.getClass().getResourceAsStream("/input-hierarchy.xml"), writer, convertorSettings);
+            convertor.convert();
+
+            assertLinesMatch(
+                List.of(expected.split("\\R")),
+                List.of(writer.toString().split("\\R")),
+                parser.name()
+            );
+        }
+    }
+
+    @Test
+    public void testConvertFilterOnSkippedColumn()
+            throws IOException, URISyntaxException {
+        final Writer writer = new StringWriter();
+
+        final Filter filter = new Filter();
+        filter.setColumn("h/t");
+        filter.setValues(Set.of("y"));
+
+        ConvertorSettings convertorSettings = new ConvertorSettings();
+        convertorSettings.generalOptions.columns = new String[]{"v", "@id"};
+        convertorSettings.generalOptions.itemName = "/r/i";
+        convertorSettings.filters.addFilter(filter);
+
+        Convertor convertor = Convertor.newConvertorFromStreams(new ByteArrayInputStream(
+                ("<r><x><i><v>0</v></i></x>"
+                + "<i id=\"1\"><h><t>x</t></h><b><v>skip</v></b><v>1</v></i>"
+                + "<i id=\"2\"><h><t>y</t></h><b><v>skip</v></b><v>2</v></i></r>").getBytes()), writer, convertorSettings);
+        convertor.convert();
+
+        assertEquals("\"v\",\"@id\"\n\"2\",\"2\"\n", writer.toString());
+    }
+
+    @Test
+    public void testConvertFlushRows()
+            throws IOException, URISyntaxException {
+        final int[] flushes = new int[1];
+        final Writer writer = new StringWriter() {
+            @Override
+            public void flush() {
+                flushes[0]++;
+            }
+        };
+
+        ConvertorSettings convertorSettings = new ConvertorSettings();
+        convertorSettings.generalOptions.columns = new String[]{"v"};
+        convertorSettings.generalOptions.itemName = "/r/i";
+        convertorSettings.generalOptions.flushRows = 2;
+
+        Convertor convertor = Convertor.newConvertorFromStreams(new ByteArrayInputStream(
+                "<r><i><v>1</v></i><i><v>2</v></i><i><v>3</v></i></r>".getBytes()), writer, convertorSettings);
+        convertor.convert();
+
+        assertEquals("\"v\"\n\"1\"\n\"2\"\n\"3\"\n", writer.toString());
+        assertEquals(2, flushes[0]); // After header and first row, after second and third row
+    }
+
+    @Test
+    public void testConvertPipeline()
+            throws IOException, URISyntaxException {
+        final StringBuilder sb = new StringBuilder("<r>");
+
+        for (int i = 0; i < 1000; i++) {
+            sb.append("<i id=\"").append(i).append("\"><v> a").append(i).append(" </v><v>\"b\"</v></i>");
+        }
+        sb.append("</r>");
+
+        final Filter filter = new Filter();
+        filter.setColumn("@id");
+        filter.setValues(Set.of("0", "3", "6", "9"));
+        filter.setExclude(true);
+
+        ConvertorSettings convertorSettings = new ConvertorSettings();
+        convertorSettings.generalOptions.columns = new String[]{"@id", "v"};
+        convertorSettings.generalOptions.itemName = "/r/i";
+        convertorSettings.generalOptions.join = true;
+        convertorSettings.generalOptions.trimValues = true;
+        convertorSettings.generalOptions.pipelineWorkers = 3;
+        convertorSettings.filters.addFilter(filter);
+
+        final Writer writer = new StringWriter();
+        Convertor convertor = Convertor.newConvertorFromStreams(new ByteArrayInputStream(
+                sb.toString().getBytes(StandardCharsets.UTF_8)), writer, convertorSettings);
+        convertor.convert();
+
+        final Writer sequentialWriter = new StringWriter();
+        convertorSettings.generalOptions.pipelineWorkers = 0;
+        Convertor.newConvertorFromStreams(new ByteArrayInputStream(
+                sb.toString().getBytes(StandardCharsets.UTF_8)), sequentialWriter, convertorSettings).convert();
+
+        assertEquals(sequentialWriter.toString(), writer.toString());
+        assertEquals(997, writer.toString().split("\n").length);
+        assertTrue(writer.toString().startsWith("\"@id\",\"v\"\n\"1\",\"a1||\"\"b\"\"\"\n\"2\","));
+    }
+
+    @Test
+    public void testConvertQuoteModes()
+            throws IOException, URISyntaxException {
+        final String input = "<r><i><v>plain</v><w>a,b</w></i><i><v>say \"hi\"</v><w>x::y</w></i>"
+                + "<i><v>line\nbreak</v><w></w></i><i><v>cr&#13;lf</v><w>:</w></i></r>";
+
+        ConvertorSettings convertorSettings = new ConvertorSettings();
+        convertorSettings.generalOptions.columns = new String[]{"v", "w"};
+        convertorSettings.generalOptions.itemName = "/r/i";
+
+        final String[][] expected = {
+            {"ALWAYS", ",", "\"v\",\"w\"\n\"plain\",\"a,b\"\n\"say \"\"hi\"\"\",\"x::y\"\n\"line\nbreak\",\n\"cr\rlf\",\":\"\n"},
+            {"MINIMAL", ",", "v,w\nplain,\"a,b\"\n\"say \"\"hi\"\"\",x::y\n\"line\nbreak\",\n\"cr\rlf\",:\n"},
+            {"MINIMAL", "::", "v::w\nplain::a,b\n\"say \"\"hi\"\"\"::\"x::y\"\n\"line\nbreak\"::\n\"cr\rlf\"::\":\"\n"},
+            {"NEVER", ",", "v,w\nplain,a,b\nsay \"hi\",x::y\nline\nbreak,\ncr\rlf,:\n"}
+        };
+
+        for (final String[] test : expected) {
+            convertorSettings.generalOptions.quoteMode = RowWriter.QuoteMode.valueOf(test[0]);
+            convertorSettings.generalOptions.separator = test[1];
+
+            final Writer writer = new StringWriter();
+            Convertor.newConvertorFromStreams(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)),
+                    writer, convertorSettings).convert();
+
+            assertEquals(test[2], writer.toString(), test[0] + " " + test[1]);
+        }
+
+        // Minimally quoted output is parsed back to the original values
+        convertorSettings.generalOptions.quoteMode = RowWriter.QuoteMode.MINIMAL;
+        convertorSettings.generalOptions.separator = ",";
+        final Writer writer = new StringWriter();
+        Convertor.newConvertorFromStreams(new ByteArrayInputStream("<r><i><v>say \"hi\"</v><w>a,b</w></i></r>"
+                .getBytes(StandardCharsets.UTF_8)), writer, convertorSettings).convert();
+        assertArrayEquals(new String[]{"say \"hi\"", "a,b"}, CsvUtils.parseValues(writer.toString().split("\n")[1]));
+
+        // --no-quote takes precedence
+        convertorSettings.generalOptions.noQuote = true;
+        final Writer noQuoteWriter = new StringWriter();
+        Convertor.newConvertorFromStreams(new ByteArrayInputStream("<r><i><v>a,b</v></i></r>"
+                .getBytes(StandardCharsets.UTF_8)), noQuoteWriter, convertorSettings).convert();
+        assertEquals("v,w\na,b,\n", noQuoteWriter.toString());
+    }
+
+    @Test
+    public void testConvertTrim()
+            throws IOException, URISyntaxException {
+        // Text split into several events by entities and nested elements
+        final byte[] input = "<r><i><v> \n a &amp; <x>1</x> b\t</v><w>  </w><w>c</w></i><i><v>&#32;d&#10;</v></i></r>"
+                .getBytes(StandardCharsets.UTF_8);
+
+        ConvertorSettings convertorSettings = new ConvertorSettings();
+        convertorSettings.generalOptions.columns = new String[]{"v", "w", "v/x"};
+        convertorSettings.generalOptions.itemName = "/r/i";
+        convertorSettings.generalOptions.trimValues = true;
+
+        for (final boolean join : new boolean[]{false, true}) {
+            convertorSettings.generalOptions.join = join;
+
+            final Writer writer = new StringWriter();
+            Convertor.newConvertorFromStreams(new ByteArrayInputStream(input), writer, convertorSettings).convert();
+            assertEquals("\"v\",\"w\",\"v/x\"\n\"a &  b\"," + (join ? "\"||c\"" : "") + ",\"1\"\n\"d\",,\n",
+                    writer.toString());
+        }
+    }
+
+    @Test
+    public void testConvertValueCache()
+            throws IOException, URISyntaxException {
+        final StringBuilder sb = new StringBuilder("<r>");
+
+        for (int i = 0; i < 5000; i++) {
+            sb.append("<i id=\"").append(i).append("\" cur=\"").append(i % 3 == 0 ? "EUR" : "USD")
+                    .append("\"><status> ").append(i % 2 == 0 ? "open" : "closed").append(" </status></i>");
+        }
+        sb.append("</r>");
+        final byte[] input = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+        final Remapping remapping = new Remapping();
+        remapping.setColumn("status");
+        remapping.setMap(Map.of("open", "O"));
+
+        ConvertorSettings convertorSettings = new ConvertorSettings();
+        convertorSettings.generalOptions.columns = new String[]{"@id", "@cur", "status"};
+        convertorSettings.generalOptions.itemName = "/r/i";
+        convertorSettings.generalOptions.trimValues = true;
+        convertorSettings.remappings.addRemapping(remapping);
+
+        final Writer writer = new StringWriter();
+        Convertor.newConvertorFromStreams(new ByteArrayInputStream(input), writer, convertorSettings).convert();
+
+        convertorSettings.generalOptions.valueCacheSize = 16;
+        final Writer cachedWriter = new StringWriter();
+        Convertor.newConvertorFromStreams(new ByteArrayInputStream(input), cachedWriter, convertorSettings).convert();
+
+        assertEquals(writer.toString(), cachedWriter.toString());
+        assertTrue(cachedWriter.toString().contains("\n\"2\",\"USD\",\"O\"\n\"3\",\"EUR\",\"closed\"\n"));
+
+        // Repeated values share a single instance, pinned values are the remapping keys
+        final String pinnedValue = new String("open");
+        final ValueCache cache = new ValueCache(16, Set.of(pinnedValue));
+        final String value = cache.intern(new StringBuilder("xEURx"), 1, 4);
+        assertEquals("EUR", value);
+        assertSame(value, cache.intern("EUR", 0, 3));
+        assertSame(pinnedValue, cache.intern(new StringBuilder("open"), 0, 4));
+
+        // Values of a column with mostly distinct values are not stored
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(Integer.toString(i), cache.intern(Integer.toString(i), 0, Integer.toString(i).length()));
+        }
+        assertFalse(cache.isStoring());
+        assertSame(pinnedValue, cache.intern("open", 0, 4));
+    }
+
+    @Test
+    public void testConvertValueLimits()
+            throws IOException, URISyntaxException {
+        final byte[] input = ("<r><i id=\"abcdef\"><v>0123456789</v><v>abc</v><w>x</w></i>"
+                + "<i id=\"1\"><v>ab</v><w>\"y\"</w></i></r>").getBytes(StandardCharsets.UTF_8);
+        final String unlimited = "\"@id\",\"v\",\"w\"\n\"abcdef\",\"0123456789\",\"x\"\n\"1\",\"ab\",\"\"\"y\"\"\"\n";
+        final String unlimitedJoined = "\"@id\",\"v\",\"w\"\n\"abcdef\",\"0123456789||abc\",\"x\"\n\"1\",\"ab\",\"\"\"y\"\"\"\n";
+        final String lastItem = "\"1\",\"ab\",\"\"\"y\"\"\"\n";
+
+        final Object[][] expected = {
+            // policy, join, max value length, max item size, output
+            {"TRUNCATE", false, 0L, 0L, unlimited},
+            {"TRUNCATE", true, 0L, 0L, unlimitedJoined},
+            {"TRUNCATE", false, 4L, 0L, "\"@id\",\"v\",\"w\"\n\"abcd\",\"0123\",\"x\"\n" + lastItem},
+            {"TRUNCATE", true, 4L, 0L, "\"@id\",\"v\",\"w\"\n\"abcd\",\"0123\",\"x\"\n" + lastItem},
+            {"TRUNCATE", false, 0L, 8L, "\"@id\",\"v\",\"w\"\n\"abcdef\",\"01\",\n" + lastItem},
+            {"FAIL_ITEM", false, 4L, 0L, "\"@id\",\"v\",\"w\"\n" + lastItem},
+            {"FAIL_ITEM", true, 6L, 0L, "\"@id\",\"v\",\"w\"\n" + lastItem},
+            // The second value of v is not read, so it does not count
+            {"FAIL_ITEM", false, 0L, 17L, unlimited},
+            {"SPILL", false, 4L, 0L, unlimited},
+            {"SPILL", true, 4L, 0L, unlimitedJoined},
+            {"SPILL", true, 0L, 8L, unlimitedJoined}
+        };
+
+        final Path tempDir = Path.of(System.getProperty("java.io.tmpdir"));
+        final long spillFiles = countSpillFiles(tempDir);
+
+        for (final Object[] test : expected) {
+            for (final int workers : new int[]{0, 2}) {
+                ConvertorSettings convertorSettings = new ConvertorSettings();
+                convertorSettings.generalOptions.columns = new String[]{"@id", "v", "w"};
+                convertorSettings.generalOptions.itemName = "/r/i";
+                convertorSettings.generalOptions.limitPolicy = ValueLimits.Policy.valueOf((String) test[0]);
+                convertorSettings.generalOptions.join = (Boolean) test[1];
+                convertorSettings.generalOptions.maxValueLength = (Long) test[2];
+                convertorSettings.generalOptions.maxItemSize = (Long) test[3];
+                convertorSettings.generalOptions.pipelineWorkers = workers;
+                final String message = test[0] + " " + test[1] + " " + test[2] + " " + test[3] + " " + workers;
+
+                final Writer writer = new StringWriter();
+                Convertor.newConvertorFromStreams(new ByteArrayInputStream(input), writer, convertorSettings).convert();
+                assertEquals(test[4], writer.toString(), message);
+
+                final Writer tableWriter = new StringWriter();
+                MultiTableConvertor.newConvertorFromStreams(new ByteArrayInputStream(input), ParserBackend.newDefault(),
+                        List.of(convertorSettings), List.of(tableWriter)).convert();
+                assertEquals(test[4], tableWriter.toString(), message);
+            }
+        }
+
+        // Spilled values are deleted when rows are written
+        assertEquals(spillFiles, countSpillFiles(tempDir));
+
+        assertThrows(IllegalArgumentException.class, () -> new ValueLimits(-1, 0, ValueLimits.Policy.TRUNCATE));
+    }
+
+    @Test
+    public void testSpilledValues() throws IOException {
+        final StringBuilder sb = new StringBuilder("<r>");
+        for (int i = 0; i < 1000; i++) {
+            sb.append("<i id=\"").append(i % 10).append("\"><s> ").append(i % 2 == 0 ? "open" : "closed")
+                    .append(" </s><v>  a\"").append(i % 3 == 0 ? "" : "b").append("  </v></i>");
+        }
+        final byte[] input = (sb + "</r>").getBytes(StandardCharsets.UTF_8);
+        final byte[] failing = (sb + "<i id=\"0\"><s>open</s><v>a</i></r>").getBytes(StandardCharsets.UTF_8);
+
+        final Filter filter = new Filter();
+        filter.setColumn("v");
+        filter.setValues(Set.of("a\""));
+        filter.setExclude(true);
+
+        final Remapping remapping = new Remapping();
+        remapping.setColumn("s");
+        remapping.setMap(Map.of("open", "O"));
+
+        final Path tempDir = Path.of(System.getProperty("java.io.tmpdir"));
+        final long spillFiles = countSpillFiles(tempDir);
+
+        for (final int workers : new int[]{0, 2}) {
+            ConvertorSettings convertorSettings = new ConvertorSettings();
+            convertorSettings.generalOptions.columns = new String[]{"@id", "s", "v"};
+            convertorSettings.generalOptions.itemName = "/r/i";
+            convertorSettings.generalOptions.trimValues = true;
+            convertorSettings.generalOptions.limitPolicy = ValueLimits.Policy.SPILL;
+            convertorSettings.generalOptions.maxItemSize = 1;
+            convertorSettings.generalOptions.pipelineWorkers = workers;
+            convertorSettings.filters.addFilter(filter);
+            convertorSettings.remappings.addRemapping(remapping);
+
+            // Filter and remapping see trimmed content of spilled values
+            final Writer writer = new StringWriter();
+            Convertor.newConvertorFromStreams(new ByteArrayInputStream(input), writer, convertorSettings).convert();
+            final String[] rows = writer.toString().split("\n");
+            assertEquals(1 + 666, rows.length);
+            assertEquals("\"1\",\"closed\",\"a\"\"b\"", rows[1]);
+            assertEquals("\"2\",\"O\",\"a\"\"b\"", rows[2]);
+
+            final Writer tableWriter = new StringWriter();
+            MultiTableConvertor.newConvertorFromStreams(new ByteArrayInputStream(input), ParserBackend.newDefault(),
+                    List.of(convertorSettings), List.of(tableWriter)).convert();
+            assertEquals(writer.toString(), tableWriter.toString());
+
+            // Spilled values of rows not written are deleted when conversion fails
+            assertThrows(RuntimeException.class, () -> Convertor.newConvertorFromStreams(
+                    new ByteArrayInputStream(failing), new StringWriter(), convertorSettings).convert());
+            assertThrows(RuntimeException.class, () -> MultiTableConvertor.newConvertorFromStreams(
+                    new ByteArrayInputStream(failing), ParserBackend.newDefault(), List.of(convertorSettings),
+                    List.of(new StringWriter())).convert());
+            assertEquals(spillFiles, countSpillFiles(tempDir), "workers " + workers);
+        }
+    }
+
+    @Test
+    public void testSpilledValuesWrittenAsInMemory() throws IOException {
+        final byte[] input = ("<r><i x=\"abcdef\"><b><c>      </c></b><a>a,bc</a><d>plain</d></i>"
+                + "<i x=\"q\"><b><c> \"quoted\" </c></b><a>ab</a><d>line\nbreak</d></i></r>")
+                .getBytes(StandardCharsets.UTF_8);
+
+        final Path tempDir = Path.of(System.getProperty("java.io.tmpdir"));
+        final long spillFiles = countSpillFiles(tempDir);
+
+        for (final RowWriter.QuoteMode quoteMode : RowWriter.QuoteMode.values()) {
+            for (final int workers : new int[]{0, 2}) {
+                ConvertorSettings convertorSettings = new ConvertorSettings();
+                // Spilled values of duplicated columns are written twice
+                convertorSettings.generalOptions.columns = new String[]{"@x", "b/c", "a", "b/c", "d", "a"};
+                convertorSettings.generalOptions.itemName = "/r/i";
+                convertorSettings.generalOptions.trimValues = true;
+                convertorSettings.generalOptions.quoteMode = quoteMode;
+                convertorSettings.generalOptions.pipelineWorkers = workers;
+
+                final Writer expected = new StringWriter();
+                Convertor.newConvertorFromStreams(new ByteArrayInputStream(input), expected, convertorSettings)
+                        .convert();
+
+                convertorSettings.generalOptions.limitPolicy = ValueLimits.Policy.SPILL;
+                convertorSettings.generalOptions.maxValueLength = 3;
+
+                final Writer writer = new StringWriter();
+                Convertor.newConvertorFromStreams(new ByteArrayInputStream(input), writer, convertorSettings)
+                        .convert();
+                assertEquals(expected.toString(), writer.toString(), quoteMode + " " + workers);
+
+                if (quoteMode == RowWriter.QuoteMode.MINIMAL) {
+                    assertEquals("@x,b/c,a,b/c,d,a\nabcdef,,\"a,bc\",,plain,\"a,bc\"\n"
+                            + "q,\"\"\"quoted\"\"\",ab,\"\"\"quoted\"\"\",\"line\nbreak\",ab\n", writer.toString());
+                }
+            }
+        }
+
+        assertEquals(spillFiles, countSpillFiles(tempDir));
+    }
+
+    private static long countSpillFiles(final Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("xml2table-value-")).count();
+        }
+    }
 }
@@ -0,0 +1,134 @@
+package com.github.peter277.xml2table;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+public class FileScheduleTest {
+
+    @TempDir
+    Path tempDir;
+
+    static String name(final FileSchedule.Entry entry) {
+        return entry.getFile().getFileName().toString();
+    }
+
+    static FileSchedule schedule(final long smallFileSize, final Object... namesAndSizes)
+            throws InterruptedException {
+        final FileSchedule schedule = new FileSchedule(smallFileSize, namesAndSizes.length / 2);
+
+        for (int i = 0; i < namesAndSizes.length; i += 2) {
+            schedule.add(Path.of((String) namesAndSizes[i]), (Integer) namesAndSizes[i + 1]);
+        }
+
+        return schedule;
+    }
+
+    @Test
+    public void testLargestFirst() throws InterruptedException {
+        final FileSchedule schedule = schedule(100, "a", 200, "b", 500, "c", 300, "d", 500);
+        final List<String> order = new ArrayList<>();
+
+        for (FileSchedule.Entry entry = schedule.next(); entry != null; entry = schedule.next()) {
+            order.add(name(entry));
+        }
+
+        // Files of equal size keep their input order
+        assertEquals(Arrays.asList("b", "d", "c", "a"), order);
+    }
+
+    @Test
+    public void testFastLane() throws InterruptedException {
+        final FileSchedule schedule = schedule(50, "s1", 20, "l1", 300, "s2", 10, "l2", 200, "l3", 100, "s3", 30);
+
+        // First worker takes the smallest file, the others the largest ones
+        final FileSchedule.Entry first = schedule.next();
+        assertEquals("s2", name(first));
+        assertTrue(first.isSmall());
+        assertEquals("l1", name(schedule.next()));
+        assertEquals("l2", name(schedule.next()));
+
+        // The fast lane takes the next small file once the previous one is done
+        schedule.done(first);
+        final FileSchedule.Entry second = schedule.next();
+        assertEquals("s1", name(second));
+        assertEquals("l3", name(schedule.next()));
+
+        // All workers take small files once the large files are taken
+        assertEquals("s3", name(schedule.next()));
+        assertNull(schedule.next());
+        schedule.done(second);
+        assertNull(schedule.next());
+    }
+
+    @Test
+    public void testBoundedWaiting() throws InterruptedException {
+        final FileSchedule schedule = new FileSchedule(0, 2);
+        final Thread producer = new Thread(() -> {
+            try {
+                for (int i = 1; i <= 3; i++) {
+                    schedule.add(Path.of("f" + i), i);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        producer.start();
+        producer.join(200);
+
+        // Third file waits until a worker takes one of the first two
+        assertTrue(producer.isAlive());
+        assertEquals("f2", name(schedule.next()));
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+
+        // Files added later are ordered only with the files still waiting
+        assertEquals("f3", name(schedule.next()));
+        assertEquals("f1", name(schedule.next()));
+        assertNull(schedule.next());
+    }
+
+    @Test
+    public void testMissingFile() throws IOException {
+        assertEquals(0, FileSchedule.size(tempDir.resolve("missing")));
+        assertEquals(300, FileSchedule.size(Files.write(tempDir.resolve("file"), new byte[300])));
+    }
+
+    @Test
+    public void testListedFilesOrderedAsWhole() throws IOException {
+        final List<String> args = new ArrayList<>(Arrays.asList("--output-dir", tempDir.resolve("out").toString(),
+                "--report-file", tempDir.resolve("report.tsv").toString(), "--row-item-name", "/r/i", "--columns", "v",
+                "--input-file"));
+
+        // Listed largest first, all in the fast lane, so converted smallest first by the single worker
+        for (int i = 20; i > 0; i--) {
+            args.add(Files.writeString(tempDir.resolve("f" + i + ".xml"),
+                    "<r>" + "<i><v>1</v></i>".repeat(i) + "</r>").toString());
+        }
+
+        new CommandLine(new Main()).execute(args.toArray(new String[0]));
+
+        final List<String> report = Files.readAllLines(tempDir.resolve("report.tsv"));
+        final List<String> order = report.subList(1, report.size()).stream()
+                .map(line -> line.split("\t"))
+                .sorted(Comparator.comparingDouble((String[] fields) -> Double.parseDouble(fields[2])))
+                .map(fields -> Path.of(fields[3]).getFileName().toString())
+                .collect(Collectors.toList());
+        final List<String> expected = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            expected.add("f" + i + ".xml");
+        }
+        assertEquals(expected, order);
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.peter277.xml2table;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+public class InputWalkerTest {
+
+    static final Pattern XML_EXTENSION = Pattern.compile("(?i)\\.xml$");
+
+    @TempDir
+    Path tempDir;
+
+    Path inputDir;
+
+    static String document(final int id) {
+        return "<r><i><v>value " + id + "</v></i></r>";
+    }
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        inputDir = Files.createDirectory(tempDir.resolve("in"));
+        Files.createDirectories(inputDir.resolve("sub/deep"));
+        Files.createDirectories(inputDir.resolve("skipped"));
+        Files.writeString(inputDir.resolve("a.xml"), document(1));
+        Files.writeString(inputDir.resolve("notes.txt"), "not xml");
+        Files.writeString(inputDir.resolve("sub/b.xml"), document(2));
+        Files.writeString(inputDir.resolve("sub/b.draft.xml"), document(3));
+        Files.writeString(inputDir.resolve("sub/deep/c.XML"), document(4));
+        Files.writeString(inputDir.resolve("skipped/d.xml"), document(5));
+    }
+
+    Map<String, Long> walk(final boolean recursive, final List<String> includes, final List<String> excludes)
+            throws IOException {
+        final Map<String, Long> files = new TreeMap<>();
+
+        new InputWalker(inputDir, recursive, includes, excludes, XML_EXTENSION).walk((file, size) -> files.put(
+                inputDir.relativize(file).toString().replace('\\', '/'), size));
+
+        return files;
+    }
+
+    @Test
+    public void testWalk() throws IOException {
+        assertEquals(Map.of("a.xml", (long) document(1).length()),
+                walk(false, Collections.emptyList(), Collections.emptyList()));
+        assertEquals(Arrays.asList("a.xml", "skipped/d.xml", "sub/b.draft.xml", "sub/b.xml", "sub/deep/c.XML"),
+                List.copyOf(walk(true, Collections.emptyList(), Collections.emptyList()).keySet()));
+
+        // Patterns without slash match file names, subdirectories can be excluded
+        assertEquals(Arrays.asList("a.xml", "sub/b.xml", "sub/deep/c.XML"),
+                List.copyOf(walk(true, Collections.emptyList(), Arrays.asList("*.draft.xml", "skipped")).keySet()));
+
+        // Patterns with slash match relative paths
+        assertEquals(Arrays.asList("notes.txt", "sub/b.draft.xml", "sub/b.xml"),
+                List.copyOf(walk(true, Arrays.asList("sub/*.xml", "*.txt"), Collections.emptyList()).keySet()));
+        assertEquals(Arrays.asList("sub/deep/c.XML"),
+                List.copyOf(walk(true, Arrays.asList("sub/**"), Arrays.asList("sub/b*")).keySet()));
+    }
+
+    @Test
+    public void testMissingDirectory() {
+        assertThrows(IOException.class, () -> new InputWalker(tempDir.resolve("missing"), true,
+                Collections.emptyList(), Collections.emptyList(), XML_EXTENSION).walk((file, size) -> { }));
+    }
+
+    @Test
+    public void testConvertRecursive() throws IOException {
+        final Path outputDir = tempDir.resolve("out");
+        final Path reportFile = tempDir.resolve("report.tsv");
+        Files.writeString(inputDir.resolve("sub/broken.xml"), "<r><i>");
+
+        final Main main = new Main();
+        new CommandLine(main).execute("--input-dir", inputDir.toString(), "--output-dir", outputDir.toString(),
+                "--recursive", "--exclude", "skipped", "--exclude", "*.draft.xml", "--report-file", reportFile.toString(),
+                "--parallel", "--row-item-name", "/r/i", "--columns", "v");
+
+        assertEquals("\"v\"\n\"value 1\"\n", Files.readString(outputDir.resolve("a.txt")));
+        assertEquals("\"v\"\n\"value 2\"\n", Files.readString(outputDir.resolve("sub/b.txt")));
+        assertEquals("\"v\"\n\"value 4\"\n", Files.readString(outputDir.resolve("sub/deep/c.txt")));
+        assertFalse(Files.exists(outputDir.resolve("sub/b.draft.txt")));
+        assertFalse(Files.exists(outputDir.resolve("skipped")));
+        assertEquals(1, main.getFailedFileCount());
+
+        final List<String> report = Files.readAllLines(reportFile);
+        assertEquals(BatchReport.HEADER, report.get(0));
+        assertEquals(5, report.size());
+
+        final Map<String, String> statuses = new TreeMap<>();
+        for (final String line : report.subList(1, report.size())) {
+            final String[] fields = line.split("\t", -1);
+            assertEquals(5, fields.length);
+            statuses.put(inputDir.relativize(Path.of(fields[3])).toString().replace('\\', '/'), fields[0]);
+        }
+        assertEquals(Map.of("a.xml", "OK", "sub/b.xml", "OK", "sub/deep/c.XML", "OK", "sub/broken.xml", "FAILED"),
+                statuses);
+    }
+
+    @Test
+    public void testFilterOptionsRequireInputDir() throws IOException {
+        final Path input = Files.writeString(tempDir.resolve("input.xml"), document(1));
+        final Path output = tempDir.resolve("output.txt");
+
+        new CommandLine(new Main()).execute("--input-file", input.toString(), "--output-file", output.toString(),
+                "--recursive", "--row-item-name", "/r/i", "--columns", "v");
+
+        assertFalse(Files.exists(output));
+    }
+}
@@ -0,0 +1,127 @@
+package com.github.peter277.xml2table;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+public class ManifestTest {
+
+    @TempDir
+    Path tempDir;
+
+    Path input;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        input = Files.writeString(tempDir.resolve("input.xml"), "<r><i><v>1</v></i></r>");
+    }
+
+    Manifest convert(final boolean rebuild, final String settings) throws IOException {
+        final Manifest manifest = Manifest.load(tempDir, rebuild);
+        final Manifest.Entry entry = manifest.check(input, settings);
+
+        if (!entry.isUnchanged()) {
+            manifest.starting(input);
+        }
+
+        manifest.record(input, entry);
+
+        return manifest;
+    }
+
+    @Test
+    public void testCheck() throws IOException {
+        assertFalse(Manifest.load(tempDir, false).check(input, "s").isUnchanged());
+        convert(false, "s").save();
+        assertTrue(Files.exists(tempDir.resolve(Manifest.FILE_NAME)));
+
+        assertTrue(Manifest.load(tempDir, false).check(input, "s").isUnchanged());
+        assertFalse(Manifest.load(tempDir, false).check(input, "other").isUnchanged());
+
+        // Touched file is unchanged by content
+        Files.setLastModifiedTime(input, FileTime.fromMillis(Files.getLastModifiedTime(input).toMillis() - 60_000));
+        assertTrue(Manifest.load(tempDir, false).check(input, "s").isUnchanged());
+
+        Files.writeString(input, "<r><i><v>2</v></i></r>");
+        assertFalse(Manifest.load(tempDir, false).check(input, "s").isUnchanged());
+        assertFalse(Manifest.load(tempDir, true).check(input, "s").isUnchanged());
+    }
+
+    @Test
+    public void testCrashedRun() throws IOException {
+        convert(false, "s").save();
+
+        // Run converting the input again crashes before the manifest is saved
+        final Manifest crashed = Manifest.load(tempDir, false);
+        crashed.starting(input);
+
+        assertFalse(Manifest.load(tempDir, false).check(input, "s").isUnchanged());
+
+        // Rebuild deletes the previous manifest, so a crashed rebuild is not skipped later
+        convert(false, "s").save();
+        assertTrue(Manifest.load(tempDir, false).check(input, "s").isUnchanged());
+        Manifest.load(tempDir, true);
+        assertFalse(Files.exists(tempDir.resolve(Manifest.FILE_NAME)));
+    }
+
+    @Test
+    public void testFingerprint() {
+        assertEquals(Manifest.fingerprint(Arrays.asList("a", "b")), Manifest.fingerprint(List.of("a", "b")));
+        assertNotEquals(Manifest.fingerprint(Arrays.asList("a", "b")), Manifest.fingerprint(List.of("ab")));
+    }
+
+    @Test
+    public void testIncremental() throws IOException {
+        final Path inputDir = Files.createDirectory(tempDir.resolve("in"));
+        final Path outputDir = tempDir.resolve("out");
+        final Path map = Files.writeString(tempDir.resolve("map.csv"), "1,one\n");
+        Files.writeString(inputDir.resolve("a.xml"), "<r><i><v>1</v></i></r>");
+        Files.writeString(inputDir.resolve("b.xml"), "<r><i><v>2</v></i></r>");
+        final String[] args = {"--input-dir", inputDir.toString(), "--output-dir", outputDir.toString(),
+            "--incremental", "--report-file", tempDir.resolve("report.tsv").toString(),
+            "--row-item-name", "/r/i", "--columns", "v", "--remap-column", "v", "--remap-map", map.toString()};
+
+        new CommandLine(new Main()).execute(args);
+        assertEquals("\"v\"\n\"one\"\n", Files.readString(outputDir.resolve("a.txt")));
+        assertEquals(List.of("OK", "OK"), statuses());
+
+        // Unchanged inputs are skipped, changed and inputs with missing output are converted
+        Files.writeString(inputDir.resolve("a.xml"), "<r><i><v>2</v></i></r>");
+        Files.delete(outputDir.resolve("b.txt"));
+        new CommandLine(new Main()).execute(args);
+        assertEquals("\"v\"\n\"2\"\n", Files.readString(outputDir.resolve("a.txt")));
+        assertTrue(Files.exists(outputDir.resolve("b.txt")));
+        assertEquals(List.of("OK", "OK"), statuses());
+
+        new CommandLine(new Main()).execute(args);
+        assertEquals(List.of("SKIPPED", "SKIPPED"), statuses());
+
+        // Content of remap file is part of the settings fingerprint
+        Files.writeString(map, "2,two\n");
+        new CommandLine(new Main()).execute(args);
+        assertEquals("\"v\"\n\"two\"\n", Files.readString(outputDir.resolve("a.txt")));
+        assertEquals(List.of("OK", "OK"), statuses());
+
+        final String[] forced = Arrays.copyOf(args, args.length + 1);
+        forced[args.length] = "--force";
+        new CommandLine(new Main()).execute(forced);
+        assertEquals(List.of("OK", "OK"), statuses());
+    }
+
+    List<String> statuses() throws IOException {
+        final List<String> lines = Files.readAllLines(tempDir.resolve("report.tsv"));
+
+        return lines.subList(1, lines.size()).stream().map(line -> line.substring(0, line.indexOf('\t')))
+                .sorted().collect(Collectors.toList());
+    }
+}
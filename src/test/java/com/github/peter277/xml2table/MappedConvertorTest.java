@@ -0,0 +1,204 @@
+package com.github.peter277.xml2table;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MappedConvertorTest {
+
+    @TempDir
+    Path tempDir;
+
+    ConvertorSettings newSettings(final String itemName, final String... columns) {
+        ConvertorSettings convertorSettings = new ConvertorSettings();
+        convertorSettings.generalOptions.columns = columns;
+        convertorSettings.generalOptions.itemName = itemName;
+        convertorSettings.generalOptions.join = true;
+        return convertorSettings;
+    }
+
+    Path copyResource(final String path) throws IOException {
+        final Path input = tempDir.resolve(path.substring(1));
+
+        try (InputStream in = this.getClass().getResourceAsStream(path)) {
+            Files.copy(in, input);
+        }
+
+        return input;
+    }
+
+    String convertSequential(final Path input, final ConvertorSettings settings) throws IOException {
+        final Path output = tempDir.resolve("sequential.txt");
+        Convertor.newConvertorFromFiles(input, output, settings).convert();
+        return Files.readString(output, StandardCharsets.UTF_8);
+    }
+
+    String convertMapped(final Path input, final ConvertorSettings settings, final long windowSize,
+            final boolean fallback) throws IOException {
+        final Path output = tempDir.resolve("mapped.txt");
+        final MappedConvertor convertor = new MappedConvertor(input, output, settings, windowSize);
+        convertor.convert();
+        assertEquals(fallback, convertor.isFallback());
+        return Files.readString(output, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testMappedMatchesSequential() throws IOException {
+        final Path hierarchy = copyResource("/input-hierarchy.xml");
+        final String[] hierarchyColumns = {"header/value1", "body/value3", "body/value4/value41", "body/value4/value42"};
+        assertEquals(convertSequential(hierarchy, newSettings("/root/item", hierarchyColumns)),
+                convertMapped(hierarchy, newSettings("/root/item", hierarchyColumns), MappedConvertor.DEFAULT_WINDOW_SIZE, false));
+
+        final Path attributes = copyResource("/input-simple-attrib.xml");
+        final String[] attributeColumns = {"value1", "value2", "value3", "value2/@attrib2_1", "value2/@attrib2_2", "value3/@attrib3"};
+        assertEquals(convertSequential(attributes, newSettings("/root/item", attributeColumns)),
+                convertMapped(attributes, newSettings("/root/item", attributeColumns), MappedConvertor.DEFAULT_WINDOW_SIZE, false));
+
+        final Path deep = copyResource("/input-deep.xml");
+        final String[] deepColumns = {"value1", "value2", "value3"};
+        assertEquals(convertSequential(deep, newSettings("/root/item0/item1/item2", deepColumns)),
+                convertMapped(deep, newSettings("/root/item0/item1/item2", deepColumns), MappedConvertor.DEFAULT_WINDOW_SIZE, false));
+    }
+
+    @Test
+    public void testSmallWindow() throws IOException {
+        final StringBuilder sb = new StringBuilder("\uFEFF<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n<!-- header -->\n<r>\n");
+
+        for (int i = 0; i < 200; i++) {
+            sb.append("<i id=\"").append(i).append("\" a=\"x&#10;y\tz\"><?pi <i/>?><v>ž&amp;").append(i)
+                    .append("<![CDATA[<v>cdata</v>]]>\r\n€</v><v/><w a='&quot;'>skipped</w><!-- <v>comment</v> --></i>\n");
+        }
+        sb.append("</r>\n");
+
+        final Path input = tempDir.resolve("input.xml");
+        Files.writeString(input, sb, StandardCharsets.UTF_8);
+
+        final String expected = convertSequential(input, newSettings("/r/i", "@id", "@a", "v", "w/@a"));
+        assertEquals(201, expected.split("\n\"").length); // Values contain line breaks
+        assertEquals(expected, convertMapped(input, newSettings("/r/i", "@id", "@a", "v", "w/@a"), 256, false));
+
+        final ConvertorSettings cachedSettings = newSettings("/r/i", "@id", "@a", "v", "w/@a");
+        cachedSettings.generalOptions.valueCacheSize = 4;
+        assertEquals(expected, convertMapped(input, cachedSettings, 256, false));
+    }
+
+    @Test
+    public void testUnsupportedInputFallsBack() throws IOException {
+        final String[] documents = {
+            "<!DOCTYPE r [<!ENTITY e \"entity\">]>\n<r><i><v>&e;</v></i></r>\n",
+            "<r xmlns:n=\"urn:n\"><n:i><v>1</v></n:i><i><v>2</v></i></r>\n",
+            "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n<r><i><v>1</v></i></r>\n"
+        };
+
+        for (final String document : documents) {
+            final Path input = tempDir.resolve("input.xml");
+            Files.writeString(input, document, StandardCharsets.UTF_8);
+
+            assertEquals(convertSequential(input, newSettings("/r/i", "v")),
+                    convertMapped(input, newSettings("/r/i", "v"), MappedConvertor.DEFAULT_WINDOW_SIZE, true));
+        }
+    }
+
+    @Test
+    public void testTruncatedInput() throws IOException {
+        final Path input = tempDir.resolve("input.xml");
+
+        // Token longer than the window is converted by the convertor
+        Files.writeString(input, "<r><i><v>" + "x".repeat(1000) + "</v></i></r>\n", StandardCharsets.UTF_8);
+        assertEquals(convertSequential(input, newSettings("/r/i", "v")),
+                convertMapped(input, newSettings("/r/i", "v"), 256, true));
+
+        // Truncated input is reported by the convertor
+        Files.writeString(input, "<r><i><v>1</v></i><i><v", StandardCharsets.UTF_8);
+        final MappedConvertor convertor = new MappedConvertor(input, tempDir.resolve("mapped.txt"),
+                newSettings("/r/i", "v"));
+        assertThrows(RuntimeException.class, convertor::convert);
+        assertTrue(convertor.isFallback());
+    }
+
+    @Test
+    public void testCdataEndInText() throws IOException {
+        final Path input = tempDir.resolve("input.xml");
+
+        // Brackets and an escaped CDATA end are fine in text
+        Files.writeString(input, "<r><i><v>a]]b]>c]]&gt;</v></i></r>\n", StandardCharsets.UTF_8);
+        assertEquals(convertSequential(input, newSettings("/r/i", "v")),
+                convertMapped(input, newSettings("/r/i", "v"), MappedConvertor.DEFAULT_WINDOW_SIZE, false));
+
+        // Literal CDATA end is malformed, also in skipped elements, and is reported by the convertor
+        for (final String document : new String[] {"<r><i><v>a]]>b</v></i></r>\n", "<r><i><w>]]></w></i></r>\n"}) {
+            Files.writeString(input, document, StandardCharsets.UTF_8);
+            assertThrows(RuntimeException.class, () -> convertSequential(input, newSettings("/r/i", "v")), document);
+
+            final MappedConvertor convertor = new MappedConvertor(input, tempDir.resolve("mapped.txt"),
+                    newSettings("/r/i", "v"));
+            assertThrows(RuntimeException.class, convertor::convert, document);
+            assertTrue(convertor.isFallback());
+        }
+    }
+
+    @Test
+    public void testPipelineFallback() throws IOException {
+        final StringBuilder sb = new StringBuilder("<r xmlns:n=\"urn:n\">\n");
+
+        // Batches are written by the pipeline before the unsupported construct is found
+        for (int i = 0; i < RowPipeline.BATCH_SIZE * 20; i++) {
+            sb.append("<i><v>").append(i).append("</v></i>\n");
+        }
+        sb.append("<n:i><v>last</v></n:i>\n</r>\n");
+
+        final Path input = tempDir.resolve("input.xml");
+        Files.writeString(input, sb, StandardCharsets.UTF_8);
+
+        final ConvertorSettings settings = newSettings("/r/i", "v");
+        settings.generalOptions.pipelineWorkers = 2;
+        assertEquals(convertSequential(input, newSettings("/r/i", "v")),
+                convertMapped(input, settings, MappedConvertor.DEFAULT_WINDOW_SIZE, true));
+    }
+
+    @Test
+    public void testWriteFailure() throws IOException {
+        final Path full = Path.of("/dev/full");
+        final Path descriptors = Path.of("/proc/self/fd");
+        assumeTrue(Files.isWritable(full) && Files.isDirectory(descriptors));
+
+        final StringBuilder sb = new StringBuilder("<r>\n");
+        for (int i = 0; i < 100_000; i++) {
+            sb.append("<i><v>").append(i).append("</v></i>\n");
+        }
+        sb.append("</r>\n");
+
+        final Path input = tempDir.resolve("input.xml");
+        Files.writeString(input, sb, StandardCharsets.UTF_8);
+
+        for (final int workers : new int[]{0, 2}) {
+            final ConvertorSettings settings = newSettings("/r/i", "v");
+            settings.generalOptions.pipelineWorkers = workers;
+
+            final MappedConvertor convertor = new MappedConvertor(input, full, settings);
+            assertThrows(RuntimeException.class, convertor::convert);
+            assertFalse(convertor.isFallback());
+            assertFalse(isOpen(descriptors, full));
+        }
+    }
+
+    boolean isOpen(final Path descriptors, final Path file) throws IOException {
+        try (Stream<Path> links = Files.list(descriptors)) {
+            return links.anyMatch(link -> {
+                try {
+                    return Files.readSymbolicLink(link).equals(file);
+                } catch (final IOException ex) {
+                    return false; // Descriptor of the listing itself
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.github.peter277.xml2table;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+public class MultiTableConvertorTest {
+
+    private static final String DOCUMENT = "<doc>"
+            + "<orders>"
+            + "<order id=\"1\"><date>2024-01-01</date>"
+            + "<line number=\"1\"><sku>A</sku><qty>2</qty></line>"
+            + "<line number=\"2\"><sku>B</sku><qty>1</qty><note><text>gift</text></note></line>"
+            + "</order>"
+            + "<order id=\"2\"><date>2024-01-02</date><ignored><line number=\"9\"/></ignored>"
+            + "<line number=\"1\"><sku>C</sku><qty>5</qty></line>"
+            + "</order>"
+            + "</orders>"
+            + "<parties><party id=\"p1\"><name>Alice &amp; Bob</name></party><party id=\"p2\"><name>Carol</name></party></parties>"
+            + "</doc>";
+
+    @TempDir
+    Path tempDir;
+
+    private static ConvertorSettings settings(final String itemName, final String... columns) {
+        final ConvertorSettings settings = new ConvertorSettings();
+        settings.generalOptions.itemName = itemName;
+        settings.generalOptions.columns = columns;
+
+        return settings;
+    }
+
+    private static String convert(final byte[] document, final ConvertorSettings settings) throws IOException {
+        final StringWriter writer = new StringWriter();
+        Convertor.newConvertorFromStreams(new ByteArrayInputStream(document), writer, settings).convert();
+
+        return writer.toString();
+    }
+
+    private static List<String> convertTables(final byte[] document, final List<ConvertorSettings> settings) {
+        final List<Writer> writers = new ArrayList<>();
+
+        for (int i = 0; i < settings.size(); i++) {
+            writers.add(new StringWriter());
+        }
+
+        MultiTableConvertor.newConvertorFromStreams(new ByteArrayInputStream(document), ParserBackend.newDefault(),
+                settings, writers).convert();
+
+        final List<String> outputs = new ArrayList<>();
+        writers.forEach(writer -> outputs.add(writer.toString()));
+
+        return outputs;
+    }
+
+    // Items with two levels of nested elements, random values and attributes on some elements
+    private static byte[] nestedDocument(final int items, final List<String> columns) {
+        final Random random = new Random(11);
+        final boolean[] attributes = new boolean[13];
+
+        for (int i = 0; i < attributes.length; i++) {
+            attributes[i] = random.nextBoolean();
+        }
+
+        if (attributes[0]) {
+            columns.add("@a");
+        }
+        for (int i = 0; i < 3; i++) {
+            if (attributes[1 + i * 4]) {
+                columns.add("e" + i + "/@a");
+            }
+            for (int j = 0; j < 3; j++) {
+                if (attributes[2 + i * 4 + j]) {
+                    columns.add("e" + i + "/e" + j + "/@a");
+                }
+                columns.add("e" + i + "/e" + j);
+            }
+        }
+
+        final StringBuilder sb = new StringBuilder("<data><items>");
+
+        for (int item = 0; item < items; item++) {
+            appendStart(sb, "item", attributes[0], random);
+            for (int i = 0; i < 3; i++) {
+                appendStart(sb, "e" + i, attributes[1 + i * 4], random);
+                for (int j = 0; j < 3; j++) {
+                    appendStart(sb, "e" + j, attributes[2 + i * 4 + j], random);
+                    sb.append(randomValue(random)).append("</e").append(j).append('>');
+                }
+                sb.append("</e").append(i).append('>');
+            }
+            sb.append("</item>");
+        }
+
+        return sb.append("</items></data>").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void appendStart(final StringBuilder sb, final String name, final boolean attribute,
+            final Random random) {
+        sb.append('<').append(name);
+        if (attribute) {
+            sb.append(" a=\"").append(randomValue(random)).append('"');
+        }
+        sb.append('>');
+    }
+
+    private static String randomValue(final Random random) {
+        final String characters = "abcdefghijklmnopqrstuvwxyz 0123456789 ABC\"&<>ž";
+        final StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < 12; i++) {
+            sb.append(characters.charAt(random.nextInt(characters.length())));
+        }
+
+        return sb.toString().replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    @Test
+    public void testNestedTables() {
+        final List<String> outputs = convertTables(DOCUMENT.getBytes(StandardCharsets.UTF_8), Arrays.asList(
+                settings("/doc/orders/order", "@id", "date", "line/sku"),
+                settings("/doc/orders/order/line", "@number", "sku", "qty", "note/text"),
+                settings("/doc/parties/party", "@id", "name"),
+                settings("/doc/missing", "value")));
+
+        assertEquals("\"@id\",\"date\",\"line/sku\"\n"
+                + "\"1\",\"2024-01-01\",\"A\"\n"
+                + "\"2\",\"2024-01-02\",\"C\"\n", outputs.get(0));
+        assertEquals("\"@number\",\"sku\",\"qty\",\"note/text\"\n"
+                + "\"1\",\"A\",\"2\",\n"
+                + "\"2\",\"B\",\"1\",\"gift\"\n"
+                + "\"1\",\"C\",\"5\",\n", outputs.get(1));
+        assertEquals("\"@id\",\"name\"\n"
+                + "\"p1\",\"Alice & Bob\"\n"
+                + "\"p2\",\"Carol\"\n", outputs.get(2));
+        assertEquals("\"value\"\n", outputs.get(3));
+    }
+
+    @Test
+    public void testSameAsSingleTable() throws IOException {
+        final List<String> columns = new ArrayList<>();
+        final byte[] document = nestedDocument(300, columns);
+
+        final ConvertorSettings joined = settings("/data/items/item", columns.toArray(new String[0]));
+        joined.generalOptions.join = true;
+        final ConvertorSettings nested = settings("/data/items/item" + "/e1", "e0", "e2", "@a");
+        nested.generalOptions.pipelineWorkers = 2;
+        nested.generalOptions.quoteMode = RowWriter.QuoteMode.MINIMAL;
+        final ConvertorSettings first = settings("/data/items/item", columns.get(columns.size() - 1),
+                columns.get(0));
+        first.generalOptions.separator = "\t";
+
+        final List<String> outputs = convertTables(document, Arrays.asList(joined, nested, first));
+
+        // Settings are not changed by conversion, so they can be reused
+        assertEquals(convert(document, joined), outputs.get(0));
+        assertEquals(convert(document, nested), outputs.get(1));
+        assertEquals(convert(document, first), outputs.get(2));
+    }
+
+    @Test
+    public void testChildTables() throws IOException {
+        final Path input = Files.write(tempDir.resolve("input.xml"), DOCUMENT.getBytes(StandardCharsets.UTF_8));
+        final Path output = tempDir.resolve("orders.csv");
+        final String[] args = {"--input-file", input.toString(), "--output-file", output.toString(),
+            "--row-item-name", "/doc/orders/order", "--columns", "@id,date",
+            "--child-table", "line", "--child-columns", "@number,sku,note/text",
+            "--child-table", "ignored/line", "--child-columns", "@number", "--child-name", "ignored",
+            "--remap-column", "@id", "--remap-map", Files.writeString(tempDir.resolve("ids.csv"), "2,two\n").toString()};
+
+        final Main main = new Main();
+        assertEquals(0, new CommandLine(main).execute(args));
+        assertEquals(0, main.getFailedFileCount());
+
+        // Remappings only apply to the row item table
+        assertEquals("\"#key\",\"@id\",\"date\"\n\"1\",\"1\",\"2024-01-01\"\n\"2\",\"two\",\"2024-01-02\"\n",
+                Files.readString(output));
+        assertEquals("\"#parent_key\",\"@number\",\"sku\",\"note/text\"\n"
+                + "\"1\",\"1\",\"A\",\n"
+                + "\"1\",\"2\",\"B\",\"gift\"\n"
+                + "\"2\",\"1\",\"C\",\n", Files.readString(tempDir.resolve("orders_line.csv")));
+        assertEquals("\"#parent_key\",\"@number\"\n\"2\",\"9\"\n",
+                Files.readString(tempDir.resolve("orders_ignored.csv")));
+
+        final ConvertorSettings settings = new ConvertorSettings();
+        assertEquals(Path.of("dir", "out.txt.gz"), settings.getTableOutputFile(Path.of("dir", "out.txt.gz")));
+        settings.childTableName = "line";
+        assertEquals(Path.of("dir", "out_line.txt.gz"), settings.getTableOutputFile(Path.of("dir", "out.txt.gz")));
+        assertEquals(Path.of("out_line"), settings.getTableOutputFile(Path.of("out")));
+    }
+
+    @Test
+    public void testChildTablesKeepRowItems() throws IOException {
+        final Path input = Files.write(tempDir.resolve("input.xml"), DOCUMENT.getBytes(StandardCharsets.UTF_8));
+        final Path output = tempDir.resolve("orders.csv");
+        final List<String> args = Arrays.asList("--input-file", input.toString(), "--output-file", output.toString(),
+            "--row-item-name", "/doc/orders/order", "--columns", "@id,date", "--child-table", "line",
+            "--child-columns", "@number,sku");
+
+        // Child rows of dropped row items would refer to missing rows
+        final List<String> filtered = new ArrayList<>(args);
+        filtered.addAll(Arrays.asList("--filter-column", "@id", "--filter-values",
+                Files.writeString(tempDir.resolve("ids.txt"), "2\n").toString()));
+        new CommandLine(new Main()).execute(filtered.toArray(new String[0]));
+        assertFalse(Files.exists(output));
+
+        final List<String> failItem = new ArrayList<>(args);
+        failItem.addAll(Arrays.asList("--max-value-length", "5", "--limit-policy", "FAIL_ITEM"));
+        new CommandLine(new Main()).execute(failItem.toArray(new String[0]));
+        assertFalse(Files.exists(output));
+
+        // Filters added after the tables are set up are rejected by the convertor
+        final ConvertorSettings orders = settings("/doc/orders/order", "@id");
+        final ConvertorSettings.ChildTableOptions lines = new ConvertorSettings.ChildTableOptions();
+        lines.path = "line";
+        lines.columns = new String[]{"sku"};
+        orders.childTableOptions.add(lines);
+        final List<ConvertorSettings> tables = orders.getTableSettings();
+        final Filter filter = new Filter();
+        filter.setColumn("@id");
+        orders.filters.addFilter(filter);
+        assertThrows(IllegalArgumentException.class,
+                () -> convertTables(DOCUMENT.getBytes(StandardCharsets.UTF_8), tables));
+    }
+
+    @Test
+    public void testTablesCommand() throws IOException {
+        final Path input = Files.write(tempDir.resolve("input.xml"), DOCUMENT.getBytes(StandardCharsets.UTF_8));
+        final Path values = Files.writeString(tempDir.resolve("values.txt"), "B\nC\n");
+        final Path definitions = Files.writeString(tempDir.resolve("tables.txt"), String.join("\n",
+                "# Orders and their lines",
+                "--row-item-name=/doc/orders/order --columns=@id,date --output-file=orders.csv",
+                "--row-item-name=/doc/orders/order/line --columns=@number,sku \\",
+                "    --filter-column=sku --filter-values=\"" + values + "\" --separator ' | ' --output-file=lines.csv",
+                "",
+                "--row-item-name=/doc/parties/party --columns=@id,name --no-header --quote-mode=minimal"
+                        + " --output-file=parties.csv"));
+        final Path outputDir = tempDir.resolve("out");
+        final String[] args = {"--input-file", input.toString(), "--definitions", definitions.toString(),
+            "--output-dir", outputDir.toString()};
+
+        assertEquals(0, new CommandLine(new TablesCommand()).setCaseInsensitiveEnumValuesAllowed(true).execute(args));
+
+        assertEquals("\"@id\",\"date\"\n\"1\",\"2024-01-01\"\n\"2\",\"2024-01-02\"\n",
+                Files.readString(outputDir.resolve("orders.csv")));
+        assertEquals("\"@number\" | \"sku\"\n\"2\" | \"B\"\n\"1\" | \"C\"\n",
+                Files.readString(outputDir.resolve("lines.csv")));
+        assertEquals("p1,Alice & Bob\np2,Carol\n", Files.readString(outputDir.resolve("parties.csv")));
+
+        // Parser options are shared by all tables
+        Files.writeString(definitions, "--row-item-name=/doc/x --columns=a --output-file=x.csv --parser=aalto\n");
+        final String[] commandArgs = new String[args.length + 1];
+        commandArgs[0] = TablesCommand.NAME;
+        System.arraycopy(args, 0, commandArgs, 1, args.length);
+        assertEquals(2, Main.execute(commandArgs));
+
+        assertEquals(Arrays.asList("a b", "", "c'd", "e"), TablesCommand.splitArguments(" 'a b' \"\" \"c'd\"  e "));
+        assertThrows(IllegalArgumentException.class, () -> TablesCommand.splitArguments("a 'b"));
+    }
+}
@@ -0,0 +1,102 @@
+package com.github.peter277.xml2table;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ParallelGzipOutputStreamTest {
+
+    @TempDir
+    Path tempDir;
+
+    byte[] gunzip(final byte[] data) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return in.readAllBytes();
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final byte[] text = new byte[ParallelGzipOutputStream.BLOCK_SIZE * 5 + 123];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = (byte) ('a' + i % 7 * i % 26);
+        }
+
+        final byte[] random = new byte[ParallelGzipOutputStream.BLOCK_SIZE * 3 + 7];
+        new Random(42).nextBytes(random);
+
+        for (final byte[] data : new byte[][]{text, random, new byte[0]}) {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+            try (ParallelGzipOutputStream out = new ParallelGzipOutputStream(bytes, 3, 6)) {
+                out.write(data, 0, Math.min(data.length, 10));
+                if (data.length > 10) {
+                    out.write(data[10]);
+                    out.flush();
+                    out.write(data, 11, data.length - 11);
+                }
+            }
+
+            // Readable by standard gzip decompressor and by parallel BGZF inflation
+            assertArrayEquals(data, gunzip(bytes.toByteArray()));
+
+            final Path file = Files.write(tempDir.resolve("data.gz"), bytes.toByteArray());
+            try (InputStream in = CompressedInput.open(file)) {
+                assertArrayEquals(data, in.readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    public void testConvertToGzip() throws IOException {
+        final StringBuilder sb = new StringBuilder("<r><g>\n");
+        for (int i = 0; i < 20000; i++) {
+            sb.append("<i id=\"").append(i).append("\"><v>value ").append(i % 97).append("</v></i>\n");
+        }
+        sb.append("</g></r>\n");
+
+        final Path input = tempDir.resolve("input.xml");
+        Files.writeString(input, sb, StandardCharsets.UTF_8);
+
+        final ConvertorSettings plainSettings = new ConvertorSettings();
+        plainSettings.generalOptions.columns = new String[]{"@id", "v"};
+        plainSettings.generalOptions.itemName = "/r/g/i";
+        final Path plainOutput = tempDir.resolve("output.txt");
+        Convertor.newConvertorFromFiles(input, plainOutput, plainSettings).convert();
+        final byte[] expected = Files.readAllBytes(plainOutput);
+
+        final ConvertorSettings gzipSettings = new ConvertorSettings();
+        gzipSettings.generalOptions.columns = new String[]{"@id", "v"};
+        gzipSettings.generalOptions.itemName = "/r/g/i";
+        gzipSettings.generalOptions.gzipOutput = true;
+        gzipSettings.generalOptions.gzipThreads = 2;
+        final Path gzipOutput = tempDir.resolve("output.txt.gz");
+
+        Convertor.newConvertorFromFiles(input, gzipOutput, gzipSettings).convert();
+        assertArrayEquals(expected, gunzip(Files.readAllBytes(gzipOutput)));
+
+        new MappedConvertor(input, gzipOutput, gzipSettings).convert();
+        assertArrayEquals(expected, gunzip(Files.readAllBytes(gzipOutput)));
+
+        // Compressed parts are concatenated into a multi-member file
+        final ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            new SplitConvertor(input, gzipOutput, gzipSettings, executorService, 4, 64 * 1024).convert();
+        } finally {
+            executorService.shutdown();
+        }
+        assertArrayEquals(expected, gunzip(Files.readAllBytes(gzipOutput)));
+    }
+}
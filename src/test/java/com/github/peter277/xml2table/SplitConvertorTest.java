@@ -0,0 +1,94 @@
+package com.github.peter277.xml2table;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SplitConvertorTest {
+
+    @TempDir
+    Path tempDir;
+
+    ExecutorService executorService;
+
+    @BeforeEach
+    public void setUp() {
+        executorService = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executorService.shutdown();
+    }
+
+    ConvertorSettings newSettings() {
+        ConvertorSettings convertorSettings = new ConvertorSettings();
+        convertorSettings.generalOptions.columns = new String[]{"@id", "v", "w/@a"};
+        convertorSettings.generalOptions.itemName = "/r/g/i";
+        return convertorSettings;
+    }
+
+    String convertSequential(final Path input) throws IOException {
+        final Path output = tempDir.resolve("sequential.txt");
+        Convertor.newConvertorFromFiles(input, output, newSettings()).convert();
+        return Files.readString(output, StandardCharsets.UTF_8);
+    }
+
+    String convertSplit(final Path input) throws IOException {
+        final Path output = tempDir.resolve("split.txt");
+        new SplitConvertor(input, output, newSettings(), executorService, 4, 64).convert();
+        return Files.readString(output, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testSplitMatchesSequential() throws IOException {
+        final StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<r xmlns:n=\"urn:n\">\n");
+
+        for (int g = 0; g < 5; g++) {
+            sb.append("<g n:k=\"a>b\">\n");
+            for (int i = 0; i < 10; i++) {
+                sb.append("  <!-- <i id=\"comment\"> -->\n");
+                if (i % 4 == 3) {
+                    sb.append("  <i id=\"").append(g).append('.').append(i).append("\"/>\n");
+                } else {
+                    sb.append("  <n:i id=\"").append(g).append('.').append(i).append("\"><v><![CDATA[<i>ž</i>]]></v>")
+                            .append("<w a=\"'").append(i).append("'\"/><x><i id=\"nested\"/></x></n:i>\n");
+                }
+            }
+            sb.append("</g>\n<h><i id=\"other\"/></h>\n");
+        }
+        sb.append("</r>\n");
+
+        final Path input = tempDir.resolve("input.xml");
+        Files.writeString(input, sb, StandardCharsets.UTF_8);
+
+        final String expected = convertSequential(input);
+        assertEquals(51, expected.split("\n").length);
+        assertEquals(expected, convertSplit(input));
+        assertEquals(3, Files.list(tempDir).count()); // No part files left behind
+    }
+
+    @Test
+    public void testDoctypeFallsBackToSequential() throws IOException {
+        final StringBuilder sb = new StringBuilder("<!DOCTYPE r [<!ENTITY e \"entity\">]>\n<r><g>\n");
+
+        for (int i = 0; i < 20; i++) {
+            sb.append("<i id=\"").append(i).append("\"><v>&e;</v></i>\n");
+        }
+        sb.append("</g></r>\n");
+
+        final Path input = tempDir.resolve("input.xml");
+        Files.writeString(input, sb, StandardCharsets.UTF_8);
+
+        assertEquals(convertSequential(input), convertSplit(input));
+    }
+}